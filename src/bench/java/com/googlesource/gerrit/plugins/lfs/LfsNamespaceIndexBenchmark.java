@@ -0,0 +1,108 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_ENABLED;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.LFS;
+
+import com.google.gerrit.entities.Project;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lib.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Project configuration lookups, as done by {@link LfsProjectsConfig#getForProject}, against a
+ * configuration with many namespaces of every kind.
+ *
+ * <p>{@code resolved} looks up a project whose section is memoized, {@code unresolved} cycles
+ * through more projects than are memoized so that most lookups match the namespaces again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LfsNamespaceIndexBenchmark {
+  private static final int PROJECTS = 50_000;
+
+  @Param({"10", "100", "1000"})
+  int namespaceCount;
+
+  private LfsNamespaceIndex index;
+  private Project.NameKey[] projects;
+  private Project.NameKey resolvedProject;
+  private int next;
+
+  @Setup
+  public void setup() {
+    Config cfg = new Config();
+    // a quarter of each kind, the regular expressions last as they are the most expensive
+    int quarter = Math.max(1, namespaceCount / 4);
+    for (int i = 0; i < quarter; i++) {
+      cfg.setBoolean(LFS, "team" + i + "/project", KEY_ENABLED, true);
+      cfg.setBoolean(LFS, "group" + i + "/*", KEY_ENABLED, true);
+      cfg.setBoolean(LFS, "host" + i + "/?/*", KEY_ENABLED, true);
+      cfg.setBoolean(LFS, "^release-" + i + "/.*", KEY_ENABLED, true);
+    }
+    index = LfsNamespaceIndex.create(cfg);
+
+    projects = new Project.NameKey[PROJECTS];
+    for (int i = 0; i < PROJECTS; i++) {
+      int n = i % quarter;
+      switch (i % 5) {
+        case 0:
+          projects[i] = Project.nameKey("team" + n + "/project");
+          break;
+        case 1:
+          projects[i] = Project.nameKey("group" + n + "/sub/project" + i);
+          break;
+        case 2:
+          projects[i] = Project.nameKey("host" + n + "/tenant/project" + i);
+          break;
+        case 3:
+          projects[i] = Project.nameKey("release-" + n + "/project" + i);
+          break;
+        default:
+          // no namespace matches, so every kind is tried
+          projects[i] = Project.nameKey("unconfigured/project" + i);
+      }
+    }
+    resolvedProject = projects[1];
+    index.getForProject(resolvedProject);
+  }
+
+  @Benchmark
+  public LfsProjectConfigSection resolved() {
+    return index.getForProject(resolvedProject);
+  }
+
+  @Benchmark
+  public LfsProjectConfigSection unresolved() {
+    Project.NameKey project = projects[next];
+    next = (next + 1) % PROJECTS;
+    return index.getForProject(project);
+  }
+}
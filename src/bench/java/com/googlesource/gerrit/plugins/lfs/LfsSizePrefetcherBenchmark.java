@@ -0,0 +1,135 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Batch latency against object count for a backend with a remote size lookup (e.g. S3 HEAD).
+ *
+ * <p>{@code threads = 0} is the sequential lookup done by the batch handler alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class LfsSizePrefetcherBenchmark {
+  @Param({"10", "100", "1000", "2000"})
+  int objectCount;
+
+  @Param({"0", "8", "32"})
+  int threads;
+
+  @Param({"1000"})
+  int lookupLatencyMicros;
+
+  private List<LongObjectId> ids;
+  private LargeFileRepository repository;
+  private ExecutorService executor;
+
+  @Setup
+  public void setup() {
+    ids = new ArrayList<>(objectCount);
+    for (int i = 0; i < objectCount; i++) {
+      ids.add(LongObjectId.fromString(String.format("%064x", i)));
+    }
+    repository = new RemoteRepository(lookupLatencyMicros);
+    if (threads > 0) {
+      executor = Executors.newFixedThreadPool(threads);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  @Benchmark
+  public long batch() throws IOException {
+    LargeFileRepository repo =
+        threads > 0
+            ? new LfsSizePrefetcher(executor, threads, 1, MINUTES).prefetch(repository, ids)
+            : repository;
+    // the batch handler asks for the size of each object in turn
+    long total = 0;
+    for (LongObjectId id : ids) {
+      total += repo.getSize(id);
+    }
+    return total;
+  }
+
+  private static class RemoteRepository implements LargeFileRepository {
+    private final long latencyMicros;
+
+    RemoteRepository(long latencyMicros) {
+      this.latencyMicros = latencyMicros;
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      return null;
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      return null;
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      return null;
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) throws IOException {
+      try {
+        MICROSECONDS.sleep(latencyMicros);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      }
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.auth;
+
+import com.googlesource.gerrit.plugins.lfs.auth.LfsSshRequestAuthorizer.LfsSshAuthToken;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the tokens handed out by the batch and SSH authentication: the cipher alone, and the
+ * SSH token with its serialization around it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LfsAuthTokenBenchmark {
+  // the plain text of an SSH token of a typical project
+  private static final String PLAIN_TEXT =
+      "jdoe~platform/frameworks/base~download~2026-10-17T12:00:00.000Z~10";
+
+  private LfsCipher cipher;
+  private LfsSshRequestAuthorizer.Processor sshProcessor;
+  private LfsSshAuthToken sshToken;
+  private String encrypted;
+  private String tampered;
+  private String serializedSshToken;
+
+  @Setup
+  public void setup() {
+    cipher = new LfsCipher();
+    sshProcessor = new LfsSshRequestAuthorizer.Processor(cipher);
+    sshToken =
+        new LfsSshAuthToken("jdoe", "platform/frameworks/base", "download", Instant.now(), 10L);
+    encrypted = cipher.encrypt(PLAIN_TEXT);
+    char middle = encrypted.charAt(encrypted.length() / 2);
+    tampered =
+        encrypted.substring(0, encrypted.length() / 2)
+            + (middle == 'A' ? 'B' : 'A')
+            + encrypted.substring(encrypted.length() / 2 + 1);
+    serializedSshToken = sshProcessor.serialize(sshToken);
+  }
+
+  @Benchmark
+  public String encrypt() {
+    return cipher.encrypt(PLAIN_TEXT);
+  }
+
+  @Benchmark
+  public Optional<String> decrypt() {
+    return cipher.decrypt(encrypted);
+  }
+
+  @Benchmark
+  public Optional<String> decryptTampered() {
+    return cipher.decrypt(tampered);
+  }
+
+  @Benchmark
+  public String serializeSshToken() {
+    return sshProcessor.serialize(sshToken);
+  }
+
+  @Benchmark
+  public Optional<LfsSshAuthToken> deserializeSshToken() {
+    return sshProcessor.deserialize(serializedSshToken);
+  }
+}
@@ -0,0 +1,260 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.fs.FileLfsRepository;
+import org.eclipse.jgit.lfs.server.fs.ObjectDownloadListener;
+import org.eclipse.jgit.util.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Download throughput of the FS backend engines into a sink that is always ready.
+ *
+ * <p>Besides operations per second the benchmark reports two secondary rates: {@code gigabytes}
+ * (GiB written per second) and {@code cpuSeconds} (CPU seconds used by the benchmark thread per
+ * second). CPU per GiB is {@code cpuSeconds / gigabytes}. Add {@code -prof gc} to see the
+ * allocation rate.
+ *
+ * <p>{@code concurrent} interleaves {@value #CONCURRENT_DOWNLOADS} downloads that write one chunk
+ * at a time, like slow clients do. Once all of them are under way it collects garbage and reports
+ * the memory still mapped as {@code mappedMegabytes}, summed over the measurement iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LfsFsDownloadBenchmark {
+  static final int CONCURRENT_DOWNLOADS = 64;
+
+  @Param({"1048576", "268435456"})
+  long objectSize;
+
+  @Param({"16"})
+  int maxMappedDownloads;
+
+  private Path dir;
+  private Repository repository;
+  private AnyLongObjectId id;
+  private AsyncContext context;
+  private HttpServletResponse response;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private long cpuStart;
+    public double gigabytes;
+    public double cpuSeconds;
+
+    @Setup(Level.Invocation)
+    public void start() {
+      cpuStart = THREADS.getCurrentThreadCpuTime();
+    }
+
+    void done(long bytes) {
+      gigabytes += bytes / (double) (1L << 30);
+      cpuSeconds += (THREADS.getCurrentThreadCpuTime() - cpuStart) / 1e9;
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class MappedMemory {
+    private static final BufferPoolMXBean MAPPED =
+        ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+            .filter(pool -> pool.getName().equals("mapped"))
+            .findFirst()
+            .get();
+    public long mappedMegabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      mappedMegabytes = 0;
+    }
+
+    /** Record the memory mapped by buffers that are still referenced. */
+    void sample() throws InterruptedException {
+      System.gc();
+      // unreachable buffers are unmapped by a cleaner thread after the collection
+      Thread.sleep(100);
+      mappedMegabytes = Math.max(mappedMegabytes, MAPPED.getMemoryUsed() >> 20);
+    }
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("lfs-bench");
+    repository = new Repository(dir);
+    id = LongObjectId.fromString(String.format("%064x", objectSize));
+    Path object = repository.getPath(id);
+    Files.createDirectories(object.getParent());
+    byte[] block = new byte[1 << 20];
+    new Random(0).nextBytes(block);
+    try (OutputStream out = Files.newOutputStream(object)) {
+      for (long written = 0; written < objectSize; written += block.length) {
+        out.write(block, 0, (int) Math.min(block.length, objectSize - written));
+      }
+    }
+    response = stub(HttpServletResponse.class, new DiscardingOutputStream());
+    context = stub(AsyncContext.class, response);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.delete(dir.toFile(), FileUtils.RECURSIVE);
+  }
+
+  @Benchmark
+  public void listener(Counters counters) throws IOException {
+    new ObjectDownloadListener(repository, context, response, id).onWritePossible();
+    counters.done(objectSize);
+  }
+
+  @Benchmark
+  public void mapped(Counters counters) throws IOException {
+    new MappedObjectDownloadListener(
+            context, repository.getPath(id), ByteRange.all(objectSize), new Semaphore(1))
+        .onWritePossible();
+    counters.done(objectSize);
+  }
+
+  @Benchmark
+  public void channel(Counters counters) throws IOException {
+    new ObjectRangeDownloadListener(context, repository.getPath(id), ByteRange.all(objectSize))
+        .onWritePossible();
+    counters.done(objectSize);
+  }
+
+  @Benchmark
+  public void concurrent(MappedMemory memory) throws IOException, InterruptedException {
+    MappedDownloads mapped = new MappedDownloads(maxMappedDownloads);
+    List<SlowOutputStream> outs = new ArrayList<>();
+    List<WriteListener> downloads = new ArrayList<>();
+    for (int i = 0; i < CONCURRENT_DOWNLOADS; i++) {
+      SlowOutputStream out = new SlowOutputStream();
+      AsyncContext context = stub(AsyncContext.class, stub(HttpServletResponse.class, out));
+      Path path = repository.getPath(id);
+      ByteRange range = ByteRange.all(objectSize);
+      outs.add(out);
+      downloads.add(mapped.open(context, path, range));
+    }
+    int running = CONCURRENT_DOWNLOADS;
+    for (int round = 0; running > 0; round++) {
+      running = 0;
+      for (int i = 0; i < CONCURRENT_DOWNLOADS; i++) {
+        SlowOutputStream out = outs.get(i);
+        if (!out.closed) {
+          out.ready = true;
+          downloads.get(i).onWritePossible();
+          running++;
+        }
+      }
+      if (round == 0) {
+        memory.sample();
+      }
+    }
+  }
+
+  /** Answers every call with the given value where the types fit, and with null otherwise. */
+  private static <T> T stub(Class<T> type, Object value) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] {type},
+            (proxy, method, args) -> method.getReturnType().isInstance(value) ? value : null));
+  }
+
+  private static class Repository extends FileLfsRepository {
+    Repository(Path dir) throws IOException {
+      super(null, dir);
+    }
+
+    @Override
+    public Path getPath(AnyLongObjectId id) {
+      return super.getPath(id);
+    }
+  }
+
+  /** Accepts one write each time the download is told that writing is possible. */
+  private static class SlowOutputStream extends DiscardingOutputStream {
+    boolean ready;
+    boolean closed;
+
+    @Override
+    public boolean isReady() {
+      return ready;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      ready = false;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  private static class DiscardingOutputStream extends ServletOutputStream {
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {}
+
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  }
+}
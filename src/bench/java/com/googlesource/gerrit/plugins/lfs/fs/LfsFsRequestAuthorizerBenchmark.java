@@ -0,0 +1,93 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.lfs.auth.AuthInfo;
+import com.googlesource.gerrit.plugins.lfs.auth.LfsCipher;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the per object tokens of the FS backend: one is generated for each object of a batch
+ * response, from a grant shared by the batch, and verified by each content request, or found in
+ * the cache of verified tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LfsFsRequestAuthorizerBenchmark {
+  private static final String BACKEND = "fs";
+
+  private LfsFsRequestAuthorizer authorizer;
+  private LfsFsRequestAuthorizer cachingAuthorizer;
+  private LfsFsRequestAuthorizer.Grant grant;
+  private LongObjectId id;
+  private String token;
+  private String cachedToken;
+
+  @Setup
+  public void setup() {
+    authorizer = new LfsFsRequestAuthorizer(new LfsCipher(), 0, new DisabledMetricMaker());
+    cachingAuthorizer =
+        new LfsFsRequestAuthorizer(new LfsCipher(), 1000, new DisabledMetricMaker());
+    grant = authorizer.grant(DOWNLOAD, BACKEND, Instant.now(), 86400L);
+    id =
+        LongObjectId.fromString(
+            "3a7bd3e2360a3d29eea436fcfb7e44c735d117c42d1c1835420b6b9942dd4f1b");
+    // long enough to stay valid for the whole run
+    token = grant.authorize(id).authToken();
+    cachedToken =
+        cachingAuthorizer
+            .generateAuthInfo(DOWNLOAD, BACKEND, id, Instant.now(), 86400L)
+            .authToken();
+  }
+
+  @Benchmark
+  public AuthInfo generateAuthInfo() {
+    return authorizer.generateAuthInfo(DOWNLOAD, BACKEND, id, Instant.now(), 60L);
+  }
+
+  @Benchmark
+  public AuthInfo authorizeWithGrant() {
+    return grant.authorize(id);
+  }
+
+  @Benchmark
+  public boolean verifyAuthInfo() {
+    return authorizer.verifyAuthInfo(token, DOWNLOAD, BACKEND, id);
+  }
+
+  @Benchmark
+  public boolean verifyCachedAuthInfo() {
+    return cachingAuthorizer.verifyAuthInfo(cachedToken, DOWNLOAD, BACKEND, id);
+  }
+}
@@ -0,0 +1,86 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.locks;
+
+import com.google.common.io.CharStreams;
+import com.google.inject.Guice;
+import com.googlesource.gerrit.plugins.lfs.LfsDateTime;
+import com.googlesource.gerrit.plugins.lfs.LfsGson;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lock id computation, done for each lock request, and serialization of the lock list of a
+ * project, written to a sink that discards it so that only the serialization is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LfsLocksBenchmark {
+  @Param({"100", "10000"})
+  int lockCount;
+
+  private LfsGson gson;
+  private LfsGetLocksResponse response;
+  private Writer sink;
+  private String path;
+
+  @Setup
+  public void setup() {
+    gson = Guice.createInjector().getInstance(LfsGson.class);
+    String lockedAt = LfsDateTime.format(Instant.now());
+    List<LfsLock> locks = new ArrayList<>(lockCount);
+    for (int i = 0; i < lockCount; i++) {
+      String lockPath = String.format("assets/textures/level%d/texture%05d.png", i % 50, i);
+      locks.add(
+          new LfsLock(
+              PathToLockId.CONVERTER.convert(lockPath),
+              lockPath,
+              lockedAt,
+              new LfsLockOwner("user" + i % 20)));
+    }
+    response = new LfsGetLocksResponse(locks, null);
+    sink = CharStreams.nullWriter();
+    path = "assets/textures/level7/texture00042.png";
+  }
+
+  @Benchmark
+  public String pathToLockId() {
+    return PathToLockId.CONVERTER.convert(path);
+  }
+
+  @Benchmark
+  public void serializeLockList() throws IOException {
+    gson.toJson(response, sink);
+  }
+}
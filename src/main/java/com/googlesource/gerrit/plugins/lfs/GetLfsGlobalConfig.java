@@ -54,6 +54,11 @@ class GetLfsGlobalConfig implements RestReadView<ProjectResource> {
         sectionInfo.maxObjectSize = section.getMaxObjectSize();
         sectionInfo.readOnly = section.isReadOnly();
         sectionInfo.backend = section.getBackend();
+        sectionInfo.validatePointers = section.isValidatePointers();
+        sectionInfo.maxProjectSize = section.getMaxProjectSize();
+        sectionInfo.maxProjectObjects = section.getMaxProjectObjects();
+        sectionInfo.maxNamespaceSize = section.getMaxNamespaceSize();
+        sectionInfo.maxNamespaceObjects = section.getMaxNamespaceObjects();
         info.namespaces.put(section.getNamespace(), sectionInfo);
       }
     }
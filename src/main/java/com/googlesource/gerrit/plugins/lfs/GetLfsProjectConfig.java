@@ -41,6 +41,11 @@ class GetLfsProjectConfig implements RestReadView<ProjectResource> {
       info.maxObjectSize = config.getMaxObjectSize();
       info.readOnly = config.isReadOnly();
       info.backend = config.getBackend();
+      info.validatePointers = config.isValidatePointers();
+      info.maxProjectSize = config.getMaxProjectSize();
+      info.maxProjectObjects = config.getMaxProjectObjects();
+      info.maxNamespaceSize = config.getMaxNamespaceSize();
+      info.maxNamespaceObjects = config.getMaxNamespaceObjects();
     }
     return Response.ok(info);
   }
@@ -24,14 +24,20 @@ import com.google.inject.Inject;
 import com.google.inject.servlet.ServletModule;
 import com.googlesource.gerrit.plugins.lfs.fs.LfsFsContentServlet;
 import com.googlesource.gerrit.plugins.lfs.fs.LocalLargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.inventory.LfsInventories;
 import com.googlesource.gerrit.plugins.lfs.locks.LfsLocksServlet;
+import com.googlesource.gerrit.plugins.lfs.s3.CachingS3LargeFileRepository;
 import com.googlesource.gerrit.plugins.lfs.s3.S3LargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.tiered.TieredLargeFileRepository;
 import java.util.Map;
 
 public class HttpModule extends ServletModule {
   private final LocalLargeFileRepository.Factory fsRepoFactory;
   private final S3LargeFileRepository.Factory s3RepoFactory;
+  private final CachingS3LargeFileRepository.Factory cachingS3RepoFactory;
+  private final TieredLargeFileRepository.Factory tieredRepoFactory;
   private final LfsRepositoriesCache cache;
+  private final LfsInventories inventories;
   private final LfsFsContentServlet.Factory fsServletFactory;
   private final LfsBackend defaultBackend;
   private final Map<String, LfsBackend> backends;
@@ -40,12 +46,18 @@ public class HttpModule extends ServletModule {
   HttpModule(
       LocalLargeFileRepository.Factory fsRepoFactory,
       S3LargeFileRepository.Factory s3RepoFactory,
+      CachingS3LargeFileRepository.Factory cachingS3RepoFactory,
+      TieredLargeFileRepository.Factory tieredRepoFactory,
       LfsRepositoriesCache cache,
+      LfsInventories inventories,
       LfsFsContentServlet.Factory fsServletFactory,
       LfsConfigurationFactory configFactory) {
     this.fsRepoFactory = fsRepoFactory;
     this.s3RepoFactory = s3RepoFactory;
+    this.cachingS3RepoFactory = cachingS3RepoFactory;
+    this.tieredRepoFactory = tieredRepoFactory;
     this.cache = cache;
+    this.inventories = inventories;
     this.fsServletFactory = fsServletFactory;
 
     LfsGlobalConfig config = configFactory.getGlobalConfig();
@@ -75,6 +87,14 @@ public class HttpModule extends ServletModule {
         populateS3Repository(backend);
         break;
 
+      case S3CACHE:
+        populateAndServeCachingS3Repository(backend);
+        break;
+
+      case TIERED:
+        populateAndServeTieredRepository(backend);
+        break;
+
       default:
         throw new IllegalArgumentException(
             String.format("Unknown repository type: %s", backend.type));
@@ -83,12 +103,31 @@ public class HttpModule extends ServletModule {
 
   private void populateS3Repository(LfsBackend backend) {
     S3LargeFileRepository repository = s3RepoFactory.create(backend);
-    cache.put(backend, repository);
+    cache.put(backend, inventories.wrap(backend, repository));
+  }
+
+  private void populateAndServeCachingS3Repository(LfsBackend backend) {
+    LocalLargeFileRepository local = fsRepoFactory.create(backend);
+    serve(local.getServletUrlPattern()).with(fsServletFactory.create(local));
+    cache.put(
+        backend,
+        inventories.wrap(
+            backend,
+            cachingS3RepoFactory.create(backend, s3RepoFactory.create(backend), local)));
+  }
+
+  private void populateAndServeTieredRepository(LfsBackend backend) {
+    LocalLargeFileRepository hot = fsRepoFactory.create(backend);
+    serve(hot.getServletUrlPattern()).with(fsServletFactory.create(hot));
+    cache.put(
+        backend,
+        inventories.wrap(
+            backend, tieredRepoFactory.create(backend, hot, s3RepoFactory.create(backend))));
   }
 
   private void populateAndServeFsRepository(LfsBackend backend) {
     LocalLargeFileRepository repository = fsRepoFactory.create(backend);
-    cache.put(backend, repository);
+    cache.put(backend, inventories.wrap(backend, repository));
     serve(repository.getServletUrlPattern()).with(fsServletFactory.create(repository));
   }
 }
@@ -16,30 +16,28 @@ package com.googlesource.gerrit.plugins.lfs;
 
 import static com.google.gerrit.extensions.api.lfs.LfsDefinitions.LFS_OBJECTS_PATH;
 import static com.google.gerrit.extensions.api.lfs.LfsDefinitions.LFS_URL_REGEX_TEMPLATE;
-import static com.google.gerrit.extensions.client.ProjectState.HIDDEN;
-import static com.google.gerrit.extensions.client.ProjectState.READ_ONLY;
-import static com.google.gerrit.server.permissions.ProjectPermission.ACCESS;
-import static com.google.gerrit.server.permissions.ProjectPermission.PUSH_AT_LEAST_ONE_REF;
+import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
+import static org.eclipse.jgit.lfs.lib.Constants.UPLOAD;
 
-import com.google.common.flogger.FluentLogger;
 import com.google.gerrit.entities.Project;
 import com.google.gerrit.entities.ProjectUtil;
-import com.google.gerrit.server.CurrentUser;
-import com.google.gerrit.server.permissions.PermissionBackend;
-import com.google.gerrit.server.project.ProjectCache;
-import com.google.gerrit.server.project.ProjectState;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer3;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.lfs.auth.LfsAuthUserProvider;
-import java.util.Optional;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.eclipse.jgit.lfs.errors.LfsException;
-import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
-import org.eclipse.jgit.lfs.errors.LfsRepositoryReadOnly;
-import org.eclipse.jgit.lfs.errors.LfsUnauthorized;
-import org.eclipse.jgit.lfs.errors.LfsUnavailable;
-import org.eclipse.jgit.lfs.errors.LfsValidationError;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
 import org.eclipse.jgit.lfs.server.LargeFileRepository;
 import org.eclipse.jgit.lfs.server.LfsObject;
 import org.eclipse.jgit.lfs.server.LfsProtocolServlet;
@@ -49,28 +47,84 @@ public class LfsApiServlet extends LfsProtocolServlet {
   public static final String LFS_OBJECTS_REGEX_REST =
       String.format(LFS_URL_REGEX_TEMPLATE, LFS_OBJECTS_PATH);
 
-  private static final FluentLogger log = FluentLogger.forEnclosingClass();
   private static final long serialVersionUID = 1L;
   private static final Pattern URL_PATTERN = Pattern.compile(LFS_OBJECTS_REGEX_REST);
+  // backend and operation of the batch request handled by the current thread
+  private static final ThreadLocal<Batch> CURRENT_BATCH = new ThreadLocal<>();
 
-  private final ProjectCache projectCache;
-  private final PermissionBackend permissionBackend;
-  private final LfsConfigurationFactory lfsConfigFactory;
-  private final LfsRepositoryResolver repoResolver;
+  /** Buckets of the number of objects in a batch request. */
+  enum ObjectCount {
+    ONE,
+    UP_TO_10,
+    UP_TO_100,
+    UP_TO_1000,
+    MORE;
+
+    static ObjectCount of(int objects) {
+      if (objects <= 1) {
+        return ONE;
+      } else if (objects <= 10) {
+        return UP_TO_10;
+      } else if (objects <= 100) {
+        return UP_TO_100;
+      } else if (objects <= 1000) {
+        return UP_TO_1000;
+      }
+      return MORE;
+    }
+  }
+
+  private static class Batch {
+    final String backend;
+    final String operation;
+    final ObjectCount objects;
+
+    Batch(String backend, String operation, ObjectCount objects) {
+      this.backend = backend;
+      this.operation = operation;
+      this.objects = objects;
+    }
+  }
+
+  private final LfsBatchAccess batchAccess;
   private final LfsAuthUserProvider userProvider;
+  private final Timer3<String, String, ObjectCount> latency;
 
   @Inject
   LfsApiServlet(
-      ProjectCache projectCache,
-      PermissionBackend permissionBackend,
-      LfsConfigurationFactory lfsConfigFactory,
-      LfsRepositoryResolver repoResolver,
-      LfsAuthUserProvider userProvider) {
-    this.projectCache = projectCache;
-    this.permissionBackend = permissionBackend;
-    this.lfsConfigFactory = lfsConfigFactory;
-    this.repoResolver = repoResolver;
+      LfsBatchAccess batchAccess, LfsAuthUserProvider userProvider, MetricMaker metricMaker) {
+    this.batchAccess = batchAccess;
     this.userProvider = userProvider;
+    this.latency =
+        metricMaker.newTimer(
+            "batch/latency",
+            new Description("Time to answer a batch request of a project with LFS enabled")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            LfsMetricFields.backend(),
+            LfsMetricFields.ofString("operation", "Upload or download."),
+            LfsMetricFields.ofEnum(
+                ObjectCount.class, "objects", "Number of objects in the request."));
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse rsp)
+      throws ServletException, IOException {
+    long start = System.nanoTime();
+    try {
+      super.doPost(req, rsp);
+    } finally {
+      Batch batch = CURRENT_BATCH.get();
+      CURRENT_BATCH.remove();
+      if (batch != null) {
+        latency.record(
+            batch.backend,
+            batch.operation,
+            batch.objects,
+            System.nanoTime() - start,
+            TimeUnit.NANOSECONDS);
+      }
+    }
   }
 
   @Override
@@ -83,62 +137,29 @@ public class LfsApiServlet extends LfsProtocolServlet {
     }
     String projName = matcher.group(1);
     Project.NameKey project = Project.nameKey(ProjectUtil.stripGitSuffix(projName));
-    Optional<ProjectState> state = projectCache.get(project);
-    if (!state.isPresent() || state.get().getProject().getState() == HIDDEN) {
-      throw new LfsRepositoryNotFound(project.get());
-    }
-    authorizeUser(
-        userProvider.getUser(auth, projName, request.getOperation()), state.get(), request);
-
-    if (request.isUpload() && state.get().getProject().getState() == READ_ONLY) {
-      throw new LfsRepositoryReadOnly(project.get());
-    }
-
-    LfsProjectConfigSection config = lfsConfigFactory.getProjectsConfig().getForProject(project);
-    // Only accept requests for projects where LFS is enabled.
-    // No config means we default to "not enabled".
-    if (config != null && config.isEnabled()) {
-      // For uploads, check object sizes against limit if configured
-      if (request.isUpload()) {
-        if (config.isReadOnly()) {
-          throw new LfsRepositoryReadOnly(project.get());
-        }
-
-        long maxObjectSize = config.getMaxObjectSize();
-        if (maxObjectSize > 0) {
-          for (LfsObject object : request.getObjects()) {
-            if (object.getSize() > maxObjectSize) {
-              throw new LfsValidationError(
-                  String.format(
-                      "size of object %s (%d bytes) exceeds limit (%d bytes)",
-                      object.getOid(), object.getSize(), maxObjectSize));
-            }
-          }
-        }
-      }
-
-      return repoResolver.get(project, config.getBackend());
-    }
-
-    throw new LfsUnavailable(project.get());
+    Map<LongObjectId, Long> objects = getObjects(request);
+    LfsBatchAccess.Target target =
+        batchAccess.check(
+            project,
+            userProvider.getUser(auth, projName, request.getOperation()),
+            request.isUpload(),
+            objects);
+    CURRENT_BATCH.set(
+        new Batch(
+            target.backend.name(),
+            request.isUpload() ? UPLOAD : DOWNLOAD,
+            ObjectCount.of(request.getObjects().size())));
+    return batchAccess.open(target, request.isUpload(), objects);
   }
 
-  private void authorizeUser(CurrentUser user, ProjectState state, LfsRequest request)
-      throws LfsUnauthorized {
-    Project.NameKey projectName = state.getNameKey();
-    if ((request.isDownload()
-            && !permissionBackend.user(user).project(projectName).testOrFalse(ACCESS))
-        || (request.isUpload()
-            && !permissionBackend
-                .user(user)
-                .project(projectName)
-                .testOrFalse(PUSH_AT_LEAST_ONE_REF))) {
-      String op = request.getOperation().toLowerCase();
-      String project = state.getProject().getName();
-      String userName = user.getUserName().orElse("anonymous");
-      log.atFine().log(
-          "operation %s unauthorized for user %s on project %s", op, userName, project);
-      throw new LfsUnauthorized(op, project);
+  private static Map<LongObjectId, Long> getObjects(LfsRequest request) {
+    Map<LongObjectId, Long> objects = new LinkedHashMap<>();
+    for (LfsObject object : request.getObjects()) {
+      if (LongObjectId.isId(object.getOid())) {
+        objects.put(LongObjectId.fromString(object.getOid()), object.getSize());
+      }
+      // invalid ids are reported by the batch handler
     }
+    return objects;
   }
 }
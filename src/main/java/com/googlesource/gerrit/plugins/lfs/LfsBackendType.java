@@ -19,5 +19,11 @@ public enum LfsBackendType {
   FS,
 
   /** S3. */
-  S3
+  S3,
+
+  /** S3 with a local read-through cache served like a file system backend. */
+  S3CACHE,
+
+  /** Local filesystem for recently used objects, S3 for the others. */
+  TIERED
 }
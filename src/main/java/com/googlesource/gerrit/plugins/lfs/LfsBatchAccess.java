@@ -0,0 +1,182 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.google.gerrit.extensions.client.ProjectState.HIDDEN;
+import static com.google.gerrit.extensions.client.ProjectState.READ_ONLY;
+import static com.google.gerrit.server.permissions.ProjectPermission.ACCESS;
+import static com.google.gerrit.server.permissions.ProjectPermission.PUSH_AT_LEAST_ONE_REF;
+import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
+import static org.eclipse.jgit.lfs.lib.Constants.UPLOAD;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.quota.LfsQuotas;
+import java.util.Map;
+import java.util.Optional;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryReadOnly;
+import org.eclipse.jgit.lfs.errors.LfsUnauthorized;
+import org.eclipse.jgit.lfs.errors.LfsUnavailable;
+import org.eclipse.jgit.lfs.errors.LfsValidationError;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+
+/**
+ * Checks batch requests against the state, permissions and LFS configuration of their project, and
+ * opens the repository of its backend for them.
+ *
+ * <p>Shared by the batch API and the {@code git-lfs-transfer} SSH command, so that both accept
+ * exactly the same requests.
+ */
+@Singleton
+public class LfsBatchAccess {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /** A project whose LFS requests were accepted, and its backend. */
+  public static class Target {
+    public final Project.NameKey project;
+    public final LfsProjectConfigSection config;
+    public final LfsBackend backend;
+
+    public Target(Project.NameKey project, LfsProjectConfigSection config, LfsBackend backend) {
+      this.project = project;
+      this.config = config;
+      this.backend = backend;
+    }
+  }
+
+  private final ProjectCache projectCache;
+  private final PermissionBackend permissionBackend;
+  private final LfsConfigurationFactory lfsConfigFactory;
+  private final LfsRepositoryResolver repoResolver;
+  private final LfsSizePrefetchers prefetchers;
+  private final LfsQuotas quotas;
+
+  @Inject
+  public LfsBatchAccess(
+      ProjectCache projectCache,
+      PermissionBackend permissionBackend,
+      LfsConfigurationFactory lfsConfigFactory,
+      LfsRepositoryResolver repoResolver,
+      LfsSizePrefetchers prefetchers,
+      LfsQuotas quotas) {
+    this.projectCache = projectCache;
+    this.permissionBackend = permissionBackend;
+    this.lfsConfigFactory = lfsConfigFactory;
+    this.repoResolver = repoResolver;
+    this.prefetchers = prefetchers;
+    this.quotas = quotas;
+  }
+
+  /**
+   * Check a request of a user.
+   *
+   * @param project the project.
+   * @param user the user.
+   * @param upload whether the objects are uploaded, otherwise they are downloaded.
+   * @param objects sizes of the objects of the request, by id.
+   * @return the project and its backend.
+   * @throws LfsException if the request must be rejected.
+   */
+  public Target check(
+      Project.NameKey project, CurrentUser user, boolean upload, Map<LongObjectId, Long> objects)
+      throws LfsException {
+    Optional<ProjectState> state = projectCache.get(project);
+    if (!state.isPresent() || state.get().getProject().getState() == HIDDEN) {
+      throw new LfsRepositoryNotFound(project.get());
+    }
+    authorizeUser(user, state.get(), upload);
+
+    if (upload && state.get().getProject().getState() == READ_ONLY) {
+      throw new LfsRepositoryReadOnly(project.get());
+    }
+
+    LfsProjectConfigSection config = lfsConfigFactory.getProjectsConfig().getForProject(project);
+    // Only accept requests for projects where LFS is enabled.
+    // No config means we default to "not enabled".
+    if (config == null || !config.isEnabled()) {
+      throw new LfsUnavailable(project.get());
+    }
+
+    // For uploads, check object sizes against limit if configured
+    if (upload) {
+      if (config.isReadOnly()) {
+        throw new LfsRepositoryReadOnly(project.get());
+      }
+
+      long maxObjectSize = config.getMaxObjectSize();
+      if (maxObjectSize > 0) {
+        for (Map.Entry<LongObjectId, Long> object : objects.entrySet()) {
+          if (object.getValue() > maxObjectSize) {
+            throw new LfsValidationError(
+                String.format(
+                    "size of object %s (%d bytes) exceeds limit (%d bytes)",
+                    object.getKey().name(), object.getValue(), maxObjectSize));
+          }
+        }
+      }
+    }
+
+    return new Target(project, config, repoResolver.getBackend(project, config.getBackend()));
+  }
+
+  /**
+   * Open the repository for a checked request, charging the quota of the project for uploads.
+   *
+   * @param target the project and its backend.
+   * @param upload whether the objects are uploaded, otherwise they are downloaded.
+   * @param objects sizes of the objects of the request, by id.
+   * @return the repository, answering the size lookups of the objects of the request.
+   * @throws LfsException if the repository is missing or the quota is exceeded.
+   */
+  public LargeFileRepository open(Target target, boolean upload, Map<LongObjectId, Long> objects)
+      throws LfsException {
+    LargeFileRepository repository = repoResolver.get(target.project, target.backend);
+    Optional<LfsSizePrefetcher> prefetcher = prefetchers.get(target.backend);
+    if (prefetcher.isPresent()) {
+      repository = prefetcher.get().prefetch(repository, objects.keySet());
+    }
+    if (upload && !objects.isEmpty() && target.config.hasQuota()) {
+      quotas.charge(target.project, target.config, target.backend, repository, objects);
+    }
+    return repository;
+  }
+
+  private void authorizeUser(CurrentUser user, ProjectState state, boolean upload)
+      throws LfsUnauthorized {
+    Project.NameKey projectName = state.getNameKey();
+    if ((!upload && !permissionBackend.user(user).project(projectName).testOrFalse(ACCESS))
+        || (upload
+            && !permissionBackend
+                .user(user)
+                .project(projectName)
+                .testOrFalse(PUSH_AT_LEAST_ONE_REF))) {
+      String op = upload ? UPLOAD : DOWNLOAD;
+      String project = state.getProject().getName();
+      String userName = user.getUserName().orElse("anonymous");
+      log.atFine().log(
+          "operation %s unauthorized for user %s on project %s", op, userName, project);
+      throw new LfsUnauthorized(op, project);
+    }
+  }
+}
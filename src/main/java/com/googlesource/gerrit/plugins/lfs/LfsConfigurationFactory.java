@@ -27,22 +27,28 @@ public class LfsConfigurationFactory {
   private final ProjectCache projectCache;
   private final AllProjectsName allProjects;
   private final PluginConfigFactory configFactory;
+  private final LfsNamespaceIndex.Holder namespaceIndexes;
 
   @Inject
   LfsConfigurationFactory(
       @PluginName String pluginName,
       ProjectCache projectCache,
       AllProjectsName allProjects,
-      PluginConfigFactory configFactory) {
+      PluginConfigFactory configFactory,
+      LfsNamespaceIndex.Holder namespaceIndexes) {
     this.pluginName = pluginName;
     this.projectCache = projectCache;
     this.allProjects = allProjects;
     this.configFactory = configFactory;
+    this.namespaceIndexes = namespaceIndexes;
   }
 
-  /** @return the project-specific LFS configuration. */
+  /**
+   * @return the project-specific LFS configuration. Namespace lookups are served from an index
+   *     that is shared until the All-Projects configuration changes.
+   */
   public LfsProjectsConfig getProjectsConfig() {
-    return new LfsProjectsConfig(pluginName, projectCache, allProjects);
+    return new LfsProjectsConfig(pluginName, projectCache, allProjects, namespaceIndexes);
   }
 
   /** @return the global LFS configuration. */
@@ -18,6 +18,8 @@ import static java.util.stream.Collectors.toMap;
 
 import com.google.common.collect.ImmutableMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.jgit.lib.Config;
 
 /** Represents the global LFS configuration stored in $SITE/etc/lfs.config. */
@@ -25,7 +27,7 @@ public class LfsGlobalConfig {
 
   private final Config cfg;
 
-  LfsGlobalConfig(Config cfg) {
+  public LfsGlobalConfig(Config cfg) {
     this.cfg = cfg;
   }
 
@@ -45,15 +47,37 @@ public class LfsGlobalConfig {
     return builder.build();
   }
 
+  public Set<String> getSubsections(String section) {
+    return cfg.getSubsections(section);
+  }
+
   public String getString(String section, String subsection, String name) {
     return cfg.getString(section, subsection, name);
   }
 
+  public String[] getStringList(String section, String subsection, String name) {
+    return cfg.getStringList(section, subsection, name);
+  }
+
   public int getInt(String section, String subsection, String name, int defaultValue) {
     return cfg.getInt(section, subsection, name, defaultValue);
   }
 
+  public long getLong(String section, String subsection, String name, long defaultValue) {
+    return cfg.getLong(section, subsection, name, defaultValue);
+  }
+
   public boolean getBoolean(String section, String subsection, String name, boolean defaultValue) {
     return cfg.getBoolean(section, subsection, name, defaultValue);
   }
+
+  public <T extends Enum<?>> T getEnum(
+      String section, String subsection, String name, T defaultValue) {
+    return cfg.getEnum(section, subsection, name, defaultValue);
+  }
+
+  public long getTimeUnit(
+      String section, String subsection, String name, long defaultValue, TimeUnit unit) {
+    return cfg.getTimeUnit(section, subsection, name, defaultValue, unit);
+  }
 }
@@ -17,11 +17,19 @@ package com.googlesource.gerrit.plugins.lfs;
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Singleton;
+import java.io.IOException;
 import java.io.Reader;
+import java.io.Writer;
 
 @Singleton
 public class LfsGson {
+  /** Content that is written element by element instead of being serialized as a whole. */
+  public interface StreamingContent {
+    void write(LfsGson gson, JsonWriter out) throws IOException;
+  }
+
   private final Gson gson;
 
   LfsGson() {
@@ -36,6 +44,31 @@ public class LfsGson {
     gson.toJson(src, writer);
   }
 
+  /**
+   * Write content incrementally to the given writer.
+   *
+   * @param src the content.
+   * @param writer the writer; it is flushed but not closed.
+   * @throws IOException if writing fails.
+   */
+  public void toJson(StreamingContent src, Writer writer) throws IOException {
+    JsonWriter out = gson.newJsonWriter(writer);
+    src.write(this, out);
+    out.flush();
+  }
+
+  /**
+   * Write a single element of streaming content, using the adapter registered for its type.
+   *
+   * @param src the element.
+   * @param type the type of the element.
+   * @param out the writer.
+   * @throws IOException if writing fails.
+   */
+  public <T> void toJson(T src, Class<T> type, JsonWriter out) throws IOException {
+    gson.getAdapter(type).write(out, src);
+  }
+
   public String toJson(Object src) {
     return gson.toJson(src);
   }
@@ -0,0 +1,48 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.server.logging.PluginMetadata;
+
+/** Fields of the plugin metrics, whose values are added to the plugin metadata of the logs. */
+public class LfsMetricFields {
+  private LfsMetricFields() {}
+
+  /** Returns the field of the name of the backend a metric is recorded for. */
+  public static Field<String> backend() {
+    return ofString("backend", "Name of the backend.");
+  }
+
+  public static Field<String> ofString(String name, String description) {
+    return Field.ofString(
+            name,
+            (metadataBuilder, value) ->
+                metadataBuilder.addPluginMetadata(PluginMetadata.create(name, value)))
+        .description(description)
+        .build();
+  }
+
+  public static <E extends Enum<E>> Field<E> ofEnum(
+      Class<E> enumClass, String name, String description) {
+    return Field.ofEnum(
+            enumClass,
+            name,
+            (metadataBuilder, value) ->
+                metadataBuilder.addPluginMetadata(PluginMetadata.create(name, value)))
+        .description(description)
+        .build();
+  }
+}
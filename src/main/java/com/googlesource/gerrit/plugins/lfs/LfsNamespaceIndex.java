@@ -0,0 +1,185 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Project;
+import com.google.inject.Singleton;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.eclipse.jgit.lib.Config;
+
+/**
+ * Compiled lookup of the namespaces configured in the project-specific LFS configuration.
+ *
+ * <p>The index is built once for a given {@link Config} instance. Exact project names are kept in
+ * a map, {@code foo/*} patterns in a trie keyed by path segment, and regular expression and {@code
+ * ?/*} namespaces are compiled up front. Resolved sections are memoized per project. When a project
+ * matches several namespaces the one defined first in the configuration wins.
+ */
+class LfsNamespaceIndex {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final Splitter PATH_SPLITTER = Splitter.on('/');
+  private static final int MAX_RESOLVED_PROJECTS = 10_000;
+
+  private final Config cfg;
+  private final List<String> namespaces;
+  private final Map<String, Integer> exact;
+  private final Node prefixes;
+  private final List<IndexedPattern> patterns;
+  private final Cache<String, Optional<LfsProjectConfigSection>> resolved;
+
+  /** Keeps the index of the most recently seen All-Projects configuration. */
+  @Singleton
+  static class Holder {
+    private volatile LfsNamespaceIndex current;
+
+    LfsNamespaceIndex get(Config cfg) {
+      LfsNamespaceIndex index = current;
+      if (index == null || !index.isFor(cfg)) {
+        index = create(cfg);
+        current = index;
+      }
+      return index;
+    }
+  }
+
+  static LfsNamespaceIndex create(Config cfg) {
+    return new LfsNamespaceIndex(cfg);
+  }
+
+  private LfsNamespaceIndex(Config cfg) {
+    this.cfg = cfg;
+    this.namespaces = ImmutableList.copyOf(cfg.getSubsections(LfsProjectConfigSection.LFS));
+    this.exact = new HashMap<>();
+    this.prefixes = new Node();
+    ImmutableList.Builder<IndexedPattern> compiled = ImmutableList.builder();
+    for (int i = 0; i < namespaces.size(); i++) {
+      String n = namespaces.get(i);
+      if ("?/*".equals(n) || n.endsWith("/?/*")) {
+        String prefix = n.substring(0, n.length() - 3);
+        compile(compiled, i, "^" + prefix + "([^/]+)/.*$");
+      } else if (n.endsWith("/*")) {
+        prefixes.insert(n.substring(0, n.length() - 2), i);
+      } else if (n.startsWith("^")) {
+        compile(compiled, i, n.substring(1));
+      } else {
+        exact.putIfAbsent(n, i);
+      }
+    }
+    this.patterns = compiled.build();
+    this.resolved = CacheBuilder.newBuilder().maximumSize(MAX_RESOLVED_PROJECTS).build();
+  }
+
+  /** @return whether this index was built from the given configuration instance. */
+  boolean isFor(Config config) {
+    return cfg == config;
+  }
+
+  /**
+   * Get the configuration section that applies to a project.
+   *
+   * @param project the project.
+   * @return the first matching section, or {@code null} if no namespace matches.
+   */
+  @Nullable
+  LfsProjectConfigSection getForProject(Project.NameKey project) {
+    String p = project.get();
+    Optional<LfsProjectConfigSection> section = resolved.getIfPresent(p);
+    if (section == null) {
+      int index = match(p);
+      section =
+          index < 0
+              ? Optional.empty()
+              : Optional.of(new LfsProjectConfigSection(cfg, namespaces.get(index)));
+      resolved.put(p, section);
+    }
+    return section.orElse(null);
+  }
+
+  private int match(String p) {
+    int best = exact.getOrDefault(p, Integer.MAX_VALUE);
+    best = Math.min(best, prefixes.match(PATH_SPLITTER.splitToList(p)));
+    for (IndexedPattern pattern : patterns) {
+      if (pattern.index >= best) {
+        break;
+      }
+      if (pattern.pattern.matcher(p).matches()) {
+        best = pattern.index;
+        break;
+      }
+    }
+    return best == Integer.MAX_VALUE ? -1 : best;
+  }
+
+  private static void compile(
+      ImmutableList.Builder<IndexedPattern> compiled, int index, String re) {
+    try {
+      compiled.add(new IndexedPattern(index, Pattern.compile(re)));
+    } catch (PatternSyntaxException e) {
+      log.atWarning().withCause(e).log("Ignoring LFS namespace with invalid pattern %s", re);
+    }
+  }
+
+  private static class IndexedPattern {
+    final int index;
+    final Pattern pattern;
+
+    IndexedPattern(int index, Pattern pattern) {
+      this.index = index;
+      this.pattern = pattern;
+    }
+  }
+
+  /** Trie node of {@code foo/*} namespaces, one level per path segment. */
+  private static class Node {
+    final Map<String, Node> children = new HashMap<>();
+    int index = Integer.MAX_VALUE;
+
+    void insert(String prefix, int i) {
+      Node node = this;
+      for (String segment : PATH_SPLITTER.split(prefix)) {
+        node = node.children.computeIfAbsent(segment, s -> new Node());
+      }
+      node.index = Math.min(node.index, i);
+    }
+
+    /**
+     * A prefix matches when all of its segments equal the leading segments of the project name
+     * and at least one more segment follows, i.e. the name starts with {@code prefix + "/"}.
+     */
+    int match(List<String> segments) {
+      int best = Integer.MAX_VALUE;
+      Node node = this;
+      for (int i = 0; i < segments.size() - 1; i++) {
+        node = node.children.get(segments.get(i));
+        if (node == null) {
+          break;
+        }
+        best = Math.min(best, node.index);
+      }
+      return best;
+    }
+  }
+}
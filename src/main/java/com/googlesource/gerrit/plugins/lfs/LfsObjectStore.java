@@ -0,0 +1,89 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/** Storage of a backend whose objects can be listed and deleted. */
+public interface LfsObjectStore {
+  /** An object held by the storage. */
+  class StoredObject {
+    public final LongObjectId id;
+    public final long size;
+    public final Instant lastModified;
+
+    public StoredObject(LongObjectId id, long size, Instant lastModified) {
+      this.id = id;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+
+  /**
+   * List the stored objects whose id starts with a prefix.
+   *
+   * @param prefix lower case hex prefix of the ids, empty to list all objects.
+   * @param consumer called for each object, possibly more than once for the same id.
+   * @throws IOException if the objects cannot be listed.
+   */
+  void list(String prefix, Consumer<StoredObject> consumer) throws IOException;
+
+  /** List all stored objects, see {@link #list(String, Consumer)}. */
+  default void list(Consumer<StoredObject> consumer) throws IOException {
+    list("", consumer);
+  }
+
+  /**
+   * Delete objects.
+   *
+   * @param ids ids of the objects, missing ones are ignored.
+   * @throws IOException if an object cannot be deleted.
+   */
+  void delete(Collection<LongObjectId> ids) throws IOException;
+
+  /**
+   * Read an object without going through its download action.
+   *
+   * @param id id of the object.
+   * @return the content of the object, or empty if the storage can only be read through the
+   *     download action.
+   * @throws java.nio.file.NoSuchFileException if the object does not exist.
+   * @throws IOException if the object cannot be read.
+   */
+  default Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+    return Optional.empty();
+  }
+
+  /**
+   * Store an object without going through its upload action.
+   *
+   * @param id id of the object.
+   * @param size size of the object in bytes.
+   * @param content the content, read until its end.
+   * @return whether the object was stored; if not the content was not read and the object must be
+   *     stored through the upload action.
+   * @throws IOException if the content does not match the id or the size, or cannot be stored.
+   */
+  default boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    return false;
+  }
+}
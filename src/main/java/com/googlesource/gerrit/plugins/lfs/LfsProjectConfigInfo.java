@@ -19,4 +19,9 @@ public class LfsProjectConfigInfo {
   public Long maxObjectSize;
   public Boolean readOnly;
   public String backend;
+  public Boolean validatePointers;
+  public Long maxProjectSize;
+  public Long maxProjectObjects;
+  public Long maxNamespaceSize;
+  public Long maxNamespaceObjects;
 }
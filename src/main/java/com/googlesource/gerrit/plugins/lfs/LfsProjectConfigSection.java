@@ -22,11 +22,16 @@ public class LfsProjectConfigSection {
   public static final String KEY_ENABLED = "enabled";
   public static final String KEY_READ_ONLY = "readOnly";
   public static final String KEY_BACKEND = "backend";
+  public static final String KEY_VALIDATE_POINTERS = "validatePointers";
+  public static final String KEY_MAX_PROJECT_SIZE = "maxProjectSize";
+  public static final String KEY_MAX_PROJECT_OBJECTS = "maxProjectObjects";
+  public static final String KEY_MAX_NAMESPACE_SIZE = "maxNamespaceSize";
+  public static final String KEY_MAX_NAMESPACE_OBJECTS = "maxNamespaceObjects";
 
   private final Config cfg;
   private final String namespace;
 
-  LfsProjectConfigSection(Config cfg, String namespace) {
+  public LfsProjectConfigSection(Config cfg, String namespace) {
     this.cfg = cfg;
     this.namespace = namespace;
   }
@@ -50,4 +55,37 @@ public class LfsProjectConfigSection {
   public String getBackend() {
     return cfg.getString(LFS, namespace, KEY_BACKEND);
   }
+
+  /** @return whether pushed LFS pointers must reference objects that were uploaded. */
+  public boolean isValidatePointers() {
+    return cfg.getBoolean(LFS, namespace, KEY_VALIDATE_POINTERS, false);
+  }
+
+  /** @return the maximum size in bytes of the objects uploaded to each project, 0 for none. */
+  public long getMaxProjectSize() {
+    return cfg.getLong(LFS, namespace, KEY_MAX_PROJECT_SIZE, 0);
+  }
+
+  /** @return the maximum number of objects uploaded to each project, 0 for none. */
+  public long getMaxProjectObjects() {
+    return cfg.getLong(LFS, namespace, KEY_MAX_PROJECT_OBJECTS, 0);
+  }
+
+  /** @return the maximum size in bytes of the objects uploaded to all projects, 0 for none. */
+  public long getMaxNamespaceSize() {
+    return cfg.getLong(LFS, namespace, KEY_MAX_NAMESPACE_SIZE, 0);
+  }
+
+  /** @return the maximum number of objects uploaded to all projects, 0 for none. */
+  public long getMaxNamespaceObjects() {
+    return cfg.getLong(LFS, namespace, KEY_MAX_NAMESPACE_OBJECTS, 0);
+  }
+
+  /** @return whether any quota is set. */
+  public boolean hasQuota() {
+    return getMaxProjectSize() > 0
+        || getMaxProjectObjects() > 0
+        || getMaxNamespaceSize() > 0
+        || getMaxNamespaceObjects() > 0;
+  }
 }
@@ -27,8 +27,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import org.eclipse.jgit.errors.ConfigInvalidException;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Config;
@@ -41,14 +39,22 @@ public class LfsProjectsConfig extends VersionedMetaData {
   private final String configFilename;
   private final ProjectCache projectCache;
   private final AllProjectsName allProjects;
+  private final LfsNamespaceIndex.Holder indexes;
   private Config projectConfig;
+  private boolean sharedConfig;
+  private LfsNamespaceIndex index;
 
-  public LfsProjectsConfig(
-      @PluginName String pluginName, ProjectCache projectCache, AllProjectsName allProjects) {
+  LfsProjectsConfig(
+      @PluginName String pluginName,
+      ProjectCache projectCache,
+      AllProjectsName allProjects,
+      LfsNamespaceIndex.Holder indexes) {
     this.configFilename = pluginName + ".config";
     this.projectCache = projectCache;
     this.allProjects = allProjects;
+    this.indexes = indexes;
     this.projectConfig = loadProjectConfig();
+    this.sharedConfig = true;
   }
 
   /** @return all the configured LFS sections. */
@@ -71,28 +77,7 @@ public class LfsProjectsConfig extends VersionedMetaData {
    * @return configuration.
    */
   public LfsProjectConfigSection getForProject(Project.NameKey project) {
-    Set<String> namespaces = projectConfig.getSubsections(LfsProjectConfigSection.LFS);
-    String p = project.get();
-    for (String n : namespaces) {
-      if ("?/*".equals(n) || n.endsWith("/?/*")) {
-        String prefix = n.substring(0, n.length() - 3);
-        Matcher m = Pattern.compile("^" + prefix + "([^/]+)/.*$").matcher(p);
-        if (m.matches()) {
-          return new LfsProjectConfigSection(projectConfig, n);
-        }
-      } else if (n.endsWith("/*")) {
-        if (p.startsWith(n.substring(0, n.length() - 1))) {
-          return new LfsProjectConfigSection(projectConfig, n);
-        }
-      } else if (n.startsWith("^")) {
-        if (p.matches(n.substring(1))) {
-          return new LfsProjectConfigSection(projectConfig, n);
-        }
-      } else if (p.equals(n)) {
-        return new LfsProjectConfigSection(projectConfig, n);
-      }
-    }
-    return null;
+    return getIndex().getForProject(project);
   }
 
   /**
@@ -102,6 +87,18 @@ public class LfsProjectsConfig extends VersionedMetaData {
    */
   public void setProjectConfig(Config cfg) {
     this.projectConfig = cfg;
+    this.sharedConfig = false;
+    this.index = null;
+  }
+
+  private LfsNamespaceIndex getIndex() {
+    if (index == null) {
+      // the config loaded from All-Projects is shared by all requests until it
+      // changes, so is its index; an overridden config gets an index of its own
+      index =
+          sharedConfig ? indexes.get(projectConfig) : LfsNamespaceIndex.create(projectConfig);
+    }
+    return index;
   }
 
   private Config loadProjectConfig() {
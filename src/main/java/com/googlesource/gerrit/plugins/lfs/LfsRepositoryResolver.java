@@ -40,18 +40,26 @@ public class LfsRepositoryResolver {
 
   public LargeFileRepository get(Project.NameKey project, String backendName)
       throws LfsRepositoryNotFound {
-    LfsBackend backend;
+    return get(project, getBackend(project, backendName));
+  }
+
+  public LfsBackend getBackend(Project.NameKey project, String backendName)
+      throws LfsRepositoryNotFound {
     if (Strings.isNullOrEmpty(backendName)) {
-      backend = defaultBackend;
-    } else {
-      backend = backends.get(backendName);
-      if (backend == null) {
-        log.atSevere().log(
-            "Project %s is configured with not existing backend %s", project, backendName);
-        throw new LfsRepositoryNotFound(project.get());
-      }
+      return defaultBackend;
     }
 
+    LfsBackend backend = backends.get(backendName);
+    if (backend == null) {
+      log.atSevere().log(
+          "Project %s is configured with not existing backend %s", project, backendName);
+      throw new LfsRepositoryNotFound(project.get());
+    }
+    return backend;
+  }
+
+  public LargeFileRepository get(Project.NameKey project, LfsBackend backend)
+      throws LfsRepositoryNotFound {
     LargeFileRepository repository = cache.get(backend);
     if (repository != null) {
       return repository;
@@ -0,0 +1,184 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+
+/**
+ * Resolves the sizes of all objects of a batch request concurrently.
+ *
+ * <p>The batch handler asks the repository for the size of each object one after another, which is
+ * a remote call per object for some backends. The prefetcher looks them up with at most {@code
+ * parallelism} concurrent tasks per batch and hands out a repository that answers {@link
+ * LargeFileRepository#getSize(AnyLongObjectId)} from the results.
+ *
+ * <p>The tasks go on after the deadline, and the batch handler looks up the objects that no task
+ * started yet itself, so that it does not look up all unresolved objects one after another. Objects
+ * whose lookup failed, or is still running, are looked up again by the batch handler.
+ */
+public class LfsSizePrefetcher {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final long timeoutNanos;
+
+  public LfsSizePrefetcher(
+      ExecutorService executor, int parallelism, long timeout, TimeUnit timeoutUnit) {
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.timeoutNanos = timeoutUnit.toNanos(timeout);
+  }
+
+  public LargeFileRepository prefetch(
+      LargeFileRepository repository, Collection<? extends AnyLongObjectId> ids) {
+    return prefetch(repository, ids, timeoutNanos, NANOSECONDS);
+  }
+
+  /**
+   * Like {@link #prefetch(LargeFileRepository, Collection)}, for a caller that must not wait for
+   * the lookups longer than a timeout of its own.
+   *
+   * @param repository the repository to look the objects up in.
+   * @param ids ids of the objects.
+   * @param timeout the longest time to wait; the configured timeout applies if it is shorter.
+   * @param unit unit of the timeout.
+   * @return a repository answering the size lookups of the objects that were resolved in time.
+   */
+  public LargeFileRepository prefetch(
+      LargeFileRepository repository,
+      Collection<? extends AnyLongObjectId> ids,
+      long timeout,
+      TimeUnit unit) {
+    if (ids.size() < 2) {
+      return repository;
+    }
+
+    Map<AnyLongObjectId, Long> sizes = new ConcurrentHashMap<>(ids.size());
+    Set<AnyLongObjectId> started = ConcurrentHashMap.newKeySet(ids.size());
+    Queue<AnyLongObjectId> pending = new ConcurrentLinkedQueue<>(ids);
+    int workers = Math.min(parallelism, ids.size());
+    List<Future<?>> tasks = new ArrayList<>(workers);
+    long waitNanos = Math.max(0, Math.min(timeoutNanos, unit.toNanos(timeout)));
+    long deadline = System.nanoTime() + waitNanos;
+    try {
+      for (int i = 0; i < workers; i++) {
+        tasks.add(executor.submit(() -> lookup(repository, pending, started, sizes)));
+      }
+      for (Future<?> task : tasks) {
+        task.get(Math.max(0, deadline - System.nanoTime()), NANOSECONDS);
+      }
+    } catch (TimeoutException e) {
+      log.atWarning().log(
+          "Size lookup of %d objects timed out after %d ms, %d resolved",
+          ids.size(), NANOSECONDS.toMillis(waitNanos), sizes.size());
+    } catch (RejectedExecutionException e) {
+      // the executor was replaced after a configuration change
+      log.atFine().log("Size lookup of %d objects was rejected", ids.size());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      pending.clear();
+      for (Future<?> task : tasks) {
+        task.cancel(true);
+      }
+    } catch (ExecutionException e) {
+      log.atWarning().withCause(e).log("Size lookup of %d objects failed", ids.size());
+    }
+    return new PrefetchedRepository(repository, started, sizes);
+  }
+
+  private static void lookup(
+      LargeFileRepository repository,
+      Queue<AnyLongObjectId> pending,
+      Set<AnyLongObjectId> started,
+      Map<AnyLongObjectId, Long> sizes) {
+    AnyLongObjectId id;
+    while (!Thread.currentThread().isInterrupted() && (id = pending.poll()) != null) {
+      if (!started.add(id)) {
+        // looked up by the batch handler already
+        continue;
+      }
+      try {
+        sizes.put(id, repository.getSize(id));
+      } catch (IOException e) {
+        // leave it to the batch handler that reports the error for this object
+        log.atFine().withCause(e).log("Size lookup of %s failed", id.name());
+      }
+    }
+  }
+
+  private static class PrefetchedRepository implements LargeFileRepository {
+    private final LargeFileRepository delegate;
+    private final Set<AnyLongObjectId> started;
+    private final Map<AnyLongObjectId, Long> sizes;
+
+    PrefetchedRepository(
+        LargeFileRepository delegate,
+        Set<AnyLongObjectId> started,
+        Map<AnyLongObjectId, Long> sizes) {
+      this.delegate = delegate;
+      this.started = started;
+      this.sizes = sizes;
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      return delegate.getDownloadAction(id);
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      return delegate.getUploadAction(id, size);
+    }
+
+    @Override
+    @Nullable
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      return delegate.getVerifyAction(id);
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) throws IOException {
+      Long size = sizes.get(id);
+      if (size != null) {
+        return size;
+      }
+      // keep the tasks from looking it up too if none started yet
+      started.add(id.copy());
+      return delegate.getSize(id);
+    }
+  }
+}
@@ -0,0 +1,144 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Per-backend executors used to look up object sizes of batch requests concurrently.
+ *
+ * <p>The settings of a backend are read again for each batch request; when they changed, the
+ * backend gets a new executor and the previous one is shut down once its lookups are done.
+ */
+@Singleton
+public class LfsSizePrefetchers implements LifecycleListener {
+  static final String KEY_BATCH_THREADS = "batchThreads";
+  static final String KEY_BATCH_TIMEOUT = "batchTimeout";
+  private static final int DEFAULT_S3_BATCH_THREADS = 8;
+  private static final long DEFAULT_BATCH_TIMEOUT_SECONDS = 30;
+
+  private static class Prefetcher {
+    final int threads;
+    final long timeoutMillis;
+    final Optional<LfsSizePrefetcher> prefetcher;
+    final ExecutorService executor;
+
+    Prefetcher(int threads, long timeoutMillis, LfsBackend backend) {
+      this.threads = threads;
+      this.timeoutMillis = timeoutMillis;
+      if (threads <= 0) {
+        this.executor = null;
+        this.prefetcher = Optional.empty();
+        return;
+      }
+      this.executor =
+          Executors.newFixedThreadPool(
+              threads,
+              new ThreadFactoryBuilder()
+                  .setNameFormat("LFS-batch-" + backend.name() + "-%d")
+                  .setDaemon(true)
+                  .build());
+      this.prefetcher =
+          Optional.of(new LfsSizePrefetcher(executor, threads, timeoutMillis, MILLISECONDS));
+    }
+
+    boolean hasSettings(int threads, long timeoutMillis) {
+      return this.threads == threads && (threads <= 0 || this.timeoutMillis == timeoutMillis);
+    }
+
+    void shutdown() {
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  private final Supplier<LfsGlobalConfig> globalConfig;
+  private final Map<LfsBackend, Prefetcher> prefetchers = new ConcurrentHashMap<>();
+
+  @Inject
+  LfsSizePrefetchers(LfsConfigurationFactory configFactory) {
+    this(configFactory::getGlobalConfig);
+  }
+
+  @VisibleForTesting
+  LfsSizePrefetchers(Supplier<LfsGlobalConfig> globalConfig) {
+    this.globalConfig = globalConfig;
+  }
+
+  /**
+   * @param backend the backend
+   * @return the prefetcher of the backend, or empty if concurrent lookups are disabled for it.
+   */
+  public Optional<LfsSizePrefetcher> get(LfsBackend backend) {
+    LfsGlobalConfig config = globalConfig.get();
+    String section = backend.type.name();
+    int threads =
+        config.getInt(
+            section,
+            backend.name,
+            KEY_BATCH_THREADS,
+            backend.type == LfsBackendType.FS ? 0 : DEFAULT_S3_BATCH_THREADS);
+    long timeout =
+        config.getTimeUnit(
+            section,
+            backend.name,
+            KEY_BATCH_TIMEOUT,
+            SECONDS.toMillis(DEFAULT_BATCH_TIMEOUT_SECONDS),
+            MILLISECONDS);
+    Prefetcher current = prefetchers.get(backend);
+    if (current != null && current.hasSettings(threads, timeout)) {
+      return current.prefetcher;
+    }
+    return prefetchers.compute(
+            backend,
+            (b, old) -> {
+              if (old != null) {
+                if (old.hasSettings(threads, timeout)) {
+                  return old;
+                }
+                old.shutdown();
+              }
+              return new Prefetcher(threads, timeout, b);
+            })
+        .prefetcher;
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    for (Prefetcher prefetcher : prefetchers.values()) {
+      if (prefetcher.executor != null) {
+        prefetcher.executor.shutdownNow();
+      }
+    }
+    prefetchers.clear();
+  }
+}
@@ -17,13 +17,27 @@ package com.googlesource.gerrit.plugins.lfs;
 import static com.google.gerrit.server.project.ProjectResource.PROJECT_KIND;
 
 import com.google.gerrit.extensions.config.FactoryModule;
+import com.google.gerrit.extensions.events.AccountIndexedListener;
 import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
 import com.google.gerrit.extensions.restapi.RestApiModule;
+import com.google.gerrit.server.git.validators.CommitValidationListener;
 import com.google.inject.internal.UniqueAnnotations;
+import com.googlesource.gerrit.plugins.lfs.auth.LfsAuthUserProvider;
 import com.googlesource.gerrit.plugins.lfs.fs.LfsFsContentServlet;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsPacker;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsShardRebalancer;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsTransferWatchdog;
 import com.googlesource.gerrit.plugins.lfs.fs.LocalLargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.inventory.LfsInventories;
 import com.googlesource.gerrit.plugins.lfs.locks.LfsLocksModule;
+import com.googlesource.gerrit.plugins.lfs.quota.LfsQuotas;
+import com.googlesource.gerrit.plugins.lfs.s3.CachingS3LargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.s3.S3Caches;
 import com.googlesource.gerrit.plugins.lfs.s3.S3LargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.tiered.TierMigrator;
+import com.googlesource.gerrit.plugins.lfs.tiered.TieredLargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.validation.LfsPointerValidator;
 
 public class Module extends FactoryModule {
 
@@ -40,8 +54,29 @@ public class Module extends FactoryModule {
         });
 
     bind(LifecycleListener.class).annotatedWith(UniqueAnnotations.create()).to(Lifecycle.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(LfsSizePrefetchers.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(LfsFsTransferWatchdog.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(LfsFsShardRebalancer.class);
+    bind(LifecycleListener.class).annotatedWith(UniqueAnnotations.create()).to(LfsFsPacker.class);
+    bind(LifecycleListener.class)
+        .annotatedWith(UniqueAnnotations.create())
+        .to(LfsInventories.class);
+    bind(LifecycleListener.class).annotatedWith(UniqueAnnotations.create()).to(LfsQuotas.class);
+    bind(LifecycleListener.class).annotatedWith(UniqueAnnotations.create()).to(S3Caches.class);
+    bind(LifecycleListener.class).annotatedWith(UniqueAnnotations.create()).to(TierMigrator.class);
+
+    DynamicSet.bind(binder(), CommitValidationListener.class).to(LfsPointerValidator.class);
+    DynamicSet.bind(binder(), AccountIndexedListener.class).to(LfsAuthUserProvider.class);
 
     factory(S3LargeFileRepository.Factory.class);
+    factory(CachingS3LargeFileRepository.Factory.class);
+    factory(TieredLargeFileRepository.Factory.class);
     factory(LocalLargeFileRepository.Factory.class);
     factory(LfsFsContentServlet.Factory.class);
     install(new LfsLocksModule());
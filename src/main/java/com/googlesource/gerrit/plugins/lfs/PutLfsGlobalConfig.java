@@ -16,8 +16,13 @@ package com.googlesource.gerrit.plugins.lfs;
 
 import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_BACKEND;
 import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_ENABLED;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_MAX_NAMESPACE_OBJECTS;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_MAX_NAMESPACE_SIZE;
 import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_MAX_OBJECT_SIZE;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_MAX_PROJECT_OBJECTS;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_MAX_PROJECT_SIZE;
 import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_READ_ONLY;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_VALIDATE_POINTERS;
 
 import com.google.common.base.Strings;
 import com.google.gerrit.entities.Project;
@@ -95,6 +100,28 @@ class PutLfsGlobalConfig implements RestModifyView<ProjectResource, LfsGlobalCon
           if (info.readOnly != null) {
             cfg.setBoolean(pluginName, namespace.getKey(), KEY_READ_ONLY, info.readOnly);
           }
+          if (info.validatePointers != null) {
+            cfg.setBoolean(
+                pluginName, namespace.getKey(), KEY_VALIDATE_POINTERS, info.validatePointers);
+          }
+          if (info.maxProjectSize != null) {
+            cfg.setLong(pluginName, namespace.getKey(), KEY_MAX_PROJECT_SIZE, info.maxProjectSize);
+          }
+          if (info.maxProjectObjects != null) {
+            cfg.setLong(
+                pluginName, namespace.getKey(), KEY_MAX_PROJECT_OBJECTS, info.maxProjectObjects);
+          }
+          if (info.maxNamespaceSize != null) {
+            cfg.setLong(
+                pluginName, namespace.getKey(), KEY_MAX_NAMESPACE_SIZE, info.maxNamespaceSize);
+          }
+          if (info.maxNamespaceObjects != null) {
+            cfg.setLong(
+                pluginName,
+                namespace.getKey(),
+                KEY_MAX_NAMESPACE_OBJECTS,
+                info.maxNamespaceObjects);
+          }
           if (!Strings.isNullOrEmpty(info.backend)) {
             if (!backends.contains(info.backend)) {
               throw new ResourceConflictException(
@@ -20,6 +20,8 @@ import com.google.gerrit.sshd.PluginCommandModule;
 import com.google.gerrit.sshd.plugin.LfsPluginAuthCommand;
 import com.google.inject.Inject;
 import com.googlesource.gerrit.plugins.lfs.auth.LfsSshAuth;
+import com.googlesource.gerrit.plugins.lfs.gc.LfsGcCommand;
+import com.googlesource.gerrit.plugins.lfs.transfer.LfsTransferCommand;
 
 public class SshModule extends PluginCommandModule {
 
@@ -31,5 +33,7 @@ public class SshModule extends PluginCommandModule {
   @Override
   protected void configureCommands() {
     DynamicItem.bind(binder(), LfsPluginAuthCommand.LfsSshPluginAuth.class).to(LfsSshAuth.class);
+    command(LfsGcCommand.class);
+    command(LfsTransferCommand.class);
   }
 }
@@ -17,24 +17,72 @@ package com.googlesource.gerrit.plugins.lfs.auth;
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.googlesource.gerrit.plugins.lfs.auth.LfsSshRequestAuthorizer.SSH_AUTH_PREFIX;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.extensions.events.AccountIndexedListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.gerrit.server.AnonymousUser;
 import com.google.gerrit.server.CurrentUser;
 import com.google.gerrit.server.IdentifiedUser;
 import com.google.gerrit.server.account.AccountCache;
-import com.google.gerrit.server.account.AccountState;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.auth.LfsSshRequestAuthorizer.LfsSshAuthToken;
+import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * Resolves the user of LFS requests.
+ *
+ * <p>Users of SSH tokens are kept in a bounded cache until the token expires, so that the batch and
+ * lock requests a client sends with one token share a user, and the group memberships it resolves
+ * in permission checks. The users of an account are dropped when the account is reindexed, which
+ * every change of the account does.
+ */
 @Singleton
-public class LfsAuthUserProvider {
-  private final Provider<AnonymousUser> anonymous;
-  private final Provider<CurrentUser> currentUser;
-  private final LfsSshRequestAuthorizer sshAuth;
-  private final AccountCache accounts;
-  private final IdentifiedUser.GenericFactory userFactory;
+public class LfsAuthUserProvider implements AccountIndexedListener {
+  /** The user of a token, and the requests it is valid for. */
+  private static class Resolved {
+    final String project;
+    final String operation;
+    final Instant expiresAt;
+    final CurrentUser user;
+
+    Resolved(LfsSshAuthToken token, CurrentUser user) {
+      this.project = token.project;
+      this.operation = token.operation;
+      this.expiresAt = token.issued.plusSeconds(token.expiresIn);
+      this.user = user;
+    }
+
+    boolean authorizes(String project, String operation, Instant now) {
+      return now.isBefore(expiresAt)
+          && this.project.equals(project)
+          && this.operation.equals(operation);
+    }
+  }
+
+  /** Returns the token if it is valid for the project and operation. */
+  @FunctionalInterface
+  interface TokenValidator {
+    Optional<LfsSshAuthToken> getValidToken(String authToken, String project, String operation);
+  }
+
+  private static final int DEFAULT_USER_CACHE_SIZE = 1000;
+
+  private final Supplier<CurrentUser> fallback;
+  private final TokenValidator sshAuth;
+  private final Function<String, Optional<CurrentUser>> accounts;
+  private final Cache<String, Resolved> users;
 
   @Inject
   LfsAuthUserProvider(
@@ -42,26 +90,69 @@ public class LfsAuthUserProvider {
       Provider<CurrentUser> currentUser,
       LfsSshRequestAuthorizer sshAuth,
       AccountCache accounts,
-      IdentifiedUser.GenericFactory userFactory) {
-    this.anonymous = anonymous;
-    this.currentUser = currentUser;
+      IdentifiedUser.GenericFactory userFactory,
+      LfsConfigurationFactory configFactory,
+      MetricMaker metricMaker) {
+    this(
+        () -> firstNonNull(currentUser.get(), anonymous.get()),
+        sshAuth::getValidToken,
+        username -> accounts.getByUsername(username).map(userFactory::create),
+        configFactory
+            .getGlobalConfig()
+            .getInt("auth", null, "sshUserCacheSize", DEFAULT_USER_CACHE_SIZE),
+        sshAuth.getExpiresIn());
+    metricMaker.newCallbackMetric(
+        "auth/ssh_user_cache/hit_ratio",
+        Integer.class,
+        new Description("Percentage of SSH tokens whose user was found in the user cache")
+            .setGauge()
+            .setUnit("percent"),
+        () -> (int) (100 * users.stats().hitRate()));
+  }
+
+  @VisibleForTesting
+  LfsAuthUserProvider(
+      Supplier<CurrentUser> fallback,
+      TokenValidator sshAuth,
+      Function<String, Optional<CurrentUser>> accounts,
+      int cacheSize,
+      long expiresInSeconds) {
+    this.fallback = fallback;
     this.sshAuth = sshAuth;
     this.accounts = accounts;
-    this.userFactory = userFactory;
+    // entries outlive their token only if it was issued by a node with a longer validity
+    this.users =
+        CacheBuilder.newBuilder()
+            .maximumSize(Math.max(cacheSize, 0))
+            .expireAfterWrite(Math.max(expiresInSeconds, 0), TimeUnit.SECONDS)
+            .recordStats()
+            .build();
   }
 
   public CurrentUser getUser(String auth, String project, String operation) {
     if (!Strings.isNullOrEmpty(auth) && auth.startsWith(SSH_AUTH_PREFIX)) {
-      Optional<String> user =
-          sshAuth.getUserFromValidToken(
-              auth.substring(SSH_AUTH_PREFIX.length()), project, operation);
-      if (user.isPresent()) {
-        Optional<AccountState> acc = accounts.getByUsername(user.get());
-        if (acc.isPresent()) {
-          return userFactory.create(acc.get());
+      String authToken = auth.substring(SSH_AUTH_PREFIX.length());
+      Resolved resolved = users.getIfPresent(authToken);
+      if (resolved != null && resolved.authorizes(project, operation, Instant.now())) {
+        return resolved.user;
+      }
+      Optional<LfsSshAuthToken> token = sshAuth.getValidToken(authToken, project, operation);
+      if (token.isPresent()) {
+        Optional<CurrentUser> user = accounts.apply(token.get().user);
+        if (user.isPresent()) {
+          users.put(authToken, new Resolved(token.get(), user.get()));
+          return user.get();
         }
+      } else if (resolved != null) {
+        users.invalidate(authToken);
       }
     }
-    return firstNonNull(currentUser.get(), anonymous.get());
+    return fallback.get();
+  }
+
+  @Override
+  public void onAccountIndexed(int id) {
+    Account.Id account = Account.id(id);
+    users.asMap().values().removeIf(r -> r.user.getAccountId().equals(account));
   }
 }
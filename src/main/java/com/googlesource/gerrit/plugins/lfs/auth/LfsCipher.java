@@ -16,44 +16,84 @@ package com.googlesource.gerrit.plugins.lfs.auth;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
-import com.google.common.primitives.Bytes;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import java.security.AlgorithmParameters;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
 import java.security.GeneralSecurityException;
-import java.security.NoSuchAlgorithmException;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Optional;
+import java.util.function.LongSupplier;
+import javax.crypto.AEADBadTagException;
 import javax.crypto.Cipher;
-import javax.crypto.KeyGenerator;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.IvParameterSpec;
-import org.eclipse.jgit.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
 
+/**
+ * Encrypts and authenticates tokens with AES-GCM, or only authenticates them with a keyed hash.
+ *
+ * <p>An encrypted token is the Base64 encoded id of its key, the initialization vector, the cipher
+ * text and its authentication tag. The key id is authenticated too, so that tampered tokens are
+ * rejected before anything is decrypted. A signed token is the Base64 encoded id of its key, the
+ * claims in clear text and a truncated keyed hash of both and of the subject of the token. The
+ * keys come from a {@link LfsKeyRing} shared by all nodes of a cluster. Each thread keeps its own
+ * cipher and hash instances and only initializes them for the token.
+ */
 @Singleton
 public class LfsCipher {
   private static final FluentLogger log = FluentLogger.forEnclosingClass();
-  private static final int IV_LENGTH = 16;
-  private static final String ALGORITHM = "AES";
-  private static final String CIPHER_TYPE = ALGORITHM + "/CBC/PKCS5PADDING";
-  private static final int KEY_SIZE = 128;
+  private static final int IV_LENGTH = 12;
+  private static final int TAG_LENGTH = 16;
+  private static final int SIGNATURE_LENGTH = 16;
+  private static final String CIPHER_TYPE = LfsKeyRing.ALGORITHM + "/GCM/NoPadding";
 
   private final SecureRandom random;
-  private final SecretKey key;
+  private final LfsKeyRing keys;
+  private final LongSupplier clock;
+  private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(LfsCipher::newCipher);
+  private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(LfsCipher::newMac);
 
+  /** Cipher with a random key that is only known to this instance. */
   public LfsCipher() {
     this.random = new SecureRandom();
-    this.key = generateKey();
+    this.keys = LfsKeyRing.random(random);
+    this.clock = System::currentTimeMillis;
+  }
+
+  @Inject
+  LfsCipher(LfsConfigurationFactory configFactory) {
+    this.random = new SecureRandom();
+    this.keys = LfsKeyRing.load(configFactory.getGlobalConfig(), random);
+    this.clock = System::currentTimeMillis;
+  }
+
+  @VisibleForTesting
+  LfsCipher(LfsKeyRing keys, LongSupplier clock) {
+    this.random = new SecureRandom();
+    this.keys = keys;
+    this.clock = clock;
   }
 
   public String encrypt(String input) {
+    LfsKeyRing.Key key = keys.signingKey(clock.getAsLong());
+    int headerLength = key.header.length;
+    byte[] plainText = input.getBytes(UTF_8);
+    byte[] initVector = new byte[IV_LENGTH];
+    random.nextBytes(initVector);
+    byte[] token = new byte[headerLength + IV_LENGTH + plainText.length + TAG_LENGTH];
+    System.arraycopy(key.header, 0, token, 0, headerLength);
+    System.arraycopy(initVector, 0, token, headerLength, IV_LENGTH);
     try {
-      byte[] initVector = new byte[IV_LENGTH];
-      random.nextBytes(initVector);
-      Cipher cipher = cipher(initVector, Cipher.ENCRYPT_MODE);
-      return Base64.encodeBytes(Bytes.concat(initVector, cipher.doFinal(input.getBytes(UTF_8))));
+      Cipher cipher = ciphers.get();
+      cipher.init(Cipher.ENCRYPT_MODE, key.secret, parameters(token, headerLength));
+      cipher.updateAAD(token, 0, headerLength);
+      cipher.doFinal(plainText, 0, plainText.length, token, headerLength + IV_LENGTH);
+      return Base64.getEncoder().encodeToString(token);
     } catch (GeneralSecurityException e) {
       log.atSevere().withCause(e).log("Token generation failed with error");
       throw new RuntimeException(e);
@@ -65,12 +105,31 @@ public class LfsCipher {
       return Optional.empty();
     }
 
-    byte[] bytes = Base64.decode(input);
-    byte[] initVector = Arrays.copyOf(bytes, IV_LENGTH);
+    byte[] token;
     try {
-      Cipher cipher = cipher(initVector, Cipher.DECRYPT_MODE);
-      return Optional.of(
-          new String(cipher.doFinal(Arrays.copyOfRange(bytes, IV_LENGTH, bytes.length)), UTF_8));
+      token = Base64.getDecoder().decode(input);
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+    int headerLength = token.length > 0 ? 1 + (token[0] & 0xff) : 0;
+    if (token.length < headerLength + IV_LENGTH + TAG_LENGTH) {
+      return Optional.empty();
+    }
+    LfsKeyRing.Key key =
+        keys.verificationKey(new String(token, 1, headerLength - 1, UTF_8), clock.getAsLong());
+    if (key == null) {
+      // unknown or retired key
+      return Optional.empty();
+    }
+
+    try {
+      Cipher cipher = ciphers.get();
+      cipher.init(Cipher.DECRYPT_MODE, key.secret, parameters(token, headerLength));
+      cipher.updateAAD(token, 0, headerLength);
+      int offset = headerLength + IV_LENGTH;
+      return Optional.of(new String(cipher.doFinal(token, offset, token.length - offset), UTF_8));
+    } catch (AEADBadTagException e) {
+      // forged or tampered token, not worth a log entry
     } catch (GeneralSecurityException e) {
       log.atSevere().withCause(e).log("Exception was thrown during token verification");
     }
@@ -78,22 +137,93 @@ public class LfsCipher {
     return Optional.empty();
   }
 
-  private Cipher cipher(byte[] initVector, int mode) throws GeneralSecurityException {
-    IvParameterSpec spec = new IvParameterSpec(initVector);
-    AlgorithmParameters params = AlgorithmParameters.getInstance(ALGORITHM);
-    params.init(spec);
-    Cipher cipher = Cipher.getInstance(CIPHER_TYPE);
-    cipher.init(mode, key, params);
-    return cipher;
+  /**
+   * Sign claims for a subject.
+   *
+   * @param claims claims of the token, readable by anyone holding it.
+   * @param subject what the token is for; it is not part of the token and has to be given again
+   *     to verify it.
+   * @return the token.
+   */
+  public String sign(byte[] claims, byte[] subject) {
+    LfsKeyRing.Key key = keys.signingKey(clock.getAsLong());
+    int headerLength = key.header.length;
+    byte[] token = new byte[headerLength + claims.length + SIGNATURE_LENGTH];
+    System.arraycopy(key.header, 0, token, 0, headerLength);
+    System.arraycopy(claims, 0, token, headerLength, claims.length);
+    byte[] signature = signature(key, token, token.length - SIGNATURE_LENGTH, subject);
+    System.arraycopy(signature, 0, token, token.length - SIGNATURE_LENGTH, SIGNATURE_LENGTH);
+    return Base64.getEncoder().encodeToString(token);
   }
 
-  private SecretKey generateKey() {
+  /**
+   * Verify a signed token.
+   *
+   * @param input the token.
+   * @param subject what the token must be for.
+   * @return the claims of the token if it was signed for the subject with a valid key.
+   */
+  public Optional<byte[]> verify(String input, byte[] subject) {
+    if (Strings.isNullOrEmpty(input)) {
+      return Optional.empty();
+    }
+
+    byte[] token;
     try {
-      KeyGenerator generator = KeyGenerator.getInstance(ALGORITHM);
-      generator.init(KEY_SIZE, random);
-      return generator.generateKey();
-    } catch (NoSuchAlgorithmException e) {
-      log.atSevere().withCause(e).log("Generating key failed with error");
+      token = Base64.getDecoder().decode(input);
+    } catch (IllegalArgumentException e) {
+      return Optional.empty();
+    }
+    int headerLength = token.length > 0 ? 1 + (token[0] & 0xff) : 0;
+    int signed = token.length - SIGNATURE_LENGTH;
+    if (signed < headerLength) {
+      return Optional.empty();
+    }
+    LfsKeyRing.Key key =
+        keys.verificationKey(new String(token, 1, headerLength - 1, UTF_8), clock.getAsLong());
+    if (key == null) {
+      return Optional.empty();
+    }
+
+    byte[] signature = signature(key, token, signed, subject);
+    if (!MessageDigest.isEqual(
+        Arrays.copyOf(signature, SIGNATURE_LENGTH),
+        Arrays.copyOfRange(token, signed, token.length))) {
+      return Optional.empty();
+    }
+    return Optional.of(Arrays.copyOfRange(token, headerLength, signed));
+  }
+
+  private byte[] signature(LfsKeyRing.Key key, byte[] token, int length, byte[] subject) {
+    try {
+      Mac mac = macs.get();
+      mac.init(key.signatureSecret);
+      mac.update(token, 0, length);
+      return mac.doFinal(subject);
+    } catch (GeneralSecurityException e) {
+      log.atSevere().withCause(e).log("Token signature failed with error");
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static GCMParameterSpec parameters(byte[] token, int offset) {
+    return new GCMParameterSpec(TAG_LENGTH * Byte.SIZE, token, offset, IV_LENGTH);
+  }
+
+  private static Mac newMac() {
+    try {
+      return Mac.getInstance(LfsKeyRing.SIGNATURE_ALGORITHM);
+    } catch (GeneralSecurityException e) {
+      log.atSevere().withCause(e).log("Creating keyed hash failed with error");
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Cipher newCipher() {
+    try {
+      return Cipher.getInstance(CIPHER_TYPE);
+    } catch (GeneralSecurityException e) {
+      log.atSevere().withCause(e).log("Creating cipher failed with error");
       throw new RuntimeException(e);
     }
   }
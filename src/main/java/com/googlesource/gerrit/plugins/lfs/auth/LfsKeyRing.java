@@ -0,0 +1,206 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.auth;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.flogger.FluentLogger;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keys of the token cipher.
+ *
+ * <p>Keys are named by the {@code auth} subsections of the global configuration and their secret is
+ * normally read from the secure store, so that all nodes of a cluster can verify the tokens any of
+ * them issued. The secure store only overlays the values of the configuration, so a key must have
+ * its subsection in the configuration file even if it is empty. Each key becomes the signing key at
+ * its activation time, and the key it replaces is still accepted for the overlap period afterwards.
+ * Without configured keys a random key of this node is used.
+ */
+class LfsKeyRing {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String SECTION = "auth";
+  static final String ALGORITHM = "AES";
+  static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+  private static final int RANDOM_KEY_SIZE = 128;
+  private static final long DEFAULT_OVERLAP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /** A key and the header identifying it in the tokens it signs. */
+  static class Key {
+    final String id;
+    final byte[] header;
+    final SecretKey secret;
+    // derived from the secret so that signed tokens cannot be mistaken for encrypted ones
+    final SecretKey signatureSecret;
+    final long activeFrom;
+
+    /**
+     * @param id id of the key, at most 255 bytes in UTF-8.
+     * @param secret the key.
+     * @param activeFrom time in milliseconds from which the key signs tokens.
+     */
+    Key(String id, SecretKey secret, long activeFrom) {
+      byte[] encodedId = id.getBytes(UTF_8);
+      if (encodedId.length > 255) {
+        throw new IllegalArgumentException("key id is too long: " + id);
+      }
+      this.id = id;
+      this.header = new byte[1 + encodedId.length];
+      this.header[0] = (byte) encodedId.length;
+      System.arraycopy(encodedId, 0, header, 1, encodedId.length);
+      this.secret = secret;
+      this.signatureSecret = deriveSignatureSecret(secret);
+      this.activeFrom = activeFrom;
+    }
+
+    private static SecretKey deriveSignatureSecret(SecretKey secret) {
+      try {
+        Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+        mac.init(new SecretKeySpec(secret.getEncoded(), SIGNATURE_ALGORITHM));
+        return new SecretKeySpec(
+            mac.doFinal("lfs token signature".getBytes(UTF_8)), SIGNATURE_ALGORITHM);
+      } catch (GeneralSecurityException e) {
+        log.atSevere().withCause(e).log("Deriving signature key failed with error");
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /**
+   * Read the key ring from the configuration.
+   *
+   * @param config the global configuration; the ids of the keys are the {@code auth} subsections of
+   *     its file, their {@code key} may be set in the secure store.
+   * @return the configured keys, or a random key if none is configured or none is valid.
+   */
+  static LfsKeyRing load(LfsGlobalConfig config, SecureRandom random) {
+    List<Key> keys = new ArrayList<>();
+    for (String id : config.getSubsections(SECTION)) {
+      String encoded = config.getString(SECTION, id, "key");
+      if (Strings.isNullOrEmpty(encoded)) {
+        log.atSevere().log(
+            "Ignoring key %s: auth.%s.key is set neither in the configuration nor in the secure"
+                + " store",
+            id, id);
+        continue;
+      }
+      try {
+        byte[] secret = Base64.getDecoder().decode(encoded);
+        if (secret.length != 16 && secret.length != 24 && secret.length != 32) {
+          log.atSevere().log("Ignoring key %s: it must have 16, 24 or 32 bytes", id);
+          continue;
+        }
+        String activeFrom = config.getString(SECTION, id, "activeFrom");
+        keys.add(
+            new Key(
+                id,
+                new SecretKeySpec(secret, ALGORITHM),
+                activeFrom != null ? Instant.parse(activeFrom).toEpochMilli() : 0));
+      } catch (IllegalArgumentException | DateTimeParseException e) {
+        log.atSevere().withCause(e).log("Ignoring invalid key %s", id);
+      }
+    }
+    if (keys.isEmpty()) {
+      if (!config.getSubsections(SECTION).isEmpty()) {
+        log.atSevere().log("No valid token key, tokens can only be verified by this node");
+      }
+      return random(random);
+    }
+    long overlap =
+        config.getTimeUnit(SECTION, null, "keyOverlap", DEFAULT_OVERLAP_MILLIS, MILLISECONDS);
+    return new LfsKeyRing(keys, overlap);
+  }
+
+  /** @return a key ring with a random key that is only known to this node. */
+  static LfsKeyRing random(SecureRandom random) {
+    try {
+      KeyGenerator generator = KeyGenerator.getInstance(ALGORITHM);
+      generator.init(RANDOM_KEY_SIZE, random);
+      return new LfsKeyRing(ImmutableList.of(new Key("", generator.generateKey(), 0)), 0);
+    } catch (NoSuchAlgorithmException e) {
+      log.atSevere().withCause(e).log("Generating key failed with error");
+      throw new RuntimeException(e);
+    }
+  }
+
+  private final ImmutableList<Key> keys;
+  private final ImmutableMap<String, Key> byId;
+  private final ImmutableMap<String, Long> retiredAt;
+
+  /**
+   * @param keys the keys, in any order.
+   * @param overlapMillis time during which a key is still accepted after the next key became
+   *     active.
+   */
+  @VisibleForTesting
+  LfsKeyRing(List<Key> keys, long overlapMillis) {
+    this.keys =
+        keys.stream()
+            .sorted(Comparator.comparingLong(k -> k.activeFrom))
+            .collect(ImmutableList.toImmutableList());
+    this.byId = Maps.uniqueIndex(this.keys, k -> k.id);
+    ImmutableMap.Builder<String, Long> retired = ImmutableMap.builder();
+    for (int i = 0; i < this.keys.size(); i++) {
+      retired.put(
+          this.keys.get(i).id,
+          i + 1 < this.keys.size()
+              ? this.keys.get(i + 1).activeFrom + overlapMillis
+              : Long.MAX_VALUE);
+    }
+    this.retiredAt = retired.build();
+  }
+
+  /** @return the key that signs tokens at the given time in milliseconds. */
+  Key signingKey(long now) {
+    for (int i = keys.size() - 1; i > 0; i--) {
+      if (keys.get(i).activeFrom <= now) {
+        return keys.get(i);
+      }
+    }
+    return keys.get(0);
+  }
+
+  /**
+   * @return the key with the given id if it may verify tokens at the given time in milliseconds,
+   *     otherwise {@code null}.
+   */
+  Key verificationKey(String id, long now) {
+    Long retired = retiredAt.get(id);
+    if (retired == null || now >= retired) {
+      return null;
+    }
+    return byId.get(id);
+  }
+}
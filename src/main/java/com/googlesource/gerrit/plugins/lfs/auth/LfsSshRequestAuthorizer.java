@@ -62,7 +62,12 @@ class LfsSshRequestAuthorizer {
     return new SshAuthInfo(processor.serialize(token), token.issued, token.expiresIn);
   }
 
-  Optional<String> getUserFromValidToken(String authToken, String project, String operation) {
+  /** @return validity, in seconds, of the tokens issued by this node. */
+  long getExpiresIn() {
+    return expiresIn;
+  }
+
+  Optional<LfsSshAuthToken> getValidToken(String authToken, String project, String operation) {
     Optional<LfsSshAuthToken> token = processor.deserialize(authToken);
     if (!token.isPresent()) {
       return Optional.empty();
@@ -72,7 +77,7 @@ class LfsSshRequestAuthorizer {
       log.atSevere().log("Invalid data was provided with auth token %s.", authToken);
       return Optional.empty();
     }
-    return Optional.of(token.get().user);
+    return token;
   }
 
   static class Processor extends LfsAuthToken.Processor<LfsSshAuthToken> {
@@ -123,10 +128,10 @@ class LfsSshRequestAuthorizer {
     }
   }
 
-  private static class LfsSshAuthToken extends LfsAuthToken {
-    private final String user;
-    private final String project;
-    private final String operation;
+  static class LfsSshAuthToken extends LfsAuthToken {
+    final String user;
+    final String project;
+    final String operation;
 
     LfsSshAuthToken(String user, String project, String operation, Instant issued, Long expiresIn) {
       super(issued, expiresIn);
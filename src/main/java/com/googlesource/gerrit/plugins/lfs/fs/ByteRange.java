@@ -0,0 +1,120 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Strings;
+import java.util.Locale;
+import java.util.Optional;
+
+/** A single byte range of an object as requested with the HTTP {@code Range} header. */
+class ByteRange {
+  private static final String BYTES_UNIT = "bytes=";
+  private static final CharMatcher DIGITS = CharMatcher.inRange('0', '9');
+
+  final long start;
+  final long end;
+  final long size;
+
+  ByteRange(long start, long end, long size) {
+    this.start = start;
+    this.end = end;
+    this.size = size;
+  }
+
+  /** @return the range covering the whole object. */
+  static ByteRange all(long size) {
+    return new ByteRange(0, size - 1, size);
+  }
+
+  /**
+   * Parse a {@code Range} header.
+   *
+   * <p>Only a single range is supported; headers with several ranges, other units or a syntax
+   * error are ignored as allowed by RFC 7233 and the whole object is sent.
+   *
+   * @param header value of the header, may be null.
+   * @param size size of the object.
+   * @return the requested range, or empty if the whole object should be sent.
+   */
+  static Optional<ByteRange> parse(String header, long size) {
+    if (Strings.isNullOrEmpty(header)
+        || !header.toLowerCase(Locale.US).startsWith(BYTES_UNIT)
+        || header.indexOf(',') >= 0) {
+      return Optional.empty();
+    }
+
+    String spec = header.substring(BYTES_UNIT.length()).trim();
+    int dash = spec.indexOf('-');
+    if (dash < 0) {
+      return Optional.empty();
+    }
+
+    String first = spec.substring(0, dash).trim();
+    String last = spec.substring(dash + 1).trim();
+    try {
+      if (first.isEmpty()) {
+        // suffix range: the last n bytes
+        if (!isNumber(last)) {
+          return Optional.empty();
+        }
+        long suffix = Long.parseLong(last);
+        if (suffix == 0 || size == 0) {
+          return Optional.of(unsatisfiable(size));
+        }
+        return Optional.of(new ByteRange(Math.max(0, size - suffix), size - 1, size));
+      }
+
+      if (!isNumber(first) || !(last.isEmpty() || isNumber(last))) {
+        return Optional.empty();
+      }
+      long start = Long.parseLong(first);
+      long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+      if (end < start) {
+        return Optional.empty();
+      }
+      if (start >= size) {
+        return Optional.of(unsatisfiable(size));
+      }
+      return Optional.of(new ByteRange(start, Math.min(end, size - 1), size));
+    } catch (NumberFormatException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static boolean isNumber(String s) {
+    return !s.isEmpty() && DIGITS.matchesAllOf(s);
+  }
+
+  private static ByteRange unsatisfiable(long size) {
+    return new ByteRange(size, size - 1, size);
+  }
+
+  boolean isSatisfiable() {
+    return start < size;
+  }
+
+  long length() {
+    return end - start + 1;
+  }
+
+  /** @return value of the {@code Content-Range} header of the response. */
+  String contentRange() {
+    if (!isSatisfiable()) {
+      return "bytes */" + size;
+    }
+    return "bytes " + start + "-" + end + "/" + size;
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+
+/**
+ * Uploads of a backend that are being written, by object id.
+ *
+ * <p>Only the first uploader of an object writes it. Later uploaders of the same object wait until
+ * it was written, or retry the upload themselves if the first one failed.
+ */
+class InFlightUploads {
+  private final ConcurrentHashMap<String, List<Consumer<Boolean>>> uploads =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Register an upload of the object.
+   *
+   * @param id object to be uploaded.
+   * @param waiter called with whether the object was written, if it is already being uploaded.
+   * @return true if the caller must write the object and then call {@link #finish}; false if the
+   *     object is already being uploaded and the waiter was registered.
+   */
+  boolean tryStart(AnyLongObjectId id, Consumer<Boolean> waiter) {
+    boolean[] first = {false};
+    uploads.compute(
+        id.getName(),
+        (name, waiters) -> {
+          if (waiters == null) {
+            first[0] = true;
+            return new ArrayList<>();
+          }
+          waiters.add(waiter);
+          return waiters;
+        });
+    return first[0];
+  }
+
+  /**
+   * Finish the upload of the object and notify the uploaders waiting for it.
+   *
+   * @param id object that was uploaded.
+   * @param written whether the object exists now.
+   */
+  void finish(AnyLongObjectId id, boolean written) {
+    List<Consumer<Boolean>> waiters = uploads.remove(id.getName());
+    if (waiters != null) {
+      for (Consumer<Boolean> waiter : waiters) {
+        waiter.accept(written);
+      }
+    }
+  }
+
+  /** @return the number of objects being uploaded. */
+  int size() {
+    return uploads.size();
+  }
+}
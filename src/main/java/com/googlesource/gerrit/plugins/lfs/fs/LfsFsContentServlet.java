@@ -15,24 +15,37 @@
 package com.googlesource.gerrit.plugins.lfs.fs;
 
 import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
+import static org.eclipse.jgit.lfs.lib.Constants.HDR_APPLICATION_OCTET_STREAM;
 import static org.eclipse.jgit.lfs.lib.Constants.UPLOAD;
 import static org.eclipse.jgit.util.HttpSupport.HDR_AUTHORIZATION;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.flogger.FluentLogger;
 import com.google.common.net.HttpHeaders;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsTransferWatchdog.Operation;
+import com.googlesource.gerrit.plugins.lfs.inventory.LfsInventories;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.text.MessageFormat;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Optional;
 import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.http.HttpStatus;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
 import org.eclipse.jgit.lfs.server.fs.FileLfsServlet;
-import org.eclipse.jgit.lfs.server.fs.ObjectDownloadListener;
 import org.eclipse.jgit.lfs.server.fs.ObjectUploadListener;
 import org.eclipse.jgit.lfs.server.internal.LfsServerText;
 
@@ -41,19 +54,27 @@ public class LfsFsContentServlet extends FileLfsServlet {
     LfsFsContentServlet create(LocalLargeFileRepository largeFileRepository);
   }
 
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
   private static final long serialVersionUID = 1L;
+  private static final String CACHE_CONTROL_SHARED = "public, max-age=31536000, immutable";
+  private static final String CACHE_CONTROL_PRIVATE = "private, max-age=31536000, immutable";
 
   private final LfsFsRequestAuthorizer authorizer;
+  private final LfsFsTransferWatchdog watchdog;
+  private final LfsInventories inventories;
   private final LocalLargeFileRepository repository;
-  private final long timeout;
 
   @Inject
   public LfsFsContentServlet(
-      LfsFsRequestAuthorizer authorizer, @Assisted LocalLargeFileRepository repository) {
-    super(repository, 0);
+      LfsFsRequestAuthorizer authorizer,
+      LfsFsTransferWatchdog watchdog,
+      LfsInventories inventories,
+      @Assisted LocalLargeFileRepository repository) {
+    super(repository, repository.getTransferLimits().timeoutMillis);
     this.authorizer = authorizer;
+    this.watchdog = watchdog;
+    this.inventories = inventories;
     this.repository = repository;
-    this.timeout = 0;
   }
 
   @Override
@@ -68,6 +89,9 @@ public class LfsFsContentServlet extends FileLfsServlet {
     Optional<AnyLongObjectId> obj = validateGetRequest(req, rsp);
     if (obj.isPresent() && obj.get().getName().equalsIgnoreCase(verifyId)) {
       rsp.addHeader(HttpHeaders.ETAG, obj.get().getName());
+      if (repository.isCacheableContent()) {
+        setCacheHeaders(rsp, obj.get());
+      }
       rsp.setStatus(HttpStatus.SC_NOT_MODIFIED);
       return;
     }
@@ -90,7 +114,8 @@ public class LfsFsContentServlet extends FileLfsServlet {
       return;
     }
 
-    if (!authorizer.verifyAuthInfo(req.getHeader(HDR_AUTHORIZATION), UPLOAD, id)) {
+    if (!authorizer.verifyAuthInfo(
+        req.getHeader(HDR_AUTHORIZATION), UPLOAD, repository.getBackendName(), id)) {
       sendError(
           rsp,
           HttpStatus.SC_UNAUTHORIZED,
@@ -99,10 +124,93 @@ public class LfsFsContentServlet extends FileLfsServlet {
       return;
     }
 
+    if (repository.getSize(id) >= 0) {
+      // content addressed: whatever the client sends is what we have
+      rsp.setStatus(HttpStatus.SC_OK);
+      return;
+    }
+
     AsyncContext context = req.startAsync();
-    context.setTimeout(timeout);
+    context.setTimeout(repository.getTransferLimits().timeoutMillis);
+    startUpload(req, rsp, context, id);
+  }
+
+  /**
+   * Write the object, or wait for a concurrent upload of the same object to finish. If that upload
+   * fails this request retries writing the object with its own content.
+   */
+  private void startUpload(
+      HttpServletRequest req, HttpServletResponse rsp, AsyncContext context, AnyLongObjectId id)
+      throws IOException {
+    InFlightUploads uploads = repository.getInFlightUploads();
+    boolean first =
+        uploads.tryStart(
+            id,
+            written -> {
+              try {
+                context.start(() -> onConcurrentUpload(req, rsp, context, id, written));
+              } catch (IllegalStateException e) {
+                log.atFine().log("Upload of %s completed while waiting", id.getName());
+              }
+            });
+    if (!first) {
+      log.atFine().log("Waiting for concurrent upload of %s", id.getName());
+      return;
+    }
+
+    context.addListener(
+        new AsyncListener() {
+          @Override
+          public void onComplete(AsyncEvent event) {
+            long size = -1;
+            try {
+              size = repository.getSize(id);
+            } catch (IOException e) {
+              log.atWarning().withCause(e).log("Cannot check upload of %s", id.getName());
+            }
+            boolean written = size >= 0;
+            if (written) {
+              inventories.stored(repository.getBackendName(), id, size);
+              repository.packInBackground(id);
+            }
+            uploads.finish(id, written);
+          }
+
+          @Override
+          public void onTimeout(AsyncEvent event) {}
+
+          @Override
+          public void onError(AsyncEvent event) {}
+
+          @Override
+          public void onStartAsync(AsyncEvent event) {}
+        });
+    WatchedTransfer transfer = watchdog.newTransfer(repository, Operation.UPLOAD);
+    HttpServletRequest counted = transfer.countBytes(req);
+    transfer.start(context);
     req.getInputStream()
-        .setReadListener(new ObjectUploadListener(repository, context, req, rsp, id));
+        .setReadListener(
+            transfer.watch(new ObjectUploadListener(repository, context, counted, rsp, id)));
+  }
+
+  private void onConcurrentUpload(
+      HttpServletRequest req,
+      HttpServletResponse rsp,
+      AsyncContext context,
+      AnyLongObjectId id,
+      boolean written) {
+    if (written) {
+      rsp.setStatus(HttpStatus.SC_OK);
+      context.complete();
+      return;
+    }
+    try {
+      startUpload(req, rsp, context, id);
+    } catch (IOException | RuntimeException e) {
+      log.atWarning().withCause(e).log("Retrying upload of %s failed", id.getName());
+      rsp.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+      context.complete();
+    }
   }
 
   private Optional<AnyLongObjectId> validateGetRequest(
@@ -120,7 +228,7 @@ public class LfsFsContentServlet extends FileLfsServlet {
       return Optional.empty();
     }
 
-    if (!authorizer.verifyAuthInfo(req.getHeader(HDR_AUTHORIZATION), DOWNLOAD, obj)) {
+    if (!isDownloadAuthorized(req.getHeader(HDR_AUTHORIZATION), obj)) {
       sendError(
           rsp,
           HttpStatus.SC_UNAUTHORIZED,
@@ -131,14 +239,157 @@ public class LfsFsContentServlet extends FileLfsServlet {
     return Optional.of(obj);
   }
 
+  private boolean isDownloadAuthorized(String authorization, AnyLongObjectId obj) {
+    Optional<ProxyDownloadAuth> proxyAuth = repository.getProxyDownloadAuth();
+    if (proxyAuth.isPresent()
+        && Strings.nullToEmpty(authorization).startsWith(ProxyDownloadAuth.SCHEME)) {
+      return proxyAuth.get().verify(authorization, obj, Instant.now());
+    }
+    return authorizer.verifyAuthInfo(authorization, DOWNLOAD, repository.getBackendName(), obj);
+  }
+
   private void getObject(
       HttpServletRequest req, HttpServletResponse rsp, Optional<AnyLongObjectId> obj)
       throws IOException {
     if (obj.isPresent()) {
-      AsyncContext context = req.startAsync();
-      context.setTimeout(timeout);
-      rsp.getOutputStream()
-          .setWriteListener(new ObjectDownloadListener(repository, context, rsp, obj.get()));
+      rsp.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+      if (repository.isCacheableContent()) {
+        setCacheHeaders(rsp, obj.get());
+        if (matchesEntityTag(req.getHeader(HttpHeaders.IF_NONE_MATCH), obj.get())) {
+          rsp.setStatus(HttpStatus.SC_NOT_MODIFIED);
+          return;
+        }
+      }
+      Optional<ByteRange> range = getRange(req, obj.get());
+      if (range.isPresent()) {
+        getObjectRange(req, rsp, obj.get(), range.get());
+        return;
+      }
+
+      startDownload(req, rsp, obj.get(), ByteRange.all(repository.getSize(obj.get())));
+    }
+  }
+
+  private void getObjectRange(
+      HttpServletRequest req, HttpServletResponse rsp, AnyLongObjectId obj, ByteRange range)
+      throws IOException {
+    rsp.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange());
+    if (!range.isSatisfiable()) {
+      rsp.setStatus(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      return;
+    }
+
+    rsp.setStatus(HttpStatus.SC_PARTIAL_CONTENT);
+    startDownload(req, rsp, obj, range);
+  }
+
+  private void startDownload(
+      HttpServletRequest req, HttpServletResponse rsp, AnyLongObjectId obj, ByteRange range)
+      throws IOException {
+    rsp.setContentLengthLong(range.length());
+    rsp.setContentType(HDR_APPLICATION_OCTET_STREAM);
+    WatchedTransfer transfer = watchdog.newTransfer(repository, Operation.DOWNLOAD);
+    AsyncContext context = req.startAsync(req, transfer.countBytes(rsp));
+    transfer.start(context);
+    rsp.getOutputStream()
+        .setWriteListener(transfer.watch(newDownloadListener(context, obj, range)));
+  }
+
+  private WriteListener newDownloadListener(
+      AsyncContext context, AnyLongObjectId obj, ByteRange range) throws IOException {
+    Optional<ByteBuffer> packed = repository.readPacked(obj);
+    if (packed.isPresent()) {
+      return new MappedObjectDownloadListener(context, packed.get(), range);
+    }
+    try {
+      return newFileDownloadListener(context, obj, range);
+    } catch (NoSuchFileException e) {
+      // packed since it was looked up
+      packed = repository.readPacked(obj);
+      if (packed.isPresent()) {
+        return new MappedObjectDownloadListener(context, packed.get(), range);
+      }
+      throw e;
+    }
+  }
+
+  private WriteListener newFileDownloadListener(
+      AsyncContext context, AnyLongObjectId obj, ByteRange range) throws IOException {
+    Path path = repository.getPath(obj);
+    if (repository.getDownloadEngine() == DownloadEngine.MAPPED) {
+      return repository.getMappedDownloads().open(context, path, range);
+    }
+    return new ObjectRangeDownloadListener(context, path, range);
+  }
+
+  /**
+   * Objects are addressed by their content and never change, so responses may be stored for as long
+   * as caches like. {@code public} allows shared caches to store responses to requests with an
+   * {@code Authorization} header and to serve them to anyone, so it is only sent if a proxy secret
+   * lets the proxy verify the authorization of each request itself; otherwise only the cache of the
+   * client may store them.
+   */
+  private void setCacheHeaders(HttpServletResponse rsp, AnyLongObjectId obj) {
+    rsp.setHeader(HttpHeaders.ETAG, "\"" + obj.getName() + "\"");
+    rsp.setHeader(
+        HttpHeaders.CACHE_CONTROL,
+        repository.getProxyDownloadAuth().isPresent()
+            ? CACHE_CONTROL_SHARED
+            : CACHE_CONTROL_PRIVATE);
+    try {
+      rsp.setDateHeader(HttpHeaders.LAST_MODIFIED, repository.getLastModified(obj));
+    } catch (IOException e) {
+      log.atFine().withCause(e).log("Cannot read modification time of %s", obj.getName());
+    }
+  }
+
+  private static boolean matchesEntityTag(String ifNoneMatch, AnyLongObjectId obj) {
+    if (Strings.isNullOrEmpty(ifNoneMatch)) {
+      return false;
+    }
+    String name = obj.getName();
+    for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*")
+          || tag.equalsIgnoreCase(name)
+          || tag.equalsIgnoreCase("\"" + name + "\"")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Optional<ByteRange> getRange(HttpServletRequest req, AnyLongObjectId obj)
+      throws IOException {
+    String range = req.getHeader(HttpHeaders.RANGE);
+    if (Strings.isNullOrEmpty(range) || !isRangeValid(req.getHeader(HttpHeaders.IF_RANGE), obj)) {
+      return Optional.empty();
+    }
+    return ByteRange.parse(range, repository.getSize(obj));
+  }
+
+  /**
+   * Objects are addressed by their content, so a range request is only stale if {@code If-Range}
+   * carries an entity tag other than the object id. Weak tags never match.
+   */
+  private static boolean isRangeValid(String ifRange, AnyLongObjectId obj) {
+    if (Strings.isNullOrEmpty(ifRange)) {
+      return true;
+    }
+    String name = obj.getName();
+    if (ifRange.equalsIgnoreCase(name) || ifRange.equalsIgnoreCase("\"" + name + "\"")) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return false;
+    }
+    try {
+      DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifRange);
+      return true;
+    } catch (DateTimeParseException e) {
+      return false;
     }
   }
 }
@@ -19,15 +19,22 @@ import com.google.gerrit.extensions.annotations.PluginData;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
 import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 @Singleton
 public class LfsFsDataDirectoryManager {
   private static final String KEY_DIRECTORY = "directory";
+  private static final String CACHE_DIRECTORY = "cache";
+  private static final String TIERED_DIRECTORY = "tiered";
+  private static final String KEY_SHARD_DIRECTORY = "shardDirectory";
+  private static final String SHARDS_DIRECTORY = "shards";
 
   private final LfsConfigurationFactory configFactory;
   private final Path defaultDataDir;
@@ -47,22 +54,57 @@ public class LfsFsDataDirectoryManager {
     String dataDir =
         configFactory.getGlobalConfig().getString(backend.type.name(), backend.name, KEY_DIRECTORY);
     if (Strings.isNullOrEmpty(dataDir)) {
-      return defaultDataDir;
+      // evicted and migrated objects are deleted, so never share the directory of a file system
+      // backend
+      if (backend.type == LfsBackendType.S3CACHE) {
+        dataDir = defaultDataDir.resolve(CACHE_DIRECTORY).resolve(backend.name()).toString();
+      } else if (backend.type == LfsBackendType.TIERED) {
+        dataDir = defaultDataDir.resolve(TIERED_DIRECTORY).resolve(backend.name()).toString();
+      } else {
+        return defaultDataDir;
+      }
     }
 
-    if (ensure) {
-      // note that the following method not only creates missing
-      // directory/directories but throws exception when path
-      // exists and points to file
-      Path ensured = Files.createDirectories(Paths.get(dataDir));
+    return ensure ? ensure(dataDir) : Paths.get(dataDir);
+  }
 
-      // we should at least make sure that directory is readable
-      if (!Files.isReadable(ensured)) {
-        throw new IOException("Path '" + ensured.toAbsolutePath() + "' cannot be accessed");
+  /**
+   * Ensure the data directories over which the objects of a backend are spread.
+   *
+   * @param backend the backend.
+   * @return the directory of the backend followed by its additional shard directories.
+   * @throws IOException if a directory cannot be created or read.
+   */
+  public List<Path> ensureShardsForBackend(LfsBackend backend) throws IOException {
+    List<Path> shards = new ArrayList<>();
+    shards.add(ensureForBackend(backend));
+    for (String dir :
+        configFactory
+            .getGlobalConfig()
+            .getStringList(backend.type.name(), backend.name, KEY_SHARD_DIRECTORY)) {
+      if (!Strings.isNullOrEmpty(dir)) {
+        shards.add(ensure(dir));
       }
+    }
+    return shards;
+  }
 
-      return ensured;
+  /** @return the file recording the shard directories that hold all objects of a backend. */
+  Path getShardStateFile(LfsBackend backend) {
+    return defaultDataDir.resolve(SHARDS_DIRECTORY).resolve(backend.name());
+  }
+
+  private static Path ensure(String dataDir) throws IOException {
+    // note that the following method not only creates missing
+    // directory/directories but throws exception when path
+    // exists and points to file
+    Path ensured = Files.createDirectories(Paths.get(dataDir));
+
+    // we should at least make sure that directory is readable
+    if (!Files.isReadable(ensured)) {
+      throw new IOException("Path '" + ensured.toAbsolutePath() + "' cannot be accessed");
     }
-    return Paths.get(dataDir);
+
+    return ensured;
   }
 }
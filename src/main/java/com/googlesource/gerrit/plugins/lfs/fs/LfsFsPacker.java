@@ -0,0 +1,90 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * Moves uploaded objects of file system backends into pack files in the background, so that uploads
+ * do not wait for the content to be appended and forced to disk.
+ */
+@Singleton
+public class LfsFsPacker implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /** Packs an object if it is small enough. */
+  @FunctionalInterface
+  interface ObjectPacker {
+    void packIfSmall(AnyLongObjectId id) throws IOException;
+  }
+
+  private final ExecutorService executor;
+
+  @Inject
+  LfsFsPacker() {
+    this(
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("LFS-packer-%d").setDaemon(true).build()));
+  }
+
+  @VisibleForTesting
+  LfsFsPacker(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Pack an object in the background. Until it is packed, and if packing fails, the object is
+   * served from its file.
+   *
+   * @param backend name of the backend, for logging.
+   * @param packer packer of the backend.
+   * @param id id of the object.
+   */
+  void pack(String backend, ObjectPacker packer, AnyLongObjectId id) {
+    LongObjectId key = id.copy();
+    try {
+      executor.execute(
+          () -> {
+            try {
+              packer.packIfSmall(key);
+            } catch (IOException e) {
+              log.atWarning().withCause(e).log(
+                  "Cannot pack %s of backend %s, keeping it as a file", key.name(), backend);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      log.atFine().log("Not packing %s of backend %s while stopping", key.name(), backend);
+    }
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdown();
+  }
+}
@@ -14,102 +14,199 @@
 
 package com.googlesource.gerrit.plugins.lfs.fs;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import com.googlesource.gerrit.plugins.lfs.LfsDateTime;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
 import com.googlesource.gerrit.plugins.lfs.auth.AuthInfo;
-import com.googlesource.gerrit.plugins.lfs.auth.LfsAuthToken;
 import com.googlesource.gerrit.plugins.lfs.auth.LfsCipher;
+import java.nio.ByteBuffer;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Optional;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.Constants;
 import org.eclipse.jgit.lfs.lib.LongObjectId;
 
+/**
+ * Authorizes the transfers of FS backends.
+ *
+ * <p>The objects of a batch share a {@link Grant} holding the operation, the backend and the
+ * expiry time. The token of an object is the grant signed for the id of the object, which costs
+ * one keyed hash per object and keeps the tokens short.
+ *
+ * <p>Verified tokens are kept in a bounded cache until they expire, since clients often send
+ * several requests for an object with the same token, such as {@code HEAD} then {@code GET}, or
+ * retries. They are keyed by their SHA-256, so that the cache holds no usable token.
+ */
 @Singleton
 public class LfsFsRequestAuthorizer {
-  private final Processor processor;
+  /** Authorization of the transfers of one operation on a backend, until an expiry time. */
+  public class Grant {
+    private final byte[] claims;
+    private final Instant issued;
+    private final Long expiresIn;
 
-  @Inject
-  LfsFsRequestAuthorizer(Processor processor) {
-    this.processor = processor;
-  }
+    private Grant(byte[] claims, Instant issued, Long expiresIn) {
+      this.claims = claims;
+      this.issued = issued;
+      this.expiresIn = expiresIn;
+    }
 
-  public AuthInfo generateAuthInfo(
-      String operation, AnyLongObjectId id, Instant now, Long expiresIn) {
-    LfsFsAuthToken token = new LfsFsAuthToken(operation, id, now, expiresIn);
-    return new AuthInfo(processor.serialize(token), token.issued, token.expiresIn);
-  }
+    /** @return the time, truncated to seconds, at which the grant was issued. */
+    public Instant issued() {
+      return issued;
+    }
 
-  public boolean verifyAuthInfo(String authToken, String operation, AnyLongObjectId id) {
-    Optional<LfsFsAuthToken> token = processor.deserialize(authToken);
-    if (!token.isPresent()) {
-      return false;
+    /** @return the authorization of the transfer of an object. */
+    public AuthInfo authorize(AnyLongObjectId id) {
+      return new AuthInfo(cipher.sign(claims, subject(id)), issued, expiresIn);
     }
-    return new Verifier(token.get(), operation, id).verify();
   }
 
-  static class Processor extends LfsAuthToken.Processor<LfsFsAuthToken> {
-    @Inject
-    protected Processor(LfsCipher cipher) {
-      super(cipher);
-    }
+  /** What a verified token authorizes. */
+  private static class Verified {
+    final String operation;
+    final String backend;
+    final LongObjectId id;
+    final long expiresAt;
 
-    @Override
-    protected List<String> getValues(LfsFsAuthToken token) {
-      List<String> values = new ArrayList<>(3);
-      values.add(token.operation);
-      values.add(token.id.getName());
-      values.add(LfsDateTime.format(token.issued));
-      values.add(String.valueOf(token.expiresIn));
-      return values;
+    Verified(String operation, String backend, AnyLongObjectId id, long expiresAt) {
+      this.operation = operation;
+      this.backend = backend;
+      this.id = id.copy();
+      this.expiresAt = expiresAt;
     }
 
-    @Override
-    protected Optional<LfsFsAuthToken> createToken(List<String> values) {
-      if (values.size() != 4) {
-        return Optional.empty();
-      }
-      return Optional.of(
-          new LfsFsAuthToken(
-              values.get(0),
-              LongObjectId.fromString(values.get(1)),
-              values.get(2),
-              Long.valueOf(values.get(3))));
+    boolean authorizes(String operation, String backend, AnyLongObjectId id, long now) {
+      return now < expiresAt
+          && this.operation.equals(operation)
+          && this.backend.equals(backend)
+          && this.id.equals(id);
     }
   }
 
-  private static class Verifier extends LfsAuthToken.Verifier<LfsFsAuthToken> {
-    private final String operation;
-    private final AnyLongObjectId id;
+  private static final int DEFAULT_TOKEN_CACHE_SIZE = 10000;
 
-    protected Verifier(LfsFsAuthToken token, String operation, AnyLongObjectId id) {
-      super(token);
-      this.operation = operation;
-      this.id = id;
-    }
+  private final LfsCipher cipher;
+  private final Cache<HashCode, Verified> verified;
 
-    @Override
-    protected boolean verifyTokenValues() {
-      return operation.equals(token.operation) && id.getName().equals(token.id.getName());
-    }
+  @Inject
+  LfsFsRequestAuthorizer(
+      LfsCipher cipher, LfsConfigurationFactory configFactory, MetricMaker metricMaker) {
+    this(
+        cipher,
+        configFactory
+            .getGlobalConfig()
+            .getInt("auth", null, "tokenCacheSize", DEFAULT_TOKEN_CACHE_SIZE),
+        metricMaker);
+  }
+
+  @VisibleForTesting
+  LfsFsRequestAuthorizer(LfsCipher cipher, int tokenCacheSize, MetricMaker metricMaker) {
+    this.cipher = cipher;
+    this.verified =
+        CacheBuilder.newBuilder().maximumSize(Math.max(tokenCacheSize, 0)).recordStats().build();
+    metricMaker.newCallbackMetric(
+        "fs/token_cache/hit_ratio",
+        Integer.class,
+        new Description("Percentage of FS transfer tokens found in the verified token cache")
+            .setGauge()
+            .setUnit("percent"),
+        () -> (int) (100 * verified.stats().hitRate()));
   }
 
-  private static class LfsFsAuthToken extends LfsAuthToken {
-    private final String operation;
-    private final AnyLongObjectId id;
+  /**
+   * Grant the transfers of one operation on a backend.
+   *
+   * @param operation the operation.
+   * @param backend name of the backend.
+   * @param now current time.
+   * @param expiresIn validity of the grant in seconds.
+   * @return the grant.
+   */
+  public Grant grant(String operation, String backend, Instant now, Long expiresIn) {
+    Instant issued = Instant.ofEpochSecond(now.getEpochSecond());
+    byte[] encodedOperation = operation.getBytes(UTF_8);
+    byte[] encodedBackend = backend.getBytes(UTF_8);
+    ByteBuffer claims =
+        ByteBuffer.allocate(Long.BYTES + 1 + encodedOperation.length + encodedBackend.length);
+    claims.putLong(issued.getEpochSecond() + expiresIn);
+    claims.put((byte) encodedOperation.length);
+    claims.put(encodedOperation);
+    claims.put(encodedBackend);
+    return new Grant(claims.array(), issued, expiresIn);
+  }
 
-    LfsFsAuthToken(String operation, AnyLongObjectId id, Instant issued, Long expiresIn) {
-      super(issued, expiresIn);
-      this.operation = operation;
-      this.id = id;
+  public AuthInfo generateAuthInfo(
+      String operation, String backend, AnyLongObjectId id, Instant now, Long expiresIn) {
+    return grant(operation, backend, now, expiresIn).authorize(id);
+  }
+
+  public boolean verifyAuthInfo(
+      String authToken, String operation, String backend, AnyLongObjectId id) {
+    if (authToken == null) {
+      return false;
+    }
+    long now = Instant.now().getEpochSecond();
+    HashCode key = Hashing.sha256().hashString(authToken, UTF_8);
+    Verified cached = verified.getIfPresent(key);
+    if (cached != null) {
+      if (cached.authorizes(operation, backend, id, now)) {
+        return true;
+      }
+      if (now >= cached.expiresAt) {
+        verified.invalidate(key);
+      }
+      return false;
     }
 
-    LfsFsAuthToken(String operation, AnyLongObjectId id, String issued, Long expiresIn) {
-      super(issued, expiresIn);
-      this.operation = operation;
-      this.id = id;
+    Optional<byte[]> claims = cipher.verify(authToken, subject(id));
+    if (!claims.isPresent()) {
+      return false;
+    }
+    ByteBuffer granted = ByteBuffer.wrap(claims.get());
+    byte[] encodedOperation = operation.getBytes(UTF_8);
+    byte[] encodedBackend = backend.getBytes(UTF_8);
+    if (granted.remaining() != Long.BYTES + 1 + encodedOperation.length + encodedBackend.length) {
+      return false;
     }
+    long expiresAt = granted.getLong();
+    if (now >= expiresAt || granted.get() != encodedOperation.length) {
+      return false;
+    }
+    int operationOffset = granted.position();
+    int backendOffset = operationOffset + encodedOperation.length;
+    byte[] bytes = granted.array();
+    if (!Arrays.equals(
+        bytes, operationOffset, backendOffset, encodedOperation, 0, encodedOperation.length)) {
+      return false;
+    }
+    if (!Arrays.equals(
+        bytes, backendOffset, bytes.length, encodedBackend, 0, encodedBackend.length)) {
+      return false;
+    }
+    verified.put(key, new Verified(operation, backend, id, expiresAt));
+    return true;
+  }
+
+  @VisibleForTesting
+  CacheStats getTokenCacheStats() {
+    return verified.stats();
+  }
+
+  private static byte[] subject(AnyLongObjectId id) {
+    byte[] subject = new byte[Constants.LONG_OBJECT_ID_LENGTH];
+    id.copyRawTo(subject, 0);
+    return subject;
   }
 }
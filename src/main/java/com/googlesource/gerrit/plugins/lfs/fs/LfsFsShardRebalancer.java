@@ -0,0 +1,182 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsMetricFields;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * Moves the objects of sharded file system backends to the shard that owns them.
+ *
+ * <p>The shards that hold all objects of a backend are recorded in a state file. When the
+ * configured shards differ, they are added to the state file, the objects of all recorded shards
+ * are moved in the background, and the state file is reduced to the configured shards once all of
+ * them are in place. Until then objects are looked up on their new shard first and on the recorded
+ * shards second, see {@link ShardHistory}.
+ */
+@Singleton
+public class LfsFsShardRebalancer implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final LfsFsDataDirectoryManager dataDirManager;
+  private final ExecutorService executor;
+  private final Counter1<String> movedObjects;
+
+  @Inject
+  LfsFsShardRebalancer(LfsFsDataDirectoryManager dataDirManager, MetricMaker metricMaker) {
+    this.dataDirManager = dataDirManager;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                .setNameFormat("LFS-shard-rebalancer-%d")
+                .setDaemon(true)
+                .build());
+    this.movedObjects =
+        metricMaker.newCounter(
+            "fs/rebalanced_objects",
+            new Description("Objects moved to another shard of a file system backend")
+                .setRate()
+                .setUnit("objects"),
+            LfsMetricFields.backend());
+  }
+
+  /**
+   * Record that the objects of a backend move to the configured shards.
+   *
+   * @param backend the backend.
+   * @param dir the directory of the backend, holding all objects before it was first sharded.
+   * @param configured the configured shards.
+   * @return the rings that may hold objects of the backend.
+   * @throws IOException if the state file cannot be read or written.
+   */
+  ShardHistory start(LfsBackend backend, Path dir, ShardRing configured) throws IOException {
+    Path state = dataDirManager.getShardStateFile(backend);
+    ShardHistory recorded = ShardHistory.read(state, dir);
+    ShardHistory history = recorded.moveTo(configured);
+    if (!history.equals(recorded)) {
+      // before any object moves, so that a restart with other shards still finds them
+      history.write(state);
+    }
+    return history;
+  }
+
+  /**
+   * Move the objects of all recorded rings to the current one in the background.
+   *
+   * @param backend the backend.
+   * @param history the rings that may hold objects of the backend.
+   * @param settled called once all objects are on the current ring.
+   */
+  void rebalance(LfsBackend backend, ShardHistory history, Runnable settled) {
+    executor.execute(() -> run(backend, history, settled));
+  }
+
+  private void run(LfsBackend backend, ShardHistory history, Runnable settled) {
+    ShardRing to = history.current();
+    int moved = 0;
+    int failed = 0;
+    for (Path shard : history.shards()) {
+      List<Path> files = new ArrayList<>();
+      try (Stream<Path> walk = Files.walk(shard, 3)) {
+        walk.filter(p -> ShardRing.isObject(shard, p))
+            .filter(Files::isRegularFile)
+            .forEach(files::add);
+      } catch (IOException | RuntimeException e) {
+        failed++;
+        log.atWarning().withCause(e).log(
+            "Cannot list shard %s of backend %s", shard, backend.name());
+        continue;
+      }
+      for (Path file : files) {
+        if (Thread.currentThread().isInterrupted()) {
+          return;
+        }
+        Path target = to.getPath(LongObjectId.fromString(file.getFileName().toString()));
+        if (target.equals(file)) {
+          continue;
+        }
+        try {
+          move(file, target);
+          moved++;
+          movedObjects.increment(backend.name());
+        } catch (IOException | RuntimeException e) {
+          failed++;
+          log.atWarning().withCause(e).log(
+              "Cannot move %s of backend %s to %s", file, backend.name(), target);
+        }
+      }
+    }
+
+    if (failed > 0) {
+      log.atWarning().log(
+          "Moved %d objects of backend %s, %d failures; rebalancing resumes at next start",
+          moved, backend.name(), failed);
+      return;
+    }
+    try {
+      ShardHistory.settled(to).write(dataDirManager.getShardStateFile(backend));
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log(
+          "Cannot record the shards of backend %s; rebalancing resumes at next start",
+          backend.name());
+      return;
+    }
+    settled.run();
+    log.atInfo().log("Moved %d objects of backend %s to their shard", moved, backend.name());
+  }
+
+  private static void move(Path file, Path target) throws IOException {
+    Path dir = Files.createDirectories(target.getParent());
+    if (!Files.exists(target)) {
+      Path tmp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+      try {
+        Files.copy(file, tmp, REPLACE_EXISTING);
+        Files.move(tmp, target, ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.deleteIfExists(tmp);
+        throw e;
+      }
+    }
+    Files.deleteIfExists(file);
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+  }
+}
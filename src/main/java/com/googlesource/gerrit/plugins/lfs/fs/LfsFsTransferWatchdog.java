@@ -0,0 +1,120 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter2;
+import com.google.gerrit.metrics.Counter3;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer2;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsMetricFields;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Aborts uploads and downloads of file system backends that time out or stall. */
+@Singleton
+public class LfsFsTransferWatchdog implements LifecycleListener {
+  enum Operation {
+    UPLOAD,
+    DOWNLOAD
+  }
+
+  enum Reason {
+    TIMEOUT,
+    STALLED
+  }
+
+  private final ScheduledThreadPoolExecutor executor;
+  private final Counter3<String, Operation, Reason> aborted;
+  private final Counter2<String, Operation> bytes;
+  private final Timer2<String, Operation> latency;
+
+  @Inject
+  LfsFsTransferWatchdog(MetricMaker metricMaker) {
+    this.executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder()
+                .setNameFormat("LFS-transfer-watchdog-%d")
+                .setDaemon(true)
+                .build());
+    this.executor.setRemoveOnCancelPolicy(true);
+    Field<String> backend = LfsMetricFields.backend();
+    Field<Operation> operation =
+        LfsMetricFields.ofEnum(Operation.class, "operation", "Upload or download.");
+    this.aborted =
+        metricMaker.newCounter(
+            "fs/transfers_aborted",
+            new Description("Uploads and downloads aborted by the transfer limits")
+                .setRate()
+                .setUnit("transfers"),
+            backend,
+            operation,
+            LfsMetricFields.ofEnum(Reason.class, "reason", "Why the transfer was aborted."));
+    this.bytes =
+        metricMaker.newCounter(
+            "fs/transferred_bytes",
+            new Description("Bytes of object content uploaded and downloaded")
+                .setRate()
+                .setUnit(Description.Units.BYTES),
+            backend,
+            operation);
+    this.latency =
+        metricMaker.newTimer(
+            "fs/transfer_latency",
+            new Description("Time from the start to the end of an upload or download")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            backend,
+            operation);
+  }
+
+  /**
+   * @param repository repository the transfer reads from or writes to.
+   * @param operation direction of the transfer.
+   * @return a transfer to be started once the request went asynchronous.
+   */
+  WatchedTransfer newTransfer(LocalLargeFileRepository repository, Operation operation) {
+    return new WatchedTransfer(
+        this, repository.getBackendName(), operation, repository.getTransferLimits());
+  }
+
+  ScheduledFuture<?> scheduleCheck(Runnable check, long periodMillis) {
+    return executor.scheduleAtFixedRate(check, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void aborted(String backend, Operation operation, Reason reason) {
+    aborted.increment(backend, operation, reason);
+  }
+
+  void transferred(String backend, Operation operation, long byteCount, long nanos) {
+    bytes.incrementBy(backend, operation, byteCount);
+    latency.record(backend, operation, nanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+  }
+}
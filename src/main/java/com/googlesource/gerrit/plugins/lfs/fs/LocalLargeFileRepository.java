@@ -17,36 +17,79 @@ package com.googlesource.gerrit.plugins.lfs.fs;
 import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
 import static org.eclipse.jgit.lfs.lib.Constants.UPLOAD;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.ByteStreams;
 import com.google.gerrit.extensions.annotations.PluginCanonicalWebUrl;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
 import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
 import com.googlesource.gerrit.plugins.lfs.auth.AuthInfo;
 import com.googlesource.gerrit.plugins.lfs.auth.ExpiringAction;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lfs.errors.CorruptLongObjectException;
+import org.eclipse.jgit.lfs.internal.AtomicObjectOutputStream;
 import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
 import org.eclipse.jgit.lfs.server.Response;
 import org.eclipse.jgit.lfs.server.fs.FileLfsRepository;
 
-public class LocalLargeFileRepository extends FileLfsRepository {
+public class LocalLargeFileRepository extends FileLfsRepository implements LfsObjectStore {
   public interface Factory {
     LocalLargeFileRepository create(LfsBackend backendConfig);
   }
 
   private static final String CONTENT_PATH_TEMPLATE = "content/%s/";
   private static final int DEFAULT_EXPIRATION_SECONDS = 10;
+  private static final String PACKS_DIRECTORY = "packs";
+  private static final long DEFAULT_PACK_SIZE = 1L << 30;
+  private static final int DEFAULT_MAX_MAPPED_DOWNLOADS = 16;
 
   private final String servletUrlPattern;
   private final LfsFsRequestAuthorizer authorizer;
   private final Long expiresIn;
+  private final DownloadEngine downloadEngine;
+  private final MappedDownloads mappedDownloads;
+  private final String backendName;
+  private final TransferLimits transferLimits;
+  private final boolean cacheableContent;
+  private final Optional<ProxyDownloadAuth> proxyDownloadAuth;
+  private final InFlightUploads inFlightUploads = new InFlightUploads();
+  // shared by the objects of a batch, and by the batches in the same second
+  private volatile LfsFsRequestAuthorizer.Grant downloadGrant;
+  private volatile LfsFsRequestAuthorizer.Grant uploadGrant;
+  private final ShardRing shards;
+  private final long packThreshold;
+  private final Optional<PackedObjectStore> packs;
+  private final LfsFsPacker packer;
+  // rings that may hold objects, settled once all of them are on their shard
+  private volatile ShardHistory shardHistory;
 
   @Inject
   LocalLargeFileRepository(
       LfsFsDataDirectoryManager dataDirManager,
       LfsConfigurationFactory configFactory,
       LfsFsRequestAuthorizer authorizer,
+      LfsFsShardRebalancer rebalancer,
+      LfsFsPacker packer,
       @PluginCanonicalWebUrl String url,
       @Assisted LfsBackend backend)
       throws IOException {
@@ -62,24 +105,358 @@ public class LocalLargeFileRepository extends FileLfsRepository {
                     backend.name,
                     "expirationSeconds",
                     DEFAULT_EXPIRATION_SECONDS);
+    this.downloadEngine =
+        configFactory
+            .getGlobalConfig()
+            .getEnum(backend.type.name(), backend.name, "downloadEngine", DownloadEngine.LISTENER);
+    this.mappedDownloads =
+        new MappedDownloads(
+            configFactory
+                .getGlobalConfig()
+                .getInt(
+                    backend.type.name(),
+                    backend.name,
+                    "maxMappedDownloads",
+                    DEFAULT_MAX_MAPPED_DOWNLOADS));
+    this.backendName = backend.name();
+    this.transferLimits = TransferLimits.create(configFactory.getGlobalConfig(), backend);
+    this.cacheableContent =
+        configFactory
+            .getGlobalConfig()
+            .getBoolean(backend.type.name(), backend.name, "cacheableContent", false);
+    String proxySecret =
+        configFactory.getGlobalConfig().getString(backend.type.name(), backend.name, "proxySecret");
+    this.proxyDownloadAuth =
+        cacheableContent && !Strings.isNullOrEmpty(proxySecret)
+            ? Optional.of(new ProxyDownloadAuth(proxySecret))
+            : Optional.empty();
+
+    long packSize =
+        configFactory
+            .getGlobalConfig()
+            .getLong(backend.type.name(), backend.name, "packSize", DEFAULT_PACK_SIZE);
+    // caches and tiers delete the files of objects, which cannot be done in a pack
+    this.packThreshold =
+        backend.type == LfsBackendType.FS
+            ? Math.min(
+                configFactory
+                    .getGlobalConfig()
+                    .getLong(backend.type.name(), backend.name, "packThreshold", 0),
+                packSize)
+            : 0;
+    this.packs =
+        packThreshold > 0
+            ? Optional.of(new PackedObjectStore(getDir().resolve(PACKS_DIRECTORY), packSize))
+            : Optional.empty();
+    this.packer = packer;
+
+    this.shards = new ShardRing(dataDirManager.ensureShardsForBackend(backend));
+    this.shardHistory = rebalancer.start(backend, getDir(), shards);
+    if (!shardHistory.isSettled()) {
+      rebalancer.rebalance(backend, shardHistory, this::rebalanced);
+    }
   }
 
   public String getServletUrlPattern() {
     return servletUrlPattern;
   }
 
+  public DownloadEngine getDownloadEngine() {
+    return downloadEngine;
+  }
+
+  /** @return validity, in seconds, of the actions handed out by this repository. */
+  public long getExpiresIn() {
+    return expiresIn;
+  }
+
+  MappedDownloads getMappedDownloads() {
+    return mappedDownloads;
+  }
+
+  String getBackendName() {
+    return backendName;
+  }
+
+  TransferLimits getTransferLimits() {
+    return transferLimits;
+  }
+
+  InFlightUploads getInFlightUploads() {
+    return inFlightUploads;
+  }
+
+  /** @return whether content responses carry headers allowing shared caches to store them. */
+  boolean isCacheableContent() {
+    return cacheableContent;
+  }
+
+  /** @return the download authorization verifiable by proxies, if a proxy secret is set. */
+  Optional<ProxyDownloadAuth> getProxyDownloadAuth() {
+    return proxyDownloadAuth;
+  }
+
   @Override
   public Response.Action getDownloadAction(AnyLongObjectId id) {
     Response.Action action = super.getDownloadAction(id);
-    AuthInfo authInfo = authorizer.generateAuthInfo(DOWNLOAD, id, Instant.now(), expiresIn);
+    Instant now = Instant.now();
+    AuthInfo authInfo;
+    if (proxyDownloadAuth.isPresent()) {
+      authInfo =
+          new AuthInfo(
+              proxyDownloadAuth.get().sign(id, now.plusSeconds(expiresIn)), now, expiresIn);
+    } else {
+      LfsFsRequestAuthorizer.Grant grant = downloadGrant;
+      if (grant == null || grant.issued().getEpochSecond() != now.getEpochSecond()) {
+        grant = authorizer.grant(DOWNLOAD, backendName, now, expiresIn);
+        downloadGrant = grant;
+      }
+      authInfo = grant.authorize(id);
+    }
     return new ExpiringAction(action.href, authInfo);
   }
 
   @Override
   public Response.Action getUploadAction(AnyLongObjectId id, long size) {
     Response.Action action = super.getUploadAction(id, size);
-    AuthInfo authInfo = authorizer.generateAuthInfo(UPLOAD, id, Instant.now(), expiresIn);
-    return new ExpiringAction(action.href, authInfo);
+    Instant now = Instant.now();
+    LfsFsRequestAuthorizer.Grant grant = uploadGrant;
+    if (grant == null || grant.issued().getEpochSecond() != now.getEpochSecond()) {
+      grant = authorizer.grant(UPLOAD, backendName, now, expiresIn);
+      uploadGrant = grant;
+    }
+    return new ExpiringAction(action.href, grant.authorize(id));
+  }
+
+  /** @return the data directories that may hold objects of this backend. */
+  public ImmutableSortedSet<Path> getDataDirectories() {
+    return shardHistory.shards();
+  }
+
+  /**
+   * List the objects of this backend.
+   *
+   * @return the files of the objects in the data directories.
+   * @throws IOException if a data directory cannot be listed.
+   */
+  public List<Path> listObjects() throws IOException {
+    return listObjects("");
+  }
+
+  /**
+   * List the objects of this backend whose id starts with a prefix.
+   *
+   * @param prefix lower case hex prefix of the ids.
+   * @return the files of the objects in the data directories.
+   * @throws IOException if a data directory cannot be listed.
+   */
+  public List<Path> listObjects(String prefix) throws IOException {
+    List<Path> objects = new ArrayList<>();
+    for (Path dir : getDataDirectories()) {
+      List<Path> fanout;
+      try (Stream<Path> top = Files.list(dir)) {
+        // only descend into the directories that can hold matching ids
+        fanout =
+            top.filter(
+                    p -> {
+                      String name = p.getFileName().toString();
+                      return name.length() == 2
+                          && (name.startsWith(prefix) || prefix.startsWith(name));
+                    })
+                .collect(Collectors.toList());
+      }
+      for (Path fan : fanout) {
+        try (Stream<Path> files = Files.walk(fan, 2)) {
+          files
+              .filter(p -> p.getFileName().toString().startsWith(prefix))
+              .filter(p -> ShardRing.isObject(dir, p))
+              .filter(Files::isRegularFile)
+              .forEach(objects::add);
+        }
+      }
+    }
+    return objects;
+  }
+
+  /**
+   * Move a freshly uploaded object into a pack file in the background if it is small enough.
+   *
+   * @param id id of the object.
+   */
+  void packInBackground(AnyLongObjectId id) {
+    if (packs.isPresent()) {
+      packer.pack(backendName, this::packIfSmall, id);
+    }
+  }
+
+  /**
+   * Move a freshly uploaded object into a pack file if it is small enough.
+   *
+   * @param id id of the object.
+   * @throws IOException if the object cannot be packed; it is then kept as a file.
+   */
+  void packIfSmall(AnyLongObjectId id) throws IOException {
+    if (!packs.isPresent()) {
+      return;
+    }
+    Path path = getPath(id);
+    if (Files.isRegularFile(path) && Files.size(path) < packThreshold) {
+      packs.get().add(id, path);
+      Files.delete(path);
+    }
+  }
+
+  /** @return the content of the object if it is stored in a pack file. */
+  Optional<ByteBuffer> readPacked(AnyLongObjectId id) throws IOException {
+    return packs.isPresent() ? packs.get().read(id) : Optional.empty();
+  }
+
+  /** @return when the object was stored, in milliseconds since the epoch. */
+  long getLastModified(AnyLongObjectId id) throws IOException {
+    Optional<PackedObjectStore.Entry> packed =
+        packs.isPresent() ? packs.get().getEntry(id) : Optional.empty();
+    return packed.isPresent()
+        ? packed.get().lastModified
+        : Files.getLastModifiedTime(getPath(id)).toMillis();
+  }
+
+  @Override
+  public long getSize(AnyLongObjectId id) throws IOException {
+    long size = super.getSize(id);
+    if (size < 0 && packs.isPresent()) {
+      return packs.get().getSize(id);
+    }
+    return size;
+  }
+
+  @Override
+  public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+    for (Path path : listObjects(prefix)) {
+      BasicFileAttributes attributes;
+      try {
+        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      } catch (NoSuchFileException e) {
+        // deleted, packed or moved to its shard meanwhile
+        continue;
+      }
+      consumer.accept(
+          new StoredObject(
+              LongObjectId.fromString(path.getFileName().toString()),
+              attributes.size(),
+              attributes.lastModifiedTime().toInstant()));
+    }
+    if (packs.isPresent()) {
+      packs
+          .get()
+          .entries()
+          .forEach(
+              (id, entry) -> {
+                if (id.name().startsWith(prefix)) {
+                  consumer.accept(
+                      new StoredObject(id, entry.length, Instant.ofEpochMilli(entry.lastModified)));
+                }
+              });
+    }
+  }
+
+  @Override
+  public void delete(Collection<LongObjectId> ids) throws IOException {
+    ImmutableList<ShardRing> rings = shardHistory.rings();
+    for (LongObjectId id : ids) {
+      for (ShardRing ring : rings) {
+        Files.deleteIfExists(ring.getPath(id));
+      }
+    }
+    if (packs.isPresent()) {
+      packs.get().remove(ids);
+    }
+  }
+
+  @Override
+  public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+    Optional<ByteBuffer> packed = readPacked(id);
+    if (packed.isPresent()) {
+      return Optional.of(new ByteBufferInputStream(packed.get()));
+    }
+    try {
+      return Optional.of(Files.newInputStream(getPath(id)));
+    } catch (NoSuchFileException e) {
+      // packed since it was looked up
+      packed = readPacked(id);
+      if (packed.isPresent()) {
+        return Optional.of(new ByteBufferInputStream(packed.get()));
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Store an object. Concurrent uploads of the same object through the content servlet are not
+   * waited for: both write the same content and move it into place atomically.
+   */
+  @Override
+  public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    Path path = getPath(id);
+    Files.createDirectories(path.getParent());
+    AtomicObjectOutputStream out = new AtomicObjectOutputStream(path, id);
+    boolean stored = false;
+    try {
+      long written = ByteStreams.copy(content, out);
+      if (written != size) {
+        throw new IOException(
+            String.format("object %s has %d bytes, expected %d", id.getName(), written, size));
+      }
+      out.close();
+      stored = true;
+    } catch (CorruptLongObjectException e) {
+      throw new IOException(e.getMessage(), e);
+    } finally {
+      if (!stored) {
+        out.abort();
+      }
+    }
+    packInBackground(id);
+    return true;
+  }
+
+  void rebalanced() {
+    shardHistory = ShardHistory.settled(shards);
+  }
+
+  @Override
+  public Path getPath(AnyLongObjectId id) {
+    return shardHistory.getPath(id);
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
   }
 
   private static String getContentUrl(String url, LfsBackend backend) {
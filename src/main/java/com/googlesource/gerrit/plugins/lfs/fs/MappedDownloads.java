@@ -0,0 +1,98 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import javax.servlet.AsyncContext;
+import javax.servlet.WriteListener;
+
+/**
+ * Bounds the downloads of a backend that map object files at the same time.
+ *
+ * <p>Each of them keeps one window mapped, and a window is only unmapped when it is garbage
+ * collected, so slow clients could otherwise hold an unbounded share of the address space and of
+ * the page cache.
+ */
+class MappedDownloads {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  /** Opens a download mapping an object file, releasing one of the permits when it ends. */
+  @VisibleForTesting
+  interface Opener {
+    WriteListener open(AsyncContext context, Path object, ByteRange range, Semaphore permits)
+        throws IOException;
+  }
+
+  private final Semaphore permits;
+  private final Opener opener;
+
+  MappedDownloads(int limit) {
+    this(limit, MappedObjectDownloadListener::new);
+  }
+
+  @VisibleForTesting
+  MappedDownloads(int limit, Opener opener) {
+    this.permits = new Semaphore(Math.max(limit, 0));
+    this.opener = opener;
+  }
+
+  /**
+   * Start a download of an object file, mapping it unless the maximum number of downloads map
+   * objects already or mapping fails, and reading it through a small buffer otherwise.
+   *
+   * @return the listener writing the object.
+   * @throws IOException if the object cannot be opened.
+   */
+  WriteListener open(AsyncContext context, Path object, ByteRange range) throws IOException {
+    try {
+      Optional<WriteListener> mapped = tryOpen(context, object, range);
+      if (mapped.isPresent()) {
+        return mapped.get();
+      }
+    } catch (NoSuchFileException e) {
+      throw e;
+    } catch (IOException | UnsupportedOperationException e) {
+      log.atWarning().withCause(e).log(
+          "Mapping object %s failed, falling back to buffered download", object.getFileName());
+    }
+    return new ObjectRangeDownloadListener(context, object, range);
+  }
+
+  /**
+   * Start a download mapping the object file.
+   *
+   * @return the listener writing the object, or empty if the maximum number of downloads map
+   *     objects already.
+   * @throws IOException if the object cannot be opened.
+   */
+  Optional<WriteListener> tryOpen(AsyncContext context, Path object, ByteRange range)
+      throws IOException {
+    if (!permits.tryAcquire()) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(opener.open(context, object, range, permits));
+    } catch (IOException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+}
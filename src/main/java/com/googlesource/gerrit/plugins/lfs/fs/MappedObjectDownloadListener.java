@@ -0,0 +1,133 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Writes a byte range of an object to the response from memory mapped windows of the file, or from
+ * the mapping of the pack file holding it.
+ *
+ * <p>Content is copied once, from the page cache into a reusable chunk that is large enough for the
+ * container to write it without aggregating. JGit's {@code ObjectDownloadListener} reads into a
+ * direct buffer and copies it again through a channel adapter and the container's buffer.
+ *
+ * <p>Downloads of files hold a permit of {@link MappedDownloads} until they end. Windows are small
+ * enough that the mappings of the permitted downloads stay bounded; larger ones do not transfer
+ * faster.
+ */
+class MappedObjectDownloadListener implements WriteListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final long WINDOW_SIZE = 16L << 20;
+  private static final int CHUNK_SIZE = 256 << 10;
+
+  private final AsyncContext context;
+  private final FileChannel in;
+  private final ServletOutputStream out;
+  private final byte[] chunk;
+  private final long end;
+  private long position;
+  private ByteBuffer window;
+  private Semaphore permits;
+
+  /** Write a range of an object file, releasing one of the permits when done. */
+  MappedObjectDownloadListener(
+      AsyncContext context, Path object, ByteRange range, Semaphore permits) throws IOException {
+    this.context = context;
+    this.in = FileChannel.open(object, StandardOpenOption.READ);
+    this.permits = permits;
+    this.out = context.getResponse().getOutputStream();
+    this.chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(range.length(), 1))];
+    this.position = range.start;
+    this.end = range.start + range.length();
+  }
+
+  /** Write a range of content that is already mapped, like an object in a pack file. */
+  MappedObjectDownloadListener(AsyncContext context, ByteBuffer content, ByteRange range)
+      throws IOException {
+    this.context = context;
+    this.in = null;
+    this.out = context.getResponse().getOutputStream();
+    this.chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(range.length(), 1))];
+    ByteBuffer window = content.duplicate();
+    window.position((int) range.start).limit((int) (range.start + range.length()));
+    this.window = window;
+    this.position = range.start + range.length();
+    this.end = position;
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    while (out.isReady()) {
+      if (window == null || !window.hasRemaining()) {
+        if (position >= end) {
+          complete();
+          return;
+        }
+        long length = Math.min(WINDOW_SIZE, end - position);
+        window = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+      }
+      int n = Math.min(chunk.length, window.remaining());
+      window.get(chunk, 0, n);
+      out.write(chunk, 0, n);
+    }
+  }
+
+  @Override
+  public void onError(Throwable e) {
+    log.atWarning().withCause(e).log("Sending object failed");
+    window = null;
+    try {
+      close();
+    } finally {
+      context.complete();
+    }
+  }
+
+  private void complete() throws IOException {
+    window = null;
+    close();
+    try {
+      out.close();
+    } finally {
+      context.complete();
+    }
+  }
+
+  private void close() {
+    if (permits != null) {
+      permits.release();
+      permits = null;
+    }
+    if (in == null) {
+      return;
+    }
+    try {
+      in.close();
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Closing object failed");
+    }
+  }
+}
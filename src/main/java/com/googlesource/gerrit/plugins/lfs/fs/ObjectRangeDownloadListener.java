@@ -0,0 +1,107 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Writes a byte range of an object to the response without blocking, like JGit's {@code
+ * ObjectDownloadListener} does for whole objects.
+ *
+ * <p>Also used for whole objects: unlike JGit's listener it releases the object when the transfer
+ * fails after the response was committed.
+ */
+class ObjectRangeDownloadListener implements WriteListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final int BUFFER_SIZE = 8192;
+
+  private final AsyncContext context;
+  private final FileChannel in;
+  private final ServletOutputStream out;
+  private final WritableByteChannel outChannel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+  private long remaining;
+
+  ObjectRangeDownloadListener(AsyncContext context, Path object, ByteRange range)
+      throws IOException {
+    this.context = context;
+    this.in = FileChannel.open(object, StandardOpenOption.READ);
+    this.in.position(range.start);
+    this.out = context.getResponse().getOutputStream();
+    this.outChannel = Channels.newChannel(out);
+    this.remaining = range.length();
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    while (out.isReady()) {
+      int read = -1;
+      try {
+        if (remaining > 0) {
+          buffer.clear();
+          if (remaining < buffer.capacity()) {
+            buffer.limit((int) remaining);
+          }
+          read = in.read(buffer);
+        }
+      } catch (IOException e) {
+        log.atSevere().withCause(e).log("Reading object range failed");
+      }
+
+      if (read < 0) {
+        complete();
+        return;
+      }
+      remaining -= read;
+      buffer.flip();
+      outChannel.write(buffer);
+    }
+  }
+
+  @Override
+  public void onError(Throwable e) {
+    log.atWarning().withCause(e).log("Sending object range failed");
+    try {
+      in.close();
+    } catch (IOException ex) {
+      log.atSevere().withCause(ex).log("Closing object failed");
+    } finally {
+      context.complete();
+    }
+  }
+
+  private void complete() throws IOException {
+    try {
+      in.close();
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Closing object failed");
+    }
+    try {
+      out.close();
+    } finally {
+      context.complete();
+    }
+  }
+}
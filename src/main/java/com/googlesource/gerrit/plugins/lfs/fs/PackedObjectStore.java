@@ -0,0 +1,480 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * Stores small objects back to back in append-only pack files instead of one file each.
+ *
+ * <p>The content of an object is appended to the current pack file and forced to disk before its
+ * location is appended to the index file, so that after a crash the index only refers to complete
+ * content. Once a pack file reaches its maximum size a new one is started. Reads are served from a
+ * read-only mapping of the pack file.
+ *
+ * <p>Removing objects rewrites the pack files holding them. The remaining objects are copied to new
+ * pack files while objects are still added and read, and the index is only swapped once they are
+ * all copied. Pack files left behind by a rewrite that did not complete are deleted when the store
+ * is opened.
+ */
+class PackedObjectStore {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final String INDEX_FILE = "index";
+  private static final Pattern PACK_FILE = Pattern.compile("(\\d+)\\.pack");
+  // raw id, pack number, offset, length, modification time
+  private static final int ENTRY_SIZE = Constants.LONG_OBJECT_ID_LENGTH + 4 + 3 * 8;
+
+  /** Location of a packed object. */
+  static class Entry {
+    final int pack;
+    final long offset;
+    final long length;
+    final long lastModified;
+
+    Entry(int pack, long offset, long length, long lastModified) {
+      this.pack = pack;
+      this.offset = offset;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+  }
+
+  private final Path dir;
+  private final long maxPackSize;
+  private final Map<LongObjectId, Entry> entries = new ConcurrentHashMap<>();
+  private final Map<Integer, Pack> packs = new ConcurrentHashMap<>();
+  // serializes removals, which rewrite packs without holding the lock of the store
+  private final Object rewriting = new Object();
+  private FileChannel index;
+  // pack objects are appended to, and the highest pack number in use
+  private int current;
+  private int last;
+
+  /**
+   * Open the pack files of a directory and load their index.
+   *
+   * @param dir directory of the pack files, created if missing.
+   * @param maxPackSize size in bytes after which a new pack file is started.
+   * @throws IOException if the directory or the index cannot be read.
+   */
+  PackedObjectStore(Path dir, long maxPackSize) throws IOException {
+    this.dir = Files.createDirectories(dir);
+    this.maxPackSize = Math.min(maxPackSize, Integer.MAX_VALUE);
+    try (Stream<Path> files = Files.list(dir)) {
+      current =
+          files
+              .map(p -> PACK_FILE.matcher(p.getFileName().toString()))
+              .filter(Matcher::matches)
+              .mapToInt(m -> Integer.parseInt(m.group(1)))
+              .max()
+              .orElse(1);
+    }
+    last = current;
+    this.index = FileChannel.open(dir.resolve(INDEX_FILE), CREATE, READ, WRITE);
+    load();
+    deleteUnusedPacks();
+  }
+
+  /** @return the size of the object in bytes, or -1 if it is not packed. */
+  long getSize(AnyLongObjectId id) {
+    Entry entry = entries.get(id.copy());
+    return entry != null ? entry.length : -1;
+  }
+
+  /** @return the location of the object, if it is packed. */
+  Optional<Entry> getEntry(AnyLongObjectId id) {
+    return Optional.ofNullable(entries.get(id.copy()));
+  }
+
+  /**
+   * Read a packed object.
+   *
+   * @param id id of the object.
+   * @return a read-only buffer over the content of the object, if it is packed.
+   * @throws IOException if the pack file cannot be mapped.
+   */
+  Optional<ByteBuffer> read(AnyLongObjectId id) throws IOException {
+    LongObjectId key = id.copy();
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(pack(entry.pack, false).slice(entry.offset, entry.length));
+    } catch (NoSuchFileException | ClosedChannelException e) {
+      // the pack was rewritten since the object was looked up
+      entry = entries.get(key);
+      if (entry == null) {
+        return Optional.empty();
+      }
+      return Optional.of(pack(entry.pack, false).slice(entry.offset, entry.length));
+    }
+  }
+
+  /**
+   * Append an object to the current pack file. The file of the object is left alone.
+   *
+   * @param id id of the object.
+   * @param file file holding the content of the object.
+   * @throws IOException if the object cannot be appended.
+   */
+  synchronized void add(AnyLongObjectId id, Path file) throws IOException {
+    LongObjectId key = id.copy();
+    if (entries.containsKey(key)) {
+      return;
+    }
+    long length = Files.size(file);
+    Pack pack = packFor(length);
+    long offset = pack.append(file);
+    Entry entry = new Entry(current, offset, length, System.currentTimeMillis());
+    appendIndex(key, entry);
+    entries.put(key, entry);
+  }
+
+  /**
+   * Remove objects. The pack files holding them are rewritten without them: the other objects of
+   * these packs are copied to new pack files, the index is swapped for one referring to the copies,
+   * and the old pack files are deleted.
+   *
+   * @param ids ids of the objects, those that are not packed are ignored.
+   * @throws IOException if the packs cannot be rewritten.
+   */
+  void remove(Collection<LongObjectId> ids) throws IOException {
+    synchronized (rewriting) {
+      Set<LongObjectId> removed = new HashSet<>(ids);
+      Set<Integer> rewritten = new HashSet<>();
+      for (LongObjectId id : removed) {
+        Entry entry = entries.get(id);
+        if (entry != null) {
+          rewritten.add(entry.pack);
+        }
+      }
+      if (rewritten.isEmpty()) {
+        return;
+      }
+      synchronized (this) {
+        if (rewritten.contains(current)) {
+          // objects added from now on must not end up in a pack that is deleted
+          current = ++last;
+        }
+      }
+
+      // the entries of the rewritten packs only change here, added objects go to other packs
+      Map<LongObjectId, Entry> copied = new HashMap<>();
+      Set<Integer> written = new HashSet<>();
+      try {
+        Pack pack = null;
+        int number = 0;
+        for (Map.Entry<LongObjectId, Entry> e : entries.entrySet()) {
+          Entry old = e.getValue();
+          if (!rewritten.contains(old.pack) || removed.contains(e.getKey())) {
+            continue;
+          }
+          if (pack == null || (pack.size() > 0 && pack.size() + old.length > maxPackSize)) {
+            number = newPackNumber();
+            written.add(number);
+            pack = pack(number, true);
+          }
+          ByteBuffer content = pack(old.pack, false).slice(old.offset, old.length);
+          copied.put(
+              e.getKey(), new Entry(number, pack.write(content), old.length, old.lastModified));
+        }
+        for (int n : written) {
+          pack(n, false).force();
+        }
+      } catch (IOException e) {
+        for (int n : written) {
+          try {
+            deletePack(n);
+          } catch (IOException d) {
+            e.addSuppressed(d);
+          }
+        }
+        throw e;
+      }
+
+      synchronized (this) {
+        entries.putAll(copied);
+        entries.keySet().removeAll(removed);
+        compactIndex();
+      }
+      // reads that still found an old entry look it up again once its pack is gone
+      for (int old : rewritten) {
+        deletePack(old);
+      }
+    }
+  }
+
+  /** @return the ids of the packed objects. */
+  ImmutableSet<LongObjectId> ids() {
+    return ImmutableSet.copyOf(entries.keySet());
+  }
+
+  /** @return the packed objects and their location. */
+  ImmutableMap<LongObjectId, Entry> entries() {
+    return ImmutableMap.copyOf(entries);
+  }
+
+  /** @return the number of packed objects. */
+  int size() {
+    return entries.size();
+  }
+
+  synchronized void close() {
+    for (Pack pack : packs.values()) {
+      pack.close();
+    }
+    try {
+      index.close();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Closing pack index in %s failed", dir);
+    }
+  }
+
+  private void load() throws IOException {
+    long size = index.size();
+    // an incomplete last entry was being written when the server stopped, its content is still
+    // stored as a loose file
+    long complete = size - size % ENTRY_SIZE;
+    ByteBuffer buf = ByteBuffer.allocate(ENTRY_SIZE);
+    for (long position = 0; position < complete; position += ENTRY_SIZE) {
+      buf.clear();
+      while (buf.hasRemaining() && index.read(buf, position + buf.position()) >= 0) {}
+      buf.flip();
+      byte[] raw = new byte[Constants.LONG_OBJECT_ID_LENGTH];
+      buf.get(raw);
+      // later entries of an object replace earlier ones
+      entries.put(
+          LongObjectId.fromRaw(raw),
+          new Entry(buf.getInt(), buf.getLong(), buf.getLong(), buf.getLong()));
+    }
+    if (complete < size) {
+      index.truncate(complete);
+    }
+    // removing objects deletes their pack before the index is compacted
+    entries.values().removeIf(e -> !Files.exists(packPath(e.pack)));
+  }
+
+  /**
+   * Delete the pack files no index entry refers to, except the one objects are appended to. They
+   * were being written by a removal when the server stopped.
+   */
+  private void deleteUnusedPacks() throws IOException {
+    Set<Integer> used = new HashSet<>();
+    for (Entry entry : entries.values()) {
+      used.add(entry.pack);
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Matcher m = PACK_FILE.matcher(file.getFileName().toString());
+        if (m.matches()) {
+          int number = Integer.parseInt(m.group(1));
+          if (number != current && !used.contains(number)) {
+            log.atInfo().log("Deleting unused pack %s", file);
+            Files.deleteIfExists(file);
+          }
+        }
+      }
+    }
+  }
+
+  private Pack packFor(long length) throws IOException {
+    Pack pack = pack(current, true);
+    if (pack.size() > 0 && pack.size() + length > maxPackSize) {
+      current = newPackNumber();
+      pack = pack(current, true);
+    }
+    return pack;
+  }
+
+  private synchronized int newPackNumber() {
+    return ++last;
+  }
+
+  private void deletePack(int number) throws IOException {
+    Pack pack = packs.remove(number);
+    if (pack != null) {
+      pack.close();
+    }
+    Files.deleteIfExists(packPath(number));
+  }
+
+  private void appendIndex(LongObjectId id, Entry entry) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(ENTRY_SIZE);
+    id.copyRawTo(buf);
+    buf.putInt(entry.pack).putLong(entry.offset).putLong(entry.length).putLong(entry.lastModified);
+    buf.flip();
+    long start = index.size();
+    try {
+      long position = start;
+      while (buf.hasRemaining()) {
+        position += index.write(buf, position);
+      }
+      index.force(false);
+    } catch (IOException e) {
+      // keep the entries aligned for the next object
+      index.truncate(start);
+      throw e;
+    }
+  }
+
+  private void compactIndex() throws IOException {
+    Path path = dir.resolve(INDEX_FILE);
+    Path tmp = Files.createTempFile(dir, INDEX_FILE, ".tmp");
+    try {
+      ByteBuffer buf = ByteBuffer.allocate(ENTRY_SIZE);
+      try (FileChannel out = FileChannel.open(tmp, WRITE)) {
+        for (Map.Entry<LongObjectId, Entry> e : entries.entrySet()) {
+          Entry entry = e.getValue();
+          buf.clear();
+          e.getKey().copyRawTo(buf);
+          buf.putInt(entry.pack)
+              .putLong(entry.offset)
+              .putLong(entry.length)
+              .putLong(entry.lastModified);
+          buf.flip();
+          while (buf.hasRemaining()) {
+            out.write(buf);
+          }
+        }
+        out.force(false);
+      }
+      Files.move(tmp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    index.close();
+    index = FileChannel.open(path, CREATE, READ, WRITE);
+  }
+
+  private Path packPath(int number) {
+    return dir.resolve(number + ".pack");
+  }
+
+  private Pack pack(int number, boolean create) throws IOException {
+    Pack pack = packs.get(number);
+    if (pack == null) {
+      synchronized (packs) {
+        pack = packs.get(number);
+        if (pack == null) {
+          pack = new Pack(packPath(number), create);
+          packs.put(number, pack);
+        }
+      }
+    }
+    return pack;
+  }
+
+  private static class Pack {
+    private final Path path;
+    private final FileChannel channel;
+    private MappedByteBuffer mapping;
+
+    Pack(Path path, boolean create) throws IOException {
+      this.path = path;
+      this.channel =
+          create
+              ? FileChannel.open(path, CREATE, READ, WRITE)
+              : FileChannel.open(path, READ, WRITE);
+    }
+
+    long size() throws IOException {
+      return channel.size();
+    }
+
+    /** @return the offset of the appended content. */
+    long append(Path file) throws IOException {
+      long offset = channel.size();
+      channel.position(offset);
+      try (FileChannel in = FileChannel.open(file, READ)) {
+        long length = in.size();
+        long copied = 0;
+        while (copied < length) {
+          copied += in.transferTo(copied, length - copied, channel);
+        }
+      } catch (IOException e) {
+        // drop what was appended, the next object is written at the end of the file again
+        channel.truncate(offset);
+        throw e;
+      }
+      channel.force(false);
+      return offset;
+    }
+
+    /** @return the offset of the appended content, which is not forced to disk yet. */
+    long write(ByteBuffer content) throws IOException {
+      long offset = channel.size();
+      long position = offset;
+      while (content.hasRemaining()) {
+        position += channel.write(content, position);
+      }
+      return offset;
+    }
+
+    void force() throws IOException {
+      channel.force(false);
+    }
+
+    synchronized ByteBuffer slice(long offset, long length) throws IOException {
+      long end = offset + length;
+      if (mapping == null || mapping.capacity() < end) {
+        // the pack grew since it was mapped
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      ByteBuffer slice = mapping.duplicate();
+      slice.position((int) offset).limit((int) end);
+      return slice.slice();
+    }
+
+    void close() {
+      mapping = null;
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.atWarning().withCause(e).log("Closing pack %s failed", path);
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+
+/**
+ * Download authorization that a caching reverse proxy can verify without Gerrit.
+ *
+ * <p>The {@code Authorization} header has the form {@code LFS-HMAC-SHA256 <expires>:<signature>},
+ * where {@code expires} is the expiry time in epoch seconds and {@code signature} is the lower
+ * case hex HMAC-SHA256 of {@code <object id>:<expires>} keyed with a secret shared with the
+ * proxy. The object id is the last segment of the content URL.
+ */
+class ProxyDownloadAuth {
+  static final String SCHEME = "LFS-HMAC-SHA256";
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final BaseEncoding HEX = BaseEncoding.base16().lowerCase();
+
+  private final SecretKeySpec key;
+
+  ProxyDownloadAuth(String secret) {
+    this.key = new SecretKeySpec(secret.getBytes(UTF_8), ALGORITHM);
+  }
+
+  /** @return the value of the {@code Authorization} header granting the download until expiry. */
+  String sign(AnyLongObjectId id, Instant expires) {
+    long expiresAt = expires.getEpochSecond();
+    return SCHEME + " " + expiresAt + ":" + signature(id, expiresAt);
+  }
+
+  /**
+   * @param header value of the {@code Authorization} header, may be null.
+   * @param id object to be downloaded.
+   * @param now current time.
+   * @return whether the header grants the download of the object.
+   */
+  boolean verify(String header, AnyLongObjectId id, Instant now) {
+    if (Strings.isNullOrEmpty(header) || !header.startsWith(SCHEME + " ")) {
+      return false;
+    }
+    String value = header.substring(SCHEME.length() + 1).trim();
+    int colon = value.indexOf(':');
+    if (colon <= 0) {
+      return false;
+    }
+    long expiresAt;
+    try {
+      expiresAt = Long.parseLong(value.substring(0, colon));
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    if (now.getEpochSecond() > expiresAt) {
+      return false;
+    }
+    return MessageDigest.isEqual(
+        signature(id, expiresAt).getBytes(UTF_8), value.substring(colon + 1).getBytes(UTF_8));
+  }
+
+  private String signature(AnyLongObjectId id, long expiresAt) {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return HEX.encode(mac.doFinal((id.getName() + ":" + expiresAt).getBytes(UTF_8)));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HMAC-SHA256 is not available", e);
+    }
+  }
+}
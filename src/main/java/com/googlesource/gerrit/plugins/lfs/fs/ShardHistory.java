@@ -0,0 +1,155 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+
+/**
+ * The shard rings that may hold objects of a backend: the ring that held all of them last, the
+ * rings that rebalancing was started for since then, and the configured ring.
+ *
+ * <p>The state file lists the shards of each ring, oldest first, separated by empty lines. A
+ * rebalance that is interrupted leaves its target ring in the file, so that the objects it moved
+ * already are found again if the shards are changed before it completes.
+ */
+class ShardHistory {
+  /** @return the history of a backend whose objects are all held by one ring. */
+  static ShardHistory settled(ShardRing ring) {
+    return new ShardHistory(ImmutableList.of(ring));
+  }
+
+  /**
+   * Read a state file.
+   *
+   * @param state the state file.
+   * @param dir the directory of the backend, holding all objects before it was first sharded.
+   * @return the recorded rings.
+   * @throws IOException if the state file cannot be read.
+   */
+  static ShardHistory read(Path state, Path dir) throws IOException {
+    if (!Files.exists(state)) {
+      return settled(new ShardRing(ImmutableList.of(dir)));
+    }
+    List<ShardRing> rings = new ArrayList<>();
+    List<Path> shards = new ArrayList<>();
+    for (String line : Files.readAllLines(state, UTF_8)) {
+      line = line.trim();
+      if (!line.isEmpty()) {
+        shards.add(Paths.get(line));
+      } else if (!shards.isEmpty()) {
+        rings.add(new ShardRing(shards));
+        shards.clear();
+      }
+    }
+    if (!shards.isEmpty()) {
+      rings.add(new ShardRing(shards));
+    }
+    return rings.isEmpty()
+        ? settled(new ShardRing(ImmutableList.of(dir)))
+        : new ShardHistory(ImmutableList.copyOf(rings));
+  }
+
+  private final ImmutableList<ShardRing> rings;
+
+  private ShardHistory(ImmutableList<ShardRing> rings) {
+    this.rings = rings;
+  }
+
+  /** @return the history with objects moving to another ring. */
+  ShardHistory moveTo(ShardRing ring) {
+    ImmutableList.Builder<ShardRing> moved = ImmutableList.builder();
+    rings.stream().filter(r -> !r.equals(ring)).forEach(moved::add);
+    return new ShardHistory(moved.add(ring).build());
+  }
+
+  /** @return whether all objects are held by the current ring. */
+  boolean isSettled() {
+    return rings.size() == 1;
+  }
+
+  /** @return the ring that objects are moved to. */
+  ShardRing current() {
+    return rings.get(rings.size() - 1);
+  }
+
+  /** @return all rings, oldest first. */
+  ImmutableList<ShardRing> rings() {
+    return rings;
+  }
+
+  /** @return the data directories of all rings. */
+  ImmutableSortedSet<Path> shards() {
+    ImmutableSortedSet.Builder<Path> shards = ImmutableSortedSet.naturalOrder();
+    rings.forEach(r -> shards.addAll(r.shards()));
+    return shards.build();
+  }
+
+  /**
+   * @return the path of an object in the current ring, or in the latest earlier ring holding it if
+   *     it was not moved yet.
+   */
+  Path getPath(AnyLongObjectId id) {
+    Path path = current().getPath(id);
+    for (int i = rings.size() - 2; i >= 0 && !Files.exists(path); i--) {
+      Path notMovedYet = rings.get(i).getPath(id);
+      if (Files.exists(notMovedYet)) {
+        return notMovedYet;
+      }
+    }
+    return path;
+  }
+
+  /** Write the rings to a state file, replacing it atomically. */
+  void write(Path state) throws IOException {
+    List<String> lines = new ArrayList<>();
+    for (ShardRing ring : rings) {
+      if (!lines.isEmpty()) {
+        lines.add("");
+      }
+      ring.shards().forEach(shard -> lines.add(shard.toString()));
+    }
+    Path dir = Files.createDirectories(state.getParent());
+    Path tmp = Files.createTempFile(dir, state.getFileName().toString(), ".tmp");
+    try {
+      Files.write(tmp, lines, UTF_8);
+      Files.move(tmp, state, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ShardHistory && ((ShardHistory) o).rings.equals(rings);
+  }
+
+  @Override
+  public int hashCode() {
+    return rings.hashCode();
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * Consistent hash ring spreading objects over several data directories.
+ *
+ * <p>Each directory owns a number of points on the ring derived from its path, and an object
+ * belongs to the directory owning the first point at or after the object id. Adding a directory
+ * therefore only moves the objects that the new directory takes over, and the order in which
+ * directories are configured does not matter.
+ */
+class ShardRing {
+  private static final int POINTS_PER_SHARD = 128;
+
+  private final ImmutableSortedSet<Path> shards;
+  private final TreeMap<Long, Path> ring = new TreeMap<>();
+
+  ShardRing(Collection<Path> shards) {
+    this.shards = ImmutableSortedSet.copyOf(shards);
+    for (Path shard : this.shards) {
+      for (int i = 0; i < POINTS_PER_SHARD; i++) {
+        ring.put(
+            Hashing.sha256().hashString(shard.toString() + "#" + i, UTF_8).asLong(), shard);
+      }
+    }
+  }
+
+  /** @return the data directories of the ring. */
+  ImmutableSortedSet<Path> shards() {
+    return shards;
+  }
+
+  /** @return the data directory that owns the object. */
+  Path locate(AnyLongObjectId id) {
+    if (shards.size() == 1) {
+      return shards.first();
+    }
+    byte[] raw = new byte[Constants.LONG_OBJECT_ID_LENGTH];
+    id.copyRawTo(raw, 0);
+    Map.Entry<Long, Path> owner = ring.ceilingEntry(Longs.fromByteArray(raw));
+    return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+  }
+
+  /** @return the path of the object in the data directory that owns it. */
+  Path getPath(AnyLongObjectId id) {
+    return objectPath(locate(id), id);
+  }
+
+  /** @return the path of an object in a data directory, laid out like {@code FileLfsRepository}. */
+  static Path objectPath(Path dir, AnyLongObjectId id) {
+    String name = id.name();
+    return dir.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+  }
+
+  /**
+   * @return whether a file is laid out like an object of a data directory, which also tells
+   *     objects apart from the locks and other backends in the default data directory.
+   */
+  static boolean isObject(Path dir, Path file) {
+    String name = file.getFileName().toString();
+    return LongObjectId.isId(name) && objectPath(dir, LongObjectId.fromString(name)).equals(file);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof ShardRing && ((ShardRing) o).shards.equals(shards);
+  }
+
+  @Override
+  public int hashCode() {
+    return shards.hashCode();
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+
+/** Limits enforced on every upload and download of a file system backend. */
+class TransferLimits {
+  static final String KEY_TRANSFER_TIMEOUT = "transferTimeout";
+  static final String KEY_STALL_TIMEOUT = "stallTimeout";
+  static final String KEY_MIN_TRANSFER_RATE = "minTransferRate";
+  private static final long DEFAULT_STALL_TIMEOUT_SECONDS = 60;
+
+  /** Maximum duration of a transfer in milliseconds, {@code 0} for no limit. */
+  final long timeoutMillis;
+
+  /** Length of the window in which a transfer must make progress, {@code 0} to disable. */
+  final long stallTimeoutMillis;
+
+  /** Minimum average rate in bytes per second over each stall window. */
+  final long minBytesPerSecond;
+
+  TransferLimits(long timeoutMillis, long stallTimeoutMillis, long minBytesPerSecond) {
+    this.timeoutMillis = Math.max(0, timeoutMillis);
+    this.stallTimeoutMillis = Math.max(0, stallTimeoutMillis);
+    this.minBytesPerSecond = Math.max(0, minBytesPerSecond);
+  }
+
+  static TransferLimits create(LfsGlobalConfig config, LfsBackend backend) {
+    String section = backend.type.name();
+    return new TransferLimits(
+        config.getTimeUnit(section, backend.name, KEY_TRANSFER_TIMEOUT, 0, MILLISECONDS),
+        config.getTimeUnit(
+            section,
+            backend.name,
+            KEY_STALL_TIMEOUT,
+            SECONDS.toMillis(DEFAULT_STALL_TIMEOUT_SECONDS),
+            MILLISECONDS),
+        config.getInt(section, backend.name, KEY_MIN_TRANSFER_RATE, 0));
+  }
+
+  /** @return the number of bytes a transfer must move in each stall window, at least one. */
+  long minBytesPerWindow() {
+    return Math.max(1, minBytesPerSecond * stallTimeoutMillis / 1000);
+  }
+}
@@ -0,0 +1,321 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsTransferWatchdog.Operation;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsTransferWatchdog.Reason;
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * A single upload or download that is aborted when it exceeds its {@link TransferLimits}.
+ *
+ * <p>The request or response is wrapped to count the transferred bytes, and the listener doing the
+ * transfer is wrapped so that it is never called again once the transfer was aborted. Aborting
+ * waits for a running callback of the listener to return, then calls the listener's {@code
+ * onError}, which closes the object, and completes the request. The transferred bytes and the
+ * duration of the transfer are recorded when the request completes.
+ */
+class WatchedTransfer implements AsyncListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final LfsFsTransferWatchdog watchdog;
+  private final String backend;
+  private final Operation operation;
+  private final TransferLimits limits;
+  private final AtomicLong transferred = new AtomicLong();
+  private AsyncContext context;
+  private Consumer<Throwable> onError;
+  private ScheduledFuture<?> stallCheck;
+  private long checkpoint;
+  private long startNanos;
+  private boolean done;
+
+  WatchedTransfer(
+      LfsFsTransferWatchdog watchdog, String backend, Operation operation, TransferLimits limits) {
+    this.watchdog = watchdog;
+    this.backend = backend;
+    this.operation = operation;
+    this.limits = limits;
+  }
+
+  /** @return the request, counting the bytes read from it. */
+  HttpServletRequest countBytes(HttpServletRequest req) throws IOException {
+    ServletInputStream in = new CountingInputStream(req.getInputStream());
+    return new HttpServletRequestWrapper(req) {
+      @Override
+      public ServletInputStream getInputStream() {
+        return in;
+      }
+    };
+  }
+
+  /** @return the response, counting the bytes written to it. */
+  HttpServletResponse countBytes(HttpServletResponse rsp) throws IOException {
+    ServletOutputStream out = new CountingOutputStream(rsp.getOutputStream());
+    return new HttpServletResponseWrapper(rsp) {
+      @Override
+      public ServletOutputStream getOutputStream() {
+        return out;
+      }
+    };
+  }
+
+  /**
+   * Start enforcing the limits.
+   *
+   * @param context context of the asynchronous request.
+   */
+  synchronized void start(AsyncContext context) {
+    this.context = context;
+    this.startNanos = System.nanoTime();
+    context.setTimeout(limits.timeoutMillis);
+    context.addListener(this);
+    if (limits.stallTimeoutMillis > 0) {
+      stallCheck = watchdog.scheduleCheck(this::checkProgress, limits.stallTimeoutMillis);
+    }
+  }
+
+  synchronized ReadListener watch(ReadListener listener) {
+    onError = listener::onError;
+    return new ReadListener() {
+      @Override
+      public void onDataAvailable() throws IOException {
+        synchronized (WatchedTransfer.this) {
+          if (!done) {
+            listener.onDataAvailable();
+          }
+        }
+      }
+
+      @Override
+      public void onAllDataRead() throws IOException {
+        synchronized (WatchedTransfer.this) {
+          if (!done) {
+            listener.onAllDataRead();
+          }
+        }
+      }
+
+      @Override
+      public void onError(Throwable e) {
+        synchronized (WatchedTransfer.this) {
+          if (!done) {
+            listener.onError(e);
+          }
+        }
+      }
+    };
+  }
+
+  synchronized WriteListener watch(WriteListener listener) {
+    onError = listener::onError;
+    return new WriteListener() {
+      @Override
+      public void onWritePossible() throws IOException {
+        synchronized (WatchedTransfer.this) {
+          if (!done) {
+            listener.onWritePossible();
+          }
+        }
+      }
+
+      @Override
+      public void onError(Throwable e) {
+        synchronized (WatchedTransfer.this) {
+          if (!done) {
+            listener.onError(e);
+          }
+        }
+      }
+    };
+  }
+
+  @VisibleForTesting
+  void checkProgress() {
+    long current = transferred.get();
+    if (current - checkpoint < limits.minBytesPerWindow()) {
+      abort(
+          Reason.STALLED,
+          String.format(
+              "transferred %d bytes in the last %d ms",
+              current - checkpoint, limits.stallTimeoutMillis));
+    }
+    checkpoint = current;
+  }
+
+  private void abort(Reason reason, String message) {
+    Consumer<Throwable> release;
+    synchronized (this) {
+      if (done) {
+        return;
+      }
+      // listener callbacks hold the monitor, so none is running now and none runs after this
+      finish();
+      release = onError;
+    }
+    watchdog.aborted(backend, operation, reason);
+    log.atWarning().log(
+        "Aborting %s of backend %s after %d bytes: %s",
+        operation, backend, transferred.get(), message);
+    try {
+      if (release != null) {
+        release.accept(new IOException(reason + ": " + message));
+      }
+    } catch (RuntimeException e) {
+      log.atWarning().withCause(e).log("Releasing aborted %s failed", operation);
+    }
+    try {
+      context.complete();
+    } catch (IllegalStateException e) {
+      // already completed by the listener
+    }
+  }
+
+  private synchronized void finish() {
+    done = true;
+    if (stallCheck != null) {
+      stallCheck.cancel(false);
+    }
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) {
+    finish();
+    watchdog.transferred(backend, operation, transferred.get(), System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) {
+    abort(Reason.TIMEOUT, String.format("exceeded %d ms", limits.timeoutMillis));
+  }
+
+  @Override
+  public synchronized void onError(AsyncEvent event) {
+    // the transfer listener is told about the error and releases the object itself
+    if (stallCheck != null) {
+      stallCheck.cancel(false);
+    }
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) {}
+
+  private class CountingInputStream extends ServletInputStream {
+    private final ServletInputStream in;
+
+    CountingInputStream(ServletInputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b >= 0) {
+        transferred.incrementAndGet();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = in.read(b, off, len);
+      if (n > 0) {
+        transferred.addAndGet(n);
+      }
+      return n;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return in.available();
+    }
+
+    @Override
+    public boolean isFinished() {
+      return in.isFinished();
+    }
+
+    @Override
+    public boolean isReady() {
+      return in.isReady();
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      in.setReadListener(readListener);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private class CountingOutputStream extends ServletOutputStream {
+    private final ServletOutputStream out;
+
+    CountingOutputStream(ServletOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      transferred.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      transferred.addAndGet(len);
+    }
+
+    @Override
+    public boolean isReady() {
+      return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      out.setWriteListener(writeListener);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,356 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.gc;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import com.googlesource.gerrit.plugins.lfs.LfsRepositoriesCache;
+import com.googlesource.gerrit.plugins.lfs.quota.LfsQuotas;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lfs.LfsPointer;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevObject;
+
+/**
+ * Deletes the objects of backends that no project references anymore.
+ *
+ * <p>The mark phase walks all refs of all projects, in parallel, and collects the ids of the LFS
+ * pointers found in their history. Projects are marked whatever their current LFS configuration,
+ * since a project may have uploaded objects to a backend under an earlier namespace or backend
+ * mapping, or before LFS was disabled for it. The sweep phase lists the objects of each backend and
+ * deletes those that are not referenced and older than the grace period, which protects objects
+ * uploaded before the commits referencing them are pushed. It also discharges the quota charges of
+ * objects requested for upload before the grace period that the backend does not hold.
+ */
+@Singleton
+public class LfsGc {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final String SECTION = "gc";
+  private static final long DEFAULT_GRACE_PERIOD_DAYS = 14;
+  // the LFS specification limits pointer files to 1024 bytes
+  private static final int MAX_POINTER_SIZE = 1024;
+  private static final int DELETE_BATCH_SIZE = 1000;
+
+  /** Outcome of the collection of one backend. */
+  public static class Result {
+    public final LfsBackend backend;
+    public final long objects;
+    public final long garbage;
+    public final long garbageBytes;
+    public final boolean deleted;
+
+    Result(LfsBackend backend, long objects, long garbage, long garbageBytes, boolean deleted) {
+      this.backend = backend;
+      this.objects = objects;
+      this.garbage = garbage;
+      this.garbageBytes = garbageBytes;
+      this.deleted = deleted;
+    }
+  }
+
+  private static class Garbage {
+    long size;
+    Instant lastModified = Instant.MIN;
+  }
+
+  private final Supplier<LfsGlobalConfig> globalConfig;
+  private final ProjectCache projectCache;
+  private final GitRepositoryManager repoManager;
+  private final Function<LfsBackend, LargeFileRepository> repositories;
+  private final LfsQuotas quotas;
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  @Inject
+  LfsGc(
+      LfsConfigurationFactory configFactory,
+      ProjectCache projectCache,
+      GitRepositoryManager repoManager,
+      LfsRepositoriesCache repositories,
+      LfsQuotas quotas) {
+    this(configFactory::getGlobalConfig, projectCache, repoManager, repositories::get, quotas);
+  }
+
+  @VisibleForTesting
+  LfsGc(
+      Supplier<LfsGlobalConfig> globalConfig,
+      ProjectCache projectCache,
+      GitRepositoryManager repoManager,
+      Function<LfsBackend, LargeFileRepository> repositories,
+      LfsQuotas quotas) {
+    this.globalConfig = globalConfig;
+    this.projectCache = projectCache;
+    this.repoManager = repoManager;
+    this.repositories = repositories;
+    this.quotas = quotas;
+  }
+
+  /** @return the configured backends, the default one first. */
+  public List<LfsBackend> getBackends() {
+    LfsGlobalConfig config = globalConfig.get();
+    List<LfsBackend> backends = new ArrayList<>();
+    backends.add(config.getDefaultBackend());
+    backends.addAll(config.getBackends().values());
+    return backends;
+  }
+
+  /**
+   * Collect the garbage of backends.
+   *
+   * @param backends the backends to collect.
+   * @param dryRun whether to only report the garbage instead of deleting it.
+   * @param progress receives progress messages, from several threads.
+   * @param garbage receives the ids of the unreferenced objects, from a single thread.
+   * @return the outcome per backend.
+   * @throws IOException if a project cannot be marked or a backend cannot be listed; nothing is
+   *     deleted from backends that were not swept yet.
+   * @throws IllegalStateException if a collection is already running.
+   */
+  public List<Result> run(
+      Collection<LfsBackend> backends,
+      boolean dryRun,
+      Consumer<String> progress,
+      Consumer<LongObjectId> garbage)
+      throws IOException {
+    if (!running.compareAndSet(false, true)) {
+      throw new IllegalStateException("LFS garbage collection is already running");
+    }
+    try {
+      Instant cutoff =
+          Instant.now()
+              .minusMillis(
+                  globalConfig
+                      .get()
+                      .getTimeUnit(
+                          SECTION,
+                          null,
+                          "gracePeriod",
+                          DAYS.toMillis(DEFAULT_GRACE_PERIOD_DAYS),
+                          MILLISECONDS));
+      Set<LongObjectId> referenced = mark(progress);
+      List<Result> results = new ArrayList<>();
+      for (LfsBackend backend : backends) {
+        results.add(sweep(backend, referenced, cutoff, dryRun, progress, garbage));
+      }
+      return results;
+    } finally {
+      running.set(false);
+    }
+  }
+
+  private Set<LongObjectId> mark(Consumer<String> progress) throws IOException {
+    // the current LFS configuration of a project does not tell which backends it wrote to before
+    List<Project.NameKey> projects = ImmutableList.copyOf(projectCache.all());
+    progress.accept(String.format("Marking objects referenced by %d projects", projects.size()));
+
+    Set<LongObjectId> referenced = ConcurrentHashMap.newKeySet();
+    AtomicInteger done = new AtomicInteger();
+    int threads =
+        Math.max(
+            1,
+            globalConfig
+                .get()
+                .getInt(SECTION, null, "threads", Runtime.getRuntime().availableProcessors()));
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder().setNameFormat("LFS-gc-mark-%d").setDaemon(true).build());
+    try {
+      Map<Project.NameKey, Future<Integer>> marks = new LinkedHashMap<>();
+      for (Project.NameKey project : projects) {
+        marks.put(
+            project,
+            executor.submit(
+                () -> {
+                  int pointers = mark(project, referenced);
+                  progress.accept(
+                      String.format(
+                          "Marked %s: %d pointers (%d/%d projects)",
+                          project.get(), pointers, done.incrementAndGet(), projects.size()));
+                  return pointers;
+                }));
+      }
+      for (Map.Entry<Project.NameKey, Future<Integer>> mark : marks.entrySet()) {
+        try {
+          mark.getValue().get();
+        } catch (ExecutionException e) {
+          // a missed project could lose data it references, so nothing must be swept
+          throw new IOException("Cannot mark objects of project " + mark.getKey().get(), e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while marking objects", e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    progress.accept(String.format("Marked %d referenced objects", referenced.size()));
+    return referenced;
+  }
+
+  private int mark(Project.NameKey project, Set<LongObjectId> referenced) throws IOException {
+    int pointers = 0;
+    try (Repository repo = repoManager.openRepository(project);
+        ObjectWalk walk = new ObjectWalk(repo)) {
+      for (Ref ref : repo.getRefDatabase().getRefs()) {
+        if (ref.getObjectId() == null) {
+          continue;
+        }
+        try {
+          walk.markStart(walk.parseAny(ref.getObjectId()));
+        } catch (MissingObjectException | IncorrectObjectTypeException e) {
+          log.atWarning().log("Skipping broken ref %s of project %s", ref.getName(), project);
+        }
+      }
+      while (walk.next() != null) {}
+      ObjectReader reader = walk.getObjectReader();
+      for (RevObject o = walk.nextObject(); o != null; o = walk.nextObject()) {
+        if (o.getType() != Constants.OBJ_BLOB
+            || reader.getObjectSize(o, Constants.OBJ_BLOB) > MAX_POINTER_SIZE) {
+          continue;
+        }
+        try (InputStream in = reader.open(o, Constants.OBJ_BLOB).openStream()) {
+          LfsPointer pointer = LfsPointer.parseLfsPointer(in);
+          if (pointer != null) {
+            referenced.add(pointer.getOid().copy());
+            pointers++;
+          }
+        }
+      }
+    }
+    return pointers;
+  }
+
+  private Result sweep(
+      LfsBackend backend,
+      Set<LongObjectId> referenced,
+      Instant cutoff,
+      boolean dryRun,
+      Consumer<String> progress,
+      Consumer<LongObjectId> garbageConsumer)
+      throws IOException {
+    LargeFileRepository repository = repositories.apply(backend);
+    if (!(repository instanceof LfsObjectStore)) {
+      progress.accept(
+          String.format("Skipping backend %s: its objects cannot be listed", backend.name()));
+      return new Result(backend, 0, 0, 0, false);
+    }
+    LfsObjectStore store = (LfsObjectStore) repository;
+
+    progress.accept(String.format("Listing objects of backend %s", backend.name()));
+    // objects charged to a quota before the grace period that the backend does not hold were never
+    // uploaded; taken before the listing, so that objects uploaded meanwhile are not among them
+    // unless they were requested before the grace period and listed before they were uploaded
+    Set<LongObjectId> unstored = quotas.chargedBefore(backend, cutoff);
+    Map<LongObjectId, Garbage> unreferenced = new HashMap<>();
+    long[] listed = {0};
+    store.list(
+        object -> {
+          unstored.remove(object.id);
+          if (++listed[0] % 10_000 == 0) {
+            progress.accept(
+                String.format("Listed %d objects of backend %s", listed[0], backend.name()));
+          }
+          if (!referenced.contains(object.id)) {
+            Garbage g = unreferenced.computeIfAbsent(object.id, id -> new Garbage());
+            g.size = Math.max(g.size, object.size);
+            if (object.lastModified.isAfter(g.lastModified)) {
+              g.lastModified = object.lastModified;
+            }
+          }
+        });
+
+    List<LongObjectId> garbage = new ArrayList<>();
+    long bytes = 0;
+    for (Map.Entry<LongObjectId, Garbage> e : unreferenced.entrySet()) {
+      // a copy of the object in any tier that is recent enough keeps it
+      if (e.getValue().lastModified.isBefore(cutoff)) {
+        garbage.add(e.getKey());
+        bytes += e.getValue().size;
+        garbageConsumer.accept(e.getKey());
+      }
+    }
+    progress.accept(
+        String.format(
+            "Backend %s: %d objects, %d unreferenced, %d older than the grace period (%d bytes)",
+            backend.name(), listed[0], unreferenced.size(), garbage.size(), bytes));
+    if (!dryRun && !unstored.isEmpty()) {
+      int discharged = quotas.dischargeUnstored(backend, unstored, cutoff);
+      progress.accept(
+          String.format(
+              "Discharged %d quota charges of objects never uploaded to backend %s",
+              discharged, backend.name()));
+    }
+    if (dryRun || garbage.isEmpty()) {
+      return new Result(backend, listed[0], garbage.size(), bytes, false);
+    }
+
+    int deleted = 0;
+    for (List<LongObjectId> batch : Iterables.partition(garbage, DELETE_BATCH_SIZE)) {
+      List<LongObjectId> ids = ImmutableList.copyOf(batch);
+      store.delete(ids);
+      quotas.discharge(ids);
+      deleted += batch.size();
+      progress.accept(
+          String.format(
+              "Deleted %d/%d objects of backend %s", deleted, garbage.size(), backend.name()));
+    }
+    log.atInfo().log(
+        "Deleted %d unreferenced objects (%d bytes) of backend %s",
+        garbage.size(), bytes, backend.name());
+    return new Result(backend, listed[0], garbage.size(), bytes, true);
+  }
+}
@@ -0,0 +1,97 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.gc;
+
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.kohsuke.args4j.Option;
+
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+@CommandMetaData(name = "gc", description = "Delete LFS objects that no project references")
+public class LfsGcCommand extends SshCommand {
+  @Option(
+      name = "--backend",
+      metaVar = "NAME",
+      usage = "backend to collect, may be repeated; all backends by default")
+  private List<String> backendNames = new ArrayList<>();
+
+  @Option(name = "--dry-run", usage = "only report the objects that would be deleted")
+  private boolean dryRun;
+
+  @Option(name = "--verbose", usage = "print the id of each unreferenced object")
+  private boolean verbose;
+
+  @Inject private LfsGc gc;
+
+  @Override
+  protected void run() throws UnloggedFailure, Failure {
+    Map<String, LfsBackend> configured =
+        gc.getBackends().stream()
+            .collect(Collectors.toMap(LfsBackend::name, Function.identity(), (a, b) -> a));
+    List<LfsBackend> backends = new ArrayList<>();
+    if (backendNames.isEmpty()) {
+      backends.addAll(configured.values());
+    } else {
+      for (String name : backendNames) {
+        LfsBackend backend = configured.get(name);
+        if (backend == null) {
+          throw die("unknown backend: " + name);
+        }
+        backends.add(backend);
+      }
+    }
+
+    try {
+      for (LfsGc.Result result :
+          gc.run(
+              backends,
+              dryRun,
+              this::println,
+              id -> {
+                if (verbose) {
+                  println(id.name());
+                }
+              })) {
+        println(
+            String.format(
+                "%s: %d objects, %s %d unreferenced objects (%d bytes)",
+                result.backend.name(),
+                result.objects,
+                result.deleted ? "deleted" : "found",
+                result.garbage,
+                result.garbageBytes));
+      }
+    } catch (IllegalStateException e) {
+      throw die(e.getMessage());
+    } catch (IOException e) {
+      throw new Failure(1, "fatal: " + e.getMessage(), e);
+    }
+  }
+
+  private synchronized void println(String message) {
+    stdout.println(message);
+    stdout.flush();
+  }
+}
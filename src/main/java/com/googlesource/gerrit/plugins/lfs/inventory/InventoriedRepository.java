@@ -0,0 +1,129 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.inventory;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.common.Nullable;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+
+/**
+ * Answers size lookups of a backend from its inventory and keeps the inventory up to date.
+ *
+ * <p>Objects missing from the inventory are looked up in the storage, as clients upload to S3
+ * directly, and added once found. Downloads are recorded when the batch request hands out their
+ * action.
+ */
+class InventoriedRepository implements LargeFileRepository, LfsObjectStore {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+
+  private final LargeFileRepository repository;
+  private final LfsObjectStore store;
+  private final ObjectInventory inventory;
+
+  InventoriedRepository(
+      LargeFileRepository repository, LfsObjectStore store, ObjectInventory inventory) {
+    this.repository = repository;
+    this.store = store;
+    this.inventory = inventory;
+  }
+
+  @Override
+  public Response.Action getDownloadAction(AnyLongObjectId id) {
+    inventory.accessed(id, System.currentTimeMillis());
+    return repository.getDownloadAction(id);
+  }
+
+  @Override
+  public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+    return repository.getUploadAction(id, size);
+  }
+
+  @Override
+  @Nullable
+  public Response.Action getVerifyAction(AnyLongObjectId id) {
+    return repository.getVerifyAction(id);
+  }
+
+  @Override
+  public long getSize(AnyLongObjectId id) throws IOException {
+    Optional<ObjectInventory.Entry> entry = inventory.get(id);
+    if (entry.isPresent()) {
+      return entry.get().size;
+    }
+    long size = repository.getSize(id);
+    if (size >= 0) {
+      add(id, size, System.currentTimeMillis());
+    }
+    return size;
+  }
+
+  /** List the objects of the storage, adding those the inventory misses. */
+  @Override
+  public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+    store.list(
+        prefix,
+        object -> {
+          if (!inventory.get(object.id).isPresent()) {
+            add(object.id, object.size, object.lastModified.toEpochMilli());
+          }
+          consumer.accept(object);
+        });
+  }
+
+  @Override
+  public void delete(Collection<LongObjectId> ids) throws IOException {
+    try {
+      store.delete(ids);
+    } finally {
+      // also if only some were deleted: objects the inventory misses are looked up in the storage
+      inventory.remove(ids);
+    }
+  }
+
+  @Override
+  public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+    Optional<InputStream> content = store.open(id);
+    if (content.isPresent()) {
+      inventory.accessed(id, System.currentTimeMillis());
+    }
+    return content;
+  }
+
+  @Override
+  public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    if (!store.store(id, size, content)) {
+      return false;
+    }
+    add(id, size, System.currentTimeMillis());
+    return true;
+  }
+
+  private void add(AnyLongObjectId id, long size, long storedAt) {
+    try {
+      inventory.add(id, size, storedAt);
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Cannot add %s to the inventory", id.name());
+    }
+  }
+}
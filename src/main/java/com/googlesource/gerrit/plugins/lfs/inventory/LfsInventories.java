@@ -0,0 +1,286 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.inventory;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.CallbackMetric1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import com.googlesource.gerrit.plugins.lfs.LfsMetricFields;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+
+/**
+ * Keeps an inventory of the objects of each backend, so that size lookups, quotas and reports do
+ * not have to ask the storage.
+ *
+ * <p>The inventory of a backend is seeded once by listing the storage, with one task per first
+ * hex digit of the ids, and is then updated by uploads, lookups and garbage collection. Until it
+ * is seeded lookups of objects it misses still go to the storage.
+ */
+@Singleton
+public class LfsInventories implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String SECTION = "inventory";
+  private static final String DIRECTORY = "inventory";
+  private static final String SEEDED_SUFFIX = ".seeded";
+  private static final int DEFAULT_SEED_THREADS = 4;
+  private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private final boolean enabled;
+  private final Path dir;
+  private final int seedThreads;
+  private final long flushIntervalMillis;
+  private final Map<String, ObjectInventory> inventories = new ConcurrentHashMap<>();
+  private final Map<String, LfsObjectStore> unseeded = new HashMap<>();
+  private final ScheduledExecutorService executor;
+  private final CallbackMetric1<String, Long> objects;
+  private final CallbackMetric1<String, Long> bytes;
+  private ExecutorService seeders;
+
+  @Inject
+  LfsInventories(
+      LfsConfigurationFactory configFactory,
+      @PluginData Path pluginData,
+      MetricMaker metricMaker) {
+    LfsGlobalConfig config = configFactory.getGlobalConfig();
+    this.enabled = config.getBoolean(SECTION, null, "enabled", false);
+    this.dir = pluginData.resolve(DIRECTORY);
+    this.seedThreads =
+        Math.max(1, config.getInt(SECTION, null, "seedThreads", DEFAULT_SEED_THREADS));
+    this.flushIntervalMillis =
+        config.getTimeUnit(
+            SECTION, null, "flushInterval", DEFAULT_FLUSH_INTERVAL_MILLIS, MILLISECONDS);
+    this.executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder()
+                .setNameFormat("LFS-inventory-flush-%d")
+                .setDaemon(true)
+                .build());
+    Field<String> backend = LfsMetricFields.backend();
+    this.objects =
+        metricMaker.newCallbackMetric(
+            "inventory/objects",
+            Long.class,
+            new Description("Objects in the inventory of the backend")
+                .setGauge()
+                .setUnit("objects"),
+            backend);
+    this.bytes =
+        metricMaker.newCallbackMetric(
+            "inventory/bytes",
+            Long.class,
+            new Description("Total size of the objects in the inventory of the backend")
+                .setGauge()
+                .setUnit("bytes"),
+            backend);
+    metricMaker.newTrigger(
+        objects,
+        bytes,
+        () -> {
+          inventories.forEach(
+              (name, inventory) -> {
+                objects.set(name, inventory.count());
+                bytes.set(name, inventory.bytes());
+              });
+          objects.prune();
+          bytes.prune();
+        });
+  }
+
+  /**
+   * Keep an inventory of the objects of a backend, if enabled.
+   *
+   * @param backend the backend.
+   * @param repository repository of the backend.
+   * @return a repository answering size lookups from the inventory, or {@code repository} if
+   *     inventories are disabled or its objects cannot be listed.
+   */
+  public LargeFileRepository wrap(LfsBackend backend, LargeFileRepository repository) {
+    if (!enabled || !(repository instanceof LfsObjectStore)) {
+      return repository;
+    }
+    LfsObjectStore store = (LfsObjectStore) repository;
+    ObjectInventory inventory;
+    try {
+      inventory = new ObjectInventory(dir.resolve(backend.name()));
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Cannot open the inventory of backend %s", backend.name());
+      return repository;
+    }
+    inventories.put(backend.name(), inventory);
+    if (!Files.exists(seededMarker(backend.name()))) {
+      synchronized (this) {
+        if (seeders != null) {
+          seed(backend.name(), store);
+        } else {
+          unseeded.put(backend.name(), store);
+        }
+      }
+    }
+    return new InventoriedRepository(repository, store, inventory);
+  }
+
+  /** @return the inventory of the backend, if one is kept. */
+  public Optional<ObjectInventory> get(LfsBackend backend) {
+    return Optional.ofNullable(inventories.get(backend.name()));
+  }
+
+  /**
+   * Add an object uploaded to a backend.
+   *
+   * @param backendName name of the backend.
+   * @param id id of the object.
+   * @param size size of the object in bytes.
+   */
+  public void stored(String backendName, AnyLongObjectId id, long size) {
+    ObjectInventory inventory = inventories.get(backendName);
+    if (inventory != null) {
+      try {
+        inventory.add(id, size, System.currentTimeMillis());
+      } catch (IOException e) {
+        log.atWarning().withCause(e).log("Cannot add %s to the inventory", id.name());
+      }
+    }
+  }
+
+  @Override
+  public synchronized void start() {
+    if (!enabled) {
+      return;
+    }
+    executor.scheduleWithFixedDelay(
+        this::flush, flushIntervalMillis, flushIntervalMillis, MILLISECONDS);
+    seeders =
+        Executors.newFixedThreadPool(
+            seedThreads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("LFS-inventory-seed-%d")
+                .setDaemon(true)
+                .build());
+    unseeded.forEach(this::seed);
+    unseeded.clear();
+  }
+
+  @Override
+  public synchronized void stop() {
+    executor.shutdownNow();
+    if (seeders != null) {
+      seeders.shutdownNow();
+    }
+    for (ObjectInventory inventory : inventories.values()) {
+      inventory.close();
+    }
+    inventories.clear();
+  }
+
+  private void seed(String name, LfsObjectStore store) {
+    ObjectInventory inventory = inventories.get(name);
+    inventory.startSeeding();
+    log.atInfo().log("Seeding the inventory of backend %s", name);
+    long start = System.nanoTime();
+    AtomicLong listed = new AtomicLong();
+    List<CompletableFuture<Void>> tasks = new ArrayList<>(16);
+    for (int digit = 0; digit < 16; digit++) {
+      String prefix = Integer.toHexString(digit);
+      tasks.add(
+          CompletableFuture.runAsync(
+              () -> {
+                try {
+                  store.list(
+                      prefix,
+                      object -> {
+                        try {
+                          inventory.add(
+                              object.id, object.size, object.lastModified.toEpochMilli());
+                        } catch (IOException e) {
+                          throw new UncheckedIOException(e);
+                        }
+                        listed.incrementAndGet();
+                      });
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              },
+              seeders));
+    }
+    CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+        .whenComplete(
+            (ignored, failure) -> {
+              inventory.seeded();
+              if (failure != null) {
+                log.atSevere().withCause(failure).log(
+                    "Seeding the inventory of backend %s failed, retrying on the next start",
+                    name);
+                return;
+              }
+              try {
+                inventory.force();
+                Files.createFile(seededMarker(name));
+                log.atInfo().log(
+                    "Seeded the inventory of backend %s with %d objects in %d ms",
+                    name, listed.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+              } catch (IOException e) {
+                log.atSevere().withCause(e).log(
+                    "Cannot record the seeding of the inventory of backend %s", name);
+              }
+            });
+  }
+
+  private void flush() {
+    inventories.forEach(
+        (name, inventory) -> {
+          try {
+            inventory.flush();
+          } catch (IOException e) {
+            log.atWarning().withCause(e).log("Writing the inventory of backend %s failed", name);
+          }
+        });
+  }
+
+  private Path seededMarker(String name) {
+    return dir.resolve(name + SEEDED_SUFFIX);
+  }
+}
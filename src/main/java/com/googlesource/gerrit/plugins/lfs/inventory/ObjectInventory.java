@@ -0,0 +1,310 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.inventory;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.flogger.FluentLogger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * Index of the objects of a backend: their size, when they were stored and when they were last
+ * downloaded.
+ *
+ * <p>Changes are appended to a journal file that is replayed when the inventory is opened. A
+ * removal is forced to disk before it is reported done, as a lost removal would let the inventory
+ * claim a deleted object while a lost addition only costs a lookup in the storage. Download times
+ * are only kept in memory until the journal is compacted.
+ */
+public class ObjectInventory {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  // raw id, size or REMOVED, time stored, time of the last download
+  private static final int RECORD_SIZE = Constants.LONG_OBJECT_ID_LENGTH + 3 * 8;
+  private static final long REMOVED = -1;
+  // compact once the journal holds this many records more than there are objects
+  private static final long MAX_STALE_RECORDS = 10_000;
+
+  /** What the inventory knows about an object. */
+  public static class Entry {
+    public final long size;
+    public final long storedAt;
+    private volatile long lastAccess;
+
+    Entry(long size, long storedAt, long lastAccess) {
+      this.size = size;
+      this.storedAt = storedAt;
+      this.lastAccess = lastAccess;
+    }
+
+    /** @return when the object was last downloaded, or stored if it never was. */
+    public long getLastAccess() {
+      return lastAccess;
+    }
+  }
+
+  private final Path file;
+  private final Map<LongObjectId, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong bytes = new AtomicLong();
+  private FileChannel journal;
+  private long records;
+  private volatile boolean accessed;
+  private boolean flushing;
+  private Set<LongObjectId> removedWhileSeeding;
+
+  /**
+   * Open an inventory and replay its journal.
+   *
+   * @param file journal file of the inventory, created if missing.
+   * @throws IOException if the journal cannot be read.
+   */
+  ObjectInventory(Path file) throws IOException {
+    this.file = file;
+    Files.createDirectories(file.getParent());
+    this.journal = FileChannel.open(file, CREATE, READ, WRITE);
+    load();
+  }
+
+  /** @return what the inventory knows about the object, if it holds it. */
+  public Optional<Entry> get(AnyLongObjectId id) {
+    return Optional.ofNullable(entries.get(id.copy()));
+  }
+
+  /** @return the number of objects. */
+  public long count() {
+    return entries.size();
+  }
+
+  /** @return the total size of the objects in bytes. */
+  public long bytes() {
+    return bytes.get();
+  }
+
+  /**
+   * Add an object. Nothing changes if the inventory already holds it.
+   *
+   * @param id id of the object.
+   * @param size size of the object in bytes.
+   * @param storedAt when the object was stored, in milliseconds since the epoch.
+   * @throws IOException if the object cannot be written to the journal.
+   */
+  synchronized void add(AnyLongObjectId id, long size, long storedAt) throws IOException {
+    LongObjectId key = id.copy();
+    if (entries.containsKey(key)
+        || (removedWhileSeeding != null && removedWhileSeeding.contains(key))) {
+      return;
+    }
+    Entry entry = new Entry(size, storedAt, storedAt);
+    ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+    put(buf, key, entry);
+    buf.flip();
+    append(buf, false);
+    entries.put(key, entry);
+    bytes.addAndGet(size);
+  }
+
+  /** Record a download of an object, if the inventory holds it. */
+  void accessed(AnyLongObjectId id, long when) {
+    Entry entry = entries.get(id.copy());
+    if (entry != null && entry.lastAccess < when) {
+      entry.lastAccess = when;
+      accessed = true;
+    }
+  }
+
+  /**
+   * Remove objects. They are dropped from memory even if the journal cannot be written.
+   *
+   * @param ids ids of the objects, those the inventory does not hold are ignored.
+   * @throws IOException if the removal cannot be written to the journal.
+   */
+  synchronized void remove(Collection<? extends AnyLongObjectId> ids) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(ids.size() * RECORD_SIZE);
+    for (AnyLongObjectId id : ids) {
+      LongObjectId key = id.copy();
+      if (removedWhileSeeding != null) {
+        removedWhileSeeding.add(key);
+      }
+      Entry entry = entries.remove(key);
+      if (entry != null) {
+        bytes.addAndGet(-entry.size);
+        put(buf, key, new Entry(REMOVED, 0, 0));
+      }
+    }
+    buf.flip();
+    if (buf.hasRemaining()) {
+      append(buf, true);
+    }
+  }
+
+  /**
+   * Keep track of the removals while the inventory is seeded from a listing of the storage, so that
+   * objects removed after they were listed are not added back.
+   */
+  synchronized void startSeeding() {
+    removedWhileSeeding = new HashSet<>();
+  }
+
+  synchronized void seeded() {
+    removedWhileSeeding = null;
+  }
+
+  /**
+   * Rewrite the journal with one record per object if it holds many stale records, or if objects
+   * were downloaded since it was last written.
+   *
+   * <p>The objects are written without holding the lock of the inventory, so that objects can be
+   * added and removed meanwhile. Those changes are appended to the journal as usual, and copied to
+   * the end of the new journal before it replaces the old one; replaying them again over objects
+   * that were written already is harmless.
+   *
+   * @throws IOException if the journal cannot be rewritten; the old one is kept.
+   */
+  void flush() throws IOException {
+    long start;
+    synchronized (this) {
+      if (flushing || (!accessed && records - entries.size() < MAX_STALE_RECORDS)) {
+        return;
+      }
+      flushing = true;
+      accessed = false;
+      start = journal.size();
+    }
+    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      long written = 0;
+      try (FileChannel out = FileChannel.open(tmp, WRITE)) {
+        // holds all changes made before start, and maybe some made after it
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+        for (Map.Entry<LongObjectId, Entry> e : entries.entrySet()) {
+          buf.clear();
+          put(buf, e.getKey(), e.getValue());
+          buf.flip();
+          while (buf.hasRemaining()) {
+            out.write(buf);
+          }
+          written++;
+        }
+        out.force(false);
+
+        synchronized (this) {
+          long end = journal.size();
+          for (long position = start; position < end; ) {
+            position += journal.transferTo(position, end - position, out);
+          }
+          out.force(false);
+          Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+          journal.close();
+          journal = FileChannel.open(file, CREATE, READ, WRITE);
+          records = written + (end - start) / RECORD_SIZE;
+        }
+      }
+    } catch (IOException e) {
+      accessed = true;
+      Files.deleteIfExists(tmp);
+      throw e;
+    } finally {
+      synchronized (this) {
+        flushing = false;
+      }
+    }
+  }
+
+  /** Force the journal to disk. */
+  synchronized void force() throws IOException {
+    journal.force(false);
+  }
+
+  synchronized void close() {
+    try {
+      flush();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Writing inventory %s failed", file);
+    }
+    try {
+      journal.close();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Closing inventory %s failed", file);
+    }
+  }
+
+  private void load() throws IOException {
+    long size = journal.size();
+    // an incomplete last record was being written when the server stopped
+    long complete = size - size % RECORD_SIZE;
+    ByteBuffer buf = ByteBuffer.allocate(RECORD_SIZE);
+    byte[] raw = new byte[Constants.LONG_OBJECT_ID_LENGTH];
+    for (long position = 0; position < complete; position += RECORD_SIZE) {
+      buf.clear();
+      while (buf.hasRemaining() && journal.read(buf, position + buf.position()) >= 0) {}
+      buf.flip();
+      buf.get(raw);
+      LongObjectId id = LongObjectId.fromRaw(raw);
+      Entry entry = new Entry(buf.getLong(), buf.getLong(), buf.getLong());
+      Entry old = entry.size == REMOVED ? entries.remove(id) : entries.put(id, entry);
+      if (old != null) {
+        bytes.addAndGet(-old.size);
+      }
+      if (entry.size != REMOVED) {
+        bytes.addAndGet(entry.size);
+      }
+    }
+    if (complete < size) {
+      journal.truncate(complete);
+    }
+    records = complete / RECORD_SIZE;
+  }
+
+  private static void put(ByteBuffer buf, LongObjectId id, Entry entry) {
+    id.copyRawTo(buf);
+    buf.putLong(entry.size).putLong(entry.storedAt).putLong(entry.lastAccess);
+  }
+
+  private void append(ByteBuffer buf, boolean force) throws IOException {
+    long start = journal.size();
+    int length = buf.remaining();
+    try {
+      long position = start;
+      while (buf.hasRemaining()) {
+        position += journal.write(buf, position);
+      }
+      if (force) {
+        journal.force(false);
+      }
+    } catch (IOException e) {
+      // keep the records aligned for the next change
+      journal.truncate(start);
+      throw e;
+    }
+    records += length / RECORD_SIZE;
+  }
+}
@@ -47,8 +47,9 @@ public class LfsGetLocksAction extends LfsLocksAction {
       ProjectCache projectCache,
       LfsAuthUserProvider userProvider,
       LfsLocksHandler handler,
+      LfsLocksMetrics metrics,
       @Assisted LfsLocksContext context) {
-    super(permissionBackend, projectCache, userProvider, handler, context);
+    super(permissionBackend, projectCache, userProvider, handler, metrics, context);
   }
 
   @Override
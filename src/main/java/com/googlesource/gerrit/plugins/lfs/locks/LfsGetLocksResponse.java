@@ -14,9 +14,12 @@
 
 package com.googlesource.gerrit.plugins.lfs.locks;
 
+import com.google.gson.stream.JsonWriter;
+import com.googlesource.gerrit.plugins.lfs.LfsGson;
+import java.io.IOException;
 import java.util.Collection;
 
-public class LfsGetLocksResponse {
+public class LfsGetLocksResponse implements LfsGson.StreamingContent {
   public final Collection<LfsLock> locks;
   public final String nextCursor;
 
@@ -24,4 +27,18 @@ public class LfsGetLocksResponse {
     this.locks = locks;
     this.nextCursor = nextCursor;
   }
+
+  @Override
+  public void write(LfsGson gson, JsonWriter out) throws IOException {
+    out.beginObject();
+    out.name("locks").beginArray();
+    for (LfsLock lock : locks) {
+      gson.toJson(lock, LfsLock.class, out);
+    }
+    out.endArray();
+    if (nextCursor != null) {
+      out.name("next_cursor").value(nextCursor);
+    }
+    out.endObject();
+  }
 }
@@ -20,7 +20,7 @@ public class LfsLock {
   public final String lockedAt;
   public final LfsLockOwner owner;
 
-  LfsLock(String id, String path, String lockedAt, LfsLockOwner owner) {
+  public LfsLock(String id, String path, String lockedAt, LfsLockOwner owner) {
     this.id = id;
     this.path = path;
     this.lockedAt = lockedAt;
@@ -0,0 +1,158 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.locks;
+
+import static com.google.gerrit.server.permissions.ProjectPermission.ACCESS;
+import static com.google.gerrit.server.permissions.ProjectPermission.PUSH_AT_LEAST_ONE_REF;
+import static org.apache.http.HttpStatus.SC_CONFLICT;
+import static org.apache.http.HttpStatus.SC_INTERNAL_SERVER_ERROR;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.HttpStatus.SC_UNAUTHORIZED;
+
+import com.google.common.base.Strings;
+import com.google.gerrit.common.Nullable;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.ProjectPermission;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLocksHandler.LfsLockExistsException;
+import java.util.Collection;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsUnauthorized;
+
+/**
+ * Lock operations for callers other than the locks API, such as the {@code git-lfs-transfer} SSH
+ * command. The permissions of the user are checked and the operations are recorded as requests of
+ * the API are.
+ */
+@Singleton
+public class LfsLockOperations {
+  /** The path is locked already. */
+  public static class LockExistsException extends LfsException {
+    private static final long serialVersionUID = 1L;
+
+    public final LfsLock lock;
+
+    public LockExistsException(LfsLock lock) {
+      super("Lock is already created");
+      this.lock = lock;
+    }
+  }
+
+  private interface Operation<T> {
+    T run() throws LfsException;
+  }
+
+  private final PermissionBackend permissionBackend;
+  private final LfsLocksHandler handler;
+  private final LfsLocksMetrics metrics;
+
+  @Inject
+  public LfsLockOperations(
+      PermissionBackend permissionBackend, LfsLocksHandler handler, LfsLocksMetrics metrics) {
+    this.permissionBackend = permissionBackend;
+    this.handler = handler;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Lock a path.
+   *
+   * @return the lock.
+   * @throws LockExistsException if the path is locked already.
+   * @throws LfsException if the user may not push to the project or locking failed.
+   */
+  public LfsLock create(Project.NameKey project, CurrentUser user, String path)
+      throws LfsException {
+    return run(
+        project,
+        user,
+        "create lock",
+        PUSH_AT_LEAST_ONE_REF,
+        () -> handler.createLock(project, user, new LfsCreateLockInput(path)).lock);
+  }
+
+  /**
+   * Unlock a path.
+   *
+   * @param force whether to remove the lock of another user.
+   * @return the removed lock.
+   * @throws LfsException if the user may not push to the project, the lock does not exist or it
+   *     is owned by another user and {@code force} is not set.
+   */
+  public LfsLock delete(Project.NameKey project, CurrentUser user, String id, boolean force)
+      throws LfsException {
+    return run(
+        project,
+        user,
+        "delete lock",
+        PUSH_AT_LEAST_ONE_REF,
+        () -> handler.deleteLock(project, user, id, new LfsDeleteLockInput(force)).lock);
+  }
+
+  /**
+   * List the locks of a project.
+   *
+   * @param path only list the lock of this path, if set.
+   * @param id only list the lock with this id, if set and {@code path} is not.
+   * @return the locks.
+   * @throws LfsException if the user may not access the project.
+   */
+  public Collection<LfsLock> list(
+      Project.NameKey project, CurrentUser user, @Nullable String path, @Nullable String id)
+      throws LfsException {
+    return run(
+        project,
+        user,
+        "list-locks",
+        ACCESS,
+        () -> {
+          if (!Strings.isNullOrEmpty(path)) {
+            return handler.listLocksByPath(project, path).locks;
+          }
+          if (!Strings.isNullOrEmpty(id)) {
+            return handler.listLocksById(project, id).locks;
+          }
+          return handler.listLocks(project).locks;
+        });
+  }
+
+  private <T> T run(
+      Project.NameKey project,
+      CurrentUser user,
+      String action,
+      ProjectPermission permission,
+      Operation<T> operation)
+      throws LfsException {
+    long start = System.nanoTime();
+    int status = SC_INTERNAL_SERVER_ERROR;
+    try {
+      if (!permissionBackend.user(user).project(project).testOrFalse(permission)) {
+        status = SC_UNAUTHORIZED;
+        throw new LfsUnauthorized(action, project.get());
+      }
+      T result = operation.run();
+      status = SC_OK;
+      return result;
+    } catch (LfsLockExistsException e) {
+      status = SC_CONFLICT;
+      throw new LockExistsException(e.lock);
+    } finally {
+      metrics.record(project, action, status, System.nanoTime() - start);
+    }
+  }
+}
@@ -17,7 +17,7 @@ package com.googlesource.gerrit.plugins.lfs.locks;
 public class LfsLockOwner {
   public final String name;
 
-  LfsLockOwner(String name) {
+  public LfsLockOwner(String name) {
     this.name = name;
   }
 }
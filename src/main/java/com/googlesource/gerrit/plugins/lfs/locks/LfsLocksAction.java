@@ -18,6 +18,7 @@ import static com.google.gerrit.extensions.client.ProjectState.HIDDEN;
 import static org.apache.http.HttpStatus.SC_CONFLICT;
 import static org.apache.http.HttpStatus.SC_INTERNAL_SERVER_ERROR;
 import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
 import static org.apache.http.HttpStatus.SC_UNAUTHORIZED;
 import static org.eclipse.jgit.util.HttpSupport.HDR_AUTHORIZATION;
 
@@ -54,24 +55,32 @@ abstract class LfsLocksAction {
   protected final LfsLocksHandler handler;
   protected final LfsLocksContext context;
   protected final PermissionBackend permissionBackend;
+  private final LfsLocksMetrics metrics;
 
   protected LfsLocksAction(
       PermissionBackend permissionBackend,
       ProjectCache projectCache,
       LfsAuthUserProvider userProvider,
       LfsLocksHandler handler,
+      LfsLocksMetrics metrics,
       LfsLocksContext context) {
     this.permissionBackend = permissionBackend;
     this.projectCache = projectCache;
     this.userProvider = userProvider;
     this.handler = handler;
+    this.metrics = metrics;
     this.context = context;
   }
 
   public void run() throws IOException {
+    long start = System.nanoTime();
+    // requests of unknown projects are not recorded as they have no backend
+    Project.NameKey recorded = null;
+    int status = SC_INTERNAL_SERVER_ERROR;
     try {
       String name = getProjectName();
       ProjectState project = getProject(name);
+      recorded = project.getNameKey();
       CurrentUser user = getUser(name);
       Optional<ProjectState> state = projectCache.get(project.getNameKey());
       if (!state.isPresent()) {
@@ -83,14 +92,22 @@ abstract class LfsLocksAction {
         throwUnauthorizedOp(getAction(), project, user);
       }
       doRun(project, user);
+      status = SC_OK;
     } catch (LfsUnauthorized e) {
+      status = SC_UNAUTHORIZED;
       context.sendError(SC_UNAUTHORIZED, e.getMessage());
     } catch (LfsRepositoryNotFound e) {
+      status = SC_NOT_FOUND;
       context.sendError(SC_NOT_FOUND, e.getMessage());
     } catch (LfsLockExistsException e) {
+      status = SC_CONFLICT;
       context.sendError(SC_CONFLICT, e.error);
     } catch (LfsException | StorageException e) {
       context.sendError(SC_INTERNAL_SERVER_ERROR, e.getMessage());
+    } finally {
+      if (recorded != null) {
+        metrics.record(recorded, getAction(), status, System.nanoTime() - start);
+      }
     }
   }
 
@@ -93,6 +93,11 @@ class LfsLocksContext {
     getWriter().flush();
   }
 
+  void sendResponse(LfsGson.StreamingContent content) throws IOException {
+    res.setStatus(SC_OK);
+    gson.toJson(content, getWriter());
+  }
+
   void sendError(int status, String message) throws IOException {
     sendError(status, new Error(message));
   }
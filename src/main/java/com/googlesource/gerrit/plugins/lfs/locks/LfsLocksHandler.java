@@ -14,8 +14,6 @@
 
 package com.googlesource.gerrit.plugins.lfs.locks;
 
-import static java.util.stream.Collectors.groupingBy;
-
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
@@ -29,7 +27,6 @@ import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import org.eclipse.jgit.lfs.errors.LfsException;
 
@@ -39,10 +36,12 @@ class LfsLocksHandler {
     private static final long serialVersionUID = 1L;
 
     public final LfsLocksContext.Error error;
+    final LfsLock lock;
 
     public LfsLockExistsException(LfsLock lock) {
       super("Lock is already created");
       this.error = new LockError(getMessage(), lock);
+      this.lock = lock;
     }
   }
 
@@ -110,10 +109,9 @@ class LfsLocksHandler {
   LfsVerifyLocksResponse verifyLocks(Project.NameKey project, final CurrentUser user) {
     log.atFine().log("Verify list of locks for %s project and user %s", project, user);
     LfsProjectLocks locks = projectLocks.getUnchecked(project);
-    Map<Boolean, List<LfsLock>> groupByOurs =
-        locks.getLocks().stream()
-            .collect(groupingBy(in -> in.owner.name.equals(user.getUserName().get())));
-    return new LfsVerifyLocksResponse(groupByOurs.get(true), groupByOurs.get(false), null);
+    String userName = user.getUserName().get();
+    return new LfsVerifyLocksResponse(
+        locks.getLocks(), lock -> lock.owner.name.equals(userName), null);
   }
 
   LfsGetLocksResponse listLocksByPath(Project.NameKey project, String path) {
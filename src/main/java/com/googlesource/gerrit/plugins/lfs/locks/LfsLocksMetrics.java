@@ -0,0 +1,118 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.locks;
+
+import static org.apache.http.HttpStatus.SC_OK;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.metrics.Counter3;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer2;
+import com.google.gerrit.server.logging.PluginMetadata;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsMetricFields;
+import com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection;
+import com.googlesource.gerrit.plugins.lfs.LfsRepositoryResolver;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
+
+/** Latency and errors of lock requests, by the backend of the project. */
+@Singleton
+class LfsLocksMetrics {
+  /** Returns the name of the backend of a project. */
+  @FunctionalInterface
+  interface BackendResolver {
+    String getBackend(Project.NameKey project) throws LfsRepositoryNotFound;
+  }
+
+  private final BackendResolver backends;
+  private final Timer2<String, String> latency;
+  private final Counter3<String, String, Integer> errors;
+
+  @Inject
+  LfsLocksMetrics(
+      LfsConfigurationFactory configFactory,
+      LfsRepositoryResolver repoResolver,
+      MetricMaker metricMaker) {
+    this(
+        project -> {
+          LfsProjectConfigSection config = configFactory.getProjectsConfig().getForProject(project);
+          return repoResolver
+              .getBackend(project, config != null ? config.getBackend() : null)
+              .name();
+        },
+        metricMaker);
+  }
+
+  @VisibleForTesting
+  LfsLocksMetrics(BackendResolver backends, MetricMaker metricMaker) {
+    this.backends = backends;
+    Field<String> backend = LfsMetricFields.backend();
+    Field<String> action =
+        LfsMetricFields.ofString("action", "Lock action, such as list-locks or create-lock.");
+    this.latency =
+        metricMaker.newTimer(
+            "locks/latency",
+            new Description("Time to answer a lock request")
+                .setCumulative()
+                .setUnit(Description.Units.MILLISECONDS),
+            backend,
+            action);
+    this.errors =
+        metricMaker.newCounter(
+            "locks/errors",
+            new Description("Lock requests answered with an error")
+                .setRate()
+                .setUnit("requests"),
+            backend,
+            action,
+            Field.ofInteger(
+                    "status",
+                    (metadataBuilder, status) ->
+                        metadataBuilder.addPluginMetadata(
+                            PluginMetadata.create("status", String.valueOf(status))))
+                .description("HTTP status of the response.")
+                .build());
+  }
+
+  /**
+   * Record a lock request.
+   *
+   * @param project project of the request.
+   * @param action name of the action.
+   * @param status HTTP status of the response.
+   * @param nanos time taken to answer the request.
+   */
+  void record(Project.NameKey project, String action, int status, long nanos) {
+    String backend;
+    try {
+      backend = backends.getBackend(project);
+    } catch (LfsRepositoryNotFound e) {
+      // misconfigured backend, logged by the resolver
+      return;
+    }
+    // action names are meant for messages and may contain spaces
+    String name = action.replace(' ', '-');
+    latency.record(backend, name, nanos, TimeUnit.NANOSECONDS);
+    if (status != SC_OK) {
+      errors.increment(backend, name, status);
+    }
+  }
+}
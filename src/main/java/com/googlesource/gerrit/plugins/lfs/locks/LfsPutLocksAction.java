@@ -49,8 +49,9 @@ public class LfsPutLocksAction extends LfsLocksAction {
       ProjectCache projectCache,
       LfsAuthUserProvider userProvider,
       LfsLocksHandler handler,
+      LfsLocksMetrics metrics,
       @Assisted LfsLocksContext context) {
-    super(permissionBackend, projectCache, userProvider, handler, context);
+    super(permissionBackend, projectCache, userProvider, handler, metrics, context);
   }
 
   @Override
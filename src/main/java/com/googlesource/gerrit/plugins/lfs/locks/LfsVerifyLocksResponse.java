@@ -14,16 +14,55 @@
 
 package com.googlesource.gerrit.plugins.lfs.locks;
 
+import com.google.gson.stream.JsonWriter;
+import com.googlesource.gerrit.plugins.lfs.LfsGson;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 
-public class LfsVerifyLocksResponse {
-  public final List<LfsLock> ours;
-  public final List<LfsLock> theirs;
+/**
+ * Locks of a project split into the ones owned by the calling user and the others. The split is
+ * done while writing the response, in one pass over the locks, so that a lock that is added or
+ * removed meanwhile is listed once at most.
+ */
+public class LfsVerifyLocksResponse implements LfsGson.StreamingContent {
   public final String nextCursor;
 
-  LfsVerifyLocksResponse(List<LfsLock> ours, List<LfsLock> theirs, String nextCursor) {
-    this.ours = ours;
-    this.theirs = theirs;
+  private final Collection<LfsLock> locks;
+  private final Predicate<LfsLock> isOurs;
+
+  LfsVerifyLocksResponse(Collection<LfsLock> locks, Predicate<LfsLock> isOurs, String nextCursor) {
+    this.locks = locks;
+    this.isOurs = isOurs;
     this.nextCursor = nextCursor;
   }
+
+  @Override
+  public void write(LfsGson gson, JsonWriter out) throws IOException {
+    List<LfsLock> ours = new ArrayList<>();
+    List<LfsLock> theirs = new ArrayList<>();
+    for (LfsLock lock : locks) {
+      (isOurs.test(lock) ? ours : theirs).add(lock);
+    }
+    out.beginObject();
+    out.name("ours");
+    writeLocks(gson, out, ours);
+    out.name("theirs");
+    writeLocks(gson, out, theirs);
+    if (nextCursor != null) {
+      out.name("next_cursor").value(nextCursor);
+    }
+    out.endObject();
+  }
+
+  private static void writeLocks(LfsGson gson, JsonWriter out, List<LfsLock> locks)
+      throws IOException {
+    out.beginArray();
+    for (LfsLock lock : locks) {
+      gson.toJson(lock, LfsLock.class, out);
+    }
+    out.endArray();
+  }
 }
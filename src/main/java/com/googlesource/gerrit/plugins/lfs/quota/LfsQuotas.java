@@ -0,0 +1,177 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.quota;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsInsufficientStorage;
+import org.eclipse.jgit.lfs.errors.LfsUnavailable;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+
+/**
+ * Enforces the storage quotas of projects and namespaces when objects are requested for upload.
+ *
+ * <p>The usage is kept up to date as objects are requested for upload and collected, so a check
+ * only costs a size lookup per object of the request, which the batch handler needs anyway, and map
+ * lookups. Objects requested but never uploaded are discharged by garbage collection.
+ */
+@Singleton
+public class LfsQuotas implements LifecycleListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final String FILE = "usage";
+
+  private final Path file;
+  private volatile ProjectUsage usage;
+
+  @Inject
+  public LfsQuotas(@PluginData Path pluginData) {
+    this.file = pluginData.resolve("quota").resolve(FILE);
+  }
+
+  /**
+   * Charge the objects of an upload request that the backend does not hold yet to a project.
+   *
+   * @param project the project.
+   * @param config configuration of the namespace of the project.
+   * @param backend backend of the project.
+   * @param repository repository of the backend.
+   * @param objects sizes of the objects of the request, by id.
+   * @throws LfsInsufficientStorage if the objects would exceed a quota of the project or of its
+   *     namespace; nothing is charged then.
+   * @throws LfsException if the usage cannot be checked or updated.
+   */
+  public void charge(
+      Project.NameKey project,
+      LfsProjectConfigSection config,
+      LfsBackend backend,
+      LargeFileRepository repository,
+      Map<LongObjectId, Long> objects)
+      throws LfsException {
+    ProjectUsage current = usage;
+    if (current == null) {
+      throw new LfsUnavailable(project.get());
+    }
+
+    Map<LongObjectId, Long> missing = new HashMap<>();
+    try {
+      for (Map.Entry<LongObjectId, Long> object : objects.entrySet()) {
+        if (repository.getSize(object.getKey()) < 0) {
+          missing.put(object.getKey(), object.getValue());
+        }
+      }
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Cannot look up the objects of %s", project.get());
+      throw new LfsException("cannot check the quota of " + project.get());
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+
+    Optional<String> exceeded;
+    try {
+      exceeded =
+          current.charge(
+              project.get(),
+              config.getNamespace(),
+              backend.name(),
+              missing,
+              new ProjectUsage.Limits(
+                  config.getMaxProjectSize(),
+                  config.getMaxProjectObjects(),
+                  config.getMaxNamespaceSize(),
+                  config.getMaxNamespaceObjects()));
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log("Cannot record the usage of %s", project.get());
+      throw new LfsException("cannot check the quota of " + project.get());
+    }
+    if (exceeded.isPresent()) {
+      throw new LfsInsufficientStorage(exceeded.get());
+    }
+  }
+
+  /**
+   * Discharge objects deleted from their backend.
+   *
+   * @param ids ids of the objects.
+   * @throws IOException if the usage cannot be updated.
+   */
+  public void discharge(Collection<LongObjectId> ids) throws IOException {
+    ProjectUsage current = usage;
+    if (current != null) {
+      current.discharge(ids);
+    }
+  }
+
+  /**
+   * @param backend a backend.
+   * @param time a time.
+   * @return ids of the objects charged for the backend before the time.
+   */
+  public Set<LongObjectId> chargedBefore(LfsBackend backend, Instant time) {
+    ProjectUsage current = usage;
+    return current != null ? current.chargedBefore(backend.name(), time) : new HashSet<>();
+  }
+
+  /**
+   * Discharge objects that were charged for a backend before a time but were never stored in it.
+   *
+   * @param backend the backend.
+   * @param ids ids of the objects the backend does not hold.
+   * @param time the time; objects charged later may still be uploading and stay charged.
+   * @return the number of charges discharged.
+   * @throws IOException if the usage cannot be updated.
+   */
+  public int dischargeUnstored(LfsBackend backend, Collection<LongObjectId> ids, Instant time)
+      throws IOException {
+    ProjectUsage current = usage;
+    return current != null ? current.dischargeUnstored(backend.name(), ids, time) : 0;
+  }
+
+  @Override
+  public void start() {
+    try {
+      usage = new ProjectUsage(file);
+    } catch (IOException e) {
+      log.atSevere().withCause(e).log(
+          "Cannot read the LFS usage in %s, uploads to projects with a quota are refused", file);
+    }
+  }
+
+  @Override
+  public void stop() {
+    ProjectUsage current = usage;
+    usage = null;
+    if (current != null) {
+      current.close();
+    }
+  }
+}
@@ -0,0 +1,457 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.quota;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.CountingInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.Constants;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+
+/**
+ * Bytes and objects uploaded to each project and namespace.
+ *
+ * <p>An object is charged to a project when a batch request of the project asks to upload it and
+ * the backend does not hold it yet, and to the namespace the project was in at that time. Charges
+ * are appended to a journal file that is replayed when the usage is opened; objects deleted by
+ * garbage collection are discharged, and so are objects that garbage collection does not find in
+ * the backend they were charged for long after they were charged, as their upload failed or was
+ * abandoned.
+ */
+class ProjectUsage {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final long DISCHARGED = -1;
+  // rewrite the journal on open once it holds this many records more than there are charges
+  private static final long MAX_STALE_RECORDS = 10_000;
+
+  /** Limits of a project and of its namespace, 0 for no limit. */
+  static class Limits {
+    final long maxProjectSize;
+    final long maxProjectObjects;
+    final long maxNamespaceSize;
+    final long maxNamespaceObjects;
+
+    Limits(
+        long maxProjectSize,
+        long maxProjectObjects,
+        long maxNamespaceSize,
+        long maxNamespaceObjects) {
+      this.maxProjectSize = maxProjectSize;
+      this.maxProjectObjects = maxProjectObjects;
+      this.maxNamespaceSize = maxNamespaceSize;
+      this.maxNamespaceObjects = maxNamespaceObjects;
+    }
+  }
+
+  /** Usage of a project or namespace. */
+  static class Totals {
+    long bytes;
+    long objects;
+
+    Totals copy() {
+      Totals copy = new Totals();
+      copy.bytes = bytes;
+      copy.objects = objects;
+      return copy;
+    }
+  }
+
+  private static class Charge {
+    final String namespace;
+    final String backend;
+    final long size;
+    final long chargedAt;
+
+    Charge(String namespace, String backend, long size, long chargedAt) {
+      this.namespace = namespace;
+      this.backend = backend;
+      this.size = size;
+      this.chargedAt = chargedAt;
+    }
+  }
+
+  private final Path file;
+  private final Map<String, Map<LongObjectId, Charge>> charges = new HashMap<>();
+  // projects each object is charged to, so that discharges do not scan all projects
+  private final Map<LongObjectId, Set<String>> chargedTo = new HashMap<>();
+  private final Map<String, Totals> projects = new HashMap<>();
+  private final Map<String, Totals> namespaces = new HashMap<>();
+  private FileChannel journal;
+  private long records;
+
+  /**
+   * Open the usage and replay its journal.
+   *
+   * @param file journal file, created if missing.
+   * @throws IOException if the journal cannot be read.
+   */
+  ProjectUsage(Path file) throws IOException {
+    this.file = file;
+    Files.createDirectories(file.getParent());
+    load();
+    this.journal = FileChannel.open(file, CREATE, READ, WRITE);
+    if (records - charged() > MAX_STALE_RECORDS) {
+      compact();
+    }
+  }
+
+  /** @return the usage of a project. */
+  synchronized Totals forProject(String project) {
+    return projects.getOrDefault(project, new Totals()).copy();
+  }
+
+  /** @return the usage of a namespace. */
+  synchronized Totals forNamespace(String namespace) {
+    return namespaces.getOrDefault(namespace, new Totals()).copy();
+  }
+
+  /**
+   * Charge objects to a project unless that exceeds a limit.
+   *
+   * @param project name of the project.
+   * @param namespace namespace of the project.
+   * @param backend name of the backend the objects are uploaded to.
+   * @param objects sizes of the objects by id; those already charged to the project with the same
+   *     size are skipped, those charged with another size are charged again with the new one.
+   * @param limits limits of the project and namespace.
+   * @return the limit that would be exceeded, or empty if the objects were charged.
+   * @throws IOException if the charges cannot be written to the journal.
+   */
+  synchronized Optional<String> charge(
+      String project,
+      String namespace,
+      String backend,
+      Map<LongObjectId, Long> objects,
+      Limits limits)
+      throws IOException {
+    Map<LongObjectId, Charge> charged = charges.getOrDefault(project, new HashMap<>());
+    Map<LongObjectId, Long> uncharged = new HashMap<>();
+    Totals added = new Totals();
+    for (Map.Entry<LongObjectId, Long> e : objects.entrySet()) {
+      Charge old = charged.get(e.getKey());
+      if (old == null) {
+        uncharged.put(e.getKey(), e.getValue());
+        added.bytes += e.getValue();
+        added.objects++;
+      } else if (old.size != e.getValue()) {
+        // the size of an object is only known once it is uploaded, so trust the latest request
+        uncharged.put(e.getKey(), e.getValue());
+        added.bytes += e.getValue() - old.size;
+      }
+    }
+    if (uncharged.isEmpty()) {
+      return Optional.empty();
+    }
+
+    Optional<String> exceeded =
+        exceeded(
+            "project " + project,
+            projects.get(project),
+            added,
+            limits.maxProjectSize,
+            limits.maxProjectObjects);
+    if (!exceeded.isPresent()) {
+      exceeded =
+          exceeded(
+              "namespace " + namespace,
+              namespaces.get(namespace),
+              added,
+              limits.maxNamespaceSize,
+              limits.maxNamespaceObjects);
+    }
+    if (exceeded.isPresent()) {
+      return exceeded;
+    }
+
+    long now = System.currentTimeMillis();
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buf);
+    for (Map.Entry<LongObjectId, Long> e : uncharged.entrySet()) {
+      write(out, project, e.getKey(), new Charge(namespace, backend, e.getValue(), now));
+    }
+    append(buf.toByteArray(), uncharged.size());
+    uncharged.forEach((id, size) -> apply(project, id, new Charge(namespace, backend, size, now)));
+    return Optional.empty();
+  }
+
+  /**
+   * @param backend name of a backend.
+   * @param time a time.
+   * @return ids of the objects charged for the backend before the time.
+   */
+  synchronized Set<LongObjectId> chargedBefore(String backend, Instant time) {
+    Set<LongObjectId> ids = new HashSet<>();
+    for (Map<LongObjectId, Charge> charged : charges.values()) {
+      charged.forEach(
+          (id, c) -> {
+            if (c.backend.equals(backend) && c.chargedAt < time.toEpochMilli()) {
+              ids.add(id);
+            }
+          });
+    }
+    return ids;
+  }
+
+  /**
+   * Discharge objects charged for a backend before a time that the backend does not hold.
+   *
+   * @param backend name of the backend.
+   * @param ids ids of the objects the backend does not hold.
+   * @param time the time; charges made later are kept, as their upload may still be running.
+   * @return the number of charges discharged.
+   * @throws IOException if the discharges cannot be written to the journal.
+   */
+  synchronized int dischargeUnstored(
+      String backend, Collection<? extends AnyLongObjectId> ids, Instant time) throws IOException {
+    Map<String, Set<LongObjectId>> stale = new HashMap<>();
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buf);
+    int count = 0;
+    for (AnyLongObjectId id : ids) {
+      LongObjectId key = id.copy();
+      for (String project : chargedTo.getOrDefault(key, Collections.emptySet())) {
+        Charge c = charges.get(project).get(key);
+        if (c.backend.equals(backend) && c.chargedAt < time.toEpochMilli()) {
+          stale.computeIfAbsent(project, p -> new HashSet<>()).add(key);
+          write(out, project, key, null);
+          count++;
+        }
+      }
+    }
+    if (count == 0) {
+      return 0;
+    }
+    append(buf.toByteArray(), count);
+    stale.forEach((project, keys) -> keys.forEach(key -> apply(project, key, null)));
+    return count;
+  }
+
+  /**
+   * Discharge deleted objects from all projects.
+   *
+   * @param ids ids of the objects.
+   * @throws IOException if the discharges cannot be written to the journal.
+   */
+  synchronized void discharge(Collection<? extends AnyLongObjectId> ids) throws IOException {
+    Map<String, Set<LongObjectId>> deleted = new HashMap<>();
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buf);
+    int count = 0;
+    for (AnyLongObjectId id : ids) {
+      LongObjectId key = id.copy();
+      for (String project : chargedTo.getOrDefault(key, Collections.emptySet())) {
+        deleted.computeIfAbsent(project, p -> new HashSet<>()).add(key);
+        write(out, project, key, null);
+        count++;
+      }
+    }
+    if (count == 0) {
+      return;
+    }
+    append(buf.toByteArray(), count);
+    deleted.forEach((project, keys) -> keys.forEach(key -> apply(project, key, null)));
+  }
+
+  synchronized void close() {
+    try {
+      journal.close();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log("Closing usage journal %s failed", file);
+    }
+  }
+
+  private static Optional<String> exceeded(
+      String scope, Totals used, Totals added, long maxSize, long maxObjects) {
+    long bytes = (used != null ? used.bytes : 0) + added.bytes;
+    long objects = (used != null ? used.objects : 0) + added.objects;
+    if (maxSize > 0 && bytes > maxSize) {
+      return Optional.of(
+          String.format(
+              "size quota of %s exceeded: %d bytes with this upload, limit is %d bytes",
+              scope, bytes, maxSize));
+    }
+    if (maxObjects > 0 && objects > maxObjects) {
+      return Optional.of(
+          String.format(
+              "object quota of %s exceeded: %d objects with this upload, limit is %d objects",
+              scope, objects, maxObjects));
+    }
+    return Optional.empty();
+  }
+
+  /** Apply a charge to a project, replacing its previous charge of the object; null discharges. */
+  private void apply(String project, LongObjectId id, Charge charge) {
+    Map<LongObjectId, Charge> charged = charges.computeIfAbsent(project, p -> new HashMap<>());
+    Charge old = charged.remove(id);
+    if (old != null) {
+      add(projects, project, -old.size, -1);
+      add(namespaces, old.namespace, -old.size, -1);
+    }
+    if (charge != null) {
+      charged.put(id, charge);
+      add(projects, project, charge.size, 1);
+      add(namespaces, charge.namespace, charge.size, 1);
+      if (old == null) {
+        chargedTo.computeIfAbsent(id, i -> new HashSet<>(2)).add(project);
+      }
+    } else if (old != null) {
+      Set<String> owners = chargedTo.get(id);
+      owners.remove(project);
+      if (owners.isEmpty()) {
+        chargedTo.remove(id);
+      }
+    }
+    if (charged.isEmpty()) {
+      charges.remove(project);
+    }
+  }
+
+  private static void add(Map<String, Totals> totals, String key, long bytes, long objects) {
+    Totals t = totals.computeIfAbsent(key, k -> new Totals());
+    t.bytes += bytes;
+    t.objects += objects;
+    if (t.objects == 0) {
+      totals.remove(key);
+    }
+  }
+
+  private long charged() {
+    return charges.values().stream().mapToLong(Map::size).sum();
+  }
+
+  private void load() throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    long complete = 0;
+    try (CountingInputStream counted =
+            new CountingInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        DataInputStream in = new DataInputStream(counted)) {
+      while (true) {
+        String project;
+        try {
+          project = in.readUTF();
+        } catch (EOFException e) {
+          break;
+        }
+        String namespace;
+        String backend;
+        byte[] raw = new byte[Constants.LONG_OBJECT_ID_LENGTH];
+        long size;
+        long chargedAt;
+        try {
+          namespace = in.readUTF();
+          backend = in.readUTF();
+          in.readFully(raw);
+          size = in.readLong();
+          chargedAt = in.readLong();
+        } catch (EOFException e) {
+          // an incomplete last record was being written when the server stopped
+          break;
+        }
+        apply(
+            project,
+            LongObjectId.fromRaw(raw),
+            size != DISCHARGED ? new Charge(namespace, backend, size, chargedAt) : null);
+        complete = counted.getCount();
+        records++;
+      }
+    }
+    if (complete < Files.size(file)) {
+      try (FileChannel channel = FileChannel.open(file, WRITE)) {
+        channel.truncate(complete);
+      }
+    }
+  }
+
+  /** Write the record of a charge of an object to a project; null for a discharge. */
+  private static void write(DataOutputStream out, String project, LongObjectId id, Charge charge)
+      throws IOException {
+    out.writeUTF(project);
+    out.writeUTF(charge != null ? charge.namespace : "");
+    out.writeUTF(charge != null ? charge.backend : "");
+    byte[] raw = new byte[Constants.LONG_OBJECT_ID_LENGTH];
+    id.copyRawTo(raw, 0);
+    out.write(raw);
+    out.writeLong(charge != null ? charge.size : DISCHARGED);
+    out.writeLong(charge != null ? charge.chargedAt : 0);
+  }
+
+  private void append(byte[] data, int count) throws IOException {
+    long start = journal.size();
+    try {
+      ByteBuffer buf = ByteBuffer.wrap(data);
+      long position = start;
+      while (buf.hasRemaining()) {
+        position += journal.write(buf, position);
+      }
+      journal.force(false);
+    } catch (IOException e) {
+      // keep the records complete for the next change
+      journal.truncate(start);
+      throw e;
+    }
+    records += count;
+  }
+
+  private void compact() throws IOException {
+    Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        for (Map.Entry<String, Map<LongObjectId, Charge>> p : charges.entrySet()) {
+          for (Map.Entry<LongObjectId, Charge> c : p.getValue().entrySet()) {
+            write(out, p.getKey(), c.getKey(), c.getValue());
+          }
+        }
+      }
+      try (FileChannel channel = FileChannel.open(tmp, WRITE)) {
+        channel.force(false);
+      }
+      Files.move(tmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmp);
+      throw e;
+    }
+    journal.close();
+    journal = FileChannel.open(file, CREATE, READ, WRITE);
+    records = charged();
+  }
+}
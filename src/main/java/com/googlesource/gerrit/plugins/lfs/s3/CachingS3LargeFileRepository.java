@@ -0,0 +1,266 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.s3;
+
+import static java.util.Comparator.comparing;
+
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.ByteStreams;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import com.googlesource.gerrit.plugins.lfs.fs.LocalLargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.s3.S3Caches.Lookup;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lfs.internal.AtomicObjectOutputStream;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+
+/**
+ * S3 backend with a size-bounded local cache of downloaded objects.
+ *
+ * <p>Objects found in the cache are served by the file system content servlet of the cache. Other
+ * downloads are sent to S3, and the object is copied into the cache in the background so that later
+ * downloads hit. Concurrent misses of an object share a single copy. Uploads always go to S3.
+ *
+ * <p>Objects handed out as hits stay on disk until their download action expired, even if they are
+ * evicted meanwhile.
+ */
+public class CachingS3LargeFileRepository implements LargeFileRepository, LfsObjectStore {
+  public interface Factory {
+    CachingS3LargeFileRepository create(
+        LfsBackend backend, S3LargeFileRepository s3, LocalLargeFileRepository local);
+  }
+
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String KEY_CACHE_SIZE = "cacheSize";
+  static final String KEY_FILL_THREADS = "cacheFillThreads";
+  private static final long DEFAULT_CACHE_SIZE = 10L << 30;
+  private static final int DEFAULT_FILL_THREADS = 2;
+
+  private final S3Caches caches;
+  private final LfsBackend backend;
+  private final S3LargeFileRepository s3;
+  private final LocalLargeFileRepository local;
+  private final LocalObjectCache index;
+  private final ExecutorService fillExecutor;
+  private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  CachingS3LargeFileRepository(
+      LfsConfigurationFactory configFactory,
+      S3Caches caches,
+      @Assisted LfsBackend backend,
+      @Assisted S3LargeFileRepository s3,
+      @Assisted LocalLargeFileRepository local) {
+    this.caches = caches;
+    this.backend = backend;
+    this.s3 = s3;
+    this.local = local;
+
+    LfsGlobalConfig config = configFactory.getGlobalConfig();
+    String section = backend.type.name();
+    this.index =
+        new LocalObjectCache(
+            config.getLong(section, backend.name, KEY_CACHE_SIZE, DEFAULT_CACHE_SIZE));
+    int fillThreads = config.getInt(section, backend.name, KEY_FILL_THREADS, DEFAULT_FILL_THREADS);
+    this.fillExecutor = caches.newFillExecutor(backend, Math.max(1, fillThreads));
+    fillExecutor.execute(this::load);
+  }
+
+  @Override
+  public Response.Action getDownloadAction(AnyLongObjectId id) {
+    String name = id.getName();
+    // the file must outlive the action handed out for it
+    long until = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(local.getExpiresIn() + 1);
+    if (index.pin(name, until)) {
+      if (Files.isRegularFile(local.getPath(id))) {
+        caches.lookup(backend, Lookup.HIT);
+        return local.getDownloadAction(id);
+      }
+      index.remove(name);
+    }
+    caches.lookup(backend, Lookup.MISS);
+    fill(id);
+    return s3.getDownloadAction(id);
+  }
+
+  @Override
+  public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+    return s3.getUploadAction(id, size);
+  }
+
+  @Override
+  public Response.Action getVerifyAction(AnyLongObjectId id) {
+    return s3.getVerifyAction(id);
+  }
+
+  @Override
+  public long getSize(AnyLongObjectId id) throws IOException {
+    if (index.contains(id.getName())) {
+      long size = local.getSize(id);
+      if (size >= 0) {
+        return size;
+      }
+    }
+    return s3.getSize(id);
+  }
+
+  @Override
+  public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+    s3.list(prefix, consumer);
+  }
+
+  @Override
+  public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+    String name = id.getName();
+    if (index.touch(name)) {
+      try {
+        Optional<InputStream> cached = local.open(id);
+        caches.lookup(backend, Lookup.HIT);
+        return cached;
+      } catch (NoSuchFileException e) {
+        index.remove(name);
+      }
+    }
+    caches.lookup(backend, Lookup.MISS);
+    fill(id);
+    return s3.open(id);
+  }
+
+  @Override
+  public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    return s3.store(id, size, content);
+  }
+
+  @Override
+  public void delete(Collection<LongObjectId> ids) throws IOException {
+    s3.delete(ids);
+    for (LongObjectId id : ids) {
+      index.remove(id.getName());
+      delete(id.getName());
+    }
+  }
+
+  private void fill(AnyLongObjectId id) {
+    String name = id.getName();
+    if (!filling.add(name)) {
+      return;
+    }
+    LongObjectId copy = id.copy();
+    try {
+      fillExecutor.execute(
+          () -> {
+            try {
+              fetch(copy);
+            } catch (IOException | RuntimeException e) {
+              caches.fillFailed(backend);
+              log.atWarning().withCause(e).log(
+                  "Cannot copy object %s of backend %s into the cache", name, backend.name());
+            } finally {
+              filling.remove(name);
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      filling.remove(name);
+    }
+  }
+
+  private void fetch(AnyLongObjectId id) throws IOException {
+    Path path = local.getPath(id);
+    if (!Files.isRegularFile(path)) {
+      if (!index.fits(s3.getSize(id))) {
+        return;
+      }
+      Files.createDirectories(path.getParent());
+      AtomicObjectOutputStream out = new AtomicObjectOutputStream(path, id);
+      try (InputStream in = s3.openObject(id)) {
+        ByteStreams.copy(in, out);
+        out.close();
+      } catch (IOException | RuntimeException e) {
+        out.abort();
+        throw e;
+      }
+    }
+    add(id.getName(), Files.size(path));
+  }
+
+  /** Index the objects left in the cache directory, oldest first. */
+  private void load() {
+    try {
+      Map<Path, FileTime> objects =
+          local.listObjects().stream().collect(Collectors.toMap(p -> p, this::lastModified));
+      objects.entrySet().stream()
+          .sorted(comparing(Map.Entry::getValue))
+          .forEach(e -> add(e.getKey().getFileName().toString(), e.getKey().toFile().length()));
+      log.atInfo().log(
+          "Indexed %d objects (%d bytes) in the cache of backend %s",
+          index.size(), index.totalBytes(), backend.name());
+    } catch (IOException | RuntimeException e) {
+      log.atWarning().withCause(e).log("Cannot index the cache of backend %s", backend.name());
+    }
+  }
+
+  private FileTime lastModified(Path path) {
+    try {
+      return Files.getLastModifiedTime(path);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  private void add(String name, long size) {
+    if (!index.fits(size)) {
+      delete(name);
+      return;
+    }
+    List<String> evicted = index.add(name, size);
+    evicted.addAll(index.releaseExpired());
+    for (String e : evicted) {
+      delete(e);
+      caches.evicted(backend);
+    }
+  }
+
+  private void delete(String name) {
+    try {
+      Files.deleteIfExists(local.getPath(LongObjectId.fromString(name)));
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log(
+          "Cannot delete object %s from the cache of backend %s", name, backend.name());
+    }
+  }
+}
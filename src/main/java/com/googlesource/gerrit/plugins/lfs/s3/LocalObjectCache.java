@@ -0,0 +1,166 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.s3;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+
+/**
+ * Size-bounded index of the objects in a local cache directory, least recently used first.
+ *
+ * <p>The index only decides what to evict; deleting the files of evicted objects is up to the
+ * caller. Objects whose download was handed out can be pinned until the download action expires: if
+ * they are evicted meanwhile, their file is only returned for deletion once the pin expired, so the
+ * cache directory may exceed its size by the objects handed out recently.
+ */
+class LocalObjectCache {
+  private final long maxBytes;
+  private final LongSupplier clock;
+  private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+  // pinned until, in milliseconds since the epoch
+  private final Map<String, Long> pins = new HashMap<>();
+  // evicted while pinned, deleted once the pin expired
+  private final Set<String> retained = new HashSet<>();
+  private long totalBytes;
+
+  LocalObjectCache(long maxBytes) {
+    this(maxBytes, System::currentTimeMillis);
+  }
+
+  @VisibleForTesting
+  LocalObjectCache(long maxBytes, LongSupplier clock) {
+    this.maxBytes = maxBytes;
+    this.clock = clock;
+  }
+
+  /**
+   * Look up an object and mark it as most recently used.
+   *
+   * @param name id of the object.
+   * @return whether the object is cached.
+   */
+  synchronized boolean touch(String name) {
+    return sizes.get(name) != null;
+  }
+
+  /**
+   * Look up an object, mark it as most recently used and keep its file until a time.
+   *
+   * @param name id of the object.
+   * @param untilMillis when the file may be deleted, in milliseconds since the epoch.
+   * @return whether the object is cached.
+   */
+  synchronized boolean pin(String name, long untilMillis) {
+    if (sizes.get(name) == null) {
+      return false;
+    }
+    pins.merge(name, untilMillis, Math::max);
+    return true;
+  }
+
+  /** @return whether the object is cached, without changing its position. */
+  synchronized boolean contains(String name) {
+    return sizes.containsKey(name);
+  }
+
+  /** @return whether an object of this size can be cached at all. */
+  boolean fits(long size) {
+    return size <= maxBytes;
+  }
+
+  /**
+   * Add an object as the most recently used one.
+   *
+   * @param name id of the object.
+   * @param size size of the object in bytes.
+   * @return the ids of the objects evicted to make room whose file can be deleted, least recently
+   *     used first.
+   */
+  synchronized List<String> add(String name, long size) {
+    retained.remove(name);
+    Long previous = sizes.put(name, size);
+    totalBytes += size - (previous != null ? previous : 0);
+    List<String> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, Long>> it = sizes.entrySet().iterator();
+    while (totalBytes > maxBytes && it.hasNext()) {
+      Map.Entry<String, Long> e = it.next();
+      if (e.getKey().equals(name)) {
+        continue;
+      }
+      totalBytes -= e.getValue();
+      it.remove();
+      if (isPinned(e.getKey())) {
+        retained.add(e.getKey());
+      } else {
+        evicted.add(e.getKey());
+      }
+    }
+    return evicted;
+  }
+
+  /** @return the ids of objects evicted while pinned whose pin expired, forgetting them. */
+  synchronized List<String> releaseExpired() {
+    long now = clock.getAsLong();
+    List<String> released = new ArrayList<>();
+    Iterator<Map.Entry<String, Long>> it = pins.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Long> e = it.next();
+      if (e.getValue() <= now) {
+        it.remove();
+        if (retained.remove(e.getKey())) {
+          released.add(e.getKey());
+        }
+      }
+    }
+    return released;
+  }
+
+  private boolean isPinned(String name) {
+    Long until = pins.get(name);
+    return until != null && until > clock.getAsLong();
+  }
+
+  /**
+   * Forget an object whose file disappeared.
+   *
+   * @param name id of the object.
+   */
+  synchronized void remove(String name) {
+    pins.remove(name);
+    retained.remove(name);
+    Long size = sizes.remove(name);
+    if (size != null) {
+      totalBytes -= size;
+    }
+  }
+
+  /** @return the total size of the cached objects in bytes. */
+  synchronized long totalBytes() {
+    return totalBytes;
+  }
+
+  /** @return the number of cached objects. */
+  synchronized int size() {
+    return sizes.size();
+  }
+}
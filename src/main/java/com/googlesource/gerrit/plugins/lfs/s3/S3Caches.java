@@ -0,0 +1,106 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.s3;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Counter2;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsMetricFields;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/** Fill executors and metrics shared by the {@code S3CACHE} backends. */
+@Singleton
+public class S3Caches implements LifecycleListener {
+  enum Lookup {
+    HIT,
+    MISS
+  }
+
+  private final List<ExecutorService> executors = new CopyOnWriteArrayList<>();
+  private final Counter2<String, Lookup> lookups;
+  private final Counter1<String> evictions;
+  private final Counter1<String> fillFailures;
+
+  @Inject
+  S3Caches(MetricMaker metricMaker) {
+    Field<String> backend = LfsMetricFields.backend();
+    this.lookups =
+        metricMaker.newCounter(
+            "s3cache/lookups",
+            new Description("Downloads looked up in the local cache; hit ratio is HIT / total")
+                .setRate()
+                .setUnit("lookups"),
+            backend,
+            LfsMetricFields.ofEnum(
+                Lookup.class, "result", "Whether the object was served from the local cache."));
+    this.evictions =
+        metricMaker.newCounter(
+            "s3cache/evictions",
+            new Description("Objects evicted from the local cache").setRate().setUnit("objects"),
+            backend);
+    this.fillFailures =
+        metricMaker.newCounter(
+            "s3cache/fill_failures",
+            new Description("Objects that could not be copied from S3 into the local cache")
+                .setRate()
+                .setUnit("objects"),
+            backend);
+  }
+
+  ExecutorService newFillExecutor(LfsBackend backend, int threads) {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            threads,
+            new ThreadFactoryBuilder()
+                .setNameFormat("LFS-cache-fill-" + backend.name() + "-%d")
+                .setDaemon(true)
+                .build());
+    executors.add(executor);
+    return executor;
+  }
+
+  void lookup(LfsBackend backend, Lookup result) {
+    lookups.increment(backend.name(), result);
+  }
+
+  void evicted(LfsBackend backend) {
+    evictions.increment(backend.name());
+  }
+
+  void fillFailed(LfsBackend backend) {
+    fillFailures.increment(backend.name());
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    for (ExecutorService executor : executors) {
+      executor.shutdownNow();
+    }
+    executors.clear();
+  }
+}
@@ -14,24 +14,368 @@
 
 package com.googlesource.gerrit.plugins.lfs.s3;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.google.common.xml.XmlEscapers;
 import com.google.inject.Inject;
 import com.google.inject.assistedinject.Assisted;
 import com.googlesource.gerrit.plugins.lfs.LfsBackend;
 import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
 import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.ProxySelector;
+import java.net.URL;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.Response;
 import org.eclipse.jgit.lfs.server.s3.S3Config;
 import org.eclipse.jgit.lfs.server.s3.S3Repository;
+import org.eclipse.jgit.transport.HttpTransport;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.util.HttpSupport;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
-public class S3LargeFileRepository extends S3Repository {
+public class S3LargeFileRepository extends S3Repository implements LfsObjectStore {
   public interface Factory {
     S3LargeFileRepository create(LfsBackend backendConfig);
   }
 
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final int TIMEOUT_MILLIS = 60_000;
+  // S3 takes up to 10000 parts, so objects of up to 5 TB
+  private static final long PART_SIZE = 512 * 1024 * 1024;
+
+  private final S3Config s3Config;
+  private final boolean disableSslVerify;
+  private final S3RequestSigner signer;
+
   @Inject
   S3LargeFileRepository(LfsConfigurationFactory configFactory, @Assisted LfsBackend backendConfig) {
-    super(getS3Config(configFactory.getGlobalConfig(), backendConfig));
+    this(
+        getS3Config(configFactory.getGlobalConfig(), backendConfig),
+        configFactory
+            .getGlobalConfig()
+            .getBoolean(backendConfig.type.name(), backendConfig.name, "disableSslVerify", false));
+  }
+
+  private S3LargeFileRepository(S3Config s3Config, boolean disableSslVerify) {
+    super(s3Config);
+    this.s3Config = s3Config;
+    this.disableSslVerify = disableSslVerify;
+    this.signer =
+        new S3RequestSigner(s3Config.getAccessKey(), s3Config.getSecretKey(), s3Config.getRegion());
+  }
+
+  /**
+   * Open the content of an object in the bucket.
+   *
+   * @param id the object.
+   * @return the content; closing it releases the connection.
+   * @throws NoSuchFileException if the object does not exist.
+   * @throws IOException if the object cannot be read.
+   */
+  public InputStream openObject(AnyLongObjectId id) throws IOException {
+    HttpConnection c = connect(getDownloadAction(id), "GET");
+    int status = c.getResponseCode();
+    if (status == HttpConnection.HTTP_NOT_FOUND) {
+      throw new NoSuchFileException(id.getName());
+    }
+    if (status != HttpConnection.HTTP_OK) {
+      throw new IOException(
+          String.format("Reading %s from S3 failed with status %d", id.getName(), status));
+    }
+    return c.getInputStream();
+  }
+
+  @Override
+  public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+    return Optional.of(openObject(id));
+  }
+
+  /**
+   * Store an object through the connection settings of the backend, with a single request, or a
+   * multipart upload if it is larger than 2 GiB.
+   *
+   * @return whether the object was stored, always.
+   */
+  @Override
+  public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      storeInParts(id, size, content);
+      return true;
+    }
+    HttpConnection c = connect(getUploadAction(id, size), "PUT");
+    c.setDoOutput(true);
+    c.setFixedLengthStreamingMode((int) size);
+    try (OutputStream out = c.getOutputStream()) {
+      ByteStreams.copy(content, out);
+    }
+    int status = c.getResponseCode();
+    if (status != HttpConnection.HTTP_OK) {
+      throw new IOException(
+          String.format("Writing %s to S3 failed with status %d", id.getName(), status));
+    }
+    return true;
+  }
+
+  /**
+   * Store an object with a multipart upload, whose parts fit the {@code int} length of a
+   * connection. The parts are not signed, so unlike a single upload S3 does not check the content
+   * against the id; it is hashed here instead, and the upload is aborted if it does not match.
+   */
+  private void storeInParts(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    URL url = bucketUrl(id.getName());
+    String uploadId = initiateMultipartUpload(url);
+    try {
+      HashingInputStream hashed = new HashingInputStream(Hashing.sha256(), content);
+      StringBuilder completion = new StringBuilder("<CompleteMultipartUpload>");
+      int partNumber = 0;
+      for (long offset = 0; offset < size; offset += PART_SIZE) {
+        partNumber++;
+        int partSize = (int) Math.min(PART_SIZE, size - offset);
+        HttpConnection c =
+            connectSigned(
+                "PUT",
+                url,
+                ImmutableMap.of("partNumber", Integer.toString(partNumber), "uploadId", uploadId),
+                ImmutableMap.of(),
+                S3RequestSigner.UNSIGNED_PAYLOAD);
+        c.setDoOutput(true);
+        c.setFixedLengthStreamingMode(partSize);
+        try (OutputStream out = c.getOutputStream()) {
+          if (ByteStreams.copy(ByteStreams.limit(hashed, partSize), out) != partSize) {
+            throw new IOException(
+                String.format("Content of %s is shorter than %d bytes", id.getName(), size));
+          }
+        }
+        int status = c.getResponseCode();
+        if (status != HttpConnection.HTTP_OK) {
+          throw new IOException(
+              String.format(
+                  "Writing part %d of %s to S3 failed with status %d",
+                  partNumber, id.getName(), status));
+        }
+        completion
+            .append("<Part><PartNumber>")
+            .append(partNumber)
+            .append("</PartNumber><ETag>")
+            .append(XmlEscapers.xmlContentEscaper().escape(c.getHeaderField("ETag")))
+            .append("</ETag></Part>");
+      }
+      if (hashed.read() != -1) {
+        throw new IOException(
+            String.format("Content of %s is longer than %d bytes", id.getName(), size));
+      }
+      String hash = hashed.hash().toString();
+      if (!hash.equals(id.getName())) {
+        throw new IOException(String.format("Content of %s has id %s", id.getName(), hash));
+      }
+      completeMultipartUpload(
+          url, uploadId, completion.append("</CompleteMultipartUpload>").toString());
+    } catch (IOException e) {
+      try {
+        HttpConnection c = connectSigned("DELETE", url, ImmutableMap.of("uploadId", uploadId));
+        c.getResponseCode();
+      } catch (IOException abortFailure) {
+        e.addSuppressed(abortFailure);
+      }
+      throw e;
+    }
+    log.atFine().log(
+        "Stored %s in %d parts in bucket %s",
+        id.getName(), (size + PART_SIZE - 1) / PART_SIZE, s3Config.getBucket());
+  }
+
+  private String initiateMultipartUpload(URL url) throws IOException {
+    HttpConnection c =
+        connectSigned(
+            "POST",
+            url,
+            ImmutableMap.of("uploads", ""),
+            ImmutableMap.of("x-amz-storage-class", s3Config.getStorageClass()),
+            S3RequestSigner.EMPTY_PAYLOAD);
+    int status = c.getResponseCode();
+    if (status != HttpConnection.HTTP_OK) {
+      throw new IOException(
+          String.format("Starting upload of %s to S3 failed with status %d", url, status));
+    }
+    try (InputStream in = c.getInputStream()) {
+      return text(parse(in).getDocumentElement(), "UploadId");
+    }
+  }
+
+  private void completeMultipartUpload(URL url, String uploadId, String completion)
+      throws IOException {
+    byte[] body = completion.getBytes(UTF_8);
+    HttpConnection c =
+        connectSigned(
+            "POST",
+            url,
+            ImmutableMap.of("uploadId", uploadId),
+            ImmutableMap.of(),
+            Hashing.sha256().hashBytes(body).toString());
+    c.setDoOutput(true);
+    c.setFixedLengthStreamingMode(body.length);
+    try (OutputStream out = c.getOutputStream()) {
+      out.write(body);
+    }
+    int status = c.getResponseCode();
+    Document result = null;
+    if (status == HttpConnection.HTTP_OK) {
+      try (InputStream in = c.getInputStream()) {
+        result = parse(in);
+      }
+    }
+    // S3 reports errors that occur after it started to respond in a body with status 200
+    if (result == null || result.getDocumentElement().getTagName().equals("Error")) {
+      throw new IOException(
+          String.format("Completing upload of %s to S3 failed with status %d", url, status));
+    }
+  }
+
+  /** List the objects of the bucket, a page of up to 1000 objects per request. */
+  @Override
+  public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+    String continuationToken = null;
+    do {
+      Map<String, String> query = new HashMap<>();
+      query.put("list-type", "2");
+      if (!prefix.isEmpty()) {
+        query.put("prefix", prefix);
+      }
+      if (continuationToken != null) {
+        query.put("continuation-token", continuationToken);
+      }
+      HttpConnection c = connectSigned("GET", bucketUrl(""), query);
+      int status = c.getResponseCode();
+      if (status != HttpConnection.HTTP_OK) {
+        throw new IOException(
+            String.format("Listing bucket %s failed with status %d", s3Config.getBucket(), status));
+      }
+      Document page;
+      try (InputStream in = c.getInputStream()) {
+        page = parse(in);
+      }
+      NodeList contents = page.getElementsByTagName("Contents");
+      for (int i = 0; i < contents.getLength(); i++) {
+        Element object = (Element) contents.item(i);
+        String key = text(object, "Key");
+        // the bucket may hold other data, only objects are stored under their id
+        if (LongObjectId.isId(key)) {
+          consumer.accept(
+              new StoredObject(
+                  LongObjectId.fromString(key),
+                  Long.parseLong(text(object, "Size")),
+                  Instant.parse(text(object, "LastModified"))));
+        }
+      }
+      continuationToken =
+          Boolean.parseBoolean(text(page.getDocumentElement(), "IsTruncated"))
+              ? text(page.getDocumentElement(), "NextContinuationToken")
+              : null;
+    } while (continuationToken != null);
+  }
+
+  @Override
+  public void delete(Collection<LongObjectId> ids) throws IOException {
+    for (LongObjectId id : ids) {
+      HttpConnection c = connectSigned("DELETE", bucketUrl(id.getName()), ImmutableMap.of());
+      int status = c.getResponseCode();
+      if (status != HttpURLConnection.HTTP_NO_CONTENT
+          && status != HttpConnection.HTTP_OK
+          && status != HttpConnection.HTTP_NOT_FOUND) {
+        throw new IOException(
+            String.format("Deleting %s from S3 failed with status %d", id.getName(), status));
+      }
+      log.atFine().log("Deleted %s from bucket %s", id.getName(), s3Config.getBucket());
+    }
+  }
+
+  private URL bucketUrl(String key) throws MalformedURLException {
+    return new URL(
+        String.format("https://%s/%s/%s", s3Config.getHostname(), s3Config.getBucket(), key));
+  }
+
+  private HttpConnection connectSigned(String method, URL url, Map<String, String> query)
+      throws IOException {
+    return connectSigned(method, url, query, ImmutableMap.of(), S3RequestSigner.EMPTY_PAYLOAD);
+  }
+
+  private HttpConnection connectSigned(
+      String method,
+      URL url,
+      Map<String, String> query,
+      Map<String, String> header,
+      String payloadHash)
+      throws IOException {
+    String href = url.toString();
+    if (!query.isEmpty()) {
+      href += "?" + S3RequestSigner.canonicalQuery(query);
+    }
+    return connect(
+        href, signer.sign(method, url, query, header, payloadHash, Instant.now()), method);
+  }
+
+  private HttpConnection connect(Response.Action action, String method) throws IOException {
+    return connect(action.href, action.header, method);
+  }
+
+  private HttpConnection connect(String href, Map<String, String> header, String method)
+      throws IOException {
+    URL url = new URL(href);
+    HttpConnection c =
+        HttpTransport.getConnectionFactory()
+            .create(url, HttpSupport.proxyFor(ProxySelector.getDefault(), url));
+    if (disableSslVerify) {
+      HttpSupport.disableSslVerify(c);
+    }
+    c.setConnectTimeout(TIMEOUT_MILLIS);
+    c.setReadTimeout(TIMEOUT_MILLIS);
+    c.setRequestMethod(method);
+    if (header != null) {
+      header.forEach(c::setRequestProperty);
+    }
+    return c;
+  }
+
+  private static Document parse(InputStream in) throws IOException {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      factory.setExpandEntityReferences(false);
+      return factory.newDocumentBuilder().parse(in);
+    } catch (ParserConfigurationException | SAXException e) {
+      throw new IOException("Cannot parse S3 response", e);
+    }
+  }
+
+  private static String text(Element parent, String tag) {
+    NodeList nodes = parent.getElementsByTagName(tag);
+    return nodes.getLength() > 0 ? nodes.item(0).getTextContent() : "";
   }
 
   private static S3Config getS3Config(LfsGlobalConfig config, LfsBackend backendConfig) {
@@ -51,7 +395,13 @@ public class S3LargeFileRepository extends S3Repository {
 
     if (!Strings.isNullOrEmpty(hostname)) {
       return new S3Config(
-          hostname, region, bucket, storageClass, accessKey, secretKey, expirationSeconds,
+          hostname,
+          region,
+          bucket,
+          storageClass,
+          accessKey,
+          secretKey,
+          expirationSeconds,
           disableSslVerify);
     }
 
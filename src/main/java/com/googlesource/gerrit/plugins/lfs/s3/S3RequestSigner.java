@@ -0,0 +1,158 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.s3;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs S3 requests with an AWS Signature Version 4 {@code Authorization} header.
+ *
+ * <p>JGit only presigns object downloads and uploads and keeps its signer private, so requests
+ * listing or deleting objects are signed here.
+ */
+class S3RequestSigner {
+  static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+  static final String EMPTY_PAYLOAD =
+      "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+
+  private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+  private static final String SERVICE = "s3";
+  private static final String TERMINATOR = "aws4_request";
+  private static final DateTimeFormatter DATE =
+      DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter DATE_TIME =
+      DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+  private final String accessKey;
+  private final String secretKey;
+  private final String region;
+
+  S3RequestSigner(String accessKey, String secretKey, String region) {
+    this.accessKey = accessKey;
+    this.secretKey = secretKey;
+    this.region = region;
+  }
+
+  /**
+   * Sign a request.
+   *
+   * @param method HTTP method of the request.
+   * @param url URL of the request, without query.
+   * @param query decoded query parameters of the request.
+   * @param headers headers of the request to sign, besides {@code Host} and the {@code x-amz-*}
+   *     headers added here.
+   * @param payloadHash hex SHA-256 of the body, or {@link #UNSIGNED_PAYLOAD}.
+   * @param now time of the request.
+   * @return the headers to send, including {@code Authorization}.
+   */
+  Map<String, String> sign(
+      String method,
+      URL url,
+      Map<String, String> query,
+      Map<String, String> headers,
+      String payloadHash,
+      Instant now) {
+    String dateTime = DATE_TIME.format(now);
+    String scope = Joiner.on('/').join(DATE.format(now), region, SERVICE, TERMINATOR);
+
+    Map<String, String> signed = new TreeMap<>();
+    headers.forEach((name, value) -> signed.put(name.toLowerCase(Locale.US), value.trim()));
+    signed.put("host", url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort());
+    signed.put("x-amz-content-sha256", payloadHash);
+    signed.put("x-amz-date", dateTime);
+    String signedHeaders = Joiner.on(';').join(signed.keySet());
+
+    StringBuilder canonical = new StringBuilder();
+    canonical.append(method).append('\n');
+    canonical.append(encode(url.getPath().isEmpty() ? "/" : url.getPath(), false)).append('\n');
+    canonical.append(canonicalQuery(query)).append('\n');
+    signed.forEach((name, value) -> canonical.append(name).append(':').append(value).append('\n'));
+    canonical.append('\n').append(signedHeaders).append('\n').append(payloadHash);
+
+    String stringToSign =
+        Joiner.on('\n')
+            .join(
+                ALGORITHM,
+                dateTime,
+                scope,
+                Hashing.sha256().hashString(canonical.toString(), UTF_8).toString());
+    byte[] key = hmac(("AWS4" + secretKey).getBytes(UTF_8), DATE.format(now));
+    key = hmac(key, region);
+    key = hmac(key, SERVICE);
+    key = hmac(key, TERMINATOR);
+    String signature = BaseEncoding.base16().lowerCase().encode(hmac(key, stringToSign));
+
+    Map<String, String> result = new TreeMap<>(headers);
+    result.put("x-amz-content-sha256", payloadHash);
+    result.put("x-amz-date", dateTime);
+    result.put(
+        "Authorization",
+        String.format(
+            "%s Credential=%s/%s, SignedHeaders=%s, Signature=%s",
+            ALGORITHM, accessKey, scope, signedHeaders, signature));
+    return result;
+  }
+
+  /** @return the query string of the parameters, encoded and sorted as S3 expects. */
+  static String canonicalQuery(Map<String, String> query) {
+    Map<String, String> encoded = new TreeMap<>();
+    query.forEach((name, value) -> encoded.put(encode(name, true), encode(value, true)));
+    return Joiner.on('&').withKeyValueSeparator('=').join(encoded);
+  }
+
+  private static String encode(String value, boolean encodeSlash) {
+    StringBuilder out = new StringBuilder();
+    for (byte b : value.getBytes(UTF_8)) {
+      char c = (char) (b & 0xff);
+      if ((c >= 'A' && c <= 'Z')
+          || (c >= 'a' && c <= 'z')
+          || (c >= '0' && c <= '9')
+          || c == '-'
+          || c == '_'
+          || c == '.'
+          || c == '~'
+          || (c == '/' && !encodeSlash)) {
+        out.append(c);
+      } else {
+        out.append(String.format("%%%02X", b & 0xff));
+      }
+    }
+    return out.toString();
+  }
+
+  private static byte[] hmac(byte[] key, String data) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(key, "HmacSHA256"));
+      return mac.doFinal(data.getBytes(UTF_8));
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("HmacSHA256 is not available", e);
+    }
+  }
+}
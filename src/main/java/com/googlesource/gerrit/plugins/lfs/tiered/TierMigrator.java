@@ -0,0 +1,87 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.tiered;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsMetricFields;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Runs the periodic migrations of the {@code TIERED} backends and counts what they moved. */
+@Singleton
+public class TierMigrator implements LifecycleListener {
+  private final ScheduledExecutorService executor;
+  private final Counter1<String> migratedObjects;
+  private final Counter1<String> migratedBytes;
+  private final Counter1<String> failures;
+
+  @Inject
+  TierMigrator(MetricMaker metricMaker) {
+    this.executor =
+        new ScheduledThreadPoolExecutor(
+            1,
+            new ThreadFactoryBuilder()
+                .setNameFormat("LFS-tier-migration-%d")
+                .setDaemon(true)
+                .build());
+    Field<String> backend = LfsMetricFields.backend();
+    this.migratedObjects =
+        metricMaker.newCounter(
+            "tiered/migrated_objects",
+            new Description("Objects moved from the local tier to S3").setRate().setUnit("objects"),
+            backend);
+    this.migratedBytes =
+        metricMaker.newCounter(
+            "tiered/migrated_bytes",
+            new Description("Bytes moved from the local tier to S3").setRate().setUnit("bytes"),
+            backend);
+    this.failures =
+        metricMaker.newCounter(
+            "tiered/migration_failures",
+            new Description("Objects that could not be moved to S3").setRate().setUnit("objects"),
+            backend);
+  }
+
+  void schedule(Runnable migration, long intervalMillis) {
+    executor.scheduleWithFixedDelay(
+        migration, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  void migrated(LfsBackend backend, long bytes) {
+    migratedObjects.increment(backend.name());
+    migratedBytes.incrementBy(backend.name(), bytes);
+  }
+
+  void failed(LfsBackend backend) {
+    failures.increment(backend.name());
+  }
+
+  @Override
+  public void start() {}
+
+  @Override
+  public void stop() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,363 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.tiered;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Striped;
+import com.google.inject.Inject;
+import com.google.inject.assistedinject.Assisted;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import com.googlesource.gerrit.plugins.lfs.fs.LocalLargeFileRepository;
+import com.googlesource.gerrit.plugins.lfs.s3.S3LargeFileRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+
+/**
+ * Backend keeping recently used objects on local disk and the others in S3.
+ *
+ * <p>Objects are uploaded to the local tier. Each download of a local object refreshes its
+ * modification time, and objects that were neither uploaded nor downloaded for {@code migrateAfter}
+ * are periodically copied to S3 and deleted locally. Downloads are served from whichever tier holds
+ * the object.
+ *
+ * <p>A download refreshes the modification time of a local object and the migration checks it again
+ * before it deletes the object, both under the same guard, so an object is not deleted locally once
+ * a download was directed to the local tier.
+ */
+public class TieredLargeFileRepository implements LargeFileRepository, LfsObjectStore {
+  public interface Factory {
+    TieredLargeFileRepository create(
+        LfsBackend backend, LocalLargeFileRepository hot, S3LargeFileRepository cold);
+  }
+
+  /** A tier holding objects. */
+  interface Tier extends LargeFileRepository, LfsObjectStore {}
+
+  /** The local tier, holding each object in a file. */
+  interface LocalTier extends Tier {
+    Path getPath(AnyLongObjectId id);
+
+    List<Path> listObjects() throws IOException;
+  }
+
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String KEY_MIGRATE_AFTER = "migrateAfter";
+  static final String KEY_MIGRATION_INTERVAL = "migrationInterval";
+  private static final long DEFAULT_MIGRATE_AFTER_DAYS = 30;
+  private static final long DEFAULT_MIGRATION_INTERVAL_DAYS = 1;
+
+  private final TierMigrator migrator;
+  private final LfsBackend backend;
+  private final LocalTier hot;
+  private final Tier cold;
+  private final long migrateAfterMillis;
+  private final Striped<Lock> guards = Striped.lock(64);
+  // objects the cold tier declines to store, kept locally without retrying
+  private final Set<LongObjectId> tooLarge = ConcurrentHashMap.newKeySet();
+
+  @Inject
+  TieredLargeFileRepository(
+      LfsConfigurationFactory configFactory,
+      TierMigrator migrator,
+      @Assisted LfsBackend backend,
+      @Assisted LocalLargeFileRepository hot,
+      @Assisted S3LargeFileRepository cold) {
+    this(
+        migrator,
+        backend,
+        new LocalRepositoryTier(hot),
+        new DelegatingTier<>(cold),
+        configFactory
+            .getGlobalConfig()
+            .getTimeUnit(
+                backend.type.name(),
+                backend.name,
+                KEY_MIGRATE_AFTER,
+                DAYS.toMillis(DEFAULT_MIGRATE_AFTER_DAYS),
+                MILLISECONDS));
+    long interval =
+        configFactory
+            .getGlobalConfig()
+            .getTimeUnit(
+                backend.type.name(),
+                backend.name,
+                KEY_MIGRATION_INTERVAL,
+                DAYS.toMillis(DEFAULT_MIGRATION_INTERVAL_DAYS),
+                MILLISECONDS);
+    if (interval > 0) {
+      migrator.schedule(this::migrate, interval);
+    }
+  }
+
+  @VisibleForTesting
+  TieredLargeFileRepository(
+      TierMigrator migrator,
+      LfsBackend backend,
+      LocalTier hot,
+      Tier cold,
+      long migrateAfterMillis) {
+    this.migrator = migrator;
+    this.backend = backend;
+    this.hot = hot;
+    this.cold = cold;
+    this.migrateAfterMillis = migrateAfterMillis;
+  }
+
+  @Override
+  public Response.Action getDownloadAction(AnyLongObjectId id) {
+    Lock guard = guards.get(id);
+    guard.lock();
+    try {
+      if (touchIfLocal(id)) {
+        return hot.getDownloadAction(id);
+      }
+    } finally {
+      guard.unlock();
+    }
+    return cold.getDownloadAction(id);
+  }
+
+  @Override
+  public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+    return hot.getUploadAction(id, size);
+  }
+
+  @Override
+  public Response.Action getVerifyAction(AnyLongObjectId id) {
+    return hot.getVerifyAction(id);
+  }
+
+  @Override
+  public long getSize(AnyLongObjectId id) throws IOException {
+    long size = hot.getSize(id);
+    return size >= 0 ? size : cold.getSize(id);
+  }
+
+  @Override
+  public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+    hot.list(prefix, consumer);
+    cold.list(prefix, consumer);
+  }
+
+  @Override
+  public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+    Lock guard = guards.get(id);
+    guard.lock();
+    try {
+      if (touchIfLocal(id)) {
+        // stays readable once open, even if it is moved to S3 later
+        return hot.open(id);
+      }
+    } finally {
+      guard.unlock();
+    }
+    return cold.open(id);
+  }
+
+  @Override
+  public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+    return hot.store(id, size, content);
+  }
+
+  @Override
+  public void delete(Collection<LongObjectId> ids) throws IOException {
+    hot.delete(ids);
+    cold.delete(ids);
+  }
+
+  /** Move the objects of the local tier that were not used recently to S3. */
+  void migrate() {
+    FileTime cutoff = FileTime.from(Instant.now().minusMillis(migrateAfterMillis));
+    List<Path> candidates;
+    try {
+      candidates =
+          hot.listObjects().stream().filter(p -> isOlder(p, cutoff)).collect(Collectors.toList());
+    } catch (IOException | RuntimeException e) {
+      log.atWarning().withCause(e).log("Cannot list the local tier of backend %s", backend.name());
+      return;
+    }
+
+    int migrated = 0;
+    for (Path path : candidates) {
+      if (Thread.currentThread().isInterrupted()) {
+        return;
+      }
+      try {
+        if (migrate(path, cutoff)) {
+          migrated++;
+        }
+      } catch (IOException | RuntimeException e) {
+        migrator.failed(backend);
+        log.atWarning().withCause(e).log(
+            "Cannot move %s of backend %s to S3", path.getFileName(), backend.name());
+      }
+    }
+    log.atInfo().log(
+        "Moved %d of %d objects of backend %s to S3", migrated, candidates.size(), backend.name());
+  }
+
+  private boolean migrate(Path path, FileTime cutoff) throws IOException {
+    LongObjectId id = LongObjectId.fromString(path.getFileName().toString());
+    if (tooLarge.contains(id)) {
+      return false;
+    }
+    long size = Files.size(path);
+    if (cold.getSize(id) != size) {
+      try (InputStream content = Files.newInputStream(path)) {
+        if (!cold.store(id, size, content)) {
+          tooLarge.add(id);
+          log.atWarning().log(
+              "Keeping %s of backend %s on the local tier: S3 does not store %d bytes",
+              id.getName(), backend.name(), size);
+          return false;
+        }
+      }
+      long stored = cold.getSize(id);
+      if (stored != size) {
+        throw new IOException(
+            String.format("S3 reports %d bytes for %s instead of %d", stored, id.getName(), size));
+      }
+    }
+    Lock guard = guards.get(id);
+    guard.lock();
+    try {
+      // downloaded while it was copied: keep serving it locally, the next run deletes it
+      if (!isOlder(path, cutoff)) {
+        return false;
+      }
+      Files.delete(path);
+    } finally {
+      guard.unlock();
+    }
+    migrator.migrated(backend, size);
+    return true;
+  }
+
+  private static boolean isOlder(Path path, FileTime cutoff) {
+    try {
+      return Files.isRegularFile(path) && Files.getLastModifiedTime(path).compareTo(cutoff) < 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Refresh the modification time of the local copy of an object, so that it is not moved to S3 for
+   * another {@code migrateAfter}. Callers hold the guard of the object.
+   *
+   * @return whether the local tier holds the object.
+   */
+  private boolean touchIfLocal(AnyLongObjectId id) {
+    Path path = hot.getPath(id);
+    try {
+      Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+      return true;
+    } catch (NoSuchFileException e) {
+      return false;
+    } catch (IOException e) {
+      log.atFine().withCause(e).log("Cannot refresh access time of %s", path);
+      return Files.isRegularFile(path);
+    }
+  }
+
+  private static class DelegatingTier<T extends LargeFileRepository & LfsObjectStore>
+      implements Tier {
+    final T repository;
+
+    DelegatingTier(T repository) {
+      this.repository = repository;
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      return repository.getDownloadAction(id);
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      return repository.getUploadAction(id, size);
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      return repository.getVerifyAction(id);
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) throws IOException {
+      return repository.getSize(id);
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) throws IOException {
+      repository.list(prefix, consumer);
+    }
+
+    @Override
+    public void delete(Collection<LongObjectId> ids) throws IOException {
+      repository.delete(ids);
+    }
+
+    @Override
+    public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+      return repository.open(id);
+    }
+
+    @Override
+    public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+      return repository.store(id, size, content);
+    }
+  }
+
+  private static class LocalRepositoryTier extends DelegatingTier<LocalLargeFileRepository>
+      implements LocalTier {
+    LocalRepositoryTier(LocalLargeFileRepository repository) {
+      super(repository);
+    }
+
+    @Override
+    public Path getPath(AnyLongObjectId id) {
+      return repository.getPath(id);
+    }
+
+    @Override
+    public List<Path> listObjects() throws IOException {
+      return repository.listObjects();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.transfer;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProxySelector;
+import java.net.URL;
+import org.eclipse.jgit.lfs.server.Response;
+import org.eclipse.jgit.transport.HttpTransport;
+import org.eclipse.jgit.transport.http.HttpConnection;
+import org.eclipse.jgit.util.HttpSupport;
+
+/**
+ * Transfers objects of backends that cannot be accessed directly through the actions the backend
+ * hands out to batch clients, with the server as the client. Connections are opened like JGit opens
+ * its HTTP connections, through the configured connection factory and proxies.
+ */
+class ActionTransfer {
+  private static final int TIMEOUT_MILLIS = 60_000;
+
+  private ActionTransfer() {}
+
+  /**
+   * Download an object.
+   *
+   * @param action the download action of the object.
+   * @return the content of the object; closing it releases the connection.
+   * @throws IOException if the object cannot be downloaded.
+   */
+  static InputStream download(Response.Action action) throws IOException {
+    HttpConnection connection = open(action, "GET");
+    int status = connection.getResponseCode();
+    if (status != HttpConnection.HTTP_OK) {
+      throw new IOException(String.format("download failed with status %d", status));
+    }
+    return connection.getInputStream();
+  }
+
+  /**
+   * Upload an object.
+   *
+   * @param action the upload action of the object.
+   * @param size size of the object in bytes.
+   * @param content the content, read until its end.
+   * @throws IOException if the content does not have the size or cannot be uploaded.
+   */
+  static void upload(Response.Action action, long size, InputStream content) throws IOException {
+    HttpConnection connection = open(action, "PUT");
+    connection.setDoOutput(true);
+    if (size <= Integer.MAX_VALUE) {
+      connection.setFixedLengthStreamingMode((int) size);
+    } else {
+      // connections only take an int length
+      connection.setChunkedStreamingMode(0);
+    }
+    try (OutputStream out = connection.getOutputStream()) {
+      if (ByteStreams.copy(ByteStreams.limit(content, size), out) != size) {
+        throw new IOException(String.format("content is shorter than %d bytes", size));
+      }
+    }
+    int status = connection.getResponseCode();
+    if (status / 100 != 2) {
+      throw new IOException(String.format("upload failed with status %d", status));
+    }
+  }
+
+  private static HttpConnection open(Response.Action action, String method) throws IOException {
+    URL url = new URL(action.href);
+    HttpConnection connection =
+        HttpTransport.getConnectionFactory()
+            .create(url, HttpSupport.proxyFor(ProxySelector.getDefault(), url));
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    connection.setRequestMethod(method);
+    if (action.header != null) {
+      action.header.forEach(connection::setRequestProperty);
+    }
+    return connection;
+  }
+}
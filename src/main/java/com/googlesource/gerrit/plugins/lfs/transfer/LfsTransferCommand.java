@@ -0,0 +1,552 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.transfer;
+
+import static org.apache.http.HttpStatus.SC_BAD_REQUEST;
+import static org.apache.http.HttpStatus.SC_CONFLICT;
+import static org.apache.http.HttpStatus.SC_CREATED;
+import static org.apache.http.HttpStatus.SC_FORBIDDEN;
+import static org.apache.http.HttpStatus.SC_INSUFFICIENT_STORAGE;
+import static org.apache.http.HttpStatus.SC_INTERNAL_SERVER_ERROR;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.apache.http.HttpStatus.SC_SERVICE_UNAVAILABLE;
+import static org.apache.http.HttpStatus.SC_UNPROCESSABLE_ENTITY;
+import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
+import static org.eclipse.jgit.lfs.lib.Constants.UPLOAD;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.entities.ProjectUtil;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import com.googlesource.gerrit.plugins.lfs.LfsBatchAccess;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLock;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLockOperations;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsInsufficientStorage;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryReadOnly;
+import org.eclipse.jgit.lfs.errors.LfsUnauthorized;
+import org.eclipse.jgit.lfs.errors.LfsUnavailable;
+import org.eclipse.jgit.lfs.errors.LfsValidationError;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.kohsuke.args4j.Argument;
+
+/**
+ * Serves the {@code git-lfs-transfer} protocol, which batches, transfers and locks objects over the
+ * SSH connection of the client instead of over separate HTTP requests.
+ *
+ * <p>Requests are checked as those of the batch and locks APIs are. Objects are read and written
+ * directly where the backend allows it, otherwise through the actions the backend hands out to
+ * batch clients.
+ */
+@CommandMetaData(name = "git-lfs-transfer", description = "Transfer and lock LFS objects over SSH")
+public class LfsTransferCommand extends SshCommand {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  private static final Splitter ON_SPACE = Splitter.on(' ');
+
+  /** A command of the client, its arguments, and whether a data section follows them. */
+  private static class Request {
+    final String name;
+    final String argument;
+    final Map<String, String> args;
+    final boolean hasData;
+
+    Request(String line, Map<String, String> args, boolean hasData) {
+      int space = line.indexOf(' ');
+      this.name = space < 0 ? line : line.substring(0, space);
+      this.argument = space < 0 ? null : line.substring(space + 1);
+      this.args = args;
+      this.hasData = hasData;
+    }
+  }
+
+  /** A request answered with an error status. */
+  private static class StatusException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    final int status;
+
+    StatusException(int status, String message) {
+      super(message);
+      this.status = status;
+    }
+  }
+
+  @Argument(index = 0, required = true, metaVar = "PROJECT", usage = "path of the repository")
+  String path;
+
+  @Argument(index = 1, required = true, metaVar = "OPERATION", usage = "upload or download")
+  String operation;
+
+  @Inject LfsBatchAccess batchAccess;
+  @Inject LfsLockOperations locks;
+
+  private Project.NameKey project;
+  private boolean upload;
+  private LargeFileRepository repository;
+  private PktLine.Reader reader;
+  private PktLine.Writer writer;
+  // sizes of the objects that batches of this session asked the client to upload, as they were
+  // checked against the limits of the project, like the upload actions of the HTTP API do
+  private final Map<LongObjectId, Long> accepted = new HashMap<>();
+
+  @Override
+  protected void run() throws UnloggedFailure, Failure {
+    if (!UPLOAD.equals(operation) && !DOWNLOAD.equals(operation)) {
+      throw die("operation must be upload or download: " + operation);
+    }
+    upload = UPLOAD.equals(operation);
+    project = Project.nameKey(ProjectUtil.stripGitSuffix(CharMatcher.is('/').trimFrom(path)));
+    try {
+      repository =
+          batchAccess.open(
+              batchAccess.check(project, user, upload, ImmutableMap.of()),
+              upload,
+              ImmutableMap.of());
+    } catch (LfsException e) {
+      throw die(e.getMessage());
+    }
+
+    reader = new PktLine.Reader(new BufferedInputStream(in));
+    writer = new PktLine.Writer(new BufferedOutputStream(out));
+    try {
+      writer.text("version=1").flush();
+      while (serve()) {}
+    } catch (EOFException e) {
+      log.atFine().log("Client of %s closed the connection", project.get());
+    } catch (IOException e) {
+      throw new Failure(1, "fatal: " + e.getMessage(), e);
+    }
+  }
+
+  /** @return whether to serve the next request. */
+  private boolean serve() throws IOException {
+    Request request = readRequest();
+    try {
+      switch (request.name) {
+        case "batch":
+          batch(request);
+          break;
+        case "put-object":
+          putObject(request);
+          break;
+        default:
+          // only the commands above have a data section
+          skipData(request);
+          if (!serve(request)) {
+            return false;
+          }
+      }
+    } catch (StatusException e) {
+      writer.text("status " + e.status).delim();
+      for (String line : Splitter.on('\n').split(e.getMessage())) {
+        writer.text(line);
+      }
+      writer.flush();
+    }
+    return true;
+  }
+
+  private boolean serve(Request request) throws IOException, StatusException {
+    switch (request.name) {
+      case "version":
+        if (!"1".equals(request.argument)) {
+          throw new StatusException(SC_BAD_REQUEST, "unsupported version " + request.argument);
+        }
+        status(SC_OK).flush();
+        return true;
+      case "verify-object":
+        verifyObject(request);
+        return true;
+      case "get-object":
+        getObject(request);
+        return true;
+      case "lock":
+        lock(request);
+        return true;
+      case "list-lock":
+        listLocks(request);
+        return true;
+      case "unlock":
+        unlock(request);
+        return true;
+      case "quit":
+        status(SC_OK).flush();
+        return false;
+      default:
+        throw new StatusException(SC_BAD_REQUEST, "unknown command " + request.name);
+    }
+  }
+
+  private void batch(Request request) throws IOException, StatusException {
+    List<String> lines = request.hasData ? readLines() : new ArrayList<>();
+    String hashAlgorithm = request.args.get("hash-algo");
+    if (hashAlgorithm != null && !hashAlgorithm.equals("sha256")) {
+      throw new StatusException(SC_BAD_REQUEST, "unsupported hash algorithm " + hashAlgorithm);
+    }
+    Map<LongObjectId, Long> objects = new LinkedHashMap<>();
+    for (String line : lines) {
+      List<String> fields = ON_SPACE.splitToList(line);
+      if (fields.size() < 2) {
+        throw new StatusException(SC_BAD_REQUEST, "invalid object " + line);
+      }
+      objects.put(parseId(fields.get(0)), parseSize(fields.get(1)));
+    }
+
+    List<String> actions = new ArrayList<>(objects.size());
+    try {
+      LargeFileRepository batchRepository =
+          batchAccess.open(batchAccess.check(project, user, upload, objects), upload, objects);
+      for (Map.Entry<LongObjectId, Long> object : objects.entrySet()) {
+        String action;
+        if (!upload) {
+          // missing objects are reported by get-object
+          action = DOWNLOAD;
+        } else if (batchRepository.getSize(object.getKey()) >= 0) {
+          action = "noop";
+        } else {
+          action = UPLOAD;
+          accepted.put(object.getKey(), object.getValue());
+        }
+        actions.add(object.getKey().name() + " " + object.getValue() + " " + action);
+      }
+    } catch (LfsException e) {
+      throw new StatusException(status(e), e.getMessage());
+    } catch (IOException e) {
+      throw internalError("Cannot look up the objects of the batch", e);
+    }
+
+    status(SC_OK).delim();
+    for (String action : actions) {
+      writer.text(action);
+    }
+    writer.flush();
+  }
+
+  private void putObject(Request request) throws IOException, StatusException {
+    InputStream data =
+        request.hasData ? reader.dataStream() : new ByteArrayInputStream(new byte[0]);
+    try {
+      LongObjectId id = parseId(request.argument);
+      long size = parseSize(request.args.get("size"));
+      if (!upload) {
+        throw new StatusException(SC_FORBIDDEN, "objects can only be put in upload sessions");
+      }
+      Long batched = accepted.get(id);
+      if (batched == null) {
+        throw new StatusException(
+            SC_FORBIDDEN, "object " + id.name() + " was not requested for upload by a batch");
+      }
+      if (batched != size) {
+        throw new StatusException(
+            SC_UNPROCESSABLE_ENTITY,
+            String.format(
+                "object %s was requested with %d bytes, not %d", id.name(), batched, size));
+      }
+      try {
+        if (repository.getSize(id) < 0) {
+          store(id, size, data);
+        }
+      } catch (IOException e) {
+        throw internalError("Cannot store " + id.name(), e);
+      }
+      accepted.remove(id);
+    } finally {
+      // the remaining data, if the object is already stored or could not be stored
+      ByteStreams.exhaust(data);
+    }
+    status(SC_OK).flush();
+  }
+
+  private void store(LongObjectId id, long size, InputStream data) throws IOException {
+    if (repository instanceof LfsObjectStore
+        && ((LfsObjectStore) repository).store(id, size, data)) {
+      return;
+    }
+    ActionTransfer.upload(repository.getUploadAction(id, size), size, data);
+  }
+
+  private void verifyObject(Request request) throws IOException, StatusException {
+    LongObjectId id = parseId(request.argument);
+    long size = parseSize(request.args.get("size"));
+    long stored = getSize(id);
+    if (stored < 0) {
+      throw new StatusException(SC_NOT_FOUND, "object " + id.name() + " not found");
+    }
+    if (stored != size) {
+      throw new StatusException(
+          SC_UNPROCESSABLE_ENTITY,
+          String.format("object %s has %d bytes, not %d", id.name(), stored, size));
+    }
+    status(SC_OK).flush();
+  }
+
+  private void getObject(Request request) throws IOException, StatusException {
+    LongObjectId id = parseId(request.argument);
+    if (upload) {
+      throw new StatusException(SC_FORBIDDEN, "objects can only be got in download sessions");
+    }
+    long size = getSize(id);
+    if (size < 0) {
+      throw new StatusException(SC_NOT_FOUND, "object " + id.name() + " not found");
+    }
+    InputStream content;
+    try {
+      content = open(id);
+    } catch (NoSuchFileException e) {
+      throw new StatusException(SC_NOT_FOUND, "object " + id.name() + " not found");
+    } catch (IOException e) {
+      throw internalError("Cannot read " + id.name(), e);
+    }
+
+    try (InputStream c = content) {
+      status(SC_OK).text("size=" + size).delim();
+      // once data was sent an error can only be reported by closing the connection
+      long sent = writer.data(c);
+      if (sent != size) {
+        throw new IOException(
+            String.format("object %s has %d bytes, not %d", id.name(), sent, size));
+      }
+      writer.flush();
+    }
+  }
+
+  private InputStream open(LongObjectId id) throws IOException {
+    if (repository instanceof LfsObjectStore) {
+      Optional<InputStream> content = ((LfsObjectStore) repository).open(id);
+      if (content.isPresent()) {
+        return content.get();
+      }
+    }
+    return ActionTransfer.download(repository.getDownloadAction(id));
+  }
+
+  private long getSize(LongObjectId id) throws StatusException {
+    try {
+      return repository.getSize(id);
+    } catch (IOException e) {
+      throw internalError("Cannot look up " + id.name(), e);
+    }
+  }
+
+  private void lock(Request request) throws IOException, StatusException {
+    String lockPath = request.args.get("path");
+    if (lockPath == null) {
+      throw new StatusException(SC_BAD_REQUEST, "missing path");
+    }
+    if (!upload) {
+      throw new StatusException(SC_FORBIDDEN, "paths can only be locked in upload sessions");
+    }
+    try {
+      LfsLock lock = locks.create(project, user, lockPath);
+      writeLock(status(SC_CREATED), lock).flush();
+    } catch (LfsLockOperations.LockExistsException e) {
+      writeLock(status(SC_CONFLICT), e.lock).flush();
+    } catch (LfsException e) {
+      throw new StatusException(status(e), e.getMessage());
+    }
+  }
+
+  private void listLocks(Request request) throws IOException, StatusException {
+    int limit = Integer.MAX_VALUE;
+    String limitArg = request.args.get("limit");
+    if (limitArg != null) {
+      try {
+        limit = Integer.parseInt(limitArg);
+      } catch (NumberFormatException e) {
+        limit = -1;
+      }
+      if (limit <= 0) {
+        throw new StatusException(SC_BAD_REQUEST, "invalid limit " + limitArg);
+      }
+    }
+    String cursor = request.args.get("cursor");
+
+    List<LfsLock> page = new ArrayList<>();
+    String nextCursor = null;
+    try {
+      List<LfsLock> all =
+          new ArrayList<>(
+              locks.list(project, user, request.args.get("path"), request.args.get("id")));
+      all.sort(Comparator.comparing(l -> l.id));
+      for (LfsLock lock : all) {
+        if (cursor != null && lock.id.compareTo(cursor) < 0) {
+          continue;
+        }
+        if (page.size() == limit) {
+          nextCursor = lock.id;
+          break;
+        }
+        page.add(lock);
+      }
+    } catch (LfsException e) {
+      throw new StatusException(status(e), e.getMessage());
+    }
+
+    status(SC_OK);
+    if (nextCursor != null) {
+      writer.text("next-cursor=" + nextCursor);
+    }
+    writer.delim();
+    String userName = user.getUserName().orElse(null);
+    for (LfsLock lock : page) {
+      writer
+          .text("lock " + lock.id)
+          .text("path " + lock.id + " " + lock.path)
+          .text("locked-at " + lock.id + " " + lock.lockedAt)
+          .text("ownername " + lock.id + " " + lock.owner.name)
+          .text("owner " + lock.id + " " + (lock.owner.name.equals(userName) ? "ours" : "theirs"));
+    }
+    writer.flush();
+  }
+
+  private void unlock(Request request) throws IOException, StatusException {
+    String id = request.argument;
+    if (id == null) {
+      throw new StatusException(SC_BAD_REQUEST, "missing lock id");
+    }
+    if (!upload) {
+      throw new StatusException(SC_FORBIDDEN, "paths can only be unlocked in upload sessions");
+    }
+    boolean force = "true".equals(request.args.get("force"));
+    try {
+      List<LfsLock> found = new ArrayList<>(locks.list(project, user, null, id));
+      if (found.isEmpty()) {
+        throw new StatusException(SC_NOT_FOUND, "no lock " + id);
+      }
+      if (!force && !found.get(0).owner.name.equals(user.getUserName().orElse(null))) {
+        throw new StatusException(
+            SC_FORBIDDEN, "lock " + id + " is owned by " + found.get(0).owner.name);
+      }
+      LfsLock lock = locks.delete(project, user, id, force);
+      writeLock(status(SC_OK), lock).flush();
+    } catch (LfsException e) {
+      throw new StatusException(status(e), e.getMessage());
+    }
+  }
+
+  private PktLine.Writer writeLock(PktLine.Writer w, LfsLock lock) throws IOException {
+    return w.text("id=" + lock.id)
+        .text("path=" + lock.path)
+        .text("locked-at=" + lock.lockedAt)
+        .text("ownername=" + lock.owner.name);
+  }
+
+  private PktLine.Writer status(int status) throws IOException {
+    return writer.text("status " + status);
+  }
+
+  private Request readRequest() throws IOException {
+    if (reader.read() != PktLine.Type.DATA) {
+      throw new IOException("expected a command");
+    }
+    String line = reader.text();
+    Map<String, String> args = new HashMap<>();
+    while (true) {
+      switch (reader.read()) {
+        case FLUSH:
+          return new Request(line, args, false);
+        case DELIM:
+          return new Request(line, args, true);
+        case DATA:
+          String arg = reader.text();
+          int eq = arg.indexOf('=');
+          if (eq > 0) {
+            args.put(arg.substring(0, eq), arg.substring(eq + 1));
+          }
+      }
+    }
+  }
+
+  private List<String> readLines() throws IOException {
+    List<String> lines = new ArrayList<>();
+    PktLine.Type type;
+    while ((type = reader.read()) != PktLine.Type.FLUSH) {
+      if (type == PktLine.Type.DELIM) {
+        throw new IOException("unexpected delimiter");
+      }
+      lines.add(reader.text());
+    }
+    return lines;
+  }
+
+  private void skipData(Request request) throws IOException {
+    if (request.hasData) {
+      ByteStreams.exhaust(reader.dataStream());
+    }
+  }
+
+  private static LongObjectId parseId(String oid) throws StatusException {
+    if (oid == null || !LongObjectId.isId(oid)) {
+      throw new StatusException(SC_BAD_REQUEST, "invalid object id " + oid);
+    }
+    return LongObjectId.fromString(oid);
+  }
+
+  private static long parseSize(String size) throws StatusException {
+    try {
+      long value = Long.parseLong(size);
+      if (value >= 0) {
+        return value;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new StatusException(SC_BAD_REQUEST, "invalid size " + size);
+  }
+
+  private StatusException internalError(String message, IOException e) {
+    log.atWarning().withCause(e).log("%s in project %s", message, project.get());
+    return new StatusException(SC_INTERNAL_SERVER_ERROR, message);
+  }
+
+  private static int status(LfsException e) {
+    if (e instanceof LfsUnauthorized || e instanceof LfsRepositoryReadOnly) {
+      return SC_FORBIDDEN;
+    } else if (e instanceof LfsRepositoryNotFound) {
+      return SC_NOT_FOUND;
+    } else if (e instanceof LfsValidationError) {
+      return SC_UNPROCESSABLE_ENTITY;
+    } else if (e instanceof LfsInsufficientStorage) {
+      return SC_INSUFFICIENT_STORAGE;
+    } else if (e instanceof LfsUnavailable) {
+      return SC_SERVICE_UNAVAILABLE;
+    }
+    return SC_INTERNAL_SERVER_ERROR;
+  }
+}
@@ -0,0 +1,214 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.transfer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The pkt-line framing of git, as used by the {@code git-lfs-transfer} protocol.
+ *
+ * <p>Each packet starts with its length, including the 4 byte header, in hex. Length 0 is a flush
+ * packet ending a message, length 1 a delimiter packet separating its sections.
+ */
+class PktLine {
+  static final int MAX_DATA = 65516;
+
+  private static final int HEADER = 4;
+  private static final int FLUSH = 0;
+  private static final int DELIM = 1;
+  private static final byte[] HEX = "0123456789abcdef".getBytes(UTF_8);
+
+  private PktLine() {}
+
+  /** Kind of the packet last read. */
+  enum Type {
+    DATA,
+    DELIM,
+    FLUSH
+  }
+
+  static class Reader {
+    private final InputStream in;
+    private final byte[] header = new byte[HEADER];
+    private final byte[] buffer = new byte[MAX_DATA];
+    private int length;
+
+    Reader(InputStream in) {
+      this.in = in;
+    }
+
+    /**
+     * Read the next packet.
+     *
+     * @return the kind of the packet; the payload of data packets is then available as {@link
+     *     #text()} or through {@link #dataStream()}.
+     * @throws EOFException if the stream ends before the packet.
+     * @throws IOException if the packet is malformed or cannot be read.
+     */
+    Type read() throws IOException {
+      readFully(header, HEADER);
+      int size = 0;
+      for (byte b : header) {
+        int digit = Character.digit(b, 16);
+        if (digit < 0) {
+          throw new IOException("invalid packet length " + new String(header, UTF_8));
+        }
+        size = size << 4 | digit;
+      }
+      if (size == FLUSH) {
+        length = 0;
+        return Type.FLUSH;
+      }
+      if (size == DELIM) {
+        length = 0;
+        return Type.DELIM;
+      }
+      if (size < HEADER || size - HEADER > MAX_DATA) {
+        throw new IOException("invalid packet length " + size);
+      }
+      length = size - HEADER;
+      readFully(buffer, length);
+      return Type.DATA;
+    }
+
+    /** @return the payload of the last data packet as text, without its line feed. */
+    String text() {
+      int end = length > 0 && buffer[length - 1] == '\n' ? length - 1 : length;
+      return new String(buffer, 0, end, UTF_8);
+    }
+
+    /**
+     * @return the payloads of the data packets up to the next flush packet, as one stream. Data
+     *     not read by the caller must be skipped before the next packet is read.
+     */
+    InputStream dataStream() {
+      return new InputStream() {
+        private final byte[] single = new byte[1];
+        private int offset;
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+          return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (len == 0) {
+            return 0;
+          }
+          while (!done && offset == length) {
+            Type type = Reader.this.read();
+            if (type == Type.FLUSH) {
+              done = true;
+            } else if (type == Type.DELIM) {
+              throw new IOException("unexpected delimiter in data");
+            }
+            offset = 0;
+          }
+          if (done) {
+            return -1;
+          }
+          int n = Math.min(len, length - offset);
+          System.arraycopy(buffer, offset, b, off, n);
+          offset += n;
+          return n;
+        }
+      };
+    }
+
+    private void readFully(byte[] b, int len) throws IOException {
+      int off = 0;
+      while (off < len) {
+        int n = in.read(b, off, len - off);
+        if (n < 0) {
+          throw new EOFException();
+        }
+        off += n;
+      }
+    }
+  }
+
+  static class Writer {
+    private final OutputStream out;
+    private final byte[] header = new byte[HEADER];
+
+    Writer(OutputStream out) {
+      this.out = out;
+    }
+
+    /** Write a line of text, adding its line feed. */
+    Writer text(String line) throws IOException {
+      byte[] payload = (line + "\n").getBytes(UTF_8);
+      if (payload.length > MAX_DATA) {
+        throw new IOException("line too long: " + payload.length + " bytes");
+      }
+      data(payload, 0, payload.length);
+      return this;
+    }
+
+    /** Write data, split into as many packets as needed. */
+    Writer data(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = Math.min(len, MAX_DATA);
+        writeHeader(n + HEADER);
+        out.write(b, off, n);
+        off += n;
+        len -= n;
+      }
+      return this;
+    }
+
+    /**
+     * Write the content of a stream as data packets.
+     *
+     * @return the number of bytes written.
+     */
+    long data(InputStream content) throws IOException {
+      byte[] buffer = new byte[MAX_DATA];
+      long total = 0;
+      int n;
+      while ((n = content.read(buffer)) >= 0) {
+        data(buffer, 0, n);
+        total += n;
+      }
+      return total;
+    }
+
+    Writer delim() throws IOException {
+      writeHeader(DELIM);
+      return this;
+    }
+
+    /** Write a flush packet and send everything written so far. */
+    void flush() throws IOException {
+      writeHeader(FLUSH);
+      out.flush();
+    }
+
+    private void writeHeader(int size) throws IOException {
+      for (int i = HEADER - 1; i >= 0; i--) {
+        header[i] = HEX[size & 0xf];
+        size >>>= 4;
+      }
+      out.write(header);
+    }
+  }
+}
@@ -0,0 +1,326 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.validation;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.events.CommitReceivedEvent;
+import com.google.gerrit.server.git.validators.CommitValidationException;
+import com.google.gerrit.server.git.validators.CommitValidationListener;
+import com.google.gerrit.server.git.validators.CommitValidationMessage;
+import com.google.gerrit.server.git.validators.ValidationMessage;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsConfigurationFactory;
+import com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection;
+import com.googlesource.gerrit.plugins.lfs.LfsRepositoryResolver;
+import com.googlesource.gerrit.plugins.lfs.LfsSizePrefetcher;
+import com.googlesource.gerrit.plugins.lfs.LfsSizePrefetchers;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.eclipse.jgit.lfs.LfsPointer;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Rejects commits with LFS pointer files whose objects were not uploaded to the backend of the
+ * project.
+ *
+ * <p>Only the files a commit adds or changes compared to all of its parents are read, and the
+ * objects of all pointers of a commit are looked up at once, concurrently if the backend allows it.
+ * All commits of a pushed ref share a time budget; once it is used up the remaining commits are
+ * accepted without validation so that huge pushes are not slowed down.
+ */
+@Singleton
+public class LfsPointerValidator implements CommitValidationListener {
+  private static final FluentLogger log = FluentLogger.forEnclosingClass();
+  static final String SECTION = "validation";
+  private static final long DEFAULT_TIME_BUDGET_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  // the LFS specification limits pointer files to 1024 bytes
+  private static final int MAX_POINTER_SIZE = 1024;
+  private static final int MAX_REPORTED_OBJECTS = 10;
+
+  /** Looks up something of a project, such as its backend. */
+  @FunctionalInterface
+  interface Resolver<T, R> {
+    R resolve(Project.NameKey project, T key) throws LfsRepositoryNotFound;
+  }
+
+  /** Time left to validate the commits of a pushed ref. */
+  private static class Budget {
+    final long deadline;
+    boolean exhausted;
+
+    Budget(long deadline) {
+      this.deadline = deadline;
+    }
+
+    boolean isExhausted() {
+      return System.nanoTime() - deadline > 0;
+    }
+
+    long remainingNanos() {
+      return deadline - System.nanoTime();
+    }
+  }
+
+  private final Function<Project.NameKey, LfsProjectConfigSection> projectConfigs;
+  private final Resolver<String, LfsBackend> backends;
+  private final Resolver<LfsBackend, LargeFileRepository> repositories;
+  private final Function<LfsBackend, Optional<LfsSizePrefetcher>> prefetchers;
+  private final long timeBudgetNanos;
+  private final Cache<ReceiveCommand, Budget> budgets =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  @Inject
+  LfsPointerValidator(
+      LfsConfigurationFactory configFactory,
+      LfsRepositoryResolver repoResolver,
+      LfsSizePrefetchers prefetchers) {
+    this(
+        project -> configFactory.getProjectsConfig().getForProject(project),
+        repoResolver::getBackend,
+        repoResolver::get,
+        prefetchers::get,
+        configFactory
+            .getGlobalConfig()
+            .getTimeUnit(SECTION, null, "timeBudget", DEFAULT_TIME_BUDGET_MILLIS, MILLISECONDS));
+  }
+
+  @VisibleForTesting
+  LfsPointerValidator(
+      Function<Project.NameKey, LfsProjectConfigSection> projectConfigs,
+      Resolver<String, LfsBackend> backends,
+      Resolver<LfsBackend, LargeFileRepository> repositories,
+      Function<LfsBackend, Optional<LfsSizePrefetcher>> prefetchers,
+      long timeBudgetMillis) {
+    this.projectConfigs = projectConfigs;
+    this.backends = backends;
+    this.repositories = repositories;
+    this.prefetchers = prefetchers;
+    this.timeBudgetNanos = MILLISECONDS.toNanos(timeBudgetMillis);
+  }
+
+  @Override
+  public List<CommitValidationMessage> onCommitReceived(CommitReceivedEvent event)
+      throws CommitValidationException {
+    Project.NameKey project = event.getProjectNameKey();
+    LfsProjectConfigSection config = projectConfigs.apply(project);
+    if (config == null || !config.isEnabled() || !config.isValidatePointers()) {
+      return ImmutableList.of();
+    }
+
+    Budget budget = getBudget(event.command);
+    if (budget.isExhausted()) {
+      return skipped(budget);
+    }
+
+    Map<LongObjectId, String> pointers;
+    try {
+      pointers = readNewPointers(event.revWalk, event.commit, budget);
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log(
+          "Cannot read LFS pointers of commit %s in project %s", event.commit.name(), project);
+      return ImmutableList.of(
+          new CommitValidationMessage(
+              "LFS pointers were not validated: cannot read the commit",
+              ValidationMessage.Type.WARNING));
+    }
+    if (pointers == null) {
+      return skipped(budget);
+    }
+    if (pointers.isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    List<String> missing;
+    try {
+      missing = findMissing(project, config, pointers, budget);
+    } catch (LfsRepositoryNotFound e) {
+      // logged by the resolver
+      return ImmutableList.of();
+    } catch (IOException e) {
+      log.atWarning().withCause(e).log(
+          "Cannot look up LFS objects of commit %s in project %s", event.commit.name(), project);
+      return ImmutableList.of(
+          new CommitValidationMessage(
+              "LFS pointers were not validated: cannot look up the objects",
+              ValidationMessage.Type.WARNING));
+    }
+    if (missing == null) {
+      return skipped(budget);
+    }
+    if (!missing.isEmpty()) {
+      List<CommitValidationMessage> messages = new ArrayList<>();
+      for (String path : missing.subList(0, Math.min(missing.size(), MAX_REPORTED_OBJECTS))) {
+        messages.add(
+            new CommitValidationMessage(
+                path + ": LFS object was not uploaded", ValidationMessage.Type.ERROR));
+      }
+      if (missing.size() > MAX_REPORTED_OBJECTS) {
+        messages.add(
+            new CommitValidationMessage(
+                String.format("... and %d more", missing.size() - MAX_REPORTED_OBJECTS),
+                ValidationMessage.Type.ERROR));
+      }
+      throw new CommitValidationException(
+          String.format(
+              "%d LFS objects of commit %s were not uploaded, push them with git lfs push",
+              missing.size(), event.commit.abbreviate(7).name()),
+          messages);
+    }
+    return ImmutableList.of();
+  }
+
+  private Budget getBudget(ReceiveCommand command) {
+    if (command == null) {
+      return new Budget(System.nanoTime() + timeBudgetNanos);
+    }
+    try {
+      return budgets.get(command, () -> new Budget(System.nanoTime() + timeBudgetNanos));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static List<CommitValidationMessage> skipped(Budget budget) {
+    synchronized (budget) {
+      if (budget.exhausted) {
+        return ImmutableList.of();
+      }
+      budget.exhausted = true;
+    }
+    return ImmutableList.of(
+        new CommitValidationMessage(
+            "LFS pointers of this and the following commits were not validated,"
+                + " the time budget is used up",
+            ValidationMessage.Type.WARNING));
+  }
+
+  /**
+   * Read the LFS pointers among the files that a commit adds or changes.
+   *
+   * @return the paths of the pointers by object id, or {@code null} if the budget was used up.
+   */
+  private static Map<LongObjectId, String> readNewPointers(
+      RevWalk rw, RevCommit commit, Budget budget) throws IOException {
+    rw.parseHeaders(commit);
+    ObjectReader reader = rw.getObjectReader();
+    Map<LongObjectId, String> pointers = new LinkedHashMap<>();
+    try (TreeWalk tw = new TreeWalk(reader)) {
+      tw.setRecursive(true);
+      tw.addTree(commit.getTree());
+      for (RevCommit parent : commit.getParents()) {
+        tw.addTree(rw.parseCommit(parent).getTree());
+      }
+      if (tw.getTreeCount() > 1) {
+        tw.setFilter(TreeFilter.ANY_DIFF);
+      }
+      while (tw.next()) {
+        if (budget.isExhausted()) {
+          return null;
+        }
+        if (!isNewFile(tw)) {
+          continue;
+        }
+        ObjectId blob = tw.getObjectId(0);
+        if (reader.getObjectSize(blob, Constants.OBJ_BLOB) > MAX_POINTER_SIZE) {
+          continue;
+        }
+        try (InputStream in = reader.open(blob, Constants.OBJ_BLOB).openStream()) {
+          LfsPointer pointer = LfsPointer.parseLfsPointer(in);
+          if (pointer != null) {
+            pointers.putIfAbsent(pointer.getOid().copy(), tw.getPathString());
+          }
+        }
+      }
+    }
+    return pointers;
+  }
+
+  /** @return whether the entry is a file whose content differs from the file of each parent. */
+  private static boolean isNewFile(TreeWalk tw) {
+    if (tw.getRawMode(0) != FileMode.REGULAR_FILE.getBits()
+        && tw.getRawMode(0) != FileMode.EXECUTABLE_FILE.getBits()) {
+      return false;
+    }
+    for (int parent = 1; parent < tw.getTreeCount(); parent++) {
+      if (tw.idEqual(0, parent)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Look up the objects of pointers in the backend of a project.
+   *
+   * @return the paths of the pointers whose object is missing, or {@code null} if the budget was
+   *     used up.
+   */
+  private List<String> findMissing(
+      Project.NameKey project,
+      LfsProjectConfigSection config,
+      Map<LongObjectId, String> pointers,
+      Budget budget)
+      throws LfsRepositoryNotFound, IOException {
+    LfsBackend backend = backends.resolve(project, config.getBackend());
+    LargeFileRepository repository = repositories.resolve(project, backend);
+    Optional<LfsSizePrefetcher> prefetcher = prefetchers.apply(backend);
+    if (prefetcher.isPresent()) {
+      // objects not resolved in time are looked up below until the budget is used up
+      repository =
+          prefetcher
+              .get()
+              .prefetch(repository, pointers.keySet(), budget.remainingNanos(), NANOSECONDS);
+    }
+    List<String> missing = new ArrayList<>();
+    for (Map.Entry<LongObjectId, String> pointer : pointers.entrySet()) {
+      if (budget.isExhausted()) {
+        return null;
+      }
+      if (repository.getSize(pointer.getKey()) < 0) {
+        missing.add(pointer.getValue());
+      }
+    }
+    return missing;
+  }
+}
@@ -0,0 +1,248 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.CurrentUser;
+import com.googlesource.gerrit.plugins.lfs.LfsApiServlet.ObjectCount;
+import com.googlesource.gerrit.plugins.lfs.auth.FakeUserProviders;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
+import org.eclipse.jgit.lfs.errors.LfsUnauthorized;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+import org.junit.Test;
+
+public class LfsApiServletTest {
+  private static final String BATCH_PATH = "/p/info/lfs/objects/batch";
+  private static final String OID_1 =
+      "1111111111111111111111111111111111111111111111111111111111111111";
+  private static final String OID_2 =
+      "2222222222222222222222222222222222222222222222222222222222222222";
+
+  private final RecordingMetricMaker metrics = new RecordingMetricMaker();
+  private LfsException rejection;
+  private LfsException openFailure;
+  private int status;
+
+  private final LfsApiServlet servlet =
+      new LfsApiServlet(new FakeBatchAccess(), FakeUserProviders.always(null), metrics);
+
+  @Test
+  public void testLatencyIsRecordedByBackendOperationAndObjects() throws Exception {
+    post("download", OID_1, OID_2);
+    post("upload", OID_1);
+
+    assertThat(metrics.recorded)
+        .containsExactly(
+            "batch/latency: default download UP_TO_10", "batch/latency: default upload ONE")
+        .inOrder();
+  }
+
+  @Test
+  public void testRejectedRequestIsNotRecorded() throws Exception {
+    rejection = new LfsUnauthorized("download", "p");
+
+    post("download", OID_1);
+
+    assertThat(status).isEqualTo(401);
+    assertThat(metrics.recorded).isEmpty();
+  }
+
+  @Test
+  public void testBatchOfFailedRequestIsNotKeptForNextRequest() throws Exception {
+    openFailure = new LfsRepositoryNotFound("p");
+    post("download", OID_1);
+    assertThat(status).isEqualTo(404);
+    assertThat(metrics.recorded).containsExactly("batch/latency: default download ONE");
+
+    // same thread, so a batch left behind by the first request would be recorded again
+    rejection = new LfsUnauthorized("download", "p");
+    post("download", OID_1, OID_2);
+
+    assertThat(metrics.recorded).containsExactly("batch/latency: default download ONE");
+  }
+
+  @Test
+  public void testObjectCount() throws Exception {
+    assertThat(ObjectCount.of(0)).isEqualTo(ObjectCount.ONE);
+    assertThat(ObjectCount.of(1)).isEqualTo(ObjectCount.ONE);
+    assertThat(ObjectCount.of(2)).isEqualTo(ObjectCount.UP_TO_10);
+    assertThat(ObjectCount.of(10)).isEqualTo(ObjectCount.UP_TO_10);
+    assertThat(ObjectCount.of(11)).isEqualTo(ObjectCount.UP_TO_100);
+    assertThat(ObjectCount.of(1000)).isEqualTo(ObjectCount.UP_TO_1000);
+    assertThat(ObjectCount.of(1001)).isEqualTo(ObjectCount.MORE);
+  }
+
+  private void post(String operation, String... oids) throws Exception {
+    StringBuilder body = new StringBuilder("{\"operation\":\"" + operation + "\",\"objects\":[");
+    for (int i = 0; i < oids.length; i++) {
+      body.append(i > 0 ? "," : "").append("{\"oid\":\"").append(oids[i]).append("\",\"size\":1}");
+    }
+    body.append("]}");
+    ByteArrayInputStream in = new ByteArrayInputStream(body.toString().getBytes(UTF_8));
+    HttpServletRequest req =
+        (HttpServletRequest)
+            Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getInputStream":
+                      return new Input(in);
+                    case "getPathInfo":
+                      return BATCH_PATH;
+                    case "getHeader":
+                      return null;
+                    default:
+                      throw new UnsupportedOperationException(method.getName());
+                  }
+                });
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    status = 200;
+    HttpServletResponse rsp =
+        (HttpServletResponse)
+            Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getOutputStream":
+                      return new Output(out);
+                    case "setStatus":
+                      status = (Integer) args[0];
+                      return null;
+                    case "setContentType":
+                      return null;
+                    default:
+                      throw new UnsupportedOperationException(method.getName());
+                  }
+                });
+    servlet.doPost(req, rsp);
+  }
+
+  private class FakeBatchAccess extends LfsBatchAccess {
+    FakeBatchAccess() {
+      super(null, null, null, null, null, null);
+    }
+
+    @Override
+    public Target check(
+        Project.NameKey project, CurrentUser user, boolean upload, Map<LongObjectId, Long> objects)
+        throws LfsException {
+      if (rejection != null) {
+        throw rejection;
+      }
+      return new Target(project, null, LfsBackend.createDefault(LfsBackendType.FS));
+    }
+
+    @Override
+    public LargeFileRepository open(Target target, boolean upload, Map<LongObjectId, Long> objects)
+        throws LfsException {
+      if (openFailure != null) {
+        throw openFailure;
+      }
+      return new EmptyRepository();
+    }
+  }
+
+  private static class EmptyRepository implements LargeFileRepository {
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      return new Response.Action();
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      return null;
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) {
+      return -1;
+    }
+  }
+
+  private static class Input extends ServletInputStream {
+    private final ByteArrayInputStream in;
+
+    Input(ByteArrayInputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() {
+      return in.read();
+    }
+
+    @Override
+    public boolean isFinished() {
+      return in.available() == 0;
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setReadListener(ReadListener readListener) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class Output extends ServletOutputStream {
+    private final ByteArrayOutputStream out;
+
+    Output(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) {
+      out.write(b);
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,527 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.gerrit.extensions.api.lfs.LfsDefinitions.CONTENTTYPE_VND_GIT_LFS_JSON;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.acceptance.LightweightPluginDaemonTest;
+import com.google.gerrit.acceptance.TestPlugin;
+import com.google.gerrit.acceptance.config.GlobalPluginConfig;
+import com.google.gerrit.acceptance.testsuite.project.ProjectOperations;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.config.CanonicalWebUrl;
+import com.google.gerrit.testing.ConfigSuite;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Load generator simulating concurrent git-lfs clients that batch, upload, download and lock
+ * against the FS backend and against an S3 backend served by an in-process stand-in.
+ *
+ * <p>Each client repeatedly uploads new objects, downloads them again and creates, lists and
+ * deletes a lock until the run time is over. The latency percentiles and the throughput of each
+ * operation are printed at the end. The load is set with the system properties {@code
+ * lfs.load.clients}, {@code lfs.load.seconds}, {@code lfs.load.objectSize} and {@code
+ * lfs.load.objectsPerBatch}.
+ *
+ * <p>Not part of the regular tests; run it with the {@code lfs_load_tests} target.
+ */
+@TestPlugin(
+    name = "lfs",
+    sysModule = "com.googlesource.gerrit.plugins.lfs.Module",
+    httpModule = "com.googlesource.gerrit.plugins.lfs.HttpModule",
+    sshModule = "com.googlesource.gerrit.plugins.lfs.SshModule")
+public class LfsLoadTest extends LightweightPluginDaemonTest {
+  private static final int S3_PORT = 48443;
+  private static final String S3_BACKEND = "standin";
+  private static final String S3_BUCKET = "lfs";
+  private static final String S3_KEY_STORE_PASSWORD = "load-test";
+
+  private static final int CLIENTS = Integer.getInteger("lfs.load.clients", 16);
+  private static final int SECONDS = Integer.getInteger("lfs.load.seconds", 30);
+  private static final int OBJECT_SIZE = Integer.getInteger("lfs.load.objectSize", 256 * 1024);
+  private static final int OBJECTS_PER_BATCH = Integer.getInteger("lfs.load.objectsPerBatch", 8);
+
+  private static final Gson GSON = new Gson();
+
+  private enum Operation {
+    BATCH_UPLOAD,
+    UPLOAD,
+    BATCH_DOWNLOAD,
+    DOWNLOAD,
+    CREATE_LOCK,
+    LIST_LOCKS,
+    DELETE_LOCK
+  }
+
+  @ConfigSuite.Default
+  public static Config enablePlugin() {
+    Config cfg = new Config();
+    cfg.setString("lfs", null, "plugin", "lfs");
+    return cfg;
+  }
+
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Inject private ProjectOperations projectOperations;
+  @Inject @CanonicalWebUrl private Provider<String> webUrl;
+
+  @Test
+  @GlobalPluginConfig(pluginName = "lfs", name = "storage.backend", value = "fs")
+  public void fsBackend() throws Exception {
+    Project.NameKey project = enableLfs("load-fs", null);
+    report("fs", run(project, null));
+  }
+
+  @Test
+  @GlobalPluginConfig(pluginName = "lfs", name = "storage.backend", value = "fs")
+  @GlobalPluginConfig(
+      pluginName = "lfs",
+      name = "s3." + S3_BACKEND + ".hostname",
+      value = "localhost:" + S3_PORT)
+  @GlobalPluginConfig(pluginName = "lfs", name = "s3." + S3_BACKEND + ".region", value = "local")
+  @GlobalPluginConfig(pluginName = "lfs", name = "s3." + S3_BACKEND + ".bucket", value = S3_BUCKET)
+  @GlobalPluginConfig(pluginName = "lfs", name = "s3." + S3_BACKEND + ".accessKey", value = "key")
+  @GlobalPluginConfig(
+      pluginName = "lfs",
+      name = "s3." + S3_BACKEND + ".secretKey",
+      value = "secret")
+  @GlobalPluginConfig(
+      pluginName = "lfs",
+      name = "s3." + S3_BACKEND + ".disableSslVerify",
+      value = "true")
+  public void s3Backend() throws Exception {
+    try (S3StandIn s3 = new S3StandIn(tempDir.newFolder().toPath())) {
+      Project.NameKey project = enableLfs("load-s3", S3_BACKEND);
+      report("s3", run(project, s3.clientContext));
+      assertThat(s3.objects).isNotEmpty();
+    }
+  }
+
+  private Project.NameKey enableLfs(String namespace, String backend) throws Exception {
+    LfsProjectConfigInfo info = new LfsProjectConfigInfo();
+    info.enabled = true;
+    info.backend = backend;
+    LfsGlobalConfigInput input = new LfsGlobalConfigInput();
+    input.namespaces = ImmutableMap.of(namespace + "/*", info);
+    adminRestSession.put("/projects/" + allProjects.get() + "/lfs:config-global", input).assertOK();
+    return projectOperations.newProject().name(namespace + "/project").create();
+  }
+
+  private Results run(Project.NameKey project, SSLContext objectStore) throws Exception {
+    String basicAuth =
+        "Basic "
+            + BaseEncoding.base64()
+                .encode((admin.username() + ":" + admin.httpPassword()).getBytes(UTF_8));
+    String lfsUrl = webUrl.get() + "a/" + project.get() + "/info/lfs/";
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SECONDS);
+    ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+    try {
+      List<Future<Results>> clients = new ArrayList<>(CLIENTS);
+      long start = System.nanoTime();
+      for (int i = 0; i < CLIENTS; i++) {
+        clients.add(
+            executor.submit(new Client(i, lfsUrl, basicAuth, objectStore, deadline)::call));
+      }
+      Results all = new Results();
+      for (Future<Results> client : clients) {
+        all.add(client.get());
+      }
+      all.elapsedNanos = System.nanoTime() - start;
+      return all;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void report(String backend, Results results) {
+    double seconds = results.elapsedNanos / 1e9;
+    StringBuilder out = new StringBuilder();
+    out.append(
+        String.format(
+            "LFS load on the %s backend: %d clients, %.1f s, %d objects of %d bytes per batch%n",
+            backend, CLIENTS, seconds, OBJECTS_PER_BATCH, OBJECT_SIZE));
+    out.append(
+        String.format(
+            "%-15s %8s %10s %10s %10s %10s %10s%n",
+            "operation", "count", "ops/s", "MiB/s", "p50 ms", "p99 ms", "p999 ms"));
+    for (Operation op : Operation.values()) {
+      long[] latencies = results.latencies(op);
+      if (latencies.length == 0) {
+        continue;
+      }
+      Arrays.sort(latencies);
+      out.append(
+          String.format(
+              "%-15s %8d %10.1f %10.1f %10.2f %10.2f %10.2f%n",
+              op.name().toLowerCase(),
+              latencies.length,
+              latencies.length / seconds,
+              results.bytes.getOrDefault(op, 0L) / seconds / (1 << 20),
+              percentile(latencies, 0.5),
+              percentile(latencies, 0.99),
+              percentile(latencies, 0.999)));
+    }
+    System.out.print(out);
+    assertThat(results.errors).isEmpty();
+  }
+
+  /** @return the latency in milliseconds below which the fraction {@code p} of requests ended. */
+  private static double percentile(long[] sortedNanos, double p) {
+    int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+    return sortedNanos[Math.max(0, index)] / 1e6;
+  }
+
+  /** Latencies, transferred bytes and errors of the operations of one or more clients. */
+  private static class Results {
+    final Map<Operation, List<Long>> nanos = new EnumMap<>(Operation.class);
+    final Map<Operation, Long> bytes = new EnumMap<>(Operation.class);
+    final List<String> errors = new ArrayList<>();
+    long elapsedNanos;
+
+    void record(Operation op, long startNanos, long byteCount) {
+      nanos.computeIfAbsent(op, o -> new ArrayList<>()).add(System.nanoTime() - startNanos);
+      bytes.merge(op, byteCount, Long::sum);
+    }
+
+    void add(Results other) {
+      other.nanos.forEach((op, n) -> nanos.computeIfAbsent(op, o -> new ArrayList<>()).addAll(n));
+      other.bytes.forEach((op, b) -> bytes.merge(op, b, Long::sum));
+      errors.addAll(other.errors);
+    }
+
+    long[] latencies(Operation op) {
+      List<Long> latencies = nanos.getOrDefault(op, new ArrayList<>());
+      return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+  }
+
+  /** A git-lfs client doing one upload, download and lock cycle after the other. */
+  private static class Client {
+    private final int number;
+    private final String lfsUrl;
+    private final String basicAuth;
+    private final SSLContext objectStore;
+    private final long deadline;
+    private final Results results = new Results();
+
+    Client(int number, String lfsUrl, String basicAuth, SSLContext objectStore, long deadline) {
+      this.number = number;
+      this.lfsUrl = lfsUrl;
+      this.basicAuth = basicAuth;
+      this.objectStore = objectStore;
+      this.deadline = deadline;
+    }
+
+    Results call() {
+      for (int cycle = 0; System.nanoTime() < deadline; cycle++) {
+        try {
+          cycle(cycle);
+        } catch (IOException | RuntimeException e) {
+          results.errors.add(String.format("client %d, cycle %d: %s", number, cycle, e));
+        }
+      }
+      return results;
+    }
+
+    private void cycle(int cycle) throws IOException {
+      Map<String, byte[]> objects = new HashMap<>();
+      for (int i = 0; i < OBJECTS_PER_BATCH; i++) {
+        byte[] content = new byte[OBJECT_SIZE];
+        ThreadLocalRandom.current().nextBytes(content);
+        objects.put(sha256(content), content);
+      }
+
+      for (JsonObject object : batch(Operation.BATCH_UPLOAD, "upload", objects)) {
+        JsonObject action = action(object, "upload");
+        byte[] content = objects.get(object.get("oid").getAsString());
+        long start = System.nanoTime();
+        send("PUT", action, content);
+        results.record(Operation.UPLOAD, start, content.length);
+      }
+
+      for (JsonObject object : batch(Operation.BATCH_DOWNLOAD, "download", objects)) {
+        JsonObject action = action(object, "download");
+        long start = System.nanoTime();
+        byte[] content = send("GET", action, null);
+        results.record(Operation.DOWNLOAD, start, content.length);
+        if (!Arrays.equals(content, objects.get(object.get("oid").getAsString()))) {
+          throw new IOException("downloaded content differs from " + object.get("oid"));
+        }
+      }
+
+      String path = String.format("client%d/file%d.bin", number, cycle);
+      long start = System.nanoTime();
+      JsonObject lock =
+          lfs("POST", "locks", ImmutableMap.of("path", path)).getAsJsonObject("lock");
+      results.record(Operation.CREATE_LOCK, start, 0);
+
+      start = System.nanoTime();
+      lfs("GET", "locks?path=" + path, null);
+      results.record(Operation.LIST_LOCKS, start, 0);
+
+      start = System.nanoTime();
+      lfs(
+          "POST",
+          "locks/" + lock.get("id").getAsString() + "/unlock",
+          ImmutableMap.of("force", false));
+      results.record(Operation.DELETE_LOCK, start, 0);
+    }
+
+    private List<JsonObject> batch(Operation op, String operation, Map<String, byte[]> objects)
+        throws IOException {
+      JsonArray request = new JsonArray();
+      for (Map.Entry<String, byte[]> object : objects.entrySet()) {
+        JsonObject o = new JsonObject();
+        o.addProperty("oid", object.getKey());
+        o.addProperty("size", object.getValue().length);
+        request.add(o);
+      }
+      JsonObject body = new JsonObject();
+      body.addProperty("operation", operation);
+      body.add("objects", request);
+      long start = System.nanoTime();
+      JsonObject response = lfs("POST", "objects/batch", body);
+      results.record(op, start, 0);
+
+      List<JsonObject> result = new ArrayList<>();
+      for (JsonElement object : response.getAsJsonArray("objects")) {
+        result.add(object.getAsJsonObject());
+      }
+      if (result.size() != objects.size()) {
+        throw new IOException(
+            String.format("%d objects in the %s response", result.size(), operation));
+      }
+      return result;
+    }
+
+    private static JsonObject action(JsonObject object, String name) throws IOException {
+      if (object.has("error")) {
+        throw new IOException("batch error for " + object.get("oid") + ": " + object.get("error"));
+      }
+      JsonObject actions = object.getAsJsonObject("actions");
+      if (actions == null || !actions.has(name)) {
+        throw new IOException("no " + name + " action for " + object.get("oid"));
+      }
+      return actions.getAsJsonObject(name);
+    }
+
+    /** Send a request of the LFS API of the project. */
+    private JsonObject lfs(String method, String path, Object body) throws IOException {
+      Map<String, String> headers =
+          ImmutableMap.of(
+              "Authorization", basicAuth,
+              "Accept", CONTENTTYPE_VND_GIT_LFS_JSON,
+              "Content-Type", CONTENTTYPE_VND_GIT_LFS_JSON);
+      byte[] content = body != null ? GSON.toJson(body).getBytes(UTF_8) : null;
+      byte[] response = request(method, lfsUrl + path, headers, content);
+      return JsonParser.parseString(new String(response, UTF_8)).getAsJsonObject();
+    }
+
+    /** Send a request of a transfer action. */
+    private byte[] send(String method, JsonObject action, byte[] content) throws IOException {
+      Map<String, String> headers = new HashMap<>();
+      JsonObject header = action.getAsJsonObject("header");
+      if (header != null) {
+        header.entrySet().forEach(h -> headers.put(h.getKey(), h.getValue().getAsString()));
+      }
+      return request(method, action.get("href").getAsString(), headers, content);
+    }
+
+    private byte[] request(String method, String url, Map<String, String> headers, byte[] body)
+        throws IOException {
+      HttpURLConnection c = (HttpURLConnection) new URL(url).openConnection();
+      if (c instanceof HttpsURLConnection && objectStore != null) {
+        ((HttpsURLConnection) c).setSSLSocketFactory(objectStore.getSocketFactory());
+      }
+      c.setRequestMethod(method);
+      headers.forEach(c::setRequestProperty);
+      if (body != null) {
+        c.setDoOutput(true);
+        c.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = c.getOutputStream()) {
+          out.write(body);
+        }
+      }
+      int status = c.getResponseCode();
+      if (status >= 300) {
+        try (InputStream err = c.getErrorStream()) {
+          String message = err != null ? new String(ByteStreams.toByteArray(err), UTF_8) : "";
+          throw new IOException(String.format("%s %s: %d %s", method, url, status, message));
+        }
+      }
+      try (InputStream in = c.getInputStream()) {
+        return ByteStreams.toByteArray(in);
+      }
+    }
+
+    private static String sha256(byte[] content) {
+      try {
+        return BaseEncoding.base16()
+            .lowerCase()
+            .encode(MessageDigest.getInstance("SHA-256").digest(content));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Bucket of an S3 service kept in memory, serving the object requests the plugin and the clients
+   * send. Signatures are not checked. It is served over HTTPS with a certificate generated for the
+   * run, which the plugin does not verify and the clients trust.
+   */
+  private static class S3StandIn implements AutoCloseable {
+    final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    final SSLContext clientContext;
+    private final HttpsServer server;
+    private final ExecutorService executor;
+
+    S3StandIn(Path dir) throws Exception {
+      Path keyStoreFile = dir.resolve("s3.p12");
+      Process keytool =
+          new ProcessBuilder(
+                  Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                  "-genkeypair",
+                  "-alias",
+                  "s3",
+                  "-keyalg",
+                  "RSA",
+                  "-dname",
+                  "CN=localhost",
+                  "-ext",
+                  "SAN=dns:localhost,ip:127.0.0.1",
+                  "-validity",
+                  "1",
+                  "-storetype",
+                  "PKCS12",
+                  "-keystore",
+                  keyStoreFile.toString(),
+                  "-storepass",
+                  S3_KEY_STORE_PASSWORD)
+              .inheritIO()
+              .start();
+      assertThat(keytool.waitFor()).isEqualTo(0);
+
+      KeyStore keyStore = KeyStore.getInstance("PKCS12");
+      try (InputStream in = Files.newInputStream(keyStoreFile)) {
+        keyStore.load(in, S3_KEY_STORE_PASSWORD.toCharArray());
+      }
+      KeyManagerFactory keys =
+          KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+      keys.init(keyStore, S3_KEY_STORE_PASSWORD.toCharArray());
+      SSLContext serverContext = SSLContext.getInstance("TLS");
+      serverContext.init(keys.getKeyManagers(), null, null);
+      TrustManagerFactory trust =
+          TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      trust.init(keyStore);
+      clientContext = SSLContext.getInstance("TLS");
+      clientContext.init(null, trust.getTrustManagers(), null);
+
+      executor = Executors.newCachedThreadPool();
+      server = HttpsServer.create(new InetSocketAddress("localhost", S3_PORT), 0);
+      server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+      server.setExecutor(executor);
+      server.createContext("/" + S3_BUCKET + "/", this::handle);
+      server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      try (exchange) {
+        String key = exchange.getRequestURI().getPath().substring(S3_BUCKET.length() + 2);
+        switch (exchange.getRequestMethod()) {
+          case "PUT":
+            try (InputStream in = exchange.getRequestBody()) {
+              objects.put(key, ByteStreams.toByteArray(in));
+            }
+            exchange.sendResponseHeaders(200, -1);
+            break;
+          case "HEAD":
+            byte[] head = objects.get(key);
+            if (head == null) {
+              exchange.sendResponseHeaders(404, -1);
+            } else {
+              exchange.getResponseHeaders().set("Content-Length", String.valueOf(head.length));
+              exchange.sendResponseHeaders(200, -1);
+            }
+            break;
+          case "GET":
+            byte[] content = objects.get(key);
+            if (content == null) {
+              exchange.sendResponseHeaders(404, -1);
+            } else {
+              exchange.sendResponseHeaders(200, content.length);
+              try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+              }
+            }
+            break;
+          default:
+            exchange.sendResponseHeaders(405, -1);
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      server.stop(0);
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,104 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.KEY_ENABLED;
+import static com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection.LFS;
+
+import com.google.gerrit.entities.Project;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class LfsNamespaceIndexTest {
+  @Test
+  public void testExactMatch() throws Exception {
+    LfsNamespaceIndex index = index("plugins/myPlugin");
+    assertThat(namespaceOf(index, "plugins/myPlugin")).isEqualTo("plugins/myPlugin");
+    assertThat(namespaceOf(index, "plugins/myPlugin2")).isNull();
+  }
+
+  @Test
+  public void testPrefixMatch() throws Exception {
+    LfsNamespaceIndex index = index("sandbox/*", "a/b/*");
+    assertThat(namespaceOf(index, "sandbox/foo")).isEqualTo("sandbox/*");
+    assertThat(namespaceOf(index, "sandbox/foo/bar")).isEqualTo("sandbox/*");
+    assertThat(namespaceOf(index, "a/b/c")).isEqualTo("a/b/*");
+    assertThat(namespaceOf(index, "sandbox")).isNull();
+    assertThat(namespaceOf(index, "sandboxes/foo")).isNull();
+    assertThat(namespaceOf(index, "a/bc/d")).isNull();
+  }
+
+  @Test
+  public void testRegexMatch() throws Exception {
+    LfsNamespaceIndex index = index("^test-.*/.*");
+    assertThat(namespaceOf(index, "test-x/foo")).isEqualTo("^test-.*/.*");
+    assertThat(namespaceOf(index, "prod/foo")).isNull();
+  }
+
+  @Test
+  public void testForEachMatch() throws Exception {
+    LfsNamespaceIndex index = index("?/*", "a/?/*");
+    assertThat(namespaceOf(index, "x/y")).isEqualTo("?/*");
+    assertThat(namespaceOf(index, "toplevel")).isNull();
+
+    index = index("a/?/*");
+    assertThat(namespaceOf(index, "a/b/c")).isEqualTo("a/?/*");
+    assertThat(namespaceOf(index, "a/b")).isNull();
+  }
+
+  @Test
+  public void testFirstDefinedNamespaceWins() throws Exception {
+    LfsNamespaceIndex index = index("test/*", "?/*", "test/project");
+    assertThat(namespaceOf(index, "test/project")).isEqualTo("test/*");
+    assertThat(namespaceOf(index, "other/project")).isEqualTo("?/*");
+
+    index = index("^.*/project", "test/*");
+    assertThat(namespaceOf(index, "test/project")).isEqualTo("^.*/project");
+    assertThat(namespaceOf(index, "test/other")).isEqualTo("test/*");
+  }
+
+  @Test
+  public void testInvalidRegexIsIgnored() throws Exception {
+    LfsNamespaceIndex index = index("^[", "test/*");
+    assertThat(namespaceOf(index, "test/project")).isEqualTo("test/*");
+  }
+
+  @Test
+  public void testHolderRebuildsOnlyForNewConfig() throws Exception {
+    LfsNamespaceIndex.Holder holder = new LfsNamespaceIndex.Holder();
+    Config cfg = config("test/*");
+    LfsNamespaceIndex index = holder.get(cfg);
+    assertThat(holder.get(cfg)).isSameInstanceAs(index);
+    assertThat(holder.get(config("test/*"))).isNotSameInstanceAs(index);
+  }
+
+  private static LfsNamespaceIndex index(String... namespaces) {
+    return LfsNamespaceIndex.create(config(namespaces));
+  }
+
+  private static Config config(String... namespaces) {
+    Config cfg = new Config();
+    for (String namespace : namespaces) {
+      cfg.setBoolean(LFS, namespace, KEY_ENABLED, true);
+    }
+    return cfg;
+  }
+
+  private static String namespaceOf(LfsNamespaceIndex index, String project) {
+    LfsProjectConfigSection section = index.getForProject(Project.nameKey(project));
+    return section == null ? null : section.getNamespace();
+  }
+}
@@ -0,0 +1,179 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+import org.junit.After;
+import org.junit.Test;
+
+public class LfsSizePrefetcherTest {
+  private static final LongObjectId A = id("a");
+  private static final LongObjectId B = id("b");
+  private static final LongObjectId C = id("c");
+  private static final LongObjectId SLOW = id("slow");
+  private static final LongObjectId BROKEN = id("broken");
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+  private final FakeRepository repository = new FakeRepository();
+
+  @After
+  public void tearDown() {
+    repository.release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testSizesAreLookedUpConcurrently() throws Exception {
+    // each lookup waits until all three run at the same time
+    repository.concurrent = new CountDownLatch(3);
+    LfsSizePrefetcher prefetcher = new LfsSizePrefetcher(executor, 3, 10, SECONDS);
+
+    LargeFileRepository prefetched = prefetcher.prefetch(repository, ImmutableList.of(A, B, C));
+
+    assertThat(prefetched.getSize(A)).isEqualTo(1);
+    assertThat(prefetched.getSize(B)).isEqualTo(1);
+    assertThat(prefetched.getSize(C)).isEqualTo(1);
+    assertThat(repository.lookups).containsExactly(A, B, C);
+  }
+
+  @Test
+  public void testFailedLookupIsLeftToBatchHandler() throws Exception {
+    LfsSizePrefetcher prefetcher = new LfsSizePrefetcher(executor, 2, 10, SECONDS);
+
+    LargeFileRepository prefetched = prefetcher.prefetch(repository, ImmutableList.of(A, BROKEN));
+
+    assertThat(prefetched.getSize(A)).isEqualTo(1);
+    assertThrows(IOException.class, () -> prefetched.getSize(BROKEN));
+    assertThat(repository.lookups.count(A)).isEqualTo(1);
+    assertThat(repository.lookups.count(BROKEN)).isEqualTo(2);
+  }
+
+  @Test
+  public void testObjectsResolvedBeforeTimeoutAreKept() throws Exception {
+    LfsSizePrefetcher prefetcher = new LfsSizePrefetcher(executor, 2, 10, SECONDS);
+
+    LargeFileRepository prefetched =
+        prefetcher.prefetch(repository, ImmutableList.of(SLOW, A, B), 100, MILLISECONDS);
+
+    // the other task resolved the objects while the slow lookup was running
+    assertThat(prefetched.getSize(A)).isEqualTo(1);
+    assertThat(prefetched.getSize(B)).isEqualTo(1);
+    assertThat(repository.lookups.count(A)).isEqualTo(1);
+    assertThat(repository.lookups.count(B)).isEqualTo(1);
+    // still running, so looked up again
+    assertThat(prefetched.getSize(SLOW)).isEqualTo(1);
+    assertThat(repository.lookups.count(SLOW)).isEqualTo(2);
+  }
+
+  @Test
+  public void testBatchHandlerLooksUpObjectsNotStartedAtTimeout() throws Exception {
+    LfsSizePrefetcher prefetcher = new LfsSizePrefetcher(executor, 1, 100, MILLISECONDS);
+
+    LargeFileRepository prefetched =
+        prefetcher.prefetch(repository, ImmutableList.of(SLOW, A, B, C));
+    assertThat(repository.lookups).containsExactly(SLOW);
+    assertThat(prefetched.getSize(A)).isEqualTo(1);
+    assertThat(prefetched.getSize(B)).isEqualTo(1);
+    repository.release.countDown();
+    executor.shutdown();
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+
+    // the task resumed with the objects the batch handler had not reached yet
+    assertThat(prefetched.getSize(C)).isEqualTo(1);
+    assertThat(prefetched.getSize(SLOW)).isEqualTo(1);
+    assertThat(repository.lookups).containsExactly(SLOW, A, B, C);
+  }
+
+  @Test
+  public void testSingleObjectIsNotPrefetched() throws Exception {
+    LfsSizePrefetcher prefetcher = new LfsSizePrefetcher(executor, 2, 10, SECONDS);
+
+    assertThat(prefetcher.prefetch(repository, ImmutableList.of(A))).isSameInstanceAs(repository);
+    assertThat(repository.lookups).isEmpty();
+  }
+
+  @Test
+  public void testRejectedLookupsAreLeftToBatchHandler() throws Exception {
+    executor.shutdown();
+    LfsSizePrefetcher prefetcher = new LfsSizePrefetcher(executor, 2, 10, SECONDS);
+
+    LargeFileRepository prefetched = prefetcher.prefetch(repository, ImmutableList.of(A, B));
+
+    assertThat(prefetched.getSize(A)).isEqualTo(1);
+    assertThat(repository.lookups).containsExactly(A);
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromString(Hashing.sha256().hashString(content, UTF_8).toString());
+  }
+
+  private static class FakeRepository implements LargeFileRepository {
+    final Multiset<AnyLongObjectId> lookups = ConcurrentHashMultiset.create();
+    final CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch concurrent = new CountDownLatch(0);
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) throws IOException {
+      boolean first = lookups.add(id.copy()) && lookups.count(id) == 1;
+      concurrent.countDown();
+      try {
+        if (!concurrent.await(10, SECONDS)) {
+          throw new IOException("lookups did not run concurrently");
+        }
+        if (id.equals(SLOW) && first) {
+          release.await(10, SECONDS);
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (id.equals(BROKEN)) {
+        throw new IOException("broken");
+      }
+      return 1;
+    }
+  }
+}
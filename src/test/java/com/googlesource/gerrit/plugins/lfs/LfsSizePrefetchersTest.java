@@ -0,0 +1,63 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class LfsSizePrefetchersTest {
+  private static final LfsBackend FS = LfsBackend.createDefault(LfsBackendType.FS);
+  private static final LfsBackend S3 = LfsBackend.create("remote", LfsBackendType.S3);
+
+  private Config cfg = new Config();
+  private final LfsSizePrefetchers prefetchers =
+      new LfsSizePrefetchers(() -> new LfsGlobalConfig(cfg));
+
+  @After
+  public void tearDown() {
+    prefetchers.stop();
+  }
+
+  @Test
+  public void testDefaults() throws Exception {
+    assertThat(prefetchers.get(FS)).isEmpty();
+    assertThat(prefetchers.get(S3)).isPresent();
+    assertThat(prefetchers.get(S3).get()).isSameInstanceAs(prefetchers.get(S3).get());
+  }
+
+  @Test
+  public void testPrefetcherIsReplacedWhenSettingsChange() throws Exception {
+    LfsSizePrefetcher initial = prefetchers.get(S3).get();
+
+    cfg = new Config();
+    cfg.setInt("s3", "remote", "batchThreads", 2);
+    LfsSizePrefetcher moreThreads = prefetchers.get(S3).get();
+    assertThat(moreThreads).isNotSameInstanceAs(initial);
+
+    cfg.setString("s3", "remote", "batchTimeout", "5 s");
+    LfsSizePrefetcher shorterTimeout = prefetchers.get(S3).get();
+    assertThat(shorterTimeout).isNotSameInstanceAs(moreThreads);
+    assertThat(prefetchers.get(S3).get()).isSameInstanceAs(shorterTimeout);
+
+    cfg.setInt("s3", "remote", "batchThreads", 0);
+    assertThat(prefetchers.get(S3)).isEmpty();
+
+    cfg.setInt("fs", null, "batchThreads", 4);
+    assertThat(prefetchers.get(FS)).isPresent();
+  }
+}
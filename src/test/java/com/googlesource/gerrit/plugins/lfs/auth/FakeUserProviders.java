@@ -0,0 +1,33 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.auth;
+
+import com.google.gerrit.server.CurrentUser;
+import java.util.Optional;
+
+/** User providers for tests of other packages. */
+public class FakeUserProviders {
+  private FakeUserProviders() {}
+
+  /** Returns a provider that accepts no SSH token and answers every request with the user. */
+  public static LfsAuthUserProvider always(CurrentUser user) {
+    return new LfsAuthUserProvider(
+        () -> user,
+        (authToken, project, operation) -> Optional.empty(),
+        username -> Optional.empty(),
+        0,
+        0);
+  }
+}
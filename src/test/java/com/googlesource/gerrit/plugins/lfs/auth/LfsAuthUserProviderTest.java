@@ -0,0 +1,141 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.auth;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.googlesource.gerrit.plugins.lfs.auth.LfsSshRequestAuthorizer.SSH_AUTH_PREFIX;
+
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.GroupMembership;
+import com.googlesource.gerrit.plugins.lfs.auth.LfsSshRequestAuthorizer.LfsSshAuthToken;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+
+public class LfsAuthUserProviderTest {
+  private static final String AUTH = SSH_AUTH_PREFIX + "token";
+
+  private final FakeUser anonymous = new FakeUser(0);
+  private final FakeUser alice = new FakeUser(1);
+  private final Map<String, LfsSshAuthToken> tokens = new HashMap<>();
+  private int validations;
+  private int lookups;
+
+  private final LfsAuthUserProvider provider =
+      new LfsAuthUserProvider(
+          () -> anonymous,
+          (authToken, project, operation) -> {
+            validations++;
+            LfsSshAuthToken token = tokens.get(authToken);
+            return token != null
+                    && token.project.equals(project)
+                    && token.operation.equals(operation)
+                ? Optional.of(token)
+                : Optional.empty();
+          },
+          username -> {
+            lookups++;
+            return username.equals("alice") ? Optional.of(alice) : Optional.empty();
+          },
+          10,
+          60);
+
+  @Test
+  public void testUserIsReusedForSameTokenProjectAndOperation() throws Exception {
+    issue("p", "upload", Instant.now());
+
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(validations).isEqualTo(1);
+    assertThat(lookups).isEqualTo(1);
+  }
+
+  @Test
+  public void testTokenIsValidatedAgainForOtherProjectOrOperation() throws Exception {
+    issue("p", "upload", Instant.now());
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+
+    assertThat(provider.getUser(AUTH, "other", "upload")).isSameInstanceAs(anonymous);
+    assertThat(provider.getUser(AUTH, "p", "download")).isSameInstanceAs(anonymous);
+    assertThat(validations).isEqualTo(3);
+    // the failed validations dropped the user of the token
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(validations).isEqualTo(4);
+  }
+
+  @Test
+  public void testUserOfExpiredTokenIsNotReused() throws Exception {
+    issue("p", "upload", Instant.now().minusSeconds(120));
+
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(validations).isEqualTo(2);
+  }
+
+  @Test
+  public void testUserIsDroppedWhenAccountIsIndexed() throws Exception {
+    issue("p", "upload", Instant.now());
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+
+    provider.onAccountIndexed(2);
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(lookups).isEqualTo(1);
+
+    provider.onAccountIndexed(1);
+    assertThat(provider.getUser(AUTH, "p", "upload")).isSameInstanceAs(alice);
+    assertThat(lookups).isEqualTo(2);
+  }
+
+  @Test
+  public void testRequestsWithoutSshTokenGetFallbackUser() throws Exception {
+    issue("p", "upload", Instant.now());
+
+    assertThat(provider.getUser(null, "p", "upload")).isSameInstanceAs(anonymous);
+    assertThat(provider.getUser("token", "p", "upload")).isSameInstanceAs(anonymous);
+    assertThat(validations).isEqualTo(0);
+  }
+
+  private void issue(String project, String operation, Instant issued) {
+    tokens.put(
+        AUTH.substring(SSH_AUTH_PREFIX.length()),
+        new LfsSshAuthToken("alice", project, operation, issued, 60L));
+  }
+
+  private static class FakeUser extends CurrentUser {
+    private final Account.Id id;
+
+    FakeUser(int id) {
+      this.id = Account.id(id);
+    }
+
+    @Override
+    public Account.Id getAccountId() {
+      return id;
+    }
+
+    @Override
+    public GroupMembership getEffectiveGroups() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object getCacheKey() {
+      return id;
+    }
+  }
+}
@@ -16,11 +16,23 @@ package com.googlesource.gerrit.plugins.lfs.auth;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import com.google.common.collect.ImmutableList;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import org.junit.Test;
 
 public class LfsCipherTest {
   private static final String PLAIN_TEXT = "plain text";
+  private static final long OVERLAP = 60_000;
 
   private final LfsCipher cipher = new LfsCipher();
 
@@ -51,7 +63,106 @@ public class LfsCipherTest {
     Optional<String> decrypted =
         cipher.decrypt(
             encrypted.substring(1, 2) + encrypted.substring(0, 1) + encrypted.substring(2));
-    assertThat(decrypted).isPresent();
-    assertThat(decrypted.get()).isNotEqualTo(PLAIN_TEXT);
+    assertThat(decrypted).isEmpty();
+  }
+
+  @Test
+  public void testVerifyDecodeAgainstTamperedCipherText() throws Exception {
+    byte[] token = Base64.getDecoder().decode(cipher.encrypt(PLAIN_TEXT));
+    token[token.length / 2] ^= 1;
+    assertThat(cipher.decrypt(Base64.getEncoder().encodeToString(token))).isEmpty();
+  }
+
+  @Test
+  public void testVerifyDecodeAgainstMalformedInput() throws Exception {
+    assertThat(cipher.decrypt(null)).isEmpty();
+    assertThat(cipher.decrypt("not base64!")).isEmpty();
+    assertThat(cipher.decrypt(cipher.encrypt(PLAIN_TEXT).substring(0, 8))).isEmpty();
+  }
+
+  @Test
+  public void testVerifyDecodeAgainstTokenOfOtherCipher() throws Exception {
+    assertThat(cipher.decrypt(new LfsCipher().encrypt(PLAIN_TEXT))).isEmpty();
+  }
+
+  @Test
+  public void testConcurrentEncryptAndDecrypt() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Optional<String>>> results = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        String input = PLAIN_TEXT + i;
+        results.add(executor.submit(() -> cipher.decrypt(cipher.encrypt(input))));
+      }
+      for (int i = 0; i < results.size(); i++) {
+        assertThat(results.get(i).get()).hasValue(PLAIN_TEXT + i);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTokenIsVerifiedByOtherNodeWithSameKeys() throws Exception {
+    LfsKeyRing keys = new LfsKeyRing(ImmutableList.of(key("a", 0)), OVERLAP);
+    LfsCipher node1 = new LfsCipher(keys, () -> 0);
+    LfsCipher node2 = new LfsCipher(keys, () -> 0);
+    assertThat(node2.decrypt(node1.encrypt(PLAIN_TEXT))).hasValue(PLAIN_TEXT);
+  }
+
+  @Test
+  public void testKeysRotateAtActivationTime() throws Exception {
+    LfsKeyRing keys = new LfsKeyRing(ImmutableList.of(key("b", 1000), key("a", 0)), OVERLAP);
+    AtomicLong now = new AtomicLong(999);
+    LfsCipher rotating = new LfsCipher(keys, now::get);
+    String signedByA = rotating.encrypt(PLAIN_TEXT);
+
+    now.set(1000);
+    String signedByB = rotating.encrypt(PLAIN_TEXT);
+    LfsKeyRing onlyKeyA = new LfsKeyRing(ImmutableList.of(keys.signingKey(0)), 0);
+    LfsCipher onlyA = new LfsCipher(onlyKeyA, () -> 0);
+    assertThat(onlyA.decrypt(signedByA)).hasValue(PLAIN_TEXT);
+    assertThat(onlyA.decrypt(signedByB)).isEmpty();
+  }
+
+  @Test
+  public void testReplacedKeyIsAcceptedDuringOverlap() throws Exception {
+    LfsKeyRing keys = new LfsKeyRing(ImmutableList.of(key("a", 0), key("b", 1000)), OVERLAP);
+    AtomicLong now = new AtomicLong(0);
+    LfsCipher cipher = new LfsCipher(keys, now::get);
+    String signedByA = cipher.encrypt(PLAIN_TEXT);
+
+    now.set(1000 + OVERLAP - 1);
+    assertThat(cipher.decrypt(signedByA)).hasValue(PLAIN_TEXT);
+    now.set(1000 + OVERLAP);
+    assertThat(cipher.decrypt(signedByA)).isEmpty();
+  }
+
+  @Test
+  public void testFutureKeyVerifiesBeforeActivation() throws Exception {
+    LfsKeyRing early = new LfsKeyRing(ImmutableList.of(key("a", 0), key("b", 1000)), OVERLAP);
+    LfsCipher clockAhead = new LfsCipher(early, () -> 1000);
+    LfsCipher clockBehind = new LfsCipher(early, () -> 0);
+    assertThat(clockBehind.decrypt(clockAhead.encrypt(PLAIN_TEXT))).hasValue(PLAIN_TEXT);
+  }
+
+  @Test
+  public void testKeyIdIsAuthenticated() throws Exception {
+    SecretKey secret = new SecretKeySpec(new byte[16], LfsKeyRing.ALGORITHM);
+    LfsKeyRing keys =
+        new LfsKeyRing(
+            ImmutableList.of(
+                new LfsKeyRing.Key("a", secret, 0), new LfsKeyRing.Key("b", secret, 0)),
+            OVERLAP);
+    byte[] token = Base64.getDecoder().decode(new LfsCipher(keys, () -> 0).encrypt(PLAIN_TEXT));
+    token[1] = token[1] == 'a' ? (byte) 'b' : (byte) 'a';
+    assertThat(new LfsCipher(keys, () -> 0).decrypt(Base64.getEncoder().encodeToString(token)))
+        .isEmpty();
+  }
+
+  private static LfsKeyRing.Key key(String id, long activeFrom) {
+    byte[] secret = new byte[16];
+    new SecureRandom().nextBytes(secret);
+    return new LfsKeyRing.Key(id, new SecretKeySpec(secret, LfsKeyRing.ALGORITHM), activeFrom);
   }
 }
@@ -0,0 +1,95 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.auth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class LfsKeyRingTest {
+  private static final long ROTATION = Instant.parse("2027-01-01T00:00:00Z").toEpochMilli();
+
+  private final SecureRandom random = new SecureRandom();
+
+  @Test
+  public void testKeysAreReadFromSecureStore() throws Exception {
+    SecureConfig cfg = new SecureConfig();
+    cfg.fromText("[auth \"2026-10\"]\n[auth \"2027-01\"]\n  activeFrom = 2027-01-01T00:00:00Z\n");
+    cfg.secure.setString("auth", "2026-10", "key", key());
+    cfg.secure.setString("auth", "2027-01", "key", key());
+
+    LfsKeyRing keys = LfsKeyRing.load(new LfsGlobalConfig(cfg), random);
+
+    assertThat(keys.signingKey(ROTATION - 1).id).isEqualTo("2026-10");
+    assertThat(keys.signingKey(ROTATION).id).isEqualTo("2027-01");
+    assertThat(keys.signingKey(ROTATION).secret.getEncoded())
+        .isEqualTo(Base64.getDecoder().decode(cfg.secure.getString("auth", "2027-01", "key")));
+    assertThat(keys.verificationKey("2026-10", ROTATION)).isNotNull();
+  }
+
+  @Test
+  public void testKeyWithoutSectionInConfigIsNotFound() throws Exception {
+    SecureConfig cfg = new SecureConfig();
+    cfg.secure.setString("auth", "2026-10", "key", key());
+
+    LfsKeyRing keys = LfsKeyRing.load(new LfsGlobalConfig(cfg), random);
+
+    assertThat(keys.signingKey(0).id).isEmpty();
+    assertThat(keys.verificationKey("2026-10", 0)).isNull();
+  }
+
+  @Test
+  public void testKeyWithoutValueIsIgnored() throws Exception {
+    SecureConfig cfg = new SecureConfig();
+    cfg.fromText("[auth \"2026-10\"]\n[auth \"2027-01\"]\n");
+    cfg.secure.setString("auth", "2026-10", "key", key());
+
+    LfsKeyRing keys = LfsKeyRing.load(new LfsGlobalConfig(cfg), random);
+
+    assertThat(keys.signingKey(ROTATION).id).isEqualTo("2026-10");
+    assertThat(keys.verificationKey("2027-01", ROTATION)).isNull();
+  }
+
+  private String key() {
+    byte[] key = new byte[32];
+    random.nextBytes(key);
+    return Base64.getEncoder().encodeToString(key);
+  }
+
+  /**
+   * Overlays the values of a secure store as the global plugin configuration of Gerrit does: only
+   * the values are looked up in the secure store, not the sections.
+   */
+  private static class SecureConfig extends Config {
+    final Config secure = new Config();
+
+    @Override
+    public String getString(String section, String subsection, String name) {
+      String value = secure.getString(section, subsection, name);
+      return value != null ? value : super.getString(section, subsection, name);
+    }
+
+    @Override
+    public String[] getStringList(String section, String subsection, String name) {
+      String[] values = secure.getStringList(section, subsection, name);
+      return values.length > 0 ? values : super.getStringList(section, subsection, name);
+    }
+  }
+}
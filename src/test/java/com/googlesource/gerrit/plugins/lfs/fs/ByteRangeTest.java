@@ -0,0 +1,78 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Optional;
+import org.junit.Test;
+
+public class ByteRangeTest {
+  private static final long SIZE = 1000;
+
+  @Test
+  public void testClosedRange() throws Exception {
+    ByteRange range = ByteRange.parse("bytes=100-199", SIZE).get();
+    assertThat(range.isSatisfiable()).isTrue();
+    assertThat(range.start).isEqualTo(100);
+    assertThat(range.length()).isEqualTo(100);
+    assertThat(range.contentRange()).isEqualTo("bytes 100-199/1000");
+  }
+
+  @Test
+  public void testOpenRange() throws Exception {
+    ByteRange range = ByteRange.parse("bytes=900-", SIZE).get();
+    assertThat(range.length()).isEqualTo(100);
+    assertThat(range.contentRange()).isEqualTo("bytes 900-999/1000");
+  }
+
+  @Test
+  public void testEndIsClampedToSize() throws Exception {
+    ByteRange range = ByteRange.parse("bytes=900-5000", SIZE).get();
+    assertThat(range.contentRange()).isEqualTo("bytes 900-999/1000");
+  }
+
+  @Test
+  public void testSuffixRange() throws Exception {
+    assertThat(ByteRange.parse("bytes=-100", SIZE).get().contentRange())
+        .isEqualTo("bytes 900-999/1000");
+    assertThat(ByteRange.parse("bytes=-5000", SIZE).get().contentRange())
+        .isEqualTo("bytes 0-999/1000");
+  }
+
+  @Test
+  public void testUnsatisfiableRange() throws Exception {
+    assertUnsatisfiable(ByteRange.parse("bytes=1000-", SIZE));
+    assertUnsatisfiable(ByteRange.parse("bytes=-0", SIZE));
+    assertUnsatisfiable(ByteRange.parse("bytes=0-", 0));
+  }
+
+  @Test
+  public void testIgnoredRange() throws Exception {
+    assertThat(ByteRange.parse(null, SIZE)).isEmpty();
+    assertThat(ByteRange.parse("", SIZE)).isEmpty();
+    assertThat(ByteRange.parse("items=0-1", SIZE)).isEmpty();
+    assertThat(ByteRange.parse("bytes=0-1,5-6", SIZE)).isEmpty();
+    assertThat(ByteRange.parse("bytes=5-1", SIZE)).isEmpty();
+    assertThat(ByteRange.parse("bytes=a-b", SIZE)).isEmpty();
+    assertThat(ByteRange.parse("bytes=-", SIZE)).isEmpty();
+    assertThat(ByteRange.parse("bytes=99999999999999999999-", SIZE)).isEmpty();
+  }
+
+  private static void assertUnsatisfiable(Optional<ByteRange> range) {
+    assertThat(range).isPresent();
+    assertThat(range.get().isSatisfiable()).isFalse();
+  }
+}
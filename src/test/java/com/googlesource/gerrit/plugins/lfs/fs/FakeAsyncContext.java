@@ -0,0 +1,145 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+/** Asynchronous request whose response collects the bytes written to it. */
+class FakeAsyncContext implements AsyncContext {
+  final Output out = new Output();
+  final HttpServletResponse response =
+      (HttpServletResponse)
+          Proxy.newProxyInstance(
+              HttpServletResponse.class.getClassLoader(),
+              new Class<?>[] {HttpServletResponse.class},
+              (proxy, method, args) -> {
+                if (method.getName().equals("getOutputStream")) {
+                  return out;
+                }
+                throw new UnsupportedOperationException(method.getName());
+              });
+  final List<AsyncListener> listeners = new ArrayList<>();
+  int completions;
+  long timeout;
+
+  static class Output extends ServletOutputStream {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    // writes accepted before the container would block
+    int writesUntilBlocked = Integer.MAX_VALUE;
+    boolean closed;
+
+    @Override
+    public void write(int b) {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      writesUntilBlocked--;
+      bytes.write(b, off, len);
+    }
+
+    @Override
+    public boolean isReady() {
+      return writesUntilBlocked > 0;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  @Override
+  public ServletRequest getRequest() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public ServletResponse getResponse() {
+    return response;
+  }
+
+  @Override
+  public boolean hasOriginalRequestAndResponse() {
+    return true;
+  }
+
+  @Override
+  public void dispatch() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void dispatch(String path) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void dispatch(ServletContext context, String path) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public synchronized void complete() {
+    completions++;
+  }
+
+  @Override
+  public void start(Runnable run) {
+    run.run();
+  }
+
+  @Override
+  public void addListener(AsyncListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void addListener(AsyncListener listener, ServletRequest req, ServletResponse rsp) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public <T extends AsyncListener> T createListener(Class<T> clazz) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  @Override
+  public long getTimeout() {
+    return timeout;
+  }
+}
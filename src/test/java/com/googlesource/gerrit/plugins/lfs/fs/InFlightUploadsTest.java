@@ -0,0 +1,61 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.Test;
+
+public class InFlightUploadsTest {
+  private static final LongObjectId ID =
+      LongObjectId.fromString("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+  private static final LongObjectId OTHER =
+      LongObjectId.fromString("fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210");
+
+  private final InFlightUploads uploads = new InFlightUploads();
+  private final List<Boolean> notified = new ArrayList<>();
+
+  @Test
+  public void testFirstUploaderWrites() throws Exception {
+    assertThat(uploads.tryStart(ID, notified::add)).isTrue();
+    assertThat(uploads.tryStart(OTHER, notified::add)).isTrue();
+    assertThat(uploads.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testConcurrentUploadersWaitForSuccess() throws Exception {
+    assertThat(uploads.tryStart(ID, notified::add)).isTrue();
+    assertThat(uploads.tryStart(ID, notified::add)).isFalse();
+    assertThat(uploads.tryStart(ID, notified::add)).isFalse();
+    assertThat(notified).isEmpty();
+
+    uploads.finish(ID, true);
+    assertThat(notified).containsExactly(true, true);
+    assertThat(uploads.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testWaiterRetriesAfterFailure() throws Exception {
+    assertThat(uploads.tryStart(ID, notified::add)).isTrue();
+    assertThat(uploads.tryStart(ID, notified::add)).isFalse();
+
+    uploads.finish(ID, false);
+    assertThat(notified).containsExactly(false);
+    assertThat(uploads.tryStart(ID, notified::add)).isTrue();
+  }
+}
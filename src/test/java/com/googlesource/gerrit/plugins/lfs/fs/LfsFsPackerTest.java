@@ -0,0 +1,107 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.lib.MutableLongObjectId;
+import org.junit.After;
+import org.junit.Test;
+
+public class LfsFsPackerTest {
+  private static final LongObjectId A = id("a");
+  private static final LongObjectId B = id("b");
+
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private final LfsFsPacker packer = new LfsFsPacker(executor);
+  private final List<AnyLongObjectId> packed = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testObjectIsPackedInBackground() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    MutableLongObjectId id = new MutableLongObjectId();
+    id.fromObjectId(A);
+
+    packer.pack(
+        "default",
+        object -> {
+          await(release);
+          packed.add(object);
+        },
+        id);
+    // the caller may reuse its id
+    id.fromObjectId(B);
+    assertThat(packed).isEmpty();
+    release.countDown();
+    packer.stop();
+
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+    assertThat(packed).containsExactly(A);
+  }
+
+  @Test
+  public void testFailedPackingDoesNotStopPacker() throws Exception {
+    packer.pack(
+        "default",
+        object -> {
+          throw new IOException("disk full");
+        },
+        A);
+    packer.pack("default", packed::add, B);
+    packer.stop();
+
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+    assertThat(packed).containsExactly(B);
+  }
+
+  @Test
+  public void testObjectsAreNotPackedAfterStop() throws Exception {
+    packer.stop();
+
+    packer.pack("default", packed::add, A);
+
+    assertThat(executor.awaitTermination(10, SECONDS)).isTrue();
+    assertThat(packed).isEmpty();
+  }
+
+  private static void await(CountDownLatch latch) throws IOException {
+    try {
+      latch.await(10, SECONDS);
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromRaw(Hashing.sha256().hashString(content, UTF_8).asBytes());
+  }
+}
@@ -17,38 +17,103 @@ package com.googlesource.gerrit.plugins.lfs.fs;
 import static com.google.common.truth.Truth.assertThat;
 import static org.eclipse.jgit.lfs.lib.LongObjectId.zeroId;
 
+import com.google.gerrit.metrics.DisabledMetricMaker;
 import com.googlesource.gerrit.plugins.lfs.auth.AuthInfo;
 import com.googlesource.gerrit.plugins.lfs.auth.LfsCipher;
-import com.googlesource.gerrit.plugins.lfs.fs.LfsFsRequestAuthorizer.Processor;
 import java.time.Instant;
+import java.util.Base64;
 import org.eclipse.jgit.lfs.lib.LongObjectId;
 import org.junit.Test;
 
 public class LfsFsRequestAuthorizerTest {
+  private static final String BACKEND = "backend";
+
   private final LfsFsRequestAuthorizer auth =
-      new LfsFsRequestAuthorizer(new Processor(new LfsCipher()));
+      new LfsFsRequestAuthorizer(new LfsCipher(), 100, new DisabledMetricMaker());
 
   @Test
   public void testVerifyAuthInfo() throws Exception {
-    AuthInfo info = auth.generateAuthInfo("o", zeroId(), Instant.now(), 1L);
-    assertThat(auth.verifyAuthInfo(info.authToken(), "o", zeroId())).isTrue();
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 1L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, zeroId())).isTrue();
   }
 
   @Test
   public void testVerifyAgainstDifferentOperation() throws Exception {
-    AuthInfo info = auth.generateAuthInfo("o", zeroId(), Instant.now(), 1L);
-    assertThat(auth.verifyAuthInfo(info.authToken(), "p", zeroId())).isFalse();
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 1L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "p", BACKEND, zeroId())).isFalse();
   }
 
   @Test
   public void testVerifyAgainstDifferentObjectId() throws Exception {
-    AuthInfo info = auth.generateAuthInfo("o", zeroId(), Instant.now(), 1L);
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 1L);
     assertThat(
             auth.verifyAuthInfo(
                 info.authToken(),
                 "o",
+                BACKEND,
                 LongObjectId.fromString(
                     "123456789012345678901234567890" + "123456789012345678901234567890" + "1234")))
         .isFalse();
   }
+
+  @Test
+  public void testVerifyAgainstDifferentBackend() throws Exception {
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 1L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", "other", zeroId())).isFalse();
+  }
+
+  @Test
+  public void testVerifyExpiredToken() throws Exception {
+    AuthInfo info =
+        auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now().minusSeconds(2), 1L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, zeroId())).isFalse();
+  }
+
+  @Test
+  public void testVerifyTamperedToken() throws Exception {
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 1L);
+    byte[] token = Base64.getDecoder().decode(info.authToken());
+    // extend the expiry time
+    token[2]++;
+    assertThat(
+            auth.verifyAuthInfo(
+                Base64.getEncoder().encodeToString(token), "o", BACKEND, zeroId()))
+        .isFalse();
+  }
+
+  @Test
+  public void testGrantAuthorizesEachObjectOnly() throws Exception {
+    LfsFsRequestAuthorizer.Grant grant = auth.grant("o", BACKEND, Instant.now(), 1L);
+    LongObjectId other = LongObjectId.fromString("1" + zeroId().name().substring(1));
+    String token = grant.authorize(zeroId()).authToken();
+    assertThat(auth.verifyAuthInfo(token, "o", BACKEND, zeroId())).isTrue();
+    assertThat(auth.verifyAuthInfo(token, "o", BACKEND, other)).isFalse();
+    assertThat(auth.verifyAuthInfo(grant.authorize(other).authToken(), "o", BACKEND, other))
+        .isTrue();
+  }
+
+  @Test
+  public void testRepeatedVerificationIsCached() throws Exception {
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 10L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, zeroId())).isTrue();
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, zeroId())).isTrue();
+    assertThat(auth.getTokenCacheStats().hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCachedTokenIsOnlyValidForItsTransfer() throws Exception {
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 10L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, zeroId())).isTrue();
+    LongObjectId other = LongObjectId.fromString("1" + zeroId().name().substring(1));
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, other)).isFalse();
+    assertThat(auth.verifyAuthInfo(info.authToken(), "p", BACKEND, zeroId())).isFalse();
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", "other", zeroId())).isFalse();
+  }
+
+  @Test
+  public void testFailedVerificationIsNotCached() throws Exception {
+    AuthInfo info = auth.generateAuthInfo("o", BACKEND, zeroId(), Instant.now(), 10L);
+    assertThat(auth.verifyAuthInfo(info.authToken(), "p", BACKEND, zeroId())).isFalse();
+    assertThat(auth.verifyAuthInfo(info.authToken(), "o", BACKEND, zeroId())).isTrue();
+  }
 }
@@ -0,0 +1,136 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LfsFsShardRebalancerTest {
+  private static final LfsBackend BACKEND = LfsBackend.createDefault(LfsBackendType.FS);
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private Path a;
+  private Path b;
+  private Path c;
+  private LfsFsDataDirectoryManager dataDirManager;
+  private LfsFsShardRebalancer rebalancer;
+
+  @Before
+  public void setUp() throws Exception {
+    a = tmp.newFolder("a").toPath();
+    b = tmp.newFolder("b").toPath();
+    c = tmp.newFolder("c").toPath();
+    dataDirManager = new LfsFsDataDirectoryManager(null, tmp.newFolder("data").toPath());
+    rebalancer = new LfsFsShardRebalancer(dataDirManager, new DisabledMetricMaker());
+  }
+
+  @After
+  public void tearDown() {
+    rebalancer.stop();
+  }
+
+  @Test
+  public void testShardsChangedTwiceBeforeRebalanceCompleted() throws Exception {
+    List<LongObjectId> ids = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      ids.add(id(i));
+      write(ShardRing.objectPath(a, id(i)));
+    }
+
+    // interrupted after moving some objects from a to b
+    ShardRing first = ring(a, b);
+    assertThat(rebalancer.start(BACKEND, a, first).isSettled()).isFalse();
+    int moved = 0;
+    for (LongObjectId id : ids) {
+      if (first.locate(id).equals(b) && moved++ % 2 == 0) {
+        Path target = first.getPath(id);
+        Files.createDirectories(target.getParent());
+        Files.move(ShardRing.objectPath(a, id), target);
+      }
+    }
+    assertThat(moved).isGreaterThan(1);
+
+    // restarted with c instead of b
+    ShardRing second = ring(a, c);
+    ShardHistory history = rebalancer.start(BACKEND, a, second);
+    assertThat(history.rings()).containsExactly(ring(a), first, second).inOrder();
+    assertThat(history.shards()).containsExactly(a, b, c);
+    for (LongObjectId id : ids) {
+      assertThat(Files.exists(history.getPath(id))).isTrue();
+    }
+
+    CountDownLatch settled = new CountDownLatch(1);
+    rebalancer.rebalance(BACKEND, history, settled::countDown);
+    assertThat(settled.await(30, SECONDS)).isTrue();
+
+    for (LongObjectId id : ids) {
+      assertThat(Files.exists(second.getPath(id))).isTrue();
+      assertThat(Files.exists(ShardRing.objectPath(b, id))).isFalse();
+    }
+    assertThat(rebalancer.start(BACKEND, a, second)).isEqualTo(ShardHistory.settled(second));
+  }
+
+  @Test
+  public void testSettledShardsAreNotRecordedAgain() throws Exception {
+    ShardHistory history = rebalancer.start(BACKEND, a, ring(a));
+
+    assertThat(history.isSettled()).isTrue();
+    assertThat(Files.exists(dataDirManager.getShardStateFile(BACKEND))).isFalse();
+  }
+
+  @Test
+  public void testStateFileOfSingleRingIsSettled() throws Exception {
+    Path state = dataDirManager.getShardStateFile(BACKEND);
+    Files.createDirectories(state.getParent());
+    Files.write(state, ImmutableList.of(a.toString(), b.toString()), UTF_8);
+
+    assertThat(ShardHistory.read(state, a)).isEqualTo(ShardHistory.settled(ring(a, b)));
+    ShardHistory history = rebalancer.start(BACKEND, a, ring(a, b, c));
+    assertThat(ShardHistory.read(state, a)).isEqualTo(history);
+    assertThat(history.rings()).containsExactly(ring(a, b), ring(a, b, c)).inOrder();
+  }
+
+  private static ShardRing ring(Path... shards) {
+    return new ShardRing(ImmutableList.copyOf(shards));
+  }
+
+  private static void write(Path object) throws Exception {
+    Files.createDirectories(object.getParent());
+    Files.write(object, object.getFileName().toString().getBytes(UTF_8));
+  }
+
+  private static LongObjectId id(int i) {
+    return LongObjectId.fromString(Hashing.sha256().hashInt(i).toString());
+  }
+}
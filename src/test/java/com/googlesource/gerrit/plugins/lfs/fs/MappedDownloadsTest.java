@@ -0,0 +1,173 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsTransferWatchdog.Operation;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import javax.servlet.WriteListener;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedDownloadsTest {
+  // larger than one chunk of the mapped listener
+  private static final int SIZE = 600 << 10;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final byte[] content = new byte[SIZE];
+  private final FakeAsyncContext context = new FakeAsyncContext();
+  private Path object;
+
+  @Before
+  public void setUp() throws Exception {
+    new Random(1).nextBytes(content);
+    object = tmp.getRoot().toPath().resolve("object");
+    Files.write(object, content);
+  }
+
+  @Test
+  public void testRangeIsServedFromMappedFile() throws Exception {
+    MappedDownloads downloads = new MappedDownloads(1);
+    WriteListener listener = downloads.open(context, object, new ByteRange(100, SIZE - 101, SIZE));
+    assertThat(listener).isInstanceOf(MappedObjectDownloadListener.class);
+
+    listener.onWritePossible();
+
+    assertThat(context.out.bytes.toByteArray())
+        .isEqualTo(Arrays.copyOfRange(content, 100, SIZE - 100));
+    assertThat(context.out.closed).isTrue();
+    assertThat(context.completions).isEqualTo(1);
+  }
+
+  @Test
+  public void testRangeIsServedFromMappedPack() throws Exception {
+    ByteBuffer pack = ByteBuffer.wrap(content);
+    WriteListener listener =
+        new MappedObjectDownloadListener(context, pack, new ByteRange(10, 1009, SIZE));
+
+    listener.onWritePossible();
+
+    assertThat(context.out.bytes.toByteArray()).isEqualTo(Arrays.copyOfRange(content, 10, 1010));
+    assertThat(pack.position()).isEqualTo(0);
+    assertThat(context.completions).isEqualTo(1);
+  }
+
+  @Test
+  public void testPermitIsHeldUntilDownloadCompletes() throws Exception {
+    MappedDownloads downloads = new MappedDownloads(1);
+    WriteListener listener = downloads.open(context, object, ByteRange.all(SIZE));
+    context.out.writesUntilBlocked = 1;
+
+    listener.onWritePossible();
+    assertThat(context.completions).isEqualTo(0);
+    assertThat(downloads.tryOpen(new FakeAsyncContext(), object, ByteRange.all(SIZE))).isEmpty();
+
+    context.out.writesUntilBlocked = Integer.MAX_VALUE;
+    listener.onWritePossible();
+    assertThat(context.out.bytes.toByteArray()).isEqualTo(content);
+    assertThat(context.completions).isEqualTo(1);
+    assertThat(downloads.tryOpen(new FakeAsyncContext(), object, ByteRange.all(SIZE))).isPresent();
+  }
+
+  @Test
+  public void testPermitIsReleasedOnError() throws Exception {
+    MappedDownloads downloads = new MappedDownloads(1);
+    WriteListener listener = downloads.open(context, object, ByteRange.all(SIZE));
+
+    listener.onError(new IOException("connection reset"));
+    listener.onError(new IOException("connection reset"));
+
+    assertThat(context.completions).isEqualTo(2);
+    assertThat(downloads.tryOpen(new FakeAsyncContext(), object, ByteRange.all(SIZE))).isPresent();
+    assertThat(downloads.tryOpen(new FakeAsyncContext(), object, ByteRange.all(SIZE))).isEmpty();
+  }
+
+  @Test
+  public void testPermitIsReleasedOnAbort() throws Exception {
+    LfsFsTransferWatchdog watchdog = new LfsFsTransferWatchdog(new DisabledMetricMaker());
+    try {
+      MappedDownloads downloads = new MappedDownloads(1);
+      WatchedTransfer transfer =
+          new WatchedTransfer(
+              watchdog, "default", Operation.DOWNLOAD, new TransferLimits(1000, 0, 0));
+      transfer.start(context);
+      WriteListener listener = transfer.watch(downloads.open(context, object, ByteRange.all(SIZE)));
+      context.out.writesUntilBlocked = 1;
+      listener.onWritePossible();
+
+      transfer.onTimeout(null);
+
+      assertThat(context.completions).isEqualTo(2);
+      assertThat(downloads.tryOpen(new FakeAsyncContext(), object, ByteRange.all(SIZE)))
+          .isPresent();
+    } finally {
+      watchdog.stop();
+    }
+  }
+
+  @Test
+  public void testBufferedDownloadWhenAllPermitsAreTaken() throws Exception {
+    MappedDownloads downloads = new MappedDownloads(1);
+    assertThat(downloads.open(new FakeAsyncContext(), object, ByteRange.all(SIZE)))
+        .isInstanceOf(MappedObjectDownloadListener.class);
+
+    WriteListener listener = downloads.open(context, object, new ByteRange(1, 10, SIZE));
+    assertThat(listener).isInstanceOf(ObjectRangeDownloadListener.class);
+    listener.onWritePossible();
+    assertThat(context.out.bytes.toByteArray()).isEqualTo(Arrays.copyOfRange(content, 1, 11));
+  }
+
+  @Test
+  public void testBufferedDownloadWhenMappingFails() throws Exception {
+    MappedDownloads downloads =
+        new MappedDownloads(
+            1,
+            (context, object, range, permits) -> {
+              throw new IOException("cannot map");
+            });
+
+    WriteListener listener = downloads.open(context, object, ByteRange.all(SIZE));
+
+    assertThat(listener).isInstanceOf(ObjectRangeDownloadListener.class);
+    listener.onWritePossible();
+    assertThat(context.out.bytes.toByteArray()).isEqualTo(content);
+    // the permit of the failed mapping was released
+    assertThrows(
+        IOException.class,
+        () -> downloads.tryOpen(new FakeAsyncContext(), object, ByteRange.all(SIZE)));
+  }
+
+  @Test
+  public void testMissingObjectIsNotDownloaded() throws Exception {
+    MappedDownloads downloads = new MappedDownloads(1);
+    Path missing = tmp.getRoot().toPath().resolve("missing");
+
+    assertThrows(
+        NoSuchFileException.class, () -> downloads.open(context, missing, ByteRange.all(SIZE)));
+    assertThat(downloads.tryOpen(context, object, ByteRange.all(SIZE))).isPresent();
+  }
+}
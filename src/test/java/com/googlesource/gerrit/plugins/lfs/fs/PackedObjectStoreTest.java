@@ -0,0 +1,212 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PackedObjectStoreTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testAddAndRead() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 1 << 20);
+    LongObjectId a = add(store, "first");
+    LongObjectId b = add(store, "second object");
+    assertThat(read(store, a)).isEqualTo("first");
+    assertThat(read(store, b)).isEqualTo("second object");
+    assertThat(store.getSize(b)).isEqualTo(13);
+    assertThat(store.getSize(id("missing"))).isEqualTo(-1);
+    assertThat(store.read(id("missing"))).isEmpty();
+    store.close();
+  }
+
+  @Test
+  public void testIndexIsReloaded() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 1 << 20);
+    LongObjectId a = add(store, "first");
+    store.close();
+
+    store = new PackedObjectStore(packs(), 1 << 20);
+    assertThat(read(store, a)).isEqualTo("first");
+    LongObjectId b = add(store, "second");
+    assertThat(read(store, b)).isEqualTo("second");
+    assertThat(store.size()).isEqualTo(2);
+    store.close();
+  }
+
+  @Test
+  public void testIncompleteIndexEntryIsDropped() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 1 << 20);
+    LongObjectId a = add(store, "first");
+    store.close();
+    Files.write(packs().resolve("index"), new byte[] {1, 2, 3}, APPEND);
+
+    store = new PackedObjectStore(packs(), 1 << 20);
+    assertThat(store.size()).isEqualTo(1);
+    LongObjectId b = add(store, "second");
+    store.close();
+
+    store = new PackedObjectStore(packs(), 1 << 20);
+    assertThat(read(store, a)).isEqualTo("first");
+    assertThat(read(store, b)).isEqualTo("second");
+    store.close();
+  }
+
+  @Test
+  public void testNewPackIsStartedWhenFull() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 8);
+    LongObjectId a = add(store, "12345");
+    LongObjectId b = add(store, "67890");
+    assertThat(store.getEntry(a).get().pack).isNotEqualTo(store.getEntry(b).get().pack);
+    assertThat(read(store, a)).isEqualTo("12345");
+    assertThat(read(store, b)).isEqualTo("67890");
+    store.close();
+  }
+
+  @Test
+  public void testAddingTwiceKeepsFirstCopy() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 1 << 20);
+    LongObjectId a = add(store, "first");
+    add(store, "first");
+    assertThat(store.size()).isEqualTo(1);
+    assertThat(store.getEntry(a).get().offset).isEqualTo(0);
+    store.close();
+  }
+
+  @Test
+  public void testRemoveRewritesPacks() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 12);
+    LongObjectId a = add(store, "aaaaa");
+    LongObjectId b = add(store, "bbbbb");
+    LongObjectId c = add(store, "ccccc");
+    int packOfA = store.getEntry(a).get().pack;
+
+    store.remove(ImmutableList.of(a, id("missing")));
+    assertThat(store.getSize(a)).isEqualTo(-1);
+    assertThat(read(store, b)).isEqualTo("bbbbb");
+    assertThat(read(store, c)).isEqualTo("ccccc");
+    assertThat(Files.exists(packs().resolve(packOfA + ".pack"))).isFalse();
+    store.close();
+
+    store = new PackedObjectStore(packs(), 12);
+    assertThat(store.ids()).containsExactly(b, c);
+    assertThat(read(store, b)).isEqualTo("bbbbb");
+    assertThat(read(store, c)).isEqualTo("ccccc");
+    store.close();
+  }
+
+  @Test
+  public void testObjectsAddedWhileRemovingAreKept() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 64);
+    List<LongObjectId> removed = new ArrayList<>();
+    List<LongObjectId> kept = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      (i % 2 == 0 ? removed : kept).add(add(store, "old " + i));
+    }
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      Path file = tmp.newFile().toPath();
+      Files.write(file, ("new " + i).getBytes(UTF_8));
+      files.add(file);
+    }
+
+    AtomicReference<Exception> failure = new AtomicReference<>();
+    Thread remover =
+        new Thread(
+            () -> {
+              try {
+                store.remove(removed);
+              } catch (Exception e) {
+                failure.set(e);
+              }
+            });
+    remover.start();
+    for (int i = 0; i < 40; i++) {
+      LongObjectId id = id("new " + i);
+      store.add(id, files.get(i));
+      kept.add(id);
+    }
+    remover.join();
+
+    assertThat(failure.get()).isNull();
+    assertThat(store.ids()).containsExactlyElementsIn(kept);
+    assertThat(read(store, id("old 1"))).isEqualTo("old 1");
+    assertThat(read(store, id("new 39"))).isEqualTo("new 39");
+    store.close();
+
+    PackedObjectStore reopened = new PackedObjectStore(packs(), 64);
+    assertThat(reopened.ids()).containsExactlyElementsIn(kept);
+    for (int i = 0; i < 40; i++) {
+      assertThat(read(reopened, id("new " + i))).isEqualTo("new " + i);
+    }
+    reopened.close();
+  }
+
+  @Test
+  public void testPackOfInterruptedRemovalIsDeleted() throws Exception {
+    PackedObjectStore store = new PackedObjectStore(packs(), 8);
+    LongObjectId a = add(store, "aaaaa");
+    store.close();
+    // a removal copied objects to pack 2, and added objects went to pack 3 before the index was
+    // swapped
+    Files.write(packs().resolve("2.pack"), "bbbbb".getBytes(UTF_8));
+    Files.write(packs().resolve("3.pack"), new byte[0]);
+
+    store = new PackedObjectStore(packs(), 8);
+    assertThat(Files.exists(packs().resolve("2.pack"))).isFalse();
+    assertThat(read(store, a)).isEqualTo("aaaaa");
+    LongObjectId c = add(store, "ccccc");
+    assertThat(store.getEntry(c).get().pack).isEqualTo(3);
+    store.close();
+  }
+
+  private Path packs() {
+    return tmp.getRoot().toPath().resolve("packs");
+  }
+
+  private LongObjectId add(PackedObjectStore store, String content) throws Exception {
+    LongObjectId id = id(content);
+    Path file = tmp.newFile().toPath();
+    Files.write(file, content.getBytes(UTF_8));
+    store.add(id, file);
+    return id;
+  }
+
+  private static String read(PackedObjectStore store, LongObjectId id) throws Exception {
+    ByteBuffer buf = store.read(id).get();
+    byte[] content = new byte[buf.remaining()];
+    buf.get(content);
+    return new String(content, UTF_8);
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromRaw(Hashing.sha256().hashString(content, UTF_8).asBytes());
+  }
+}
@@ -0,0 +1,74 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.time.Instant;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.Test;
+
+public class ProxyDownloadAuthTest {
+  private static final LongObjectId ID =
+      LongObjectId.fromString("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+  private static final LongObjectId OTHER =
+      LongObjectId.fromString("fedcba9876543210fedcba9876543210fedcba9876543210fedcba9876543210");
+  private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+  private final ProxyDownloadAuth auth = new ProxyDownloadAuth("secret");
+
+  @Test
+  public void testSignedHeaderIsVerified() throws Exception {
+    String header = auth.sign(ID, NOW.plusSeconds(10));
+    assertThat(header).startsWith("LFS-HMAC-SHA256 1700000010:");
+    assertThat(auth.verify(header, ID, NOW)).isTrue();
+    assertThat(auth.verify(header, ID, NOW.plusSeconds(10))).isTrue();
+  }
+
+  @Test
+  public void testSignatureMatchesDocumentedFormat() throws Exception {
+    // echo -n "<id>:1700000010" | openssl dgst -sha256 -hmac secret
+    assertThat(auth.sign(ID, NOW.plusSeconds(10)))
+        .isEqualTo(
+            "LFS-HMAC-SHA256 1700000010:"
+                + "fb4255a256f18f65826c090e0046ac592c0a330f1d517ec4e3e111c066b8bf7f");
+  }
+
+  @Test
+  public void testExpiredHeaderIsRejected() throws Exception {
+    assertThat(auth.verify(auth.sign(ID, NOW.plusSeconds(10)), ID, NOW.plusSeconds(11))).isFalse();
+  }
+
+  @Test
+  public void testHeaderOfOtherObjectIsRejected() throws Exception {
+    assertThat(auth.verify(auth.sign(OTHER, NOW.plusSeconds(10)), ID, NOW)).isFalse();
+  }
+
+  @Test
+  public void testHeaderSignedWithOtherSecretIsRejected() throws Exception {
+    String header = new ProxyDownloadAuth("other").sign(ID, NOW.plusSeconds(10));
+    assertThat(auth.verify(header, ID, NOW)).isFalse();
+  }
+
+  @Test
+  public void testMalformedHeaderIsRejected() throws Exception {
+    assertThat(auth.verify(null, ID, NOW)).isFalse();
+    assertThat(auth.verify("", ID, NOW)).isFalse();
+    assertThat(auth.verify("LFS-HMAC-SHA256", ID, NOW)).isFalse();
+    assertThat(auth.verify("LFS-HMAC-SHA256 abc:def", ID, NOW)).isFalse();
+    assertThat(auth.verify("LFS-HMAC-SHA256 :def", ID, NOW)).isFalse();
+    assertThat(auth.verify("Bearer 1700000010:def", ID, NOW)).isFalse();
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.Test;
+
+public class ShardRingTest {
+  private static final Path A = Paths.get("/disk-a/lfs");
+  private static final Path B = Paths.get("/disk-b/lfs");
+  private static final Path C = Paths.get("/disk-c/lfs");
+
+  @Test
+  public void testSingleDirectoryUsesFileLfsRepositoryLayout() throws Exception {
+    LongObjectId id = id(0);
+    String name = id.name();
+    assertThat(new ShardRing(ImmutableList.of(A)).getPath(id))
+        .isEqualTo(A.resolve(name.substring(0, 2) + "/" + name.substring(2, 4) + "/" + name));
+  }
+
+  @Test
+  public void testObjectsAreSpreadOverAllShards() throws Exception {
+    ShardRing ring = new ShardRing(ImmutableList.of(A, B, C));
+    Map<Path, Integer> counts = new HashMap<>();
+    for (int i = 0; i < 3000; i++) {
+      counts.merge(ring.locate(id(i)), 1, Integer::sum);
+    }
+    assertThat(counts.keySet()).containsExactly(A, B, C);
+    for (int count : counts.values()) {
+      assertThat(count).isGreaterThan(700);
+    }
+  }
+
+  @Test
+  public void testAddingShardOnlyMovesObjectsToIt() throws Exception {
+    ShardRing before = new ShardRing(ImmutableList.of(A, B));
+    ShardRing after = new ShardRing(ImmutableList.of(A, B, C));
+    int moved = 0;
+    for (int i = 0; i < 3000; i++) {
+      Path owner = after.locate(id(i));
+      if (!owner.equals(before.locate(id(i)))) {
+        assertThat(owner).isEqualTo(C);
+        moved++;
+      }
+    }
+    assertThat(moved).isGreaterThan(0);
+  }
+
+  @Test
+  public void testOrderOfShardsDoesNotMatter() throws Exception {
+    ShardRing ring = new ShardRing(ImmutableList.of(A, B));
+    assertThat(ring).isEqualTo(new ShardRing(ImmutableList.of(B, A)));
+    assertThat(ring.locate(id(1))).isEqualTo(new ShardRing(ImmutableList.of(B, A)).locate(id(1)));
+  }
+
+  @Test
+  public void testIsObject() throws Exception {
+    LongObjectId id = id(0);
+    assertThat(ShardRing.isObject(A, ShardRing.objectPath(A, id))).isTrue();
+    assertThat(ShardRing.isObject(A, A.resolve("lfs_locks/project/" + id.name()))).isFalse();
+    assertThat(ShardRing.isObject(A, ShardRing.objectPath(B, id))).isFalse();
+  }
+
+  private static LongObjectId id(int i) {
+    return LongObjectId.fromRaw(Hashing.sha256().hashString("object" + i, UTF_8).asBytes());
+  }
+}
@@ -0,0 +1,257 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.fs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import com.googlesource.gerrit.plugins.lfs.RecordingMetricMaker;
+import com.googlesource.gerrit.plugins.lfs.fs.LfsFsTransferWatchdog.Operation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.servlet.WriteListener;
+import org.eclipse.jgit.lib.Config;
+import org.junit.After;
+import org.junit.Test;
+
+public class WatchedTransferTest {
+  // long enough for the scheduled checks not to run during a test, which runs them itself
+  private static final long STALL_TIMEOUT = HOURS.toMillis(1);
+
+  private final RecordingMetricMaker metrics = new RecordingMetricMaker();
+  private final LfsFsTransferWatchdog watchdog = new LfsFsTransferWatchdog(metrics);
+  private final FakeAsyncContext context = new FakeAsyncContext();
+  private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void tearDown() {
+    watchdog.stop();
+  }
+
+  @Test
+  public void testTimeoutAbortsTransfer() throws Exception {
+    WatchedTransfer transfer = start(new TransferLimits(1000, 0, 0));
+    transfer.watch(new RecordingListener());
+    assertThat(context.timeout).isEqualTo(1000);
+    assertThat(context.listeners).containsExactly(transfer);
+
+    transfer.onTimeout(null);
+
+    assertThat(events).containsExactly("error: TIMEOUT: exceeded 1000 ms");
+    assertThat(context.completions).isEqualTo(1);
+    assertThat(metrics.recorded)
+        .containsExactly("fs/transfers_aborted: default DOWNLOAD TIMEOUT +1");
+  }
+
+  @Test
+  public void testNoCallbacksAfterAbort() throws Exception {
+    WatchedTransfer transfer = start(new TransferLimits(1000, 0, 0));
+    WriteListener listener = transfer.watch(new RecordingListener());
+    listener.onWritePossible();
+
+    transfer.onTimeout(null);
+    transfer.onTimeout(null);
+    listener.onWritePossible();
+    listener.onError(new IOException("closed"));
+
+    assertThat(events).containsExactly("write", "error: TIMEOUT: exceeded 1000 ms").inOrder();
+    assertThat(context.completions).isEqualTo(1);
+  }
+
+  @Test
+  public void testAbortWaitsForRunningCallback() throws Exception {
+    WatchedTransfer transfer = start(new TransferLimits(1000, 0, 0));
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    WriteListener listener =
+        transfer.watch(
+            new RecordingListener() {
+              @Override
+              public void onWritePossible() {
+                writing.countDown();
+                await(release);
+                super.onWritePossible();
+              }
+            });
+    Thread container = inThread(() -> listener.onWritePossible());
+    writing.await();
+    Thread scheduler = inThread(() -> transfer.onTimeout(null));
+
+    scheduler.join(100);
+    assertThat(events).isEmpty();
+    release.countDown();
+    container.join();
+    scheduler.join();
+
+    assertThat(events).containsExactly("write", "error: TIMEOUT: exceeded 1000 ms").inOrder();
+  }
+
+  @Test
+  public void testStalledTransferIsAborted() throws Exception {
+    WatchedTransfer transfer = start(new TransferLimits(0, STALL_TIMEOUT, 0));
+    transfer.watch(new RecordingListener());
+    OutputStream out = transfer.countBytes(context.response).getOutputStream();
+
+    out.write(1);
+    transfer.checkProgress();
+    assertThat(events).isEmpty();
+
+    transfer.checkProgress();
+    assertThat(events)
+        .containsExactly("error: STALLED: transferred 0 bytes in the last 3600000 ms");
+    assertThat(context.completions).isEqualTo(1);
+    assertThat(metrics.recorded)
+        .containsExactly("fs/transfers_aborted: default DOWNLOAD STALLED +1");
+  }
+
+  @Test
+  public void testSlowTransferMakingProgressIsNotAborted() throws Exception {
+    // one byte per second is 3600 bytes per window
+    WatchedTransfer transfer = start(new TransferLimits(0, STALL_TIMEOUT, 1));
+    transfer.watch(new RecordingListener());
+    OutputStream out = transfer.countBytes(context.response).getOutputStream();
+
+    for (int i = 0; i < 3; i++) {
+      out.write(new byte[3600]);
+      transfer.checkProgress();
+    }
+    assertThat(events).isEmpty();
+
+    out.write(new byte[3599]);
+    transfer.checkProgress();
+    assertThat(events)
+        .containsExactly("error: STALLED: transferred 3599 bytes in the last 3600000 ms");
+    assertThat(context.out.bytes.size()).isEqualTo(3 * 3600 + 3599);
+  }
+
+  @Test
+  public void testWatchdogChecksProgressPeriodically() throws Exception {
+    CountDownLatch aborted = new CountDownLatch(1);
+    WatchedTransfer transfer =
+        new WatchedTransfer(watchdog, "default", Operation.DOWNLOAD, new TransferLimits(0, 10, 0));
+    transfer.watch(
+        new RecordingListener() {
+          @Override
+          public void onError(Throwable e) {
+            super.onError(e);
+            aborted.countDown();
+          }
+        });
+    transfer.start(context);
+
+    assertThat(aborted.await(10, SECONDS)).isTrue();
+    assertThat(events).containsExactly("error: STALLED: transferred 0 bytes in the last 10 ms");
+  }
+
+  @Test
+  public void testCompletedTransferIsNotAborted() throws Exception {
+    WatchedTransfer transfer = start(new TransferLimits(1000, STALL_TIMEOUT, 0));
+    transfer.watch(new RecordingListener());
+
+    transfer.onComplete(null);
+    transfer.checkProgress();
+    transfer.onTimeout(null);
+
+    assertThat(events).isEmpty();
+    assertThat(context.completions).isEqualTo(0);
+  }
+
+  @Test
+  public void testCompletedTransferIsRecorded() throws Exception {
+    WatchedTransfer transfer = start(new TransferLimits(1000, STALL_TIMEOUT, 0));
+    transfer.watch(new RecordingListener());
+    OutputStream out = transfer.countBytes(context.response).getOutputStream();
+    out.write(new byte[100]);
+    out.write(1);
+
+    transfer.onComplete(null);
+
+    assertThat(metrics.recorded)
+        .containsExactly(
+            "fs/transferred_bytes: default DOWNLOAD +101", "fs/transfer_latency: default DOWNLOAD")
+        .inOrder();
+  }
+
+  @Test
+  public void testLimitsFromConfig() throws Exception {
+    LfsBackend backend = LfsBackend.create("slow", LfsBackendType.FS);
+    Config cfg = new Config();
+    cfg.setString("fs", "slow", "transferTimeout", "1 min");
+    cfg.setString("fs", "slow", "stallTimeout", "10 s");
+    cfg.setString("fs", "slow", "minTransferRate", "1k");
+
+    TransferLimits limits = TransferLimits.create(new LfsGlobalConfig(cfg), backend);
+    assertThat(limits.timeoutMillis).isEqualTo(60_000);
+    assertThat(limits.stallTimeoutMillis).isEqualTo(10_000);
+    assertThat(limits.minBytesPerWindow()).isEqualTo(10_240);
+
+    limits = TransferLimits.create(new LfsGlobalConfig(new Config()), backend);
+    assertThat(limits.timeoutMillis).isEqualTo(0);
+    assertThat(limits.stallTimeoutMillis).isEqualTo(60_000);
+    assertThat(limits.minBytesPerWindow()).isEqualTo(1);
+  }
+
+  private WatchedTransfer start(TransferLimits limits) {
+    WatchedTransfer transfer = new WatchedTransfer(watchdog, "default", Operation.DOWNLOAD, limits);
+    transfer.start(context);
+    return transfer;
+  }
+
+  private static Thread inThread(ThrowingRunnable run) {
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                run.run();
+              } catch (Exception e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    thread.start();
+    return thread;
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      assertThat(latch.await(10, SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private interface ThrowingRunnable {
+    void run() throws Exception;
+  }
+
+  private class RecordingListener implements WriteListener {
+    @Override
+    public void onWritePossible() {
+      events.add("write");
+    }
+
+    @Override
+    public void onError(Throwable e) {
+      events.add("error: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,289 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.gc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.entities.AccountGroup;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.git.GitRepositoryManager;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
+import com.googlesource.gerrit.plugins.lfs.LfsGlobalConfig;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import com.googlesource.gerrit.plugins.lfs.quota.LfsQuotas;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import org.eclipse.jgit.errors.RepositoryNotFoundException;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lfs.LfsPointer;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LfsGcTest {
+  private static final LfsBackend BACKEND = LfsBackend.createDefault(LfsBackendType.FS);
+  private static final Instant OLD = Instant.EPOCH;
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final Map<Project.NameKey, InMemoryRepository> repos = new HashMap<>();
+  private final Set<Project.NameKey> broken = new TreeSet<>();
+  private final FakeStore store = new FakeStore();
+  private LfsGc gc;
+
+  @Before
+  public void setUp() throws Exception {
+    Config cfg = new Config();
+    cfg.setInt("gc", null, "threads", 2);
+    gc =
+        new LfsGc(
+            () -> new LfsGlobalConfig(cfg),
+            new FakeProjectCache(),
+            new FakeRepositoryManager(),
+            backend -> backend.equals(BACKEND) ? store : null,
+            new LfsQuotas(tmp.getRoot().toPath()));
+  }
+
+  @Test
+  public void testKeepsObjectsOfProjectsWithoutLfsConfiguration() throws Exception {
+    // no project has a namespace any more, as if they were moved or LFS was disabled for them
+    commitPointer("moved", id("a"));
+    commitPointer("other", id("b"));
+    store.put(id("a"), OLD);
+    store.put(id("b"), OLD);
+    store.put(id("c"), OLD);
+    store.put(id("d"), Instant.now());
+
+    List<LongObjectId> garbage = new ArrayList<>();
+    List<LfsGc.Result> results =
+        gc.run(ImmutableList.of(BACKEND), false, message -> {}, garbage::add);
+
+    assertThat(garbage).containsExactly(id("c"));
+    assertThat(results).hasSize(1);
+    assertThat(results.get(0).objects).isEqualTo(4);
+    assertThat(results.get(0).deleted).isTrue();
+    assertThat(store.objects.keySet()).containsExactly(id("a"), id("b"), id("d"));
+  }
+
+  @Test
+  public void testDryRunDeletesNothing() throws Exception {
+    commitPointer("p", id("a"));
+    store.put(id("a"), OLD);
+    store.put(id("c"), OLD);
+
+    List<LongObjectId> garbage = new ArrayList<>();
+    List<LfsGc.Result> results =
+        gc.run(ImmutableList.of(BACKEND), true, message -> {}, garbage::add);
+
+    assertThat(garbage).containsExactly(id("c"));
+    assertThat(results.get(0).deleted).isFalse();
+    assertThat(store.objects).hasSize(2);
+  }
+
+  @Test
+  public void testProjectThatCannotBeMarkedPreventsDeletion() throws Exception {
+    commitPointer("p", id("a"));
+    broken.add(Project.nameKey("broken"));
+    store.put(id("c"), OLD);
+
+    assertThrows(
+        IOException.class, () -> gc.run(ImmutableList.of(BACKEND), false, message -> {}, id -> {}));
+    assertThat(store.objects).hasSize(1);
+  }
+
+  private void commitPointer(String project, LongObjectId id) throws IOException {
+    InMemoryRepository repo = new InMemoryRepository(new DfsRepositoryDescription(project));
+    repos.put(Project.nameKey(project), repo);
+    ByteArrayOutputStream pointer = new ByteArrayOutputStream();
+    new LfsPointer(id, 10).encode(pointer);
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      ObjectId blob = ins.insert(Constants.OBJ_BLOB, pointer.toByteArray());
+      TreeFormatter tree = new TreeFormatter();
+      tree.append("file.bin", FileMode.REGULAR_FILE, blob);
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(ins.insert(tree));
+      PersonIdent ident = new PersonIdent("gc", "gc@example.com");
+      commit.setAuthor(ident);
+      commit.setCommitter(ident);
+      commit.setMessage("add file");
+      ObjectId commitId = ins.insert(commit);
+      ins.flush();
+      RefUpdate update = repo.updateRef("refs/heads/master");
+      update.setNewObjectId(commitId);
+      assertThat(update.update()).isEqualTo(RefUpdate.Result.NEW);
+    }
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromString(Hashing.sha256().hashString(content, UTF_8).toString());
+  }
+
+  private class FakeProjectCache implements ProjectCache {
+    @Override
+    public ImmutableSortedSet<Project.NameKey> all() {
+      return ImmutableSortedSet.<Project.NameKey>naturalOrder()
+          .addAll(repos.keySet())
+          .addAll(broken)
+          .build();
+    }
+
+    @Override
+    public ProjectState getAllProjects() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ProjectState getAllUsers() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Optional<ProjectState> get(Project.NameKey name) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void evict(Project.NameKey name) {}
+
+    @Override
+    public void evictAndReindex(Project project) {}
+
+    @Override
+    public void evictAndReindex(Project.NameKey name) {}
+
+    @Override
+    public void remove(Project project) {}
+
+    @Override
+    public void remove(Project.NameKey name) {}
+
+    @Override
+    public void refreshProjectList() {}
+
+    @Override
+    public Set<AccountGroup.UUID> guessRelevantGroupUUIDs() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ImmutableSortedSet<Project.NameKey> byName(String prefix) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void onCreateProject(Project.NameKey newProjectName) {}
+  }
+
+  private class FakeRepositoryManager implements GitRepositoryManager {
+    @Override
+    public Status getRepositoryStatus(Project.NameKey name) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Repository openRepository(Project.NameKey name) throws RepositoryNotFoundException {
+      InMemoryRepository repo = repos.get(name);
+      if (repo == null) {
+        throw new RepositoryNotFoundException(name.get());
+      }
+      repo.incrementOpen();
+      return repo;
+    }
+
+    @Override
+    public Repository createRepository(Project.NameKey name) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<Project.NameKey> list() {
+      return new TreeSet<>(repos.keySet());
+    }
+  }
+
+  private static class FakeStore implements LargeFileRepository, LfsObjectStore {
+    final Map<LongObjectId, StoredObject> objects = new HashMap<>();
+
+    void put(LongObjectId id, Instant lastModified) {
+      objects.put(id, new StoredObject(id, 10, lastModified));
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) {
+      objects.values().forEach(consumer);
+    }
+
+    @Override
+    public void delete(Collection<LongObjectId> ids) {
+      objects.keySet().removeAll(ids);
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) {
+      StoredObject object = objects.get(id);
+      return object != null ? object.size : -1;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.inventory;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ObjectInventoryTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testAddAndRemove() throws Exception {
+    ObjectInventory inventory = new ObjectInventory(journal());
+    inventory.add(id("a"), 10, 1000);
+    inventory.add(id("b"), 20, 2000);
+    inventory.add(id("a"), 99, 3000);
+    assertThat(inventory.count()).isEqualTo(2);
+    assertThat(inventory.bytes()).isEqualTo(30);
+    assertThat(inventory.get(id("a")).get().size).isEqualTo(10);
+    assertThat(inventory.get(id("a")).get().storedAt).isEqualTo(1000);
+
+    inventory.remove(ImmutableList.of(id("a"), id("missing")));
+    assertThat(inventory.get(id("a"))).isEmpty();
+    assertThat(inventory.count()).isEqualTo(1);
+    assertThat(inventory.bytes()).isEqualTo(20);
+    inventory.close();
+  }
+
+  @Test
+  public void testJournalIsReplayed() throws Exception {
+    ObjectInventory inventory = new ObjectInventory(journal());
+    inventory.add(id("a"), 10, 1000);
+    inventory.add(id("b"), 20, 2000);
+    inventory.remove(ImmutableList.of(id("a")));
+    inventory.close();
+
+    inventory = new ObjectInventory(journal());
+    assertThat(inventory.get(id("a"))).isEmpty();
+    assertThat(inventory.get(id("b")).get().size).isEqualTo(20);
+    assertThat(inventory.bytes()).isEqualTo(20);
+    inventory.close();
+  }
+
+  @Test
+  public void testIncompleteRecordIsDropped() throws Exception {
+    ObjectInventory inventory = new ObjectInventory(journal());
+    inventory.add(id("a"), 10, 1000);
+    inventory.close();
+    Files.write(journal(), new byte[] {1, 2, 3}, APPEND);
+
+    inventory = new ObjectInventory(journal());
+    inventory.add(id("b"), 20, 2000);
+    inventory.close();
+
+    inventory = new ObjectInventory(journal());
+    assertThat(inventory.count()).isEqualTo(2);
+    assertThat(inventory.bytes()).isEqualTo(30);
+    inventory.close();
+  }
+
+  @Test
+  public void testDownloadTimeIsKeptByFlush() throws Exception {
+    ObjectInventory inventory = new ObjectInventory(journal());
+    inventory.add(id("a"), 10, 1000);
+    inventory.accessed(id("a"), 5000);
+    inventory.accessed(id("a"), 4000);
+    assertThat(inventory.get(id("a")).get().getLastAccess()).isEqualTo(5000);
+    inventory.flush();
+    inventory.close();
+
+    inventory = new ObjectInventory(journal());
+    assertThat(inventory.get(id("a")).get().getLastAccess()).isEqualTo(5000);
+    assertThat(inventory.get(id("a")).get().storedAt).isEqualTo(1000);
+    assertThat(Files.size(journal())).isLessThan(100L);
+    inventory.close();
+  }
+
+  @Test
+  public void testChangesDuringFlushAreKept() throws Exception {
+    ObjectInventory inventory = new ObjectInventory(journal());
+    for (int i = 0; i < 20_000; i++) {
+      inventory.add(id("old" + i), 1, 1000);
+    }
+    inventory.accessed(id("old0"), 5000);
+
+    AtomicBoolean done = new AtomicBoolean();
+    Thread flusher =
+        new Thread(
+            () -> {
+              try {
+                while (!done.get()) {
+                  inventory.accessed(id("old0"), System.currentTimeMillis());
+                  inventory.flush();
+                }
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    flusher.start();
+    for (int i = 0; i < 2_000; i++) {
+      inventory.add(id("new" + i), 2, 2000);
+      inventory.remove(ImmutableList.of(id("old" + i)));
+    }
+    done.set(true);
+    flusher.join();
+    long count = inventory.count();
+    long bytes = inventory.bytes();
+    inventory.close();
+
+    ObjectInventory reopened = new ObjectInventory(journal());
+    assertThat(reopened.count()).isEqualTo(count);
+    assertThat(reopened.bytes()).isEqualTo(bytes);
+    assertThat(reopened.bytes()).isEqualTo(18_000 + 2 * 2_000);
+    assertThat(reopened.get(id("old1999"))).isEmpty();
+    assertThat(reopened.get(id("new1999"))).isPresent();
+    reopened.close();
+  }
+
+  @Test
+  public void testObjectRemovedWhileSeedingIsNotAddedBack() throws Exception {
+    ObjectInventory inventory = new ObjectInventory(journal());
+    inventory.startSeeding();
+    inventory.remove(ImmutableList.of(id("a")));
+    inventory.add(id("a"), 10, 1000);
+    inventory.seeded();
+    assertThat(inventory.get(id("a"))).isEmpty();
+
+    inventory.add(id("a"), 10, 1000);
+    assertThat(inventory.get(id("a"))).isPresent();
+    inventory.close();
+  }
+
+  private Path journal() {
+    return tmp.getRoot().toPath().resolve("inventory").resolve("backend");
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromRaw(Hashing.sha256().hashString(content, UTF_8).asBytes());
+  }
+}
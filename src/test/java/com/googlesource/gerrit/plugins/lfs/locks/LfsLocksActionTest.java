@@ -0,0 +1,319 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.locks;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.gerrit.entities.Account;
+import com.google.gerrit.entities.AccountsSection;
+import com.google.gerrit.entities.CachedProjectConfig;
+import com.google.gerrit.entities.ConfiguredMimeTypes;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.extensions.api.access.GlobalOrPluginPermission;
+import com.google.gerrit.extensions.conditions.BooleanCondition;
+import com.google.gerrit.extensions.restapi.AuthException;
+import com.google.gerrit.server.AnonymousUser;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.config.AllProjectsName;
+import com.google.gerrit.server.config.AllUsersName;
+import com.google.gerrit.server.config.GerritServerConfig;
+import com.google.gerrit.server.git.TransferConfig;
+import com.google.gerrit.server.permissions.PermissionBackend;
+import com.google.gerrit.server.permissions.PermissionBackend.ForProject;
+import com.google.gerrit.server.project.ProjectCache;
+import com.google.gerrit.server.project.ProjectState;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.googlesource.gerrit.plugins.lfs.LfsGson;
+import com.googlesource.gerrit.plugins.lfs.RecordingMetricMaker;
+import com.googlesource.gerrit.plugins.lfs.auth.FakeUserProviders;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLocksHandler.LfsLockExistsException;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsRepositoryNotFound;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Test;
+
+public class LfsLocksActionTest {
+  private static final LfsLock LOCK =
+      new LfsLock("1", "a/b", "2026-01-01T00:00:00.000Z", new LfsLockOwner("other"));
+
+  private final RecordingMetricMaker metrics = new RecordingMetricMaker();
+  private final ProjectState project = projectState("p");
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private LfsRepositoryNotFound misconfigured;
+  private int status = 200;
+
+  @Test
+  public void testRequestIsRecordedByBackendAndAction() throws Exception {
+    FakeAction action = new FakeAction("p.git");
+
+    action.run();
+
+    assertThat(action.ran).isTrue();
+    assertThat(metrics.recorded).containsExactly("locks/latency: default create-lock");
+  }
+
+  @Test
+  public void testFailedRequestIsCountedByStatus() throws Exception {
+    FakeAction conflict = new FakeAction("p");
+    conflict.failure = new LfsLockExistsException(LOCK);
+    conflict.run();
+    assertThat(status).isEqualTo(409);
+
+    FakeAction unauthorized = new FakeAction("p");
+    unauthorized.denied = new AuthException("denied");
+    unauthorized.run();
+    assertThat(status).isEqualTo(401);
+    assertThat(unauthorized.ran).isFalse();
+
+    FakeAction broken = new FakeAction("p");
+    broken.failure = new LfsException("broken");
+    broken.run();
+    assertThat(status).isEqualTo(500);
+
+    assertThat(metrics.recorded)
+        .containsExactly(
+            "locks/latency: default create-lock",
+            "locks/errors: default create-lock 409 +1",
+            "locks/latency: default create-lock",
+            "locks/errors: default create-lock 401 +1",
+            "locks/latency: default create-lock",
+            "locks/errors: default create-lock 500 +1")
+        .inOrder();
+  }
+
+  @Test
+  public void testRequestOfUnknownProjectIsNotRecorded() throws Exception {
+    FakeAction action = new FakeAction("missing");
+
+    action.run();
+
+    assertThat(status).isEqualTo(404);
+    assertThat(action.ran).isFalse();
+    assertThat(metrics.recorded).isEmpty();
+  }
+
+  @Test
+  public void testRequestOfMisconfiguredBackendIsNotRecorded() throws Exception {
+    misconfigured = new LfsRepositoryNotFound("p");
+    FakeAction action = new FakeAction("p");
+
+    action.run();
+
+    assertThat(action.ran).isTrue();
+    assertThat(metrics.recorded).isEmpty();
+  }
+
+  private static ProjectState projectState(String name) {
+    TransferConfig transferConfig =
+        Guice.createInjector(
+                new AbstractModule() {
+                  @Override
+                  protected void configure() {
+                    bind(Config.class)
+                        .annotatedWith(GerritServerConfig.class)
+                        .toInstance(new Config());
+                  }
+                })
+            .getInstance(TransferConfig.class);
+    CachedProjectConfig config =
+        CachedProjectConfig.builder()
+            .setProject(Project.builder(Project.nameKey(name)).build())
+            .setAccountsSection(AccountsSection.create(ImmutableList.of()))
+            .setMimeTypes(ConfiguredMimeTypes.create(ImmutableList.of()))
+            .setMaxObjectSizeLimit(0)
+            .setCheckReceivedObjects(false)
+            .build();
+    return new ProjectState(
+        null,
+        new AllProjectsName("All-Projects"),
+        new AllUsersName("All-Users"),
+        ImmutableList.of(),
+        null,
+        transferConfig,
+        config);
+  }
+
+  private LfsLocksContext context() {
+    HttpServletRequest req =
+        (HttpServletRequest)
+            Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[] {HttpServletRequest.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getPathInfo":
+                      return "/p/info/lfs/locks";
+                    case "getHeader":
+                      return null;
+                    default:
+                      throw new UnsupportedOperationException(method.getName());
+                  }
+                });
+    HttpServletResponse res =
+        (HttpServletResponse)
+            Proxy.newProxyInstance(
+                HttpServletResponse.class.getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "getOutputStream":
+                      return new Output(out);
+                    case "setStatus":
+                      status = (Integer) args[0];
+                      return null;
+                    case "setContentType":
+                      return null;
+                    default:
+                      throw new UnsupportedOperationException(method.getName());
+                  }
+                });
+    return new LfsLocksContext(Guice.createInjector().getInstance(LfsGson.class), req, res);
+  }
+
+  private ProjectCache projectCache() {
+    return (ProjectCache)
+        Proxy.newProxyInstance(
+            ProjectCache.class.getClassLoader(),
+            new Class<?>[] {ProjectCache.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("get")) {
+                return Optional.of(project).filter(p -> p.getNameKey().equals(args[0]));
+              }
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  private class FakeAction extends LfsLocksAction {
+    private final String projectName;
+    AuthException denied;
+    LfsException failure;
+    boolean ran;
+
+    FakeAction(String projectName) {
+      super(
+          new FakePermissionBackend(),
+          projectCache(),
+          FakeUserProviders.always(new AnonymousUser()),
+          null,
+          new LfsLocksMetrics(
+              p -> {
+                if (misconfigured != null) {
+                  throw misconfigured;
+                }
+                return "default";
+              },
+              metrics),
+          context());
+      this.projectName = projectName;
+    }
+
+    @Override
+    protected String getProjectName() {
+      return projectName;
+    }
+
+    @Override
+    protected String getAction() {
+      return "create lock";
+    }
+
+    @Override
+    protected void authorizeUser(ForProject project) throws AuthException {
+      if (denied != null) {
+        throw denied;
+      }
+    }
+
+    @Override
+    protected void doRun(ProjectState project, CurrentUser user) throws LfsException {
+      ran = true;
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  private static class FakePermissionBackend extends PermissionBackend {
+    @Override
+    public WithUser currentUser() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public WithUser user(CurrentUser user) {
+      return new WithUser() {
+        @Override
+        public ForProject project(Project.NameKey project) {
+          // the fake actions authorize themselves
+          return null;
+        }
+
+        @Override
+        public void check(GlobalOrPluginPermission perm) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends GlobalOrPluginPermission> Set<T> test(Collection<T> permSet) {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public BooleanCondition testCond(GlobalOrPluginPermission perm) {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public WithUser absentUser(Account.Id id) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class Output extends ServletOutputStream {
+    private final ByteArrayOutputStream out;
+
+    Output(ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) {
+      out.write(b);
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.locks;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Guice;
+import com.googlesource.gerrit.plugins.lfs.LfsGson;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import org.junit.Test;
+
+public class LfsLocksResponseTest {
+  private static final LfsLock MINE =
+      new LfsLock("1", "a/b", "2026-01-01T00:00:00.000Z", new LfsLockOwner("me"));
+  private static final LfsLock OTHER =
+      new LfsLock("2", "c \"d\" <e>", "2026-01-02T00:00:00.000Z", new LfsLockOwner("other"));
+  private static final LfsLock MINE_TOO =
+      new LfsLock("3", "f/\u00e9", "2026-01-03T00:00:00.000Z", new LfsLockOwner("me"));
+  private static final Predicate<LfsLock> IS_MINE = lock -> lock.owner.name.equals("me");
+
+  private final LfsGson gson = Guice.createInjector().getInstance(LfsGson.class);
+
+  @Test
+  public void testGetLocksResponseIsSerializedAsBefore() throws Exception {
+    for (List<LfsLock> locks :
+        ImmutableList.of(ImmutableList.<LfsLock>of(), ImmutableList.of(MINE, OTHER, MINE_TOO))) {
+      for (String cursor : new String[] {null, "next"}) {
+        assertThat(stream(new LfsGetLocksResponse(locks, cursor)))
+            .isEqualTo(gson.toJson(new GetLocks(locks, cursor)));
+      }
+    }
+  }
+
+  @Test
+  public void testVerifyLocksResponseIsSerializedAsBefore() throws Exception {
+    for (List<LfsLock> locks :
+        ImmutableList.of(ImmutableList.<LfsLock>of(), ImmutableList.of(MINE, OTHER, MINE_TOO))) {
+      for (String cursor : new String[] {null, "next"}) {
+        List<LfsLock> ours = locks.stream().filter(IS_MINE).collect(toList());
+        List<LfsLock> theirs = locks.stream().filter(IS_MINE.negate()).collect(toList());
+        assertThat(stream(new LfsVerifyLocksResponse(locks, IS_MINE, cursor)))
+            .isEqualTo(gson.toJson(new VerifyLocks(ours, theirs, cursor)));
+      }
+    }
+  }
+
+  @Test
+  public void testVerifyLocksResponseIteratesLocksOnce() throws Exception {
+    CountingCollection locks = new CountingCollection(ImmutableList.of(MINE, OTHER, MINE_TOO));
+
+    stream(new LfsVerifyLocksResponse(locks, IS_MINE, null));
+
+    assertThat(locks.iterations).isEqualTo(1);
+  }
+
+  private String stream(LfsGson.StreamingContent content) throws IOException {
+    StringWriter out = new StringWriter();
+    gson.toJson(content, out);
+    return out.toString();
+  }
+
+  /** The response as it was serialized before it was streamed. */
+  private static class GetLocks {
+    final Collection<LfsLock> locks;
+    final String nextCursor;
+
+    GetLocks(Collection<LfsLock> locks, String nextCursor) {
+      this.locks = locks;
+      this.nextCursor = nextCursor;
+    }
+  }
+
+  /** The response as it was serialized before it was streamed. */
+  private static class VerifyLocks {
+    final List<LfsLock> ours;
+    final List<LfsLock> theirs;
+    final String nextCursor;
+
+    VerifyLocks(List<LfsLock> ours, List<LfsLock> theirs, String nextCursor) {
+      this.ours = ours;
+      this.theirs = theirs;
+      this.nextCursor = nextCursor;
+    }
+  }
+
+  private static class CountingCollection extends AbstractCollection<LfsLock> {
+    final Collection<LfsLock> locks;
+    int iterations;
+
+    CountingCollection(Collection<LfsLock> locks) {
+      this.locks = locks;
+    }
+
+    @Override
+    public Iterator<LfsLock> iterator() {
+      iterations++;
+      return locks.iterator();
+    }
+
+    @Override
+    public int size() {
+      return locks.size();
+    }
+  }
+}
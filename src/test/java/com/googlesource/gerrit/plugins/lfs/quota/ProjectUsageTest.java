@@ -0,0 +1,176 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.quota;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectUsageTest {
+  private static final ProjectUsage.Limits NO_LIMITS = new ProjectUsage.Limits(0, 0, 0, 0);
+  private static final String BACKEND = "default";
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testObjectsAreChargedOnce() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    assertThat(usage.charge("p", "ns/*", BACKEND, ImmutableMap.of(id("a"), 10L), NO_LIMITS))
+        .isEmpty();
+    assertThat(
+            usage.charge(
+                "p", "ns/*", BACKEND, ImmutableMap.of(id("a"), 10L, id("b"), 5L), NO_LIMITS))
+        .isEmpty();
+    assertThat(usage.charge("q", "ns/*", BACKEND, ImmutableMap.of(id("a"), 10L), NO_LIMITS))
+        .isEmpty();
+
+    assertThat(usage.forProject("p").bytes).isEqualTo(15);
+    assertThat(usage.forProject("p").objects).isEqualTo(2);
+    assertThat(usage.forProject("q").objects).isEqualTo(1);
+    assertThat(usage.forNamespace("ns/*").bytes).isEqualTo(25);
+    assertThat(usage.forNamespace("ns/*").objects).isEqualTo(3);
+    usage.close();
+  }
+
+  @Test
+  public void testProjectQuota() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    ProjectUsage.Limits limits = new ProjectUsage.Limits(20, 2, 0, 0);
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 15L), limits)).isEmpty();
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("b"), 10L), limits)).isPresent();
+    assertThat(usage.forProject("p").bytes).isEqualTo(15);
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("b"), 5L), limits)).isEmpty();
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("c"), 0L), limits)).isPresent();
+    assertThat(usage.charge("q", "ns", BACKEND, ImmutableMap.of(id("c"), 20L), limits)).isEmpty();
+    usage.close();
+  }
+
+  @Test
+  public void testNamespaceQuota() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    ProjectUsage.Limits limits = new ProjectUsage.Limits(0, 0, 20, 0);
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 15L), limits)).isEmpty();
+    assertThat(usage.charge("q", "ns", BACKEND, ImmutableMap.of(id("b"), 10L), limits)).isPresent();
+    assertThat(usage.charge("q", "other", BACKEND, ImmutableMap.of(id("b"), 10L), limits))
+        .isEmpty();
+    usage.close();
+  }
+
+  @Test
+  public void testDischargeAndReplay() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 10L, id("b"), 5L), NO_LIMITS);
+    usage.charge("q", "ns", BACKEND, ImmutableMap.of(id("a"), 10L), NO_LIMITS);
+    usage.discharge(ImmutableList.of(id("a")));
+    assertThat(usage.forProject("p").bytes).isEqualTo(5);
+    assertThat(usage.forProject("q").objects).isEqualTo(0);
+    usage.close();
+    Files.write(journal(), new byte[] {0, 7, 'p'}, APPEND);
+
+    usage = new ProjectUsage(journal());
+    assertThat(usage.forProject("p").bytes).isEqualTo(5);
+    assertThat(usage.forProject("q").objects).isEqualTo(0);
+    assertThat(usage.forNamespace("ns").objects).isEqualTo(1);
+    usage.charge("q", "ns", BACKEND, ImmutableMap.of(id("c"), 1L), NO_LIMITS);
+    usage.close();
+
+    usage = new ProjectUsage(journal());
+    assertThat(usage.forNamespace("ns").bytes).isEqualTo(6);
+    usage.close();
+  }
+
+  @Test
+  public void testObjectWithOtherSizeIsChargedAgain() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    ProjectUsage.Limits limits = new ProjectUsage.Limits(20, 0, 0, 0);
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 1L), limits)).isEmpty();
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 21L), limits)).isPresent();
+    assertThat(usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 15L), limits)).isEmpty();
+    assertThat(usage.forProject("p").bytes).isEqualTo(15);
+    assertThat(usage.forProject("p").objects).isEqualTo(1);
+    assertThat(usage.forNamespace("ns").bytes).isEqualTo(15);
+    usage.close();
+
+    usage = new ProjectUsage(journal());
+    assertThat(usage.forProject("p").bytes).isEqualTo(15);
+    assertThat(usage.forProject("p").objects).isEqualTo(1);
+    usage.close();
+  }
+
+  @Test
+  public void testUnstoredObjectsAreDischarged() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 10L, id("b"), 5L), NO_LIMITS);
+    usage.charge("q", "ns", "other", ImmutableMap.of(id("a"), 10L), NO_LIMITS);
+    Instant later = Instant.now().plusSeconds(1);
+
+    assertThat(usage.chargedBefore(BACKEND, Instant.EPOCH)).isEmpty();
+    assertThat(usage.chargedBefore(BACKEND, later)).containsExactly(id("a"), id("b"));
+    // charged after the time, so their upload may still be running
+    assertThat(usage.dischargeUnstored(BACKEND, ImmutableList.of(id("a")), Instant.EPOCH))
+        .isEqualTo(0);
+    // charged for another backend, which may hold it
+    assertThat(usage.dischargeUnstored(BACKEND, ImmutableList.of(id("a")), later)).isEqualTo(1);
+    assertThat(usage.forProject("p").bytes).isEqualTo(5);
+    assertThat(usage.forProject("q").bytes).isEqualTo(10);
+    usage.close();
+
+    usage = new ProjectUsage(journal());
+    assertThat(usage.forProject("p").bytes).isEqualTo(5);
+    assertThat(usage.chargedBefore(BACKEND, later)).containsExactly(id("b"));
+    assertThat(usage.chargedBefore("other", later)).containsExactly(id("a"));
+    usage.close();
+  }
+
+  @Test
+  public void testDischargeOnlyTouchesProjectsChargedForObject() throws Exception {
+    ProjectUsage usage = new ProjectUsage(journal());
+    usage.charge("p", "ns", BACKEND, ImmutableMap.of(id("a"), 10L, id("b"), 5L), NO_LIMITS);
+    usage.charge("q", "ns", BACKEND, ImmutableMap.of(id("a"), 10L), NO_LIMITS);
+    usage.discharge(ImmutableList.of(id("a")));
+    usage.charge("r", "ns", BACKEND, ImmutableMap.of(id("a"), 10L), NO_LIMITS);
+    usage.close();
+
+    usage = new ProjectUsage(journal());
+    Instant later = Instant.now().plusSeconds(1);
+    usage.discharge(ImmutableList.of(id("c")));
+    assertThat(usage.dischargeUnstored(BACKEND, ImmutableList.of(id("a")), later)).isEqualTo(1);
+    assertThat(usage.dischargeUnstored(BACKEND, ImmutableList.of(id("a")), later)).isEqualTo(0);
+    assertThat(usage.forProject("p").bytes).isEqualTo(5);
+    assertThat(usage.forProject("r").objects).isEqualTo(0);
+    usage.discharge(ImmutableList.of(id("b")));
+    assertThat(usage.forNamespace("ns").objects).isEqualTo(0);
+    usage.close();
+  }
+
+  private Path journal() {
+    return tmp.getRoot().toPath().resolve("quota").resolve("usage");
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromRaw(Hashing.sha256().hashString(content, UTF_8).asBytes());
+  }
+}
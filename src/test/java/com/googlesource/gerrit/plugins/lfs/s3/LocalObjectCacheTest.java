@@ -0,0 +1,120 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.s3;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+public class LocalObjectCacheTest {
+  private long now = 1000;
+  private final LocalObjectCache cache = new LocalObjectCache(100, () -> now);
+
+  @Test
+  public void testAddWithinBudget() throws Exception {
+    assertThat(cache.add("a", 40)).isEmpty();
+    assertThat(cache.add("b", 60)).isEmpty();
+    assertThat(cache.totalBytes()).isEqualTo(100);
+    assertThat(cache.touch("a")).isTrue();
+    assertThat(cache.touch("c")).isFalse();
+  }
+
+  @Test
+  public void testLeastRecentlyUsedIsEvicted() throws Exception {
+    cache.add("a", 40);
+    cache.add("b", 40);
+    cache.touch("a");
+    assertThat(cache.add("c", 40)).containsExactly("b");
+    assertThat(cache.contains("a")).isTrue();
+    assertThat(cache.contains("b")).isFalse();
+    assertThat(cache.totalBytes()).isEqualTo(80);
+  }
+
+  @Test
+  public void testContainsDoesNotChangeOrder() throws Exception {
+    cache.add("a", 40);
+    cache.add("b", 40);
+    cache.contains("a");
+    assertThat(cache.add("c", 40)).containsExactly("a");
+  }
+
+  @Test
+  public void testLargeObjectEvictsSeveral() throws Exception {
+    cache.add("a", 30);
+    cache.add("b", 30);
+    cache.add("c", 30);
+    assertThat(cache.add("d", 90)).containsExactly("a", "b", "c").inOrder();
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    cache.add("a", 40);
+    cache.remove("a");
+    cache.remove("b");
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.totalBytes()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFits() throws Exception {
+    assertThat(cache.fits(100)).isTrue();
+    assertThat(cache.fits(101)).isFalse();
+  }
+
+  @Test
+  public void testObjectHandedOutIsDeletedOnlyAfterPinExpires() throws Exception {
+    cache.add("a", 60);
+    assertThat(cache.pin("a", now + 10_000)).isTrue();
+
+    assertThat(cache.add("b", 60)).isEmpty();
+    assertThat(cache.contains("a")).isFalse();
+    assertThat(cache.totalBytes()).isEqualTo(60);
+    assertThat(cache.releaseExpired()).isEmpty();
+
+    now += 10_000;
+    assertThat(cache.releaseExpired()).containsExactly("a");
+    assertThat(cache.releaseExpired()).isEmpty();
+  }
+
+  @Test
+  public void testExpiredPinDoesNotRetainObject() throws Exception {
+    cache.add("a", 60);
+    cache.pin("a", now + 10);
+    now += 10;
+
+    assertThat(cache.add("b", 60)).containsExactly("a");
+    assertThat(cache.releaseExpired()).isEmpty();
+  }
+
+  @Test
+  public void testObjectAddedAgainWhileRetainedIsKept() throws Exception {
+    cache.add("a", 60);
+    cache.pin("a", now + 10_000);
+    cache.add("b", 60);
+
+    assertThat(cache.add("a", 60)).containsExactly("b");
+    now += 10_000;
+    assertThat(cache.releaseExpired()).isEmpty();
+    assertThat(cache.contains("a")).isTrue();
+  }
+
+  @Test
+  public void testObjectNotCachedIsNotPinned() throws Exception {
+    assertThat(cache.pin("a", now + 10_000)).isFalse();
+    cache.add("a", 60);
+    assertThat(cache.add("b", 60)).containsExactly("a");
+  }
+}
@@ -0,0 +1,266 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.tiered;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.DAYS;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.Response;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TieredLargeFileRepositoryTest {
+  private static final LfsBackend BACKEND = LfsBackend.createDefault(LfsBackendType.TIERED);
+  private static final FileTime OLD = FileTime.from(Instant.EPOCH);
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private FakeLocalTier hot;
+  private final FakeS3Tier cold = new FakeS3Tier();
+  private TieredLargeFileRepository repository;
+
+  @Before
+  public void setUp() throws Exception {
+    hot = new FakeLocalTier(tmp.getRoot().toPath());
+    repository =
+        new TieredLargeFileRepository(
+            new TierMigrator(new DisabledMetricMaker()), BACKEND, hot, cold, DAYS.toMillis(1));
+  }
+
+  @Test
+  public void testUnusedObjectIsMovedToS3() throws Exception {
+    LongObjectId id = hot.put("unused", OLD);
+
+    repository.migrate();
+
+    assertThat(cold.objects.get(id)).isEqualTo("unused".getBytes(UTF_8));
+    assertThat(Files.exists(hot.getPath(id))).isFalse();
+    assertThat(repository.getDownloadAction(id).href).isEqualTo("s3/" + id.name());
+  }
+
+  @Test
+  public void testRecentlyUsedObjectStaysLocal() throws Exception {
+    LongObjectId uploaded = hot.put("uploaded", FileTime.from(Instant.now()));
+    LongObjectId downloaded = hot.put("downloaded", OLD);
+    assertThat(repository.getDownloadAction(downloaded).href)
+        .isEqualTo("local/" + downloaded.name());
+
+    repository.migrate();
+
+    assertThat(cold.objects).isEmpty();
+    assertThat(Files.exists(hot.getPath(uploaded))).isTrue();
+    assertThat(Files.exists(hot.getPath(downloaded))).isTrue();
+  }
+
+  @Test
+  public void testObjectDownloadedDuringMoveStaysLocal() throws Exception {
+    LongObjectId id = hot.put("content", OLD);
+    String[] href = new String[1];
+    cold.duringStore = () -> href[0] = repository.getDownloadAction(id).href;
+
+    repository.migrate();
+
+    assertThat(href[0]).isEqualTo("local/" + id.name());
+    assertThat(Files.exists(hot.getPath(id))).isTrue();
+    assertThat(cold.objects).containsKey(id);
+    assertThat(repository.getDownloadAction(id).href).isEqualTo("local/" + id.name());
+  }
+
+  @Test
+  public void testObjectOnlyInS3IsServedFromS3() throws Exception {
+    LongObjectId id = id("migrated");
+    cold.objects.put(id, "migrated".getBytes(UTF_8));
+
+    assertThat(repository.getDownloadAction(id).href).isEqualTo("s3/" + id.name());
+    assertThat(repository.getSize(id)).isEqualTo(8);
+    try (InputStream in = repository.open(id).get()) {
+      assertThat(new String(ByteStreams.toByteArray(in), UTF_8)).isEqualTo("migrated");
+    }
+    assertThat(repository.getSize(id("missing"))).isEqualTo(-1);
+  }
+
+  @Test
+  public void testObjectRejectedByS3IsNotRetried() throws Exception {
+    cold.maxSize = 1;
+    LongObjectId id = hot.put("too large", OLD);
+
+    repository.migrate();
+    repository.migrate();
+
+    assertThat(cold.stores).isEqualTo(1);
+    assertThat(Files.exists(hot.getPath(id))).isTrue();
+    assertThat(repository.getDownloadAction(id).href).isEqualTo("local/" + id.name());
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromString(Hashing.sha256().hashString(content, UTF_8).toString());
+  }
+
+  private static Response.Action action(String href) {
+    Response.Action action = new Response.Action();
+    action.href = href;
+    return action;
+  }
+
+  private static class FakeLocalTier implements TieredLargeFileRepository.LocalTier {
+    final Path dir;
+
+    FakeLocalTier(Path dir) {
+      this.dir = dir;
+    }
+
+    LongObjectId put(String content, FileTime lastModified) throws IOException {
+      LongObjectId id = id(content);
+      Path path = getPath(id);
+      Files.write(path, content.getBytes(UTF_8));
+      Files.setLastModifiedTime(path, lastModified);
+      return id;
+    }
+
+    @Override
+    public Path getPath(AnyLongObjectId id) {
+      return dir.resolve(id.name());
+    }
+
+    @Override
+    public List<Path> listObjects() throws IOException {
+      try (Stream<Path> files = Files.list(dir)) {
+        return files.collect(Collectors.toList());
+      }
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      return action("local/" + id.name());
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      return action("local/" + id.name());
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      return null;
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) throws IOException {
+      Path path = getPath(id);
+      return Files.exists(path) ? Files.size(path) : -1;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(Collection<LongObjectId> ids) throws IOException {
+      for (LongObjectId id : ids) {
+        Files.deleteIfExists(getPath(id));
+      }
+    }
+
+    @Override
+    public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+      return Optional.of(Files.newInputStream(getPath(id)));
+    }
+  }
+
+  private static class FakeS3Tier implements TieredLargeFileRepository.Tier {
+    final Map<LongObjectId, byte[]> objects = new HashMap<>();
+    long maxSize = Long.MAX_VALUE;
+    int stores;
+    Runnable duringStore = () -> {};
+
+    @Override
+    public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+      stores++;
+      if (size > maxSize) {
+        return false;
+      }
+      objects.put(id.copy(), ByteStreams.toByteArray(content));
+      duringStore.run();
+      return true;
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      return action("s3/" + id.name());
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      return action("s3/" + id.name());
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      return null;
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) {
+      byte[] content = objects.get(id);
+      return content != null ? content.length : -1;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(Collection<LongObjectId> ids) {
+      objects.keySet().removeAll(ids);
+    }
+
+    @Override
+    public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+      byte[] content = objects.get(id);
+      if (content == null) {
+        throw new NoSuchFileException(id.name());
+      }
+      return Optional.of(new ByteArrayInputStream(content));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.transfer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.jgit.lfs.server.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActionTransferTest {
+  private static final byte[] CONTENT = "content".getBytes(UTF_8);
+
+  private final Map<String, byte[]> objects = new HashMap<>();
+  private HttpServer server;
+  private String authorization;
+
+  @Before
+  public void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(
+        "/",
+        exchange -> {
+          authorization = exchange.getRequestHeaders().getFirst("Authorization");
+          String path = exchange.getRequestURI().getPath();
+          if (exchange.getRequestMethod().equals("PUT")) {
+            try (InputStream in = exchange.getRequestBody()) {
+              objects.put(path, ByteStreams.toByteArray(in));
+            }
+            exchange.sendResponseHeaders(200, -1);
+          } else if (objects.containsKey(path)) {
+            exchange.sendResponseHeaders(200, objects.get(path).length);
+            try (OutputStream out = exchange.getResponseBody()) {
+              out.write(objects.get(path));
+            }
+          } else {
+            exchange.sendResponseHeaders(404, -1);
+          }
+          exchange.close();
+        });
+    server.start();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  public void testUploadedObjectIsDownloaded() throws Exception {
+    ActionTransfer.upload(action("/o"), CONTENT.length, new ByteArrayInputStream(CONTENT));
+    assertThat(objects.get("/o")).isEqualTo(CONTENT);
+    assertThat(authorization).isEqualTo("Basic token");
+
+    try (InputStream in = ActionTransfer.download(action("/o"))) {
+      assertThat(ByteStreams.toByteArray(in)).isEqualTo(CONTENT);
+    }
+  }
+
+  @Test
+  public void testShortContentIsNotUploaded() throws Exception {
+    assertThrows(
+        IOException.class,
+        () ->
+            ActionTransfer.upload(
+                action("/o"), CONTENT.length + 1, new ByteArrayInputStream(CONTENT)));
+  }
+
+  @Test
+  public void testDownloadOfMissingObjectFails() throws Exception {
+    assertThrows(IOException.class, () -> ActionTransfer.download(action("/missing")));
+  }
+
+  private Response.Action action(String path) {
+    Response.Action action = new Response.Action();
+    action.href =
+        "http://"
+            + server.getAddress().getHostString()
+            + ":"
+            + server.getAddress().getPort()
+            + path;
+    action.header = ImmutableMap.of("Authorization", "Basic token");
+    return action;
+  }
+}
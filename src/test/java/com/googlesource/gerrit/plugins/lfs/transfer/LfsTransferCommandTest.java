@@ -0,0 +1,565 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.transfer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.eclipse.jgit.lfs.lib.Constants.DOWNLOAD;
+import static org.eclipse.jgit.lfs.lib.Constants.UPLOAD;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.CurrentUser;
+import com.google.gerrit.server.account.GroupMembership;
+import com.google.gerrit.sshd.BaseCommand;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
+import com.googlesource.gerrit.plugins.lfs.LfsBatchAccess;
+import com.googlesource.gerrit.plugins.lfs.LfsObjectStore;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLock;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLockOperations;
+import com.googlesource.gerrit.plugins.lfs.locks.LfsLockOwner;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.eclipse.jgit.lfs.errors.LfsException;
+import org.eclipse.jgit.lfs.errors.LfsUnauthorized;
+import org.eclipse.jgit.lfs.errors.LfsValidationError;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+import org.junit.Test;
+
+public class LfsTransferCommandTest {
+  private static final LfsBackend BACKEND = LfsBackend.createDefault(LfsBackendType.FS);
+  private static final String STORED = "stored";
+  private static final String MISSING = "missing";
+
+  private interface Requests {
+    void write(PktLine.Writer client) throws IOException;
+  }
+
+  private final FakeRepository repository = new FakeRepository();
+  private final FakeBatchAccess batchAccess = new FakeBatchAccess();
+  private final FakeLocks locks = new FakeLocks();
+
+  @Test
+  public void testHandshake() throws Exception {
+    List<List<String>> responses = session(DOWNLOAD, client -> client.text("version 1").flush());
+    assertThat(responses)
+        .containsExactly(
+            ImmutableList.of("version=1"),
+            ImmutableList.of("status 200"),
+            ImmutableList.of("status 200"))
+        .inOrder();
+  }
+
+  @Test
+  public void testSessionRejectedByAccessCheck() throws Exception {
+    batchAccess.rejected = new LfsUnauthorized(UPLOAD, "p");
+    assertThrows(BaseCommand.UnloggedFailure.class, () -> session(UPLOAD, client -> {}));
+  }
+
+  @Test
+  public void testUploadBatchAsksForMissingObjects() throws Exception {
+    repository.put(STORED);
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client ->
+                client
+                    .text("batch")
+                    .text("hash-algo=sha256")
+                    .delim()
+                    .text(oid(STORED) + " 6")
+                    .text(oid(MISSING) + " 7")
+                    .flush());
+
+    assertThat(responses.get(1))
+        .containsExactly("status 200", "--", oid(STORED) + " 6 noop", oid(MISSING) + " 7 upload")
+        .inOrder();
+    assertThat(batchAccess.opened).containsExactly(2);
+  }
+
+  @Test
+  public void testDownloadBatch() throws Exception {
+    List<List<String>> responses =
+        session(DOWNLOAD, client -> client.text("batch").delim().text(oid(MISSING) + " 7").flush());
+    assertThat(responses.get(1))
+        .containsExactly("status 200", "--", oid(MISSING) + " 7 download")
+        .inOrder();
+  }
+
+  @Test
+  public void testBatchRejectionIsFramedAsStatus() throws Exception {
+    batchAccess.maxObjectSize = 5;
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client -> {
+              client.text("batch").delim().text(oid(MISSING) + " 7").flush();
+              client.text("version 1").flush();
+            });
+
+    assertThat(responses.get(1)).containsExactly("status 422", "--", "object too large").inOrder();
+    // the session goes on after an error
+    assertThat(responses.get(2)).containsExactly("status 200");
+  }
+
+  @Test
+  public void testUnsupportedHashAlgorithm() throws Exception {
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client ->
+                client
+                    .text("batch")
+                    .text("hash-algo=sha512")
+                    .delim()
+                    .text(oid(MISSING) + " 7")
+                    .flush());
+    assertThat(responses.get(1).get(0)).isEqualTo("status 400");
+  }
+
+  @Test
+  public void testPutObjectStoresBatchedObject() throws Exception {
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client -> {
+              client.text("batch").delim().text(oid(MISSING) + " 7").flush();
+              putObject(client, MISSING, 7, MISSING);
+            });
+
+    assertThat(responses.get(2)).containsExactly("status 200");
+    assertThat(repository.objects).containsKey(id(MISSING));
+  }
+
+  @Test
+  public void testPutObjectWithoutBatchIsRejected() throws Exception {
+    List<List<String>> responses =
+        session(UPLOAD, client -> putObject(client, MISSING, 7, MISSING));
+
+    assertThat(responses.get(1).subList(0, 2)).containsExactly("status 403", "--").inOrder();
+    assertThat(repository.objects).isEmpty();
+  }
+
+  @Test
+  public void testPutObjectWithOtherSizeThanBatchIsRejected() throws Exception {
+    String content = MISSING + " but larger";
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client -> {
+              client.text("batch").delim().text(oid(content) + " 7").flush();
+              putObject(client, content, content.length(), content);
+              client.text("version 1").flush();
+            });
+
+    assertThat(responses.get(2).get(0)).isEqualTo("status 422");
+    assertThat(repository.objects).isEmpty();
+    // the data of the rejected object was skipped
+    assertThat(responses.get(3)).containsExactly("status 200");
+  }
+
+  @Test
+  public void testPutObjectInDownloadSessionIsRejected() throws Exception {
+    List<List<String>> responses =
+        session(
+            DOWNLOAD,
+            client -> {
+              client.text("batch").delim().text(oid(MISSING) + " 7").flush();
+              putObject(client, MISSING, 7, MISSING);
+            });
+
+    assertThat(responses.get(2).get(0)).isEqualTo("status 403");
+    assertThat(repository.objects).isEmpty();
+  }
+
+  @Test
+  public void testGetObject() throws Exception {
+    repository.put(STORED);
+    List<List<String>> responses =
+        session(
+            DOWNLOAD,
+            client -> {
+              client.text("get-object " + oid(STORED)).flush();
+              client.text("get-object " + oid(MISSING)).flush();
+            });
+
+    assertThat(responses.get(1)).containsExactly("status 200", "size=6", "--", STORED).inOrder();
+    assertThat(responses.get(2).get(0)).isEqualTo("status 404");
+  }
+
+  @Test
+  public void testGetObjectInUploadSessionIsRejected() throws Exception {
+    repository.put(STORED);
+    List<List<String>> responses =
+        session(UPLOAD, client -> client.text("get-object " + oid(STORED)).flush());
+    assertThat(responses.get(1).get(0)).isEqualTo("status 403");
+  }
+
+  @Test
+  public void testVerifyObject() throws Exception {
+    repository.put(STORED);
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client -> {
+              client.text("verify-object " + oid(STORED)).text("size=6").flush();
+              client.text("verify-object " + oid(STORED)).text("size=7").flush();
+              client.text("verify-object " + oid(MISSING)).text("size=7").flush();
+            });
+
+    assertThat(responses.get(1)).containsExactly("status 200");
+    assertThat(responses.get(2).get(0)).isEqualTo("status 422");
+    assertThat(responses.get(3).get(0)).isEqualTo("status 404");
+  }
+
+  @Test
+  public void testLockListAndUnlock() throws Exception {
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client -> {
+              client.text("lock").text("path=a.bin").flush();
+              client.text("lock").text("path=a.bin").flush();
+              client.text("list-lock").flush();
+              client.text("unlock 1").flush();
+              client.text("list-lock").flush();
+            });
+
+    assertThat(responses.get(1))
+        .containsExactly(
+            "status 201",
+            "id=1",
+            "path=a.bin",
+            "locked-at=" + FakeLocks.LOCKED_AT,
+            "ownername=alice")
+        .inOrder();
+    assertThat(responses.get(2).get(0)).isEqualTo("status 409");
+    assertThat(responses.get(2)).contains("id=1");
+    assertThat(responses.get(3))
+        .containsExactly(
+            "status 200",
+            "--",
+            "lock 1",
+            "path 1 a.bin",
+            "locked-at 1 " + FakeLocks.LOCKED_AT,
+            "ownername 1 alice",
+            "owner 1 ours")
+        .inOrder();
+    assertThat(responses.get(4).get(0)).isEqualTo("status 200");
+    assertThat(responses.get(5)).containsExactly("status 200", "--").inOrder();
+  }
+
+  @Test
+  public void testListLocksIsPaged() throws Exception {
+    locks.add("a.bin", "bob");
+    locks.add("b.bin", "bob");
+    locks.add("c.bin", "bob");
+    List<List<String>> responses =
+        session(
+            DOWNLOAD,
+            client -> {
+              client.text("list-lock").text("limit=2").flush();
+              client.text("list-lock").text("cursor=3").flush();
+            });
+
+    assertThat(responses.get(1).subList(0, 2)).containsExactly("status 200", "next-cursor=3");
+    assertThat(lockIds(responses.get(1))).containsExactly("1", "2").inOrder();
+    assertThat(lockIds(responses.get(2))).containsExactly("3");
+    assertThat(responses.get(2)).contains("owner 3 theirs");
+  }
+
+  @Test
+  public void testLockInDownloadSessionIsRejected() throws Exception {
+    List<List<String>> responses =
+        session(DOWNLOAD, client -> client.text("lock").text("path=a.bin").flush());
+    assertThat(responses.get(1).get(0)).isEqualTo("status 403");
+    assertThat(locks.byId).isEmpty();
+  }
+
+  @Test
+  public void testUnlockOfOtherUsersLockNeedsForce() throws Exception {
+    locks.add("a.bin", "bob");
+    List<List<String>> responses =
+        session(
+            UPLOAD,
+            client -> {
+              client.text("unlock 1").flush();
+              client.text("unlock 1").text("force=true").flush();
+              client.text("unlock 1").flush();
+            });
+
+    assertThat(responses.get(1).get(0)).isEqualTo("status 403");
+    assertThat(responses.get(2).get(0)).isEqualTo("status 200");
+    assertThat(responses.get(3).get(0)).isEqualTo("status 404");
+  }
+
+  @Test
+  public void testUnknownCommand() throws Exception {
+    List<List<String>> responses = session(DOWNLOAD, client -> client.text("frobnicate").flush());
+    assertThat(responses.get(1))
+        .containsExactly("status 400", "--", "unknown command frobnicate")
+        .inOrder();
+  }
+
+  private List<List<String>> session(String operation, Requests requests) throws Exception {
+    ByteArrayOutputStream in = new ByteArrayOutputStream();
+    PktLine.Writer client = new PktLine.Writer(in);
+    requests.write(client);
+    client.text("quit").flush();
+
+    TestCommand command = new TestCommand();
+    command.path = "/p.git";
+    command.operation = operation;
+    command.batchAccess = batchAccess;
+    command.locks = locks;
+    command.setInputStream(new ByteArrayInputStream(in.toByteArray()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    command.setOutputStream(out);
+    command.run();
+
+    PktLine.Reader reader = new PktLine.Reader(new ByteArrayInputStream(out.toByteArray()));
+    List<List<String>> responses = new ArrayList<>();
+    List<String> response = new ArrayList<>();
+    while (true) {
+      PktLine.Type type;
+      try {
+        type = reader.read();
+      } catch (EOFException e) {
+        break;
+      }
+      switch (type) {
+        case FLUSH:
+          responses.add(response);
+          response = new ArrayList<>();
+          break;
+        case DELIM:
+          response.add("--");
+          break;
+        case DATA:
+          response.add(reader.text());
+      }
+    }
+    assertThat(response).isEmpty();
+    // the last response is the one to quit
+    assertThat(responses.get(responses.size() - 1)).containsExactly("status 200");
+    return responses;
+  }
+
+  private static void putObject(PktLine.Writer client, String object, long size, String content)
+      throws IOException {
+    byte[] data = content.getBytes(UTF_8);
+    client
+        .text("put-object " + oid(object))
+        .text("size=" + size)
+        .delim()
+        .data(data, 0, data.length)
+        .flush();
+  }
+
+  private static List<String> lockIds(List<String> response) {
+    return response.stream()
+        .filter(line -> line.startsWith("lock "))
+        .map(line -> line.substring("lock ".length()))
+        .collect(Collectors.toList());
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromString(oid(content));
+  }
+
+  private static String oid(String content) {
+    return Hashing.sha256().hashString(content, UTF_8).toString();
+  }
+
+  private static class TestCommand extends LfsTransferCommand {
+    TestCommand() {
+      user = new FakeUser();
+    }
+  }
+
+  private static class FakeUser extends CurrentUser {
+    @Override
+    public GroupMembership getEffectiveGroups() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object getCacheKey() {
+      return "alice";
+    }
+
+    @Override
+    public Optional<String> getUserName() {
+      return Optional.of("alice");
+    }
+  }
+
+  private class FakeBatchAccess extends LfsBatchAccess {
+    final List<Integer> opened = new ArrayList<>();
+    LfsException rejected;
+    long maxObjectSize;
+
+    FakeBatchAccess() {
+      super(null, null, null, null, null, null);
+    }
+
+    @Override
+    public Target check(
+        Project.NameKey project, CurrentUser user, boolean upload, Map<LongObjectId, Long> objects)
+        throws LfsException {
+      if (rejected != null) {
+        throw rejected;
+      }
+      if (upload && maxObjectSize > 0) {
+        for (long size : objects.values()) {
+          if (size > maxObjectSize) {
+            throw new LfsValidationError("object too large");
+          }
+        }
+      }
+      return new Target(project, null, BACKEND);
+    }
+
+    @Override
+    public LargeFileRepository open(
+        Target target, boolean upload, Map<LongObjectId, Long> objects) {
+      if (!objects.isEmpty()) {
+        opened.add(objects.size());
+      }
+      return repository;
+    }
+  }
+
+  private static class FakeLocks extends LfsLockOperations {
+    static final String LOCKED_AT = "2026-10-17T12:00:00Z";
+
+    final Map<String, LfsLock> byId = new TreeMap<>();
+    private int nextId = 1;
+
+    FakeLocks() {
+      super(null, null, null);
+    }
+
+    LfsLock add(String path, String owner) {
+      LfsLock lock =
+          new LfsLock(String.valueOf(nextId++), path, LOCKED_AT, new LfsLockOwner(owner));
+      byId.put(lock.id, lock);
+      return lock;
+    }
+
+    @Override
+    public LfsLock create(Project.NameKey project, CurrentUser user, String path)
+        throws LfsException {
+      for (LfsLock lock : byId.values()) {
+        if (lock.path.equals(path)) {
+          throw new LockExistsException(lock);
+        }
+      }
+      return add(path, user.getUserName().get());
+    }
+
+    @Override
+    public LfsLock delete(Project.NameKey project, CurrentUser user, String id, boolean force) {
+      return byId.remove(id);
+    }
+
+    @Override
+    public Collection<LfsLock> list(
+        Project.NameKey project, CurrentUser user, String path, String id) {
+      return byId.values().stream()
+          .filter(lock -> path == null || lock.path.equals(path))
+          .filter(lock -> id == null || lock.id.equals(id))
+          .collect(Collectors.toList());
+    }
+  }
+
+  private static class FakeRepository implements LargeFileRepository, LfsObjectStore {
+    final Map<LongObjectId, byte[]> objects = new HashMap<>();
+
+    void put(String content) {
+      objects.put(id(content), content.getBytes(UTF_8));
+    }
+
+    @Override
+    public Optional<InputStream> open(AnyLongObjectId id) throws IOException {
+      byte[] content = objects.get(id);
+      if (content == null) {
+        throw new NoSuchFileException(id.name());
+      }
+      return Optional.of(new ByteArrayInputStream(content));
+    }
+
+    @Override
+    public boolean store(AnyLongObjectId id, long size, InputStream content) throws IOException {
+      byte[] data = ByteStreams.toByteArray(content);
+      if (data.length != size) {
+        throw new IOException("size mismatch");
+      }
+      objects.put(id.copy(), data);
+      return true;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<StoredObject> consumer) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(Collection<LongObjectId> ids) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getSize(AnyLongObjectId id) {
+      byte[] content = objects.get(id);
+      return content != null ? content.length : -1;
+    }
+  }
+}
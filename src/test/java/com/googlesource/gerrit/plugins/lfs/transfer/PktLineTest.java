@@ -0,0 +1,101 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.transfer;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Test;
+
+public class PktLineTest {
+  @Test
+  public void testTextIsFramedWithLineFeed() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new PktLine.Writer(out).text("version=1").flush();
+    assertThat(new String(out.toByteArray(), UTF_8)).isEqualTo("000eversion=1\n0000");
+  }
+
+  @Test
+  public void testRequestRoundTrip() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new PktLine.Writer(out).text("put-object abc").text("size=3").delim().text("xyz").flush();
+
+    PktLine.Reader reader = reader(out);
+    assertThat(reader.read()).isEqualTo(PktLine.Type.DATA);
+    assertThat(reader.text()).isEqualTo("put-object abc");
+    assertThat(reader.read()).isEqualTo(PktLine.Type.DATA);
+    assertThat(reader.text()).isEqualTo("size=3");
+    assertThat(reader.read()).isEqualTo(PktLine.Type.DELIM);
+    assertThat(reader.read()).isEqualTo(PktLine.Type.DATA);
+    assertThat(reader.text()).isEqualTo("xyz");
+    assertThat(reader.read()).isEqualTo(PktLine.Type.FLUSH);
+  }
+
+  @Test
+  public void testLargeDataIsSplitAndJoined() throws Exception {
+    byte[] content = new byte[3 * PktLine.MAX_DATA + 17];
+    new Random(0).nextBytes(content);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PktLine.Writer writer = new PktLine.Writer(out);
+    assertThat(writer.data(new ByteArrayInputStream(content))).isEqualTo(content.length);
+    writer.flush();
+    new PktLine.Writer(out).text("quit").flush();
+
+    PktLine.Reader reader = reader(out);
+    assertThat(ByteStreams.toByteArray(reader.dataStream())).isEqualTo(content);
+    assertThat(reader.read()).isEqualTo(PktLine.Type.DATA);
+    assertThat(reader.text()).isEqualTo("quit");
+  }
+
+  @Test
+  public void testEmptyData() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new PktLine.Writer(out).flush();
+    assertThat(ByteStreams.toByteArray(reader(out).dataStream())).isEmpty();
+  }
+
+  @Test
+  public void testInvalidLength() throws Exception {
+    assertThrows(IOException.class, () -> reader("zzzz").read());
+    assertThrows(IOException.class, () -> reader("0003").read());
+  }
+
+  @Test
+  public void testTruncatedPacket() throws Exception {
+    assertThrows(EOFException.class, () -> reader("000ahel").read());
+    assertThrows(EOFException.class, () -> reader("").read());
+  }
+
+  @Test
+  public void testDelimiterInData() throws Exception {
+    PktLine.Reader reader = reader("0008abcd0001");
+    assertThrows(IOException.class, () -> ByteStreams.exhaust(reader.dataStream()));
+  }
+
+  private static PktLine.Reader reader(ByteArrayOutputStream out) {
+    return new PktLine.Reader(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static PktLine.Reader reader(String packets) {
+    return new PktLine.Reader(new ByteArrayInputStream(packets.getBytes(UTF_8)));
+  }
+}
@@ -0,0 +1,280 @@
+// Copyright (C) 2026 The Android Open Source Project
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.googlesource.gerrit.plugins.lfs.validation;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.entities.Project;
+import com.google.gerrit.server.events.CommitReceivedEvent;
+import com.google.gerrit.server.git.validators.CommitValidationException;
+import com.google.gerrit.server.git.validators.CommitValidationMessage;
+import com.google.gerrit.server.git.validators.ValidationMessage;
+import com.googlesource.gerrit.plugins.lfs.LfsBackend;
+import com.googlesource.gerrit.plugins.lfs.LfsBackendType;
+import com.googlesource.gerrit.plugins.lfs.LfsProjectConfigSection;
+import com.googlesource.gerrit.plugins.lfs.LfsSizePrefetcher;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lfs.LfsPointer;
+import org.eclipse.jgit.lfs.lib.AnyLongObjectId;
+import org.eclipse.jgit.lfs.lib.LongObjectId;
+import org.eclipse.jgit.lfs.server.LargeFileRepository;
+import org.eclipse.jgit.lfs.server.Response;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Config;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.junit.After;
+import org.junit.Test;
+
+public class LfsPointerValidatorTest {
+  private static final Project.NameKey PROJECT = Project.nameKey("p");
+  private static final LfsBackend BACKEND = LfsBackend.createDefault(LfsBackendType.S3);
+
+  private final InMemoryRepository repo =
+      new InMemoryRepository(new DfsRepositoryDescription(PROJECT.get()));
+  private final Config projectConfig = new Config();
+  private final FakeRepository objects = new FakeRepository();
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+  private Optional<LfsSizePrefetcher> prefetcher = Optional.empty();
+
+  public LfsPointerValidatorTest() {
+    projectConfig.setBoolean("lfs", PROJECT.get(), "enabled", true);
+    projectConfig.setBoolean("lfs", PROJECT.get(), "validatePointers", true);
+  }
+
+  @After
+  public void tearDown() {
+    objects.release.countDown();
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testAcceptsUploadedObjects() throws Exception {
+    objects.stored.add(id("a"));
+    ObjectId commit = commit(ImmutableMap.of("a.bin", pointer("a"), "README", "text"));
+
+    assertThat(validate(validator(10_000), commit, null)).isEmpty();
+    assertThat(objects.lookedUp).containsExactly(id("a"));
+  }
+
+  @Test
+  public void testRejectsMissingObjects() throws Exception {
+    objects.stored.add(id("a"));
+    ObjectId commit =
+        commit(
+            ImmutableMap.of("a.bin", pointer("a"), "b.bin", pointer("b"), "c.bin", pointer("c")));
+
+    CommitValidationException e =
+        assertThrows(
+            CommitValidationException.class, () -> validate(validator(10_000), commit, null));
+    assertThat(e.getMessage()).startsWith("2 LFS objects of commit");
+    assertThat(e.getMessages()).hasSize(2);
+    assertThat(e.getMessages().get(0).getMessage()).isEqualTo("b.bin: LFS object was not uploaded");
+    assertThat(e.getMessages().get(0).getType()).isEqualTo(ValidationMessage.Type.ERROR);
+  }
+
+  @Test
+  public void testOnlyFilesChangedAgainstAllParentsAreChecked() throws Exception {
+    objects.stored.add(id("new"));
+    // pointers pushed before validation was enabled
+    ObjectId first = commit(ImmutableMap.of("old.bin", pointer("old")));
+    ObjectId side = commit(ImmutableMap.of("side.bin", pointer("side")));
+    ObjectId child =
+        commit(ImmutableMap.of("old.bin", pointer("old"), "new.bin", pointer("new")), first);
+    ObjectId merge =
+        commit(
+            ImmutableMap.of(
+                "old.bin", pointer("old"), "new.bin", pointer("new"), "side.bin", pointer("side")),
+            child,
+            side);
+
+    LfsPointerValidator validator = validator(10_000);
+    assertThat(validate(validator, child, null)).isEmpty();
+    assertThat(validate(validator, merge, null)).isEmpty();
+    assertThat(objects.lookedUp).containsExactly(id("new"));
+  }
+
+  @Test
+  public void testProjectsWithoutValidationAreNotChecked() throws Exception {
+    projectConfig.setBoolean("lfs", PROJECT.get(), "validatePointers", false);
+    ObjectId commit = commit(ImmutableMap.of("a.bin", pointer("a")));
+
+    assertThat(validate(validator(10_000), commit, null)).isEmpty();
+    assertThat(objects.lookedUp).isEmpty();
+  }
+
+  @Test
+  public void testBackendErrorAcceptsCommit() throws Exception {
+    objects.failing = true;
+    ObjectId commit = commit(ImmutableMap.of("a.bin", pointer("a")));
+
+    List<CommitValidationMessage> messages = validate(validator(10_000), commit, null);
+    assertThat(messages).hasSize(1);
+    assertThat(messages.get(0).getType()).isEqualTo(ValidationMessage.Type.WARNING);
+    assertThat(messages.get(0).getMessage()).contains("cannot look up the objects");
+  }
+
+  @Test
+  public void testUsedUpBudgetAcceptsRemainingCommits() throws Exception {
+    ObjectId first = commit(ImmutableMap.of("a.bin", pointer("a")));
+    ObjectId second = commit(ImmutableMap.of("b.bin", pointer("b")), first);
+    ReceiveCommand command = new ReceiveCommand(ObjectId.zeroId(), second, "refs/heads/master");
+
+    LfsPointerValidator validator = validator(0);
+    List<CommitValidationMessage> messages = validate(validator, second, command);
+    assertThat(messages).hasSize(1);
+    assertThat(messages.get(0).getType()).isEqualTo(ValidationMessage.Type.WARNING);
+    assertThat(messages.get(0).getMessage()).contains("time budget is used up");
+    // the warning is printed once per pushed ref
+    assertThat(validate(validator, first, command)).isEmpty();
+    assertThat(objects.lookedUp).isEmpty();
+  }
+
+  @Test
+  public void testPrefetchWaitsNoLongerThanTheBudget() throws Exception {
+    objects.blocking = true;
+    prefetcher = Optional.of(new LfsSizePrefetcher(executor, 2, 30, SECONDS));
+    ObjectId commit = commit(ImmutableMap.of("a.bin", pointer("a"), "b.bin", pointer("b")));
+
+    long start = System.nanoTime();
+    List<CommitValidationMessage> messages = validate(validator(200), commit, null);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertThat(elapsedMillis).isLessThan(10_000L);
+    assertThat(messages).hasSize(1);
+    assertThat(messages.get(0).getMessage()).contains("time budget is used up");
+  }
+
+  private LfsPointerValidator validator(long timeBudgetMillis) {
+    return new LfsPointerValidator(
+        project -> new LfsProjectConfigSection(projectConfig, project.get()),
+        (project, name) -> BACKEND,
+        (project, backend) -> objects,
+        backend -> prefetcher,
+        timeBudgetMillis);
+  }
+
+  private List<CommitValidationMessage> validate(
+      LfsPointerValidator validator, ObjectId commit, ReceiveCommand command)
+      throws CommitValidationException {
+    try (RevWalk rw = new RevWalk(repo)) {
+      CommitReceivedEvent event = new CommitReceivedEvent();
+      event.command = command;
+      event.project = Project.builder(PROJECT).build();
+      event.revWalk = rw;
+      event.commit = rw.parseCommit(commit);
+      return validator.onCommitReceived(event);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private ObjectId commit(Map<String, String> files, ObjectId... parents) throws IOException {
+    try (ObjectInserter ins = repo.newObjectInserter()) {
+      TreeFormatter tree = new TreeFormatter();
+      // tree entries must be sorted by name
+      for (String name : files.keySet().stream().sorted().toArray(String[]::new)) {
+        tree.append(
+            name,
+            FileMode.REGULAR_FILE,
+            ins.insert(Constants.OBJ_BLOB, files.get(name).getBytes(UTF_8)));
+      }
+      CommitBuilder commit = new CommitBuilder();
+      commit.setTreeId(ins.insert(tree));
+      commit.setParentIds(parents);
+      PersonIdent ident = new PersonIdent("dev", "dev@example.com");
+      commit.setAuthor(ident);
+      commit.setCommitter(ident);
+      commit.setMessage("commit");
+      ObjectId id = ins.insert(commit);
+      ins.flush();
+      return id;
+    }
+  }
+
+  private static String pointer(String content) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new LfsPointer(id(content), content.length()).encode(out);
+    return out.toString(UTF_8.name());
+  }
+
+  private static LongObjectId id(String content) {
+    return LongObjectId.fromString(Hashing.sha256().hashString(content, UTF_8).toString());
+  }
+
+  private static class FakeRepository implements LargeFileRepository {
+    final Set<LongObjectId> stored = new HashSet<>();
+    final Set<LongObjectId> lookedUp = new HashSet<>();
+    final CountDownLatch release = new CountDownLatch(1);
+    volatile boolean failing;
+    volatile boolean blocking;
+
+    @Override
+    public long getSize(AnyLongObjectId id) throws IOException {
+      if (failing) {
+        throw new IOException("backend unavailable");
+      }
+      if (blocking) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("interrupted", e);
+        }
+      }
+      synchronized (lookedUp) {
+        lookedUp.add(id.copy());
+      }
+      return stored.contains(id) ? 1 : -1;
+    }
+
+    @Override
+    public Response.Action getDownloadAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getUploadAction(AnyLongObjectId id, long size) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Response.Action getVerifyAction(AnyLongObjectId id) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}